@@ -105,6 +105,8 @@ public class Main {
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton stopButton = new JButton("Zatrzymaj Serwer");
         JButton viewDataButton = new JButton("Pokaż dane");
+        JButton statsButton = new JButton("Statystyki");
+        buttonPanel.add(statsButton);
         buttonPanel.add(viewDataButton);
         buttonPanel.add(stopButton);
 
@@ -131,8 +133,19 @@ public class Main {
             System.exit(0);
         });
 
+        statsButton.addActionListener((ActionEvent e) -> {
+            JOptionPane.showMessageDialog(serverFrame, server.getMetricsReport(),
+                    "Statystyki serwera", JOptionPane.INFORMATION_MESSAGE);
+        });
+
         viewDataButton.addActionListener((ActionEvent e) -> {
-            server.getDbManager().showDatabaseContentUI();
+            if (server.getDbManager() != null) {
+                server.getDbManager().showDatabaseContentUI();
+            } else {
+                JOptionPane.showMessageDialog(serverFrame,
+                        "Podgląd danych jest dostępny tylko dla bazy H2.",
+                        "Informacja", JOptionPane.INFORMATION_MESSAGE);
+            }
         });
     }
 
@@ -0,0 +1,169 @@
+package com.chatapp.client.cache;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pamięć podręczna rozmów klienta, kluczowana jak paczki historii (nazwa rozmówcy lub #<pokój>).
+// Kolejność LRU (LinkedHashMap z kolejnością dostępu); gdy szacowany rozmiar wiadomości przekroczy
+// limit, usuwane są najdawniej otwierane rozmowy. Rozmowa jest "załadowana", gdy dotarła cała jej
+// historia (z serwera lub z LocalMessageStore) - dopiero wtedy można ją pokazać bez pytania serwera. Wiadomości na żywo
+// są dopisywane także do rozmów niezaładowanych; historia scala się z nimi po identyfikatorach.
+public class ConversationCache {
+    // Przybliżony narzut obiektu Message (nadawca, odbiorca, znacznik czasu) poza treścią
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private static class Conversation {
+        final List<Message> messages = new ArrayList<>();
+        boolean loaded;
+        long bytes;
+    }
+
+    private final long maxBytes;
+    private final int maxMessagesPerConversation;
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public ConversationCache(long maxBytes, int maxMessagesPerConversation) {
+        this.maxBytes = maxBytes;
+        this.maxMessagesPerConversation = maxMessagesPerConversation;
+    }
+
+    // Klucz rozmowy wiadomości z punktu widzenia użytkownika ownUsername: nazwa rozmówcy,
+    // #<pokój> lub "" dla czatu ogólnego
+    public static String keyOf(Message message, String ownUsername) {
+        if (message.isRoomMessage()) {
+            return Config.ROOM_KEY_PREFIX + message.getRoomName();
+        }
+        if (message.isPrivate()) {
+            String senderUsername = message.getSender().getUsername();
+            return senderUsername.equals(ownUsername) ? message.getReceiver().getUsername() : senderUsername;
+        }
+        return "";
+    }
+
+    // Kopia wiadomości rozmowy od najstarszej (pusta lista, jeśli rozmowy nie ma w pamięci)
+    public synchronized List<Message> getMessages(String key) {
+        Conversation conversation = conversations.get(key);
+        return conversation != null ? new ArrayList<>(conversation.messages) : new ArrayList<>();
+    }
+
+    // Sprawdzenie bez zmiany kolejności LRU (np. przy planowaniu pobierania w tle)
+    public synchronized boolean isLoaded(String key) {
+        for (Map.Entry<String, Conversation> entry : conversations.entrySet()) {
+            if (entry.getKey().equals(key)) {
+                return entry.getValue().loaded;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void add(String key, Message message) {
+        merge(key, List.of(message));
+    }
+
+    // Scalenie wiadomości z rozmową: porządek według identyfikatora, bez duplikatów
+    public synchronized void merge(String key, Collection<Message> messages) {
+        Conversation conversation = conversations.computeIfAbsent(key, k -> new Conversation());
+
+        for (Message message : messages) {
+            if (insert(conversation.messages, message)) {
+                long size = estimateBytes(message);
+                conversation.bytes += size;
+                totalBytes += size;
+            }
+        }
+
+        // Najstarsze wiadomości ponad limit - w razie potrzeby wrócą przez "Starsze wiadomości"
+        while (conversation.messages.size() > maxMessagesPerConversation) {
+            long size = estimateBytes(conversation.messages.remove(0));
+            conversation.bytes -= size;
+            totalBytes -= size;
+        }
+
+        evict();
+    }
+
+    public synchronized void remove(String key) {
+        Conversation conversation = conversations.remove(key);
+        if (conversation != null) {
+            totalBytes -= conversation.bytes;
+        }
+    }
+
+    public synchronized void markLoaded(String key) {
+        conversations.computeIfAbsent(key, k -> new Conversation()).loaded = true;
+    }
+
+    // Klucze rozmów od ostatnio używanej
+    public synchronized List<String> getRecentKeys(int limit) {
+        List<String> keys = new ArrayList<>(conversations.keySet());
+        List<String> recent = new ArrayList<>();
+
+        for (int i = keys.size() - 1; i >= 0 && recent.size() < limit; i--) {
+            recent.add(keys.get(i));
+        }
+        return recent;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return conversations.size();
+    }
+
+    public synchronized void clear() {
+        conversations.clear();
+        totalBytes = 0;
+    }
+
+    // Wiadomości bez identyfikatora (niezapisane przez serwer) trafiają na koniec
+    private static boolean insert(List<Message> messages, Message message) {
+        int id = message.getId();
+        if (id <= 0) {
+            messages.add(message);
+            return true;
+        }
+
+        int low = 0;
+        int high = messages.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = messages.get(mid).getId();
+
+            if (midId <= 0 || midId > id) {
+                high = mid - 1;
+            } else if (midId < id) {
+                low = mid + 1;
+            } else {
+                return false;
+            }
+        }
+
+        messages.add(low, message);
+        return true;
+    }
+
+    private void evict() {
+        Iterator<Conversation> eldest = conversations.values().iterator();
+
+        // Ostatnio używana rozmowa zostaje zawsze, nawet gdy sama przekracza limit
+        while (totalBytes > maxBytes && conversations.size() > 1 && eldest.hasNext()) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    private static long estimateBytes(Message message) {
+        String content = message.getContent();
+        return MESSAGE_OVERHEAD_BYTES + (content != null ? 2L * content.length() : 0);
+    }
+}
@@ -0,0 +1,433 @@
+package com.chatapp.client.cache;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
+import com.chatapp.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Lokalny magazyn wiadomości klienta - osadzona baza H2 w <CLIENT_DATA_DIR>/<użytkownik>/, osobna dla
+// każdego serwera. Otwierany leniwie przy pierwszym użyciu; zapisy wykonuje jeden wątek w tle, w kolejności
+// zgłoszenia. Indeks (conversation_key, id) pozwala przewijać historię wstecz bez pytania serwera.
+// Klucze rozmów jak w ConversationCache ("" - czat ogólny). Gdy bazy nie da się otworzyć, magazyn
+// zachowuje się jak pusty i klient pobiera wszystko z serwera.
+public class LocalMessageStore implements AutoCloseable {
+    private static final String MESSAGE_SELECT = "SELECT id, sender_id, sender_name, receiver_id, receiver_name, " +
+            "room_id, room_name, content, sent_at FROM messages ";
+
+    private final Path directory;
+    private final String databaseName;
+    private final String ownUsername;
+    private final ExecutorService writer;
+    private Connection connection;
+    private boolean opened;
+
+    public LocalMessageStore(String username, String serverHost, int serverPort) {
+        this.directory = Paths.get(Config.CLIENT_DATA_DIR, fileName(username));
+        this.databaseName = fileName(serverHost + "_" + serverPort);
+        this.ownUsername = username;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocalStore-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Nazwa użytkownika lub serwera jako bezpieczna nazwa pliku
+    private static String fileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private synchronized Connection connection() {
+        if (!opened) {
+            opened = true;
+
+            try {
+                Files.createDirectories(directory);
+                connection = DriverManager.getConnection(
+                        "jdbc:h2:" + directory.resolve(databaseName).toAbsolutePath(), "sa", "");
+                createTablesIfNotExist();
+                Logger.info("Otwarto lokalny magazyn wiadomości: " + directory.resolve(databaseName));
+            } catch (IOException | SQLException e) {
+                Logger.warn("Nie można otworzyć lokalnego magazynu wiadomości: " + e.getMessage());
+                connection = null;
+            }
+        }
+        return connection;
+    }
+
+    private void createTablesIfNotExist() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS messages (" +
+                    "id INT PRIMARY KEY, " +
+                    "conversation_key VARCHAR(64) NOT NULL, " +
+                    "sender_id INT NOT NULL, " +
+                    "sender_name VARCHAR(50) NOT NULL, " +
+                    "receiver_id INT, " +
+                    "receiver_name VARCHAR(50), " +
+                    "room_id INT, " +
+                    "room_name VARCHAR(" + Config.ROOM_NAME_MAX_LENGTH + "), " +
+                    "content TEXT NOT NULL, " +
+                    "sent_at TIMESTAMP NOT NULL" +
+                    ")");
+
+            // Przewijanie rozmowy wstecz i najnowsze wiadomości rozmowy
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_conversation ON messages(conversation_key, id)");
+
+            // Rozmowy, których cała historia została pobrana z serwera (kolejne wiadomości dochodzą
+            // na żywo i przez synchronizację) - można je otwierać bez pytania serwera
+            stmt.execute("CREATE TABLE IF NOT EXISTS conversations (" +
+                    "conversation_key VARCHAR(64) PRIMARY KEY" +
+                    ")");
+
+            // Luki po niepełnej synchronizacji: wiadomości rozmowy o id <= below_id nie przylegają do nowszych
+            // (serwer pominął to, co przyszło pomiędzy) - odczyty lokalne ich nie zwracają, pyta się serwer
+            stmt.execute("CREATE TABLE IF NOT EXISTS gaps (" +
+                    "conversation_key VARCHAR(64) PRIMARY KEY, " +
+                    "below_id INT NOT NULL" +
+                    ")");
+
+            // Kolejka nadawcza - wiadomości jeszcze niepotwierdzone przez serwer, w kolejności nadania
+            stmt.execute("CREATE TABLE IF NOT EXISTS outbox (" +
+                    "client_id VARCHAR(36) PRIMARY KEY, " +
+                    "seq BIGINT AUTO_INCREMENT, " +
+                    "receiver_name VARCHAR(50), " +
+                    "room_name VARCHAR(" + Config.ROOM_NAME_MAX_LENGTH + "), " +
+                    "content TEXT NOT NULL, " +
+                    "created_at TIMESTAMP NOT NULL" +
+                    ")");
+        }
+    }
+
+    // Największy zapisany identyfikator - od niego serwer dosyła wiadomości po zalogowaniu
+    public synchronized int getHighWaterMark() {
+        if (connection() == null) {
+            return 0;
+        }
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM messages")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas odczytu lokalnego magazynu: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    public void saveAsync(Collection<Message> messages) {
+        List<Message> copy = new ArrayList<>(messages);
+        submit(() -> save(copy));
+    }
+
+    public void markLoadedAsync(String key) {
+        submit(() -> update("MERGE INTO conversations (conversation_key) KEY (conversation_key) VALUES (?)", key));
+    }
+
+    // Po opuszczeniu pokoju - po ponownym dołączeniu historia przyjdzie od nowa
+    public void forgetAsync(String key) {
+        submit(() -> {
+            update("DELETE FROM messages WHERE conversation_key = ?", key);
+            update("DELETE FROM conversations WHERE conversation_key = ?", key);
+            update("DELETE FROM gaps WHERE conversation_key = ?", key);
+        });
+    }
+
+    // Synchronizacja niepełna (klient za daleko w tyle) - zapisane rozmowy mają lukę nad sinceId.
+    // Wiadomości każdej rozmowy do sinceId zostają na dysku, ale są odcinane znacznikiem luki.
+    // Wywołanie dla kolejnych paczek tej samej synchronizacji niczego nie zmienia.
+    public void markSyncGapAsync(int sinceId) {
+        submit(() -> {
+            update("DELETE FROM conversations");
+            markSyncGap(sinceId);
+        });
+    }
+
+    private synchronized void markSyncGap(int sinceId) {
+        if (connection() == null) {
+            return;
+        }
+
+        String sql = "MERGE INTO gaps (conversation_key, below_id) KEY (conversation_key) " +
+                "SELECT conversation_key, MAX(id) FROM messages WHERE id <= ? GROUP BY conversation_key";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, sinceId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas zapisu do lokalnego magazynu: " + e.getMessage());
+        }
+    }
+
+    // Odczyt poza wątkiem interfejsu - w tej samej kolejce co zapisy, więc widzi wszystkie zgłoszone wcześniej
+    public void getBeforeAsync(String key, int beforeId, int limit, Consumer<List<Message>> callback) {
+        submit(() -> callback.accept(getBefore(key, beforeId, limit)));
+    }
+
+    public void saveOutboxAsync(Message message) {
+        submit(() -> saveOutbox(message));
+    }
+
+    public void removeOutboxAsync(String clientId) {
+        submit(() -> update("DELETE FROM outbox WHERE client_id = ?", clientId));
+    }
+
+    private void submit(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Magazyn jest zamykany
+        }
+    }
+
+    private synchronized void save(List<Message> messages) {
+        if (connection() == null || messages.isEmpty()) {
+            return;
+        }
+
+        String sql = "MERGE INTO messages (id, conversation_key, sender_id, sender_name, receiver_id, receiver_name, " +
+                "room_id, room_name, content, sent_at) KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (Message message : messages) {
+                // Wiadomości niezapisane przez serwer nie mają identyfikatora
+                if (message.getId() <= 0 || message.getSender() == null) {
+                    continue;
+                }
+
+                stmt.setInt(1, message.getId());
+                stmt.setString(2, ConversationCache.keyOf(message, ownUsername));
+                stmt.setInt(3, message.getSender().getId());
+                stmt.setString(4, message.getSender().getUsername());
+
+                if (message.isPrivate()) {
+                    stmt.setInt(5, message.getReceiver().getId());
+                    stmt.setString(6, message.getReceiver().getUsername());
+                } else {
+                    stmt.setNull(5, Types.INTEGER);
+                    stmt.setNull(6, Types.VARCHAR);
+                }
+
+                if (message.isRoomMessage()) {
+                    stmt.setInt(7, message.getRoomId());
+                    stmt.setString(8, message.getRoomName());
+                } else {
+                    stmt.setNull(7, Types.INTEGER);
+                    stmt.setNull(8, Types.VARCHAR);
+                }
+
+                stmt.setString(9, message.getContent());
+                stmt.setTimestamp(10, Timestamp.valueOf(message.getTimestamp()));
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas zapisu do lokalnego magazynu: " + e.getMessage());
+        }
+    }
+
+    private synchronized void saveOutbox(Message message) {
+        if (connection() == null) {
+            return;
+        }
+
+        String sql = "MERGE INTO outbox (client_id, receiver_name, room_name, content, created_at) KEY (client_id) " +
+                "VALUES (?, ?, ?, ?, ?)";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, message.getClientId());
+            stmt.setString(2, message.isPrivate() ? message.getReceiver().getUsername() : null);
+            stmt.setString(3, message.getRoomName());
+            stmt.setString(4, message.getContent());
+            stmt.setTimestamp(5, Timestamp.valueOf(message.getTimestamp()));
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas zapisu kolejki nadawczej: " + e.getMessage());
+        }
+    }
+
+    private synchronized void update(String sql, String... params) {
+        if (connection() == null) {
+            return;
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setString(i + 1, params[i]);
+            }
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas zapisu do lokalnego magazynu: " + e.getMessage());
+        }
+    }
+
+    public synchronized boolean isLoaded(String key) {
+        if (connection() == null) {
+            return false;
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT 1 FROM conversations WHERE conversation_key = ?")) {
+            stmt.setString(1, key);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas odczytu lokalnego magazynu: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Najnowsze wiadomości rozmowy, rosnąco według identyfikatora
+    public List<Message> getRecent(String key, int limit) {
+        return getBefore(key, Integer.MAX_VALUE, limit);
+    }
+
+    // Najnowsze wiadomości rozmowy o id < beforeId, rosnąco według identyfikatora - tylko powyżej luki
+    // po niepełnej synchronizacji, więc zwrócona strona zawsze przylega do nowszych wiadomości
+    public synchronized List<Message> getBefore(String key, int beforeId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        if (connection() == null) {
+            return messages;
+        }
+
+        String sql = MESSAGE_SELECT + "WHERE conversation_key = ? AND id < ? AND id > " +
+                "COALESCE((SELECT below_id FROM gaps WHERE conversation_key = ?), 0) ORDER BY id DESC LIMIT ?";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, key);
+            stmt.setInt(2, beforeId);
+            stmt.setString(3, key);
+            stmt.setInt(4, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(createMessageFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas odczytu lokalnego magazynu: " + e.getMessage());
+        }
+
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    // Klucze rozmów prywatnych i pokojów od tej z najnowszą wiadomością
+    public synchronized List<String> getRecentConversations(int limit) {
+        List<String> keys = new ArrayList<>();
+        if (connection() == null) {
+            return keys;
+        }
+
+        String sql = "SELECT conversation_key FROM messages WHERE conversation_key <> '' " +
+                "GROUP BY conversation_key ORDER BY MAX(id) DESC LIMIT ?";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    keys.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas odczytu lokalnego magazynu: " + e.getMessage());
+        }
+
+        return keys;
+    }
+
+    // Niepotwierdzone wiadomości z poprzednich sesji; nadawcę uzupełnia klient przy wysyłce
+    public synchronized List<Message> getOutbox() {
+        List<Message> messages = new ArrayList<>();
+        if (connection() == null) {
+            return messages;
+        }
+
+        String sql = "SELECT client_id, receiver_name, room_name, content, created_at FROM outbox ORDER BY seq";
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                Message message = new Message();
+                message.setClientId(rs.getString("client_id"));
+                message.setContent(rs.getString("content"));
+                message.setTimestamp(rs.getTimestamp("created_at").toLocalDateTime());
+                message.setRoomName(rs.getString("room_name"));
+
+                String receiverName = rs.getString("receiver_name");
+                if (receiverName != null) {
+                    User receiver = new User();
+                    receiver.setUsername(receiverName);
+                    message.setReceiver(receiver);
+                }
+
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas odczytu kolejki nadawczej: " + e.getMessage());
+        }
+
+        return messages;
+    }
+
+    private Message createMessageFromResultSet(ResultSet rs) throws SQLException {
+        Message message = new Message();
+        message.setId(rs.getInt("id"));
+        message.setContent(rs.getString("content"));
+        message.setTimestamp(rs.getTimestamp("sent_at").toLocalDateTime());
+        message.setSender(new User(rs.getInt("sender_id"), rs.getString("sender_name")));
+
+        int receiverId = rs.getInt("receiver_id");
+        if (!rs.wasNull()) {
+            message.setReceiver(new User(receiverId, rs.getString("receiver_name")));
+        }
+
+        int roomId = rs.getInt("room_id");
+        if (!rs.wasNull()) {
+            message.setRoomId(roomId);
+            message.setRoomName(rs.getString("room_name"));
+        }
+
+        return message;
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+
+        try {
+            // Zapisy zgłoszone przed zamknięciem mają trafić na dysk
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                Logger.error("Błąd podczas zamykania lokalnego magazynu: " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
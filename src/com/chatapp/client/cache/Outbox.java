@@ -0,0 +1,50 @@
+package com.chatapp.client.cache;
+
+import com.chatapp.common.model.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Kolejka nadawcza: każda wysyłana wiadomość czeka tu (i w tabeli outbox lokalnego magazynu) do
+// potwierdzenia przez serwer, więc zerwane połączenie ani zamknięcie aplikacji jej nie gubią.
+// Po ponownym połączeniu wszystkie niepotwierdzone wiadomości idą jedną ramką; serwer rozpoznaje
+// po kluczach idempotencji te, które już przyjął.
+public class Outbox {
+    private final LocalMessageStore store;
+    // Klucz idempotencji -> wiadomość, w kolejności nadania
+    private final Map<String, Message> pending = new LinkedHashMap<>();
+
+    // Wczytuje wiadomości niepotwierdzone w poprzednich sesjach (odczyt z dysku - poza wątkiem interfejsu)
+    public Outbox(LocalMessageStore store) {
+        this.store = store;
+
+        for (Message message : store.getOutbox()) {
+            pending.put(message.getClientId(), message);
+        }
+    }
+
+    public synchronized void add(Message message) {
+        pending.put(message.getClientId(), message);
+        store.saveOutboxAsync(message);
+    }
+
+    // Zwraca true, jeśli wiadomość czekała w kolejce
+    public synchronized boolean acknowledge(String clientId) {
+        if (pending.remove(clientId) == null) {
+            return false;
+        }
+
+        store.removeOutboxAsync(clientId);
+        return true;
+    }
+
+    public synchronized List<Message> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+}
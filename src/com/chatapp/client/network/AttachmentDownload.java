@@ -0,0 +1,176 @@
+package com.chatapp.client.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Attachment;
+import com.chatapp.common.security.TlsContexts;
+import com.chatapp.util.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Pobieranie jednego załącznika w osobnym wątku: bilet przez połączenie czatu, plik przez port
+// załączników, zapis strumieniowo do <plik>.part. Przerwane pobieranie jest wznawiane od długości
+// zapisanej części (także przy kolejnym pobraniu tego samego pliku), a na koniec sprawdzana jest suma.
+class AttachmentDownload extends Thread {
+    private static final int RETRY_DELAY_MS = 1000;
+
+    private final ChatClient client;
+    private final Attachment attachment;
+    private final Path target;
+    private final BiConsumer<Long, Long> onProgress;
+    private final Consumer<Path> onDone;
+    private final Consumer<String> onError;
+
+    // Odpowiedź na DOWNLOAD (null - jeszcze nie dotarła); chronione this
+    private String token;
+    private int port;
+
+    AttachmentDownload(ChatClient client, Attachment attachment, Path target, BiConsumer<Long, Long> onProgress,
+                       Consumer<Path> onDone, Consumer<String> onError) {
+        super("Attachment-Download");
+        this.client = client;
+        this.attachment = attachment;
+        this.target = target;
+        this.onProgress = onProgress;
+        this.onDone = onDone;
+        this.onError = onError;
+        setDaemon(true);
+    }
+
+    Attachment getAttachment() {
+        return attachment;
+    }
+
+    @Override
+    public void run() {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        if (!client.registerDownload(this)) {
+            onError.accept("Ten plik jest już pobierany");
+            return;
+        }
+
+        try {
+            String lastError = null;
+
+            for (int attempt = 0; attempt < Config.ATTACHMENT_TRANSFER_ATTEMPTS; attempt++) {
+                if (attempt > 0) {
+                    Thread.sleep(RETRY_DELAY_MS);
+                }
+
+                String ticket = requestTicket();
+                if (ticket == null) {
+                    lastError = "Brak odpowiedzi serwera";
+                    continue;
+                }
+                if (ticket.isEmpty()) {
+                    onError.accept("Plik nie jest dostępny na serwerze");
+                    return;
+                }
+
+                try {
+                    download(ticket, partial);
+                } catch (IOException e) {
+                    // Zapisana część zostaje - następna próba wznowi pobieranie
+                    Logger.warn("Przerwane pobieranie " + attachment + ": " + e.getMessage());
+                    lastError = e.getMessage();
+                    continue;
+                }
+
+                if (!attachment.getSha256().equals(Attachment.hashOf(partial))) {
+                    Files.delete(partial);
+                    lastError = "Suma kontrolna pobranego pliku nie zgadza się";
+                    continue;
+                }
+
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+                Logger.info("Pobrano załącznik " + attachment + " do " + target);
+                onDone.accept(target);
+                return;
+            }
+
+            onError.accept(lastError);
+        } catch (IOException e) {
+            Logger.error("Błąd podczas zapisu załącznika " + target + ": " + e.getMessage());
+            onError.accept(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            client.unregisterDownload(this);
+        }
+    }
+
+    // Bilet z połączenia czatu; null - brak odpowiedzi w limicie czasu
+    private String requestTicket() throws InterruptedException {
+        synchronized (this) {
+            token = null;
+        }
+        client.sendCommand(Config.CMD_DOWNLOAD + attachment.getSha256());
+
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + Config.ATTACHMENT_ACK_TIMEOUT_MS;
+            long remaining;
+            while (token == null && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            return token;
+        }
+    }
+
+    // Wywoływane z wątku odbierającego
+    synchronized void ticketReceived(int port, String token) {
+        this.port = port;
+        this.token = token;
+        notifyAll();
+    }
+
+    private void download(String ticket, Path partial) throws IOException {
+        long offset = Files.exists(partial) ? Files.size(partial) : 0;
+        int downloadPort;
+        synchronized (this) {
+            downloadPort = port;
+        }
+
+        try (Socket socket = TlsContexts.openClientSocket(client.getServerHost(), downloadPort)) {
+            socket.setSoTimeout(Config.IDLE_TIMEOUT_MS);
+
+            DataOutputStream request = new DataOutputStream(socket.getOutputStream());
+            request.writeUTF(ticket);
+            request.writeLong(offset);
+            request.flush();
+
+            DataInputStream response = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), Config.ATTACHMENT_CHUNK_SIZE));
+            long size = response.readLong();
+            if (size < 0) {
+                // Np. zapisana część dłuższa niż plik na serwerze - kolejna próba zacznie od początku
+                Files.deleteIfExists(partial);
+                throw new IOException("Serwer odrzucił żądanie pobierania");
+            }
+
+            try (OutputStream output = Files.newOutputStream(partial, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                byte[] buffer = new byte[Config.ATTACHMENT_CHUNK_SIZE];
+                long received = offset;
+
+                while (received < size) {
+                    int read = response.read(buffer, 0, (int) Math.min(buffer.length, size - received));
+                    if (read < 0) {
+                        throw new IOException("Połączenie zamknięte po " + received + " z " + size + " B");
+                    }
+                    output.write(buffer, 0, read);
+                    received += read;
+                    onProgress.accept(received, size);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.chatapp.client.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Attachment;
+import com.chatapp.common.model.FileChunk;
+import com.chatapp.util.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Wysyłka jednego załącznika w osobnym wątku. Plik jest czytany po fragmencie (nigdy w całości),
+// najwyżej ATTACHMENT_UPLOAD_WINDOW fragmentów czeka na potwierdzenie - między fragmentami przechodzą
+// zwykłe wiadomości czatu. Po zerwaniu połączenia (lub braku potwierdzeń) wysyłka czeka na ponowne
+// połączenie i pyta serwer, ile bajtów już ma - wznawia od tego miejsca zamiast od początku.
+class AttachmentUpload extends Thread {
+    private static final int RECONNECT_POLL_MS = 500;
+
+    private final ChatClient client;
+    private final Path file;
+    private final BiConsumer<Long, Long> onProgress;
+    private final Consumer<Attachment> onDone;
+    private final Consumer<String> onError;
+    private volatile String sha256;
+
+    // Wynik ostatniej próby (tylko wątek wysyłki): czy doszło do UPLOAD_BEGIN i ile bajtów potwierdzono
+    private boolean attempted;
+    private long reached = -1;
+
+    // Ostatnia liczba bajtów potwierdzona przez serwer (-1 - brak odpowiedzi na UPLOAD_BEGIN); chronione this
+    private long acknowledged = -1;
+    private String failure;
+
+    AttachmentUpload(ChatClient client, Path file, BiConsumer<Long, Long> onProgress,
+                     Consumer<Attachment> onDone, Consumer<String> onError) {
+        super("Attachment-Upload");
+        this.client = client;
+        this.file = file;
+        this.onProgress = onProgress;
+        this.onDone = onDone;
+        this.onError = onError;
+        setDaemon(true);
+    }
+
+    String getSha256() {
+        return sha256;
+    }
+
+    @Override
+    public void run() {
+        try {
+            long size = Files.size(file);
+            if (size == 0 || size > Config.ATTACHMENT_MAX_BYTES) {
+                onError.accept("Plik musi mieć od 1 B do " + Attachment.formatSize(Config.ATTACHMENT_MAX_BYTES));
+                return;
+            }
+
+            sha256 = Attachment.hashOf(file);
+            if (!client.registerUpload(this)) {
+                onError.accept("Ten plik jest już wysyłany");
+                return;
+            }
+            Attachment attachment = new Attachment(sha256, size, file.getFileName().toString());
+            long best = -1;
+            int stalledAttempts = 0;
+
+            while (!upload(size)) {
+                String error = getFailure();
+                if (error != null) {
+                    onError.accept(error);
+                    return;
+                }
+                if (client.wasIntentionalDisconnect()) {
+                    onError.accept("Wylogowano przed zakończeniem wysyłki");
+                    return;
+                }
+
+                // Oczekiwanie na ponowne połączenie nie jest liczone jako nieudana próba
+                if (attempted) {
+                    if (reached > best) {
+                        best = reached;
+                        stalledAttempts = 0;
+                    } else if (++stalledAttempts >= Config.ATTACHMENT_TRANSFER_ATTEMPTS) {
+                        onError.accept("Serwer nie potwierdza wysyłki");
+                        return;
+                    }
+                }
+                Thread.sleep(RECONNECT_POLL_MS);
+            }
+
+            Logger.info("Wysłano załącznik " + attachment + " [" + sha256 + "]");
+            onDone.accept(attachment);
+        } catch (IOException e) {
+            Logger.error("Błąd podczas wysyłania załącznika " + file + ": " + e.getMessage());
+            onError.accept(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (sha256 != null) {
+                client.unregisterUpload(this);
+            }
+        }
+    }
+
+    // Jedna próba na bieżącym połączeniu; false - trzeba wznowić (albo wysyłka się nie udała)
+    private boolean upload(long size) throws IOException, InterruptedException {
+        attempted = false;
+        if (!client.isAuthenticated()) {
+            return false;
+        }
+
+        synchronized (this) {
+            acknowledged = -1;
+        }
+        client.sendCommand(Config.CMD_UPLOAD_BEGIN + sha256 + ":" + size);
+        attempted = true;
+
+        long confirmed = reached = awaitAcknowledged(-1);
+        if (confirmed < 0) {
+            return false;
+        }
+        onProgress.accept(confirmed, size);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long sent = confirmed;
+
+            while (confirmed < size) {
+                // Okno: kolejne fragmenty tylko wtedy, gdy serwer nadąża z potwierdzeniami
+                while (sent < size && sent - confirmed < (long) Config.ATTACHMENT_UPLOAD_WINDOW * Config.ATTACHMENT_CHUNK_SIZE) {
+                    byte[] data = readChunk(channel, sent, (int) Math.min(Config.ATTACHMENT_CHUNK_SIZE, size - sent));
+                    if (!client.sendFileChunk(new FileChunk(sha256, sent, data))) {
+                        return false;
+                    }
+                    sent += data.length;
+                }
+
+                long next = awaitAcknowledged(confirmed);
+                if (next <= confirmed) {
+                    // Brak potwierdzenia w limicie czasu lub fragment spoza kolejności - od nowa przez UPLOAD_BEGIN
+                    return false;
+                }
+                confirmed = reached = next;
+                onProgress.accept(confirmed, size);
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readChunk(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Plik zmienił się w trakcie wysyłania");
+            }
+        }
+        return buffer.array();
+    }
+
+    // Czeka, aż serwer potwierdzi więcej niż previous bajtów; zwraca ostatnie potwierdzenie
+    private synchronized long awaitAcknowledged(long previous) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Config.ATTACHMENT_ACK_TIMEOUT_MS;
+        long remaining;
+
+        while (acknowledged <= previous && failure == null && client.isAuthenticated() &&
+                (remaining = deadline - System.currentTimeMillis()) > 0) {
+            wait(Math.min(remaining, RECONNECT_POLL_MS));
+        }
+        return acknowledged;
+    }
+
+    // Wywoływane z wątku odbierającego
+    synchronized void acknowledge(long offset) {
+        acknowledged = Math.max(acknowledged, offset);
+        notifyAll();
+    }
+
+    synchronized void fail(String reason) {
+        failure = reason;
+        notifyAll();
+    }
+
+    private synchronized String getFailure() {
+        return failure;
+    }
+}
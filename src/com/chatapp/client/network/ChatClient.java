@@ -2,17 +2,31 @@
 
 package com.chatapp.client.network;
 
+import com.chatapp.client.cache.Outbox;
+import com.chatapp.common.compression.CompressionDictionary;
 import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Attachment;
+import com.chatapp.common.model.AuthRequest;
+import com.chatapp.common.model.FileChunk;
 import com.chatapp.common.model.Message;
+import com.chatapp.common.model.MessageBatch;
 import com.chatapp.common.model.User;
+import com.chatapp.common.model.UserPage;
+import com.chatapp.common.security.TlsContexts;
 import com.chatapp.util.Logger;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class ChatClient implements AutoCloseable {
@@ -20,27 +34,61 @@ public class ChatClient implements AutoCloseable {
     private ObjectOutputStream output;
     private ObjectInputStream input;
     private User user;
+    private String serverHost;
+    private int serverPort;
     private MessageReceiver messageReceiver;
     private boolean connected;
     private boolean intentionalDisconnect = false;
+    // Ramka ostatniego udanego logowania - ponowne logowanie po zerwaniu połączenia
+    private AuthRequest loginRequest;
+    // Niepotwierdzone wiadomości (null - wysyłka bez kolejki, jak dawniej)
+    private Outbox outbox;
+    // Sesja zalogowana na bieżącym połączeniu - wcześniej serwer przyjmuje tylko ramkę logowania
+    private volatile boolean authenticated;
+    // Trwające przesyłanie załączników według sumy SHA-256 - odpowiedzi serwera trafiają do właściwego wątku
+    private final Map<String, AttachmentUpload> uploads = new ConcurrentHashMap<>();
+    private final Map<String, AttachmentDownload> downloads = new ConcurrentHashMap<>();
+    // Najwcześniejszy czas wysłania kolejnego fragmentu (System.nanoTime()); chronione chunkPacing
+    private final Object chunkPacing = new Object();
+    private long nextChunkAt;
 
     // Callbacki
+    // Zalogowani i pozostali zarejestrowani użytkownicy
     private Consumer<List<String>> onUserListUpdated;
+    private Consumer<List<String>> onRoomListUpdated;
     private Consumer<Message> onMessageReceived;
     private Consumer<Boolean> onConnectionStatusChanged;
+    private Consumer<MessageBatch> onSearchResults;
+    private Consumer<MessageBatch> onMentions;
+    // Powiadomienie o wzmiance: nadawca, #pokój lub pusty napis dla czatu ogólnego
+    private BiConsumer<String, String> onMentionNotification;
+    private Consumer<MessageBatch> onOlderHistory;
+    private Consumer<MessageBatch> onHistoryChunk;
+    private Consumer<MessageBatch> onSyncChunk;
+    private Consumer<UserPage> onUserSearchResults;
+    private BiConsumer<String, Long> onThrottled;
+    private BiConsumer<String, Long> onServerOverloaded;
 
     public ChatClient() {
         this.connected = false;
     }
 
     public boolean connect() {
+        return connect(Config.SERVER_ADDRESS, Config.SERVER_PORT);
+    }
+
+    // Połączenie z wybranym serwerem (np. konkretnym węzłem klastra)
+    public boolean connect(String host, int port) {
         try {
-            socket = new Socket(Config.SERVER_ADDRESS, Config.SERVER_PORT);
+            serverHost = host;
+            serverPort = port;
+            socket = TlsContexts.openClientSocket(host, port);
 
             // Inicjalizacja strumieni
-            output = new ObjectOutputStream(socket.getOutputStream());
+            // Ramka jest serializowana do bufora i wysyłana jednym zapisem przy flush()
+            output = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), Config.OUTPUT_BUFFER_SIZE));
             output.flush();
-            input = new ObjectInputStream(socket.getInputStream());
+            input = new ObjectInputStream(new BufferedInputStream(socket.getInputStream(), Config.INPUT_BUFFER_SIZE));
 
             connected = true;
             notifyConnectionStatusChanged(true);
@@ -53,20 +101,34 @@ public class ChatClient implements AutoCloseable {
         }
     }
 
+    // Logowanie z listą użytkowników, bez historii; odbieranie wiadomości rusza od razu
     public boolean authenticate(String username, String password) {
+        if (!authenticate(new AuthRequest(username, password))) {
+            return false;
+        }
+
+        startReceiving();
+        return true;
+    }
+
+    // Serwer odpowiada na logowanie jednym strumieniem (lista użytkowników, pokoje, historia według
+    // żądania). Ramki po potwierdzeniu logowania czekają w gnieździe do wywołania startReceiving() -
+    // wywołujący najpierw ustawia obsługę zdarzeń, więc nic z odpowiedzi nie przepada.
+    public boolean authenticate(AuthRequest request) {
         if (!isConnected()) {
             Logger.warn("Próba autoryzacji bez połączenia");
             return false;
         }
 
-        try {
-            Logger.debug("Wysyłanie danych logowania: " + username);
+        // Serwer z tym samym słownikiem będzie kompresował duże ramki
+        if (Config.COMPRESSION_ENABLED) {
+            request.setCompressionDictionaryId(CompressionDictionary.id());
+        }
 
-            User credentials = new User();
-            credentials.setUsername(username);
-            credentials.setPassword(password);
+        try {
+            Logger.debug("Wysyłanie danych logowania: " + request);
 
-            output.writeObject(credentials);
+            output.writeObject(request);
             output.flush();
 
             Object response = input.readObject();
@@ -75,7 +137,12 @@ public class ChatClient implements AutoCloseable {
                 user = (User) response;
                 Logger.info("Autoryzacja udana dla: " + user.getUsername());
 
-                startMessageReceiver();
+                // Serwer pinguje bezczynnych klientów, więc dłuższa cisza oznacza zerwane połączenie
+                socket.setSoTimeout(Config.IDLE_TIMEOUT_MS);
+
+                loginRequest = request;
+                authenticated = true;
+                flushOutbox();
                 return true;
             } else {
                 Logger.warn("Autoryzacja nieudana");
@@ -126,32 +193,95 @@ public class ChatClient implements AutoCloseable {
             message.setContent(Config.CMD_GET_USER_LIST);
             message.setTimestamp(LocalDateTime.now());
 
-            output.writeObject(message);
-            output.flush();
+            writeFrame(message);
             Logger.debug("Wysłano żądanie aktualizacji listy użytkowników");
         } catch (IOException e) {
             Logger.error("Błąd podczas wysyłania żądania listy użytkowników: " + e.getMessage());
         }
     }
 
+    // Ponowne logowanie po zerwaniu połączenia (po connect()) danymi z poprzedniego logowania;
+    // serwer dosyła wiadomości nowsze niż sinceId. Odbieranie rusza dopiero po startReceiving().
+    public boolean reauthenticate(int sinceId) {
+        if (loginRequest == null) {
+            return false;
+        }
+
+        AuthRequest request = new AuthRequest(loginRequest.getUsername(), loginRequest.getPassword());
+        request.setRosterWanted(loginRequest.isRosterWanted());
+        request.setHistoryLimit(loginRequest.getHistoryLimit());
+        request.setSinceId(sinceId);
+        return authenticate(request);
+    }
+
+    // Najnowsza wiadomość zapisana lokalnie, od której serwer synchronizował przy ostatnim logowaniu
+    public int getSyncSinceId() {
+        return loginRequest != null ? loginRequest.getSinceId() : 0;
+    }
+
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    public int getPendingCount() {
+        return outbox != null ? outbox.size() : 0;
+    }
+
     public boolean sendPrivateMessage(String content, String receiverUsername) {
-        if (!isConnected() || user == null) {
+        User receiver = new User();
+        receiver.setUsername(receiverUsername);
+
+        return send(new Message(user, receiver, content));
+    }
+
+    // Wiadomość dostaje klucz idempotencji i trafia do kolejki nadawczej przed wysłaniem. Bez połączenia
+    // (lub gdy zapis się nie uda) czeka w kolejce na ponowne połączenie - wysyłka jest wtedy udana.
+    private boolean send(Message message) {
+        if (user == null) {
             return false;
         }
 
-        try {
-            User receiver = new User();
-            receiver.setUsername(receiverUsername);
+        message.setClientId(UUID.randomUUID().toString());
+        if (outbox != null) {
+            outbox.add(message);
+        }
 
-            Message message = new Message(user, receiver, content);
+        if (!isConnected() || !authenticated) {
+            return outbox != null;
+        }
 
-            output.writeObject(message);
-            output.flush();
+        try {
+            writeFrame(message);
             return true;
         } catch (IOException e) {
-            Logger.error("Błąd podczas wysyłania prywatnej wiadomości: " + e.getMessage());
+            Logger.error("Błąd podczas wysyłania wiadomości: " + e.getMessage());
+            disconnect();
+            return outbox != null;
+        }
+    }
+
+    // Wszystkie niepotwierdzone wiadomości jedną ramką - po zalogowaniu i po odrzuceniu przez limit.
+    // Wiadomości już przyjęte serwer rozpozna po kluczu i tylko potwierdzi.
+    public void flushOutbox() {
+        if (outbox == null || !isConnected() || !authenticated) {
+            return;
+        }
+
+        List<Message> pending = outbox.getPending();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        for (Message message : pending) {
+            message.setSender(user);
+        }
+
+        try {
+            writeFrame(new MessageBatch(MessageBatch.Type.OUTBOX, "", pending));
+            Logger.info("Wysłano kolejkę nadawczą: " + pending.size() + " wiadomości");
+        } catch (IOException e) {
+            Logger.error("Błąd podczas wysyłania kolejki nadawczej: " + e.getMessage());
             disconnect();
-            return false;
         }
     }
 
@@ -165,37 +295,225 @@ public class ChatClient implements AutoCloseable {
             request.setContent(Config.CMD_GET_PRIVATE_HISTORY + otherUsername);
             request.setSender(user);
 
-            output.writeObject(request);
-            output.flush();
+            writeFrame(request);
         } catch (IOException e) {
             Logger.error("Błąd podczas żądania historii prywatnych wiadomości: " + e.getMessage());
         }
     }
 
-    public boolean sendMessage(String content) {
+    public void searchMessages(String query) {
         if (!isConnected() || user == null) {
+            return;
+        }
+
+        try {
+            Message request = new Message();
+            request.setContent(Config.CMD_SEARCH_MESSAGES + query);
+            request.setSender(user);
+
+            writeFrame(request);
+        } catch (IOException e) {
+            Logger.error("Błąd podczas wysyłania zapytania wyszukiwania: " + e.getMessage());
+        }
+    }
+
+    // Wyszukiwanie w katalogu użytkowników; cursor to kursor poprzedniej strony (null - pierwsza strona)
+    public void searchUsers(String prefix, String cursor) {
+        sendCommand(Config.CMD_SEARCH_USERS + prefix +
+                (cursor != null ? Config.SEARCH_USERS_CURSOR_SEPARATOR + cursor : ""));
+    }
+
+    // Wiadomości, w których wspomniano użytkownika, o id < beforeId (Integer.MAX_VALUE - najnowsze)
+    public void requestMentions(int beforeId) {
+        sendCommand(Config.CMD_GET_MENTIONS + beforeId);
+    }
+
+    // Synchronizacja po zalogowaniu: serwer odsyła wiadomości nowsze niż afterId (0 - ostatnie z czatu ogólnego)
+    public void requestHistorySince(int afterId) {
+        sendCommand(Config.CMD_GET_HISTORY_SINCE + afterId);
+    }
+
+    // Dołączenie do pokoju (tworzy go, jeśli nie istnieje) - serwer odsyła listę pokojów i historię pokoju
+    public void joinRoom(String roomName) {
+        sendCommand(Config.CMD_JOIN_ROOM + roomName);
+    }
+
+    public void leaveRoom(String roomName) {
+        sendCommand(Config.CMD_LEAVE_ROOM + roomName);
+    }
+
+    // Wysyłka pliku w tle; po zapisaniu na serwerze onDone dostaje odwołanie do wstawienia w wiadomość
+    // (Attachment.toContent()). Przerwana połączeniem wysyłka jest wznawiana po ponownym połączeniu.
+    public void uploadAttachment(Path file, BiConsumer<Long, Long> onProgress,
+                                 Consumer<Attachment> onDone, Consumer<String> onError) {
+        new AttachmentUpload(this, file, onProgress, onDone, onError).start();
+    }
+
+    public void downloadAttachment(Attachment attachment, Path target, BiConsumer<Long, Long> onProgress,
+                                   Consumer<Path> onDone, Consumer<String> onError) {
+        new AttachmentDownload(this, attachment, target, onProgress, onDone, onError).start();
+    }
+
+    boolean registerUpload(AttachmentUpload upload) {
+        return uploads.putIfAbsent(upload.getSha256(), upload) == null;
+    }
+
+    void unregisterUpload(AttachmentUpload upload) {
+        uploads.remove(upload.getSha256(), upload);
+    }
+
+    boolean registerDownload(AttachmentDownload download) {
+        return downloads.putIfAbsent(download.getAttachment().getSha256(), download) == null;
+    }
+
+    void unregisterDownload(AttachmentDownload download) {
+        downloads.remove(download.getAttachment().getSha256(), download);
+    }
+
+    // Fragment pliku - jak zwykła ramka, więc wiadomości czatu przechodzą między fragmentami.
+    // Fragmenty wszystkich wysyłek są rozkładane w czasie zgodnie z limitem serwera (RATE_ATTACHMENT_CHUNK_PER_SECOND).
+    boolean sendFileChunk(FileChunk chunk) {
+        if (!isConnected() || !authenticated) {
             return false;
         }
 
         try {
-            Message message = new Message(user, content);
-            output.writeObject(message);
-            output.flush();
+            paceFileChunk();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        try {
+            writeFrame(chunk);
             return true;
         } catch (IOException e) {
-            Logger.error("Błąd podczas wysyłania wiadomości: " + e.getMessage());
+            Logger.error("Błąd podczas wysyłania fragmentu załącznika: " + e.getMessage());
             disconnect();
             return false;
         }
     }
 
-    private void startMessageReceiver() {
-        messageReceiver = new MessageReceiver(this, input);
-        messageReceiver.start();
+    private void paceFileChunk() throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / Config.RATE_ATTACHMENT_CHUNK_PER_SECOND);
+        long delay;
+
+        synchronized (chunkPacing) {
+            long now = System.nanoTime();
+            long start = Math.max(nextChunkAt, now);
+            nextChunkAt = start + interval;
+            delay = start - now;
+        }
+
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    // UPLOAD_OFFSET:<sha256>:<bajty>, UPLOAD_FAILED:<sha256>:<powód>, DOWNLOAD_TICKET:<sha256>:<port>:<bilet>
+    void handleAttachmentReply(String content) {
+        try {
+            if (content.startsWith(Config.UPLOAD_OFFSET_PREFIX)) {
+                String[] parts = content.substring(Config.UPLOAD_OFFSET_PREFIX.length()).split(":", 2);
+                AttachmentUpload upload = uploads.get(parts[0]);
+                if (upload != null) {
+                    upload.acknowledge(Long.parseLong(parts[1]));
+                }
+            } else if (content.startsWith(Config.UPLOAD_FAILED_PREFIX)) {
+                String[] parts = content.substring(Config.UPLOAD_FAILED_PREFIX.length()).split(":", 2);
+                AttachmentUpload upload = uploads.get(parts[0]);
+                if (upload != null) {
+                    upload.fail(parts.length > 1 ? parts[1] : "");
+                }
+            } else {
+                String[] parts = content.substring(Config.DOWNLOAD_TICKET_PREFIX.length()).split(":", 3);
+                AttachmentDownload download = downloads.get(parts[0]);
+                if (download != null) {
+                    download.ticketReceived(Integer.parseInt(parts[1]), parts.length > 2 ? parts[2] : "");
+                }
+            }
+        } catch (RuntimeException e) {
+            Logger.error("Nieprawidłowa odpowiedź dotycząca załącznika: " + content);
+        }
+    }
+
+    void sendCommand(String command) {
+        if (!isConnected() || user == null) {
+            return;
+        }
+
+        try {
+            Message request = new Message(user, command);
+            writeFrame(request);
+        } catch (IOException e) {
+            Logger.error("Błąd podczas wysyłania polecenia " + command + ": " + e.getMessage());
+        }
+    }
+
+    public boolean sendRoomMessage(String content, String roomName) {
+        Message message = new Message(user, content);
+        message.setRoomName(roomName);
+
+        return send(message);
+    }
+
+    // Dla czatu ogólnego otherUsername = null, dla pokoju - #<nazwa pokoju>
+    public void requestOlderHistory(int beforeId, String otherUsername) {
+        if (!isConnected() || user == null) {
+            return;
+        }
+
+        try {
+            Message request = new Message();
+            request.setContent(Config.CMD_GET_OLDER_HISTORY + beforeId +
+                    (otherUsername != null ? ":" + otherUsername : ""));
+            request.setSender(user);
+
+            writeFrame(request);
+        } catch (IOException e) {
+            Logger.error("Błąd podczas żądania starszej historii: " + e.getMessage());
+        }
+    }
+
+    public boolean sendMessage(String content) {
+        return send(new Message(user, content));
+    }
+
+    // Odpowiedź na ping serwera (wywoływane z wątku odbierającego)
+    void sendPong() {
+        try {
+            Message pong = new Message(user, Config.CMD_PONG);
+            writeFrame(pong);
+        } catch (IOException e) {
+            Logger.error("Błąd podczas odpowiedzi na ping: " + e.getMessage());
+        }
+    }
+
+    // Do strumienia piszą wątek interfejsu i wątek odbierający (pong) - zapisy muszą być serializowane
+    // Reset po każdej ramce: wiadomości z kolejki wysyłane ponownie są serializowane od nowa, a nie jako
+    // odwołania do wcześniej wysłanych obiektów (strumień nie trzyma też wszystkiego, co wysłał)
+    private synchronized void writeFrame(Object frame) throws IOException {
+        output.writeObject(frame);
+        output.reset();
+        output.flush();
+    }
+
+    public void startReceiving() {
+        if (messageReceiver == null) {
+            messageReceiver = new MessageReceiver(this, input);
+            messageReceiver.start();
+        }
     }
 
     public void disconnect() {
         connected = false;
+        authenticated = false;
+
+        // Wątek odbierający starego połączenia nie może już rozłączać kolejnego (ponownego) połączenia
+        if (messageReceiver != null) {
+            messageReceiver.shutdown();
+            messageReceiver = null;
+        }
 
         try {
             if (input != null) input.close();
@@ -213,15 +531,76 @@ public class ChatClient implements AutoCloseable {
         disconnect();
     }
 
+    // Kopia własnej wiadomości od serwera potwierdza jej przyjęcie
     void handleReceivedMessage(Message message) {
+        if (outbox != null && message.getClientId() != null && message.getSender() != null &&
+                user.getUsername().equals(message.getSender().getUsername())) {
+            outbox.acknowledge(message.getClientId());
+        }
+
         if (onMessageReceived != null) {
             onMessageReceived.accept(message);
         }
     }
 
-    void handleUserList(List<String> usernames) {
+    // Potwierdzenie wiadomości przyjętej już wcześniej (ponownie wysłanej z kolejki) lub odrzuconej na stałe
+    void handleOutboxAck(String clientId) {
+        if (outbox != null && outbox.acknowledge(clientId)) {
+            Logger.debug("Serwer potwierdził wiadomość z kolejki: " + clientId);
+        }
+    }
+
+    void handleBatch(MessageBatch batch) {
+        if (batch.getType() == MessageBatch.Type.SEARCH_RESULTS && onSearchResults != null) {
+            onSearchResults.accept(batch);
+        } else if (batch.getType() == MessageBatch.Type.OLDER_HISTORY && onOlderHistory != null) {
+            onOlderHistory.accept(batch);
+        } else if (batch.getType() == MessageBatch.Type.HISTORY && onHistoryChunk != null) {
+            onHistoryChunk.accept(batch);
+        } else if (batch.getType() == MessageBatch.Type.SYNC && onSyncChunk != null) {
+            onSyncChunk.accept(batch);
+        } else if (batch.getType() == MessageBatch.Type.MENTIONS && onMentions != null) {
+            onMentions.accept(batch);
+        }
+    }
+
+    void handleMentionNotification(String sender, String conversation) {
+        if (onMentionNotification != null) {
+            onMentionNotification.accept(sender, conversation);
+        }
+    }
+
+    void handleThrottled(String operation, long retryAfterMs) {
+        Logger.warn("Serwer ograniczył operację " + operation + ", ponowienie za " + retryAfterMs + " ms");
+
+        if (onThrottled != null) {
+            onThrottled.accept(operation, retryAfterMs);
+        }
+    }
+
+    void handleServerOverloaded(String operation, long retryAfterMs) {
+        Logger.warn("Serwer przeciążony, odrzucono operację " + operation);
+
+        if (onServerOverloaded != null) {
+            onServerOverloaded.accept(operation, retryAfterMs);
+        }
+    }
+
+    void handleUserList(List<String> online) {
         if (onUserListUpdated != null) {
-            onUserListUpdated.accept(usernames);
+            onUserListUpdated.accept(online);
+        }
+    }
+
+    void handleUserSearchResults(UserPage page) {
+        if (onUserSearchResults != null) {
+            onUserSearchResults.accept(page);
+        }
+    }
+
+    void handleRoomList(List<String> roomNames) {
+        if (onRoomListUpdated != null) {
+            onRoomListUpdated.accept(roomNames);
         }
     }
 
@@ -241,10 +620,22 @@ public class ChatClient implements AutoCloseable {
         return user;
     }
 
+    public String getServerHost() {
+        return serverHost;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
     public boolean wasIntentionalDisconnect() {
         return intentionalDisconnect;
     }
 
+    boolean isAuthenticated() {
+        return authenticated;
+    }
+
     public boolean isConnected() {
         return connected;
     }
@@ -260,4 +651,44 @@ public class ChatClient implements AutoCloseable {
     public void setOnUserListUpdated(Consumer<List<String>> onUserListUpdated) {
         this.onUserListUpdated = onUserListUpdated;
     }
+
+    public void setOnRoomListUpdated(Consumer<List<String>> onRoomListUpdated) {
+        this.onRoomListUpdated = onRoomListUpdated;
+    }
+
+    public void setOnSearchResults(Consumer<MessageBatch> onSearchResults) {
+        this.onSearchResults = onSearchResults;
+    }
+
+    public void setOnMentions(Consumer<MessageBatch> onMentions) {
+        this.onMentions = onMentions;
+    }
+
+    public void setOnMentionNotification(BiConsumer<String, String> onMentionNotification) {
+        this.onMentionNotification = onMentionNotification;
+    }
+
+    public void setOnOlderHistory(Consumer<MessageBatch> onOlderHistory) {
+        this.onOlderHistory = onOlderHistory;
+    }
+
+    public void setOnHistoryChunk(Consumer<MessageBatch> onHistoryChunk) {
+        this.onHistoryChunk = onHistoryChunk;
+    }
+
+    public void setOnSyncChunk(Consumer<MessageBatch> onSyncChunk) {
+        this.onSyncChunk = onSyncChunk;
+    }
+
+    public void setOnUserSearchResults(Consumer<UserPage> onUserSearchResults) {
+        this.onUserSearchResults = onUserSearchResults;
+    }
+
+    public void setOnThrottled(BiConsumer<String, Long> onThrottled) {
+        this.onThrottled = onThrottled;
+    }
+
+    public void setOnServerOverloaded(BiConsumer<String, Long> onServerOverloaded) {
+        this.onServerOverloaded = onServerOverloaded;
+    }
 }
\ No newline at end of file
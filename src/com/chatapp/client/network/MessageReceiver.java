@@ -1,7 +1,11 @@
 package com.chatapp.client.network;
 
+import com.chatapp.common.compression.FrameDecompressor;
 import com.chatapp.common.config.Config;
+import com.chatapp.common.model.CompressedFrame;
 import com.chatapp.common.model.Message;
+import com.chatapp.common.model.MessageBatch;
+import com.chatapp.common.model.UserPage;
 import com.chatapp.util.Logger;
 
 import java.io.IOException;
@@ -14,6 +18,8 @@ public class MessageReceiver extends Thread {
     private final ChatClient client;
     private final ObjectInputStream input;
     private volatile boolean running = true;
+    // Kontekst rozpakowania tego połączenia - tworzony przy pierwszej skompresowanej ramce
+    private FrameDecompressor decompressor;
 
     public MessageReceiver(ChatClient client, ObjectInputStream input) {
         super("MessageReceiver");
@@ -28,24 +34,51 @@ public class MessageReceiver extends Thread {
             while (running && client.isConnected()) {
                 Object obj = input.readObject();
 
+                if (obj instanceof CompressedFrame) {
+                    if (decompressor == null) {
+                        decompressor = new FrameDecompressor();
+                    }
+                    obj = decompressor.decompress((CompressedFrame) obj);
+                }
+
                 if (obj instanceof Message) {
                     Message message = (Message) obj;
 
                     if (isUserListMessage(message)) {
                         processUserListMessage(message);
+                    } else if (isRoomListMessage(message)) {
+                        processRoomListMessage(message);
+                    } else if (isPingMessage(message)) {
+                        client.sendPong();
+                    } else if (isThrottledMessage(message)) {
+                        processThrottledMessage(message);
+                    } else if (isOutboxAck(message)) {
+                        client.handleOutboxAck(message.getContent().substring(Config.OUTBOX_ACK_PREFIX.length()));
+                    } else if (isAttachmentReply(message)) {
+                        client.handleAttachmentReply(message.getContent());
+                    } else if (isMentionNotification(message)) {
+                        processMentionNotification(message);
                     } else if (isSpecialMessage(message)) {
                         // Ignoruj specjalne wiadomości
                         continue;
                     } else {
                         client.handleReceivedMessage(message);
                     }
+                } else if (obj instanceof MessageBatch) {
+                    client.handleBatch((MessageBatch) obj);
+                } else if (obj instanceof UserPage) {
+                    client.handleUserSearchResults((UserPage) obj);
                 }
             }
         } catch (IOException | ClassNotFoundException e) {
-            if (client.isConnected()) {
+            if (running && client.isConnected()) {
                 Logger.error("Rozłączono z serwerem: " + e.getMessage());
                 client.disconnect();
             }
+        } finally {
+            if (decompressor != null) {
+                decompressor.close();
+            }
         }
     }
 
@@ -54,30 +87,98 @@ public class MessageReceiver extends Thread {
                 message.getContent().startsWith(Config.USER_LIST_PREFIX);
     }
 
+    private boolean isRoomListMessage(Message message) {
+        return message.getSender() == null && message.getContent() != null &&
+                message.getContent().startsWith(Config.ROOM_LIST_PREFIX);
+    }
+
+    private void processRoomListMessage(Message message) {
+        String content = message.getContent().substring(Config.ROOM_LIST_PREFIX.length());
+        client.handleRoomList(content.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(content.split(","))));
+    }
+
+    private boolean isPingMessage(Message message) {
+        return message.getSender() == null && Config.CMD_PING.equals(message.getContent());
+    }
+
+    private boolean isOutboxAck(Message message) {
+        return message.getSender() == null && message.getContent() != null &&
+                message.getContent().startsWith(Config.OUTBOX_ACK_PREFIX);
+    }
+
+    private boolean isAttachmentReply(Message message) {
+        return message.getSender() == null && message.getContent() != null &&
+                (message.getContent().startsWith(Config.UPLOAD_OFFSET_PREFIX) ||
+                        message.getContent().startsWith(Config.UPLOAD_FAILED_PREFIX) ||
+                        message.getContent().startsWith(Config.DOWNLOAD_TICKET_PREFIX));
+    }
+
+    private boolean isMentionNotification(Message message) {
+        return message.getSender() == null && message.getContent() != null &&
+                message.getContent().startsWith(Config.MENTION_PREFIX);
+    }
+
+    // Format: MENTION:<id wiadomości>:<#pokój lub pusty>:<nadawca> - nazwa nadawcy może zawierać ':'
+    private void processMentionNotification(Message message) {
+        String[] parts = message.getContent().substring(Config.MENTION_PREFIX.length()).split(":", 3);
+
+        if (parts.length == 3) {
+            client.handleMentionNotification(parts[2], parts[1]);
+        } else {
+            Logger.error("Nieprawidłowe powiadomienie o wzmiance: " + message.getContent());
+        }
+    }
+
+    private boolean isThrottledMessage(Message message) {
+        return message.getSender() == null && message.getContent() != null &&
+                (message.getContent().startsWith(Config.THROTTLED_PREFIX) ||
+                        message.getContent().startsWith(Config.OVERLOADED_PREFIX));
+    }
+
+    // Format: THROTTLED:<operacja>:<ms do ponowienia> (limit użytkownika)
+    // lub OVERLOADED:<operacja>:<ms do ponowienia> (przeciążenie serwera)
+    private void processThrottledMessage(Message message) {
+        String content = message.getContent();
+        boolean overloaded = content.startsWith(Config.OVERLOADED_PREFIX);
+        String[] parts = content.substring(overloaded ? Config.OVERLOADED_PREFIX.length() :
+                Config.THROTTLED_PREFIX.length()).split(":");
+
+        try {
+            if (overloaded) {
+                client.handleServerOverloaded(parts[0], Long.parseLong(parts[1]));
+            } else {
+                client.handleThrottled(parts[0], Long.parseLong(parts[1]));
+            }
+        } catch (RuntimeException e) {
+            Logger.error("Nieprawidłowa ramka limitu: " + message.getContent());
+        }
+    }
+
     private boolean isSpecialMessage(Message message) {
         return message.getContent() != null &&
                 message.getContent().equals(Config.CMD_GET_USER_LIST);
     }
 
+    // Format: USER_LIST:<zalogowani, po przecinku>
     private void processUserListMessage(Message message) {
         try {
             String content = message.getContent().substring(Config.USER_LIST_PREFIX.length());
+            List<String> online = parseUsernames(content);
 
-            if (content.isEmpty()) {
-                client.handleUserList(new ArrayList<>());
-                return;
-            }
-
-            String[] usernamesArray = content.split(",");
-            List<String> usernames = new ArrayList<>(Arrays.asList(usernamesArray));
-
-            Logger.debug("Otrzymano aktualizację listy użytkowników: " + usernames);
-            client.handleUserList(usernames);
+            Logger.debug("Otrzymano aktualizację listy użytkowników: " + online.size() + " zalogowanych");
+            client.handleUserList(online);
         } catch (Exception e) {
             Logger.error("Błąd podczas przetwarzania listy użytkowników: " + e.getMessage());
         }
     }
 
+    private static List<String> parseUsernames(String section) {
+        if (section.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(section.split(",")));
+    }
+
     public void shutdown() {
         running = false;
         interrupt();
@@ -1,41 +1,103 @@
 package com.chatapp.client.ui;
 
+import com.chatapp.client.cache.ConversationCache;
+import com.chatapp.client.cache.LocalMessageStore;
 import com.chatapp.client.network.ChatClient;
 import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Attachment;
 import com.chatapp.common.model.Message;
+import com.chatapp.common.model.MessageBatch;
+import com.chatapp.common.model.UserPage;
 import com.chatapp.util.Logger;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.nio.file.Path;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ChatFrame extends JFrame {
     private JTextArea chatArea;
     private JTextField messageField;
     private JButton sendButton;
+    private JButton attachButton;
     private JButton logoutButton;
     private JButton returnToPublicButton;
+    private JButton searchButton;
+    private JButton mentionsButton;
+    // Powiadomienia o wzmiankach od ostatniego otwarcia listy wzmianek
+    private int unreadMentions;
     private JLabel statusLabel;
     private JList<String> userList;
-    private DefaultListModel<String> userListModel;
+    private RosterListModel userListModel;
+    private JTextField userFilterField;
+    private JButton moreUsersButton;
+    private JList<String> roomList;
+    private DefaultListModel<String> roomListModel;
 
     // Przechowywanie historii wiadomości
     private final List<Message> publicMessageHistory = new ArrayList<>();
+    // Rozmowy prywatne i pokoje - przełączanie rozmów bez ponownego pobierania historii
+    private final ConversationCache conversationCache =
+            new ConversationCache(Config.CLIENT_CACHE_MAX_BYTES, Config.CLIENT_CACHE_MAX_MESSAGES);
+    // Wysłane żądania historii (klucz rozmowy -> czas wysłania), żeby nie pobierać jej dwa razy
+    private final Map<String, Long> pendingHistoryRequests = new HashMap<>();
+    // Wiadomości zapisane na dysku między uruchomieniami - po zalogowaniu serwer dosyła tylko nowsze
+    private final LocalMessageStore localStore;
+    private final Deque<String> prefetchQueue = new ArrayDeque<>();
+    private Timer prefetchTimer;
+
+    // Lista użytkowników: zalogowani (od serwera), ostatni rozmówcy i wyniki wyszukiwania w katalogu.
+    // Pozostali zarejestrowani nie są przesyłane - znajduje się ich wyszukiwaniem po prefiksie.
+    private List<String> onlineUsers = new ArrayList<>();
+    private final Set<String> recentContacts = new LinkedHashSet<>();
+    private final Set<String> searchResults = new LinkedHashSet<>();
+    private String searchQuery = "";
+    private String searchCursor = null;
+    private Timer userSearchTimer;
     private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss");
+    // Załączniki widoczne w oknie według skróconej sumy (#xxxxxxxx w treści) - dwuklik pobiera plik
+    private final Map<String, Attachment> displayedAttachments = new HashMap<>();
 
     private final ChatClient client;
     private String currentChatPartner = null;
+    // Otwarty pokój (wyklucza się z currentChatPartner)
+    private String currentRoom = null;
+    // Nagłówek widoku rozmowy prywatnej lub pokoju (widok jest odtwarzany z pamięci podręcznej)
+    private String viewHeader = "";
+    // Najstarsza wiadomość widoczna w bieżącym widoku - od niej pobierana jest starsza historia
+    private int oldestDisplayedId = Integer.MAX_VALUE;
+    // Historia przychodzi w częściach, a wiadomości na żywo mogą ją wyprzedzić - kolejne części są
+    // wstawiane za poprzednimi, przed wiadomościami na żywo
+    private int historyInsertOffset = 0;
+    private int publicHistoryInsertIndex = 0;
     private boolean isLoggingOut = false;
+    // Trwają próby ponownego połączenia (wiadomości czekają w kolejce nadawczej)
+    private boolean reconnecting = false;
 
-    public ChatFrame(ChatClient client) {
+    // Magazyn lokalny jest otwierany przed logowaniem - ramka logowania podaje najnowszą zapisaną wiadomość
+    public ChatFrame(ChatClient client, LocalMessageStore localStore) {
         this.client = client;
+        this.localStore = localStore;
 
         // Konfiguracja okna
         setupWindow();
@@ -46,8 +108,56 @@ public class ChatFrame extends JFrame {
         // Konfiguracja obsługi zdarzeń
         setupEventHandlers();
 
-        // Natychmiastowe pobranie listy użytkowników
-        refreshUserList();
+        // Historia z lokalnego magazynu; lista użytkowników i nowsze wiadomości są już w drodze
+        // (odpowiedź na logowanie) i zostaną odebrane po wczytaniu historii lokalnej
+        loadLocalHistory();
+
+        // Pobieranie w tle historii ostatnich rozmów, po jednej na takt (limit żądań historii)
+        prefetchTimer = new Timer(Config.CLIENT_PREFETCH_INTERVAL_MS, e -> prefetchNext());
+        prefetchTimer.start();
+    }
+
+    @Override
+    public void dispose() {
+        prefetchTimer.stop();
+        localStore.close();
+        super.dispose();
+    }
+
+    // Czat ogólny i ostatnie rozmowy są od razu czytane z dysku (w tle), a dopiero potem rusza odbieranie
+    // odpowiedzi na logowanie - nowsze wiadomości z serwera trafiają za historię lokalną
+    private void loadLocalHistory() {
+        Thread loader = new Thread(() -> {
+            List<Message> publicMessages = localStore.getRecent("", Config.MESSAGE_HISTORY_LIMIT);
+
+            List<String> recentKeys = localStore.getRecentConversations(Config.CLIENT_RECENT_CONTACTS);
+
+            for (String key : recentKeys.subList(0, Math.min(Config.CLIENT_PREFETCH_CONVERSATIONS, recentKeys.size()))) {
+                if (localStore.isLoaded(key)) {
+                    conversationCache.merge(key, localStore.getRecent(key, Config.CLIENT_CACHE_MAX_MESSAGES));
+                    conversationCache.markLoaded(key);
+                }
+            }
+
+            Logger.debug("Lokalna historia: " + publicMessages.size() + " wiadomości czatu ogólnego, " +
+                    recentKeys.size() + " ostatnich rozmów");
+
+            SwingUtilities.invokeLater(() -> {
+                // Od najstarszej, żeby najnowsza rozmowa była ostatnio dodanym kontaktem
+                for (int i = recentKeys.size() - 1; i >= 0; i--) {
+                    if (!recentKeys.get(i).startsWith(Config.ROOM_KEY_PREFIX)) {
+                        addRecentContact(recentKeys.get(i));
+                    }
+                }
+                refreshRoster();
+
+                insertPublicHistory(publicMessages);
+                client.startReceiving();
+            });
+        }, "LocalStore-Loader");
+
+        loader.setDaemon(true);
+        loader.start();
     }
 
     private void setupWindow() {
@@ -60,6 +170,7 @@ public class ChatFrame extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                isLoggingOut = true;
                 client.disconnect();
             }
         });
@@ -79,6 +190,10 @@ public class ChatFrame extends JFrame {
         JPanel statusRightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         logoutButton = new JButton("Wyloguj");
         returnToPublicButton = new JButton("Powrót do czatu ogólnego");
+        searchButton = new JButton("Szukaj");
+        mentionsButton = new JButton("Wzmianki");
+        statusRightPanel.add(mentionsButton);
+        statusRightPanel.add(searchButton);
         statusRightPanel.add(returnToPublicButton);
         statusRightPanel.add(logoutButton);
 
@@ -98,36 +213,90 @@ public class ChatFrame extends JFrame {
         JScrollPane chatScrollPane = new JScrollPane(chatArea);
         chatPanel.add(chatScrollPane, BorderLayout.CENTER);
 
+        JButton olderHistoryButton = new JButton("Starsze wiadomości");
+        chatPanel.add(olderHistoryButton, BorderLayout.NORTH);
+
         // Panel wiadomości
         JPanel messagePanel = new JPanel(new BorderLayout(5, 0));
         messageField = new JTextField();
         sendButton = new JButton("Wyślij");
+        attachButton = new JButton("Plik...");
+        attachButton.setToolTipText("Wyślij plik do bieżącej rozmowy (do " +
+                Attachment.formatSize(Config.ATTACHMENT_MAX_BYTES) + ")");
+        JPanel sendButtonsPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        sendButtonsPanel.add(attachButton);
+        sendButtonsPanel.add(sendButton);
         messagePanel.add(messageField, BorderLayout.CENTER);
-        messagePanel.add(sendButton, BorderLayout.EAST);
+        messagePanel.add(sendButtonsPanel, BorderLayout.EAST);
         chatPanel.add(messagePanel, BorderLayout.SOUTH);
 
         // Panel listy użytkowników
         JPanel usersPanel = new JPanel(new BorderLayout());
         usersPanel.setBorder(BorderFactory.createTitledBorder("Użytkownicy"));
 
-        userListModel = new DefaultListModel<>();
+        userListModel = new RosterListModel();
         userList = new JList<>(userListModel);
         userList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Stała wysokość wiersza - JList nie mierzy każdego z (potencjalnie) tysięcy elementów
+        userList.setPrototypeCellValue("WWWWWWWWWWWWWWWWWWWW");
+        userList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                // Niezalogowani są wyszarzeni (lista jest posortowana: najpierw zalogowani)
+                if (!isSelected && !userListModel.isOnline(index)) {
+                    setForeground(Color.GRAY);
+                }
+                return this;
+            }
+        });
         JScrollPane userScrollPane = new JScrollPane(userList);
         usersPanel.add(userScrollPane, BorderLayout.CENTER);
 
-        // Dodanie etykiety na górze listy użytkowników
+        // Dodanie etykiety i pola filtra na górze listy użytkowników
+        JPanel usersTopPanel = new JPanel(new BorderLayout(0, 3));
         JLabel usersLabel = new JLabel("Kliknij dwukrotnie, aby rozpocząć prywatną rozmowę");
         usersLabel.setHorizontalAlignment(SwingConstants.CENTER);
-        usersPanel.add(usersLabel, BorderLayout.NORTH);
+        usersTopPanel.add(usersLabel, BorderLayout.NORTH);
+
+        userFilterField = new JTextField();
+        userFilterField.setToolTipText("Filtruj po początku nazwy (pozostali użytkownicy są wyszukiwani na serwerze)");
+        usersTopPanel.add(userFilterField, BorderLayout.SOUTH);
+        usersPanel.add(usersTopPanel, BorderLayout.NORTH);
 
-        // Dodaj przycisk odświeżania listy użytkowników
+        // Dodaj przycisk odświeżania listy użytkowników i kolejnej strony wyników wyszukiwania
+        JPanel userButtonsPanel = new JPanel(new GridLayout(1, 2, 5, 0));
         JButton refreshButton = new JButton("Odśwież listę");
-        usersPanel.add(refreshButton, BorderLayout.SOUTH);
+        moreUsersButton = new JButton("Więcej");
+        moreUsersButton.setEnabled(false);
+        userButtonsPanel.add(refreshButton);
+        userButtonsPanel.add(moreUsersButton);
+        usersPanel.add(userButtonsPanel, BorderLayout.SOUTH);
+
+        // Panel pokojów
+        JPanel roomsPanel = new JPanel(new BorderLayout());
+        roomsPanel.setBorder(BorderFactory.createTitledBorder("Pokoje"));
+
+        roomListModel = new DefaultListModel<>();
+        roomList = new JList<>(roomListModel);
+        roomList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        roomsPanel.add(new JScrollPane(roomList), BorderLayout.CENTER);
+
+        JPanel roomButtonsPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        JButton joinRoomButton = new JButton("Dołącz");
+        JButton leaveRoomButton = new JButton("Opuść");
+        roomButtonsPanel.add(joinRoomButton);
+        roomButtonsPanel.add(leaveRoomButton);
+        roomsPanel.add(roomButtonsPanel, BorderLayout.SOUTH);
+
+        JPanel sidePanel = new JPanel(new GridLayout(2, 1, 0, 5));
+        sidePanel.add(usersPanel);
+        sidePanel.add(roomsPanel);
 
         // Konfiguracja Split Pane
         splitPane.setLeftComponent(chatPanel);
-        splitPane.setRightComponent(usersPanel);
+        splitPane.setRightComponent(sidePanel);
 
         // Dodanie paneli do głównego panelu
         mainPanel.add(statusPanel, BorderLayout.NORTH);
@@ -138,7 +307,13 @@ public class ChatFrame extends JFrame {
 
         // Konfiguracja przycisków
         refreshButton.addActionListener(e -> refreshUserList());
+        moreUsersButton.addActionListener(e -> requestMoreUsers());
         returnToPublicButton.addActionListener(e -> returnToPublicChat());
+        searchButton.addActionListener(e -> handleSearch());
+        mentionsButton.addActionListener(e -> handleShowMentions());
+        olderHistoryButton.addActionListener(e -> requestOlderHistory());
+        joinRoomButton.addActionListener(e -> handleJoinRoom());
+        leaveRoomButton.addActionListener(e -> handleLeaveRoom());
     }
 
     private void setupEventHandlers() {
@@ -151,6 +326,39 @@ public class ChatFrame extends JFrame {
         // Obsługa przycisku wylogowania
         logoutButton.addActionListener(this::handleLogout);
 
+        // Załączniki: wysyłka z wyboru pliku, pobieranie dwuklikiem na wierszu z załącznikiem
+        attachButton.addActionListener(e -> handleAttachFile());
+        chatArea.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    handleAttachmentClick(e.getPoint());
+                }
+            }
+        });
+
+        // Filtrowanie listy użytkowników w trakcie pisania; katalog na serwerze jest przeszukiwany
+        // dopiero po przerwie w pisaniu, żeby nie wysyłać zapytania na każdy klawisz
+        userSearchTimer = new Timer(Config.CLIENT_USER_SEARCH_DELAY_MS, e -> startUserSearch());
+        userSearchTimer.setRepeats(false);
+
+        userFilterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                handleUserFilterChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                handleUserFilterChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                handleUserFilterChanged();
+            }
+        });
+
         // Obsługa dwukliku na liście użytkowników
         userList.addMouseListener(new MouseAdapter() {
             @Override
@@ -164,6 +372,19 @@ public class ChatFrame extends JFrame {
             }
         });
 
+        // Obsługa dwukliku na liście pokojów
+        roomList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    String selectedRoom = roomList.getSelectedValue();
+                    if (selectedRoom != null) {
+                        openRoom(selectedRoom);
+                    }
+                }
+            }
+        });
+
         // Nasłuchiwanie nowych wiadomości
         client.setOnMessageReceived(this::handleMessageReceived);
 
@@ -172,6 +393,35 @@ public class ChatFrame extends JFrame {
 
         // Nasłuchiwanie aktualizacji listy użytkowników
         client.setOnUserListUpdated(this::updateUserList);
+
+        // Nasłuchiwanie wyników wyszukiwania w katalogu użytkowników
+        client.setOnUserSearchResults(this::handleUserSearchResults);
+
+        // Nasłuchiwanie zmian listy pokojów
+        client.setOnRoomListUpdated(this::updateRoomList);
+
+        // Nasłuchiwanie wyników wyszukiwania
+        client.setOnSearchResults(this::showSearchResults);
+
+        // Nasłuchiwanie wzmianek: lista na żądanie i powiadomienia na żywo
+        client.setOnMentions(this::showMentions);
+        client.setOnMentionNotification(this::handleMentionNotification);
+
+        // Nasłuchiwanie starszej historii (zapisywanej też lokalnie)
+        client.setOnOlderHistory(batch -> {
+            localStore.saveAsync(batch.getMessages());
+            handleOlderHistory(batch);
+        });
+
+        // Nasłuchiwanie części historii rozmowy
+        client.setOnHistoryChunk(this::handleHistoryChunk);
+
+        // Nasłuchiwanie synchronizacji po zalogowaniu
+        client.setOnSyncChunk(this::handleSyncChunk);
+
+        // Informacja o przekroczeniu limitu żądań
+        client.setOnThrottled(this::handleThrottled);
+        client.setOnServerOverloaded(this::handleServerOverloaded);
     }
 
     private void refreshUserList() {
@@ -181,8 +431,76 @@ public class ChatFrame extends JFrame {
         });
     }
 
+    private void handleUserFilterChanged() {
+        userListModel.setFilter(userFilterField.getText());
+        userSearchTimer.restart();
+    }
+
+    // Nowe zapytanie zastępuje wyniki poprzedniego; pusty filtr nie przeszukuje katalogu
+    private void startUserSearch() {
+        String query = userFilterField.getText().trim();
+        if (query.equals(searchQuery)) {
+            return;
+        }
+
+        searchQuery = query;
+        searchCursor = null;
+        searchResults.clear();
+        moreUsersButton.setEnabled(false);
+        refreshRoster();
+
+        if (!query.isEmpty()) {
+            client.searchUsers(query, null);
+        }
+    }
+
+    private void requestMoreUsers() {
+        if (searchCursor != null) {
+            moreUsersButton.setEnabled(false);
+            client.searchUsers(searchQuery, searchCursor);
+        }
+    }
+
+    private void handleUserSearchResults(UserPage page) {
+        SwingUtilities.invokeLater(() -> {
+            // Odpowiedź na zapytanie, które użytkownik zdążył już zmienić
+            if (!page.getQuery().equals(searchQuery)) {
+                return;
+            }
+
+            searchResults.addAll(page.getUsernames());
+            searchCursor = page.getNextCursor();
+            moreUsersButton.setEnabled(page.hasMore());
+            refreshRoster();
+        });
+    }
+
+    // Ostatni rozmówca trafia na koniec; najdawniejsi wypadają ponad limit
+    private void addRecentContact(String username) {
+        recentContacts.remove(username);
+        recentContacts.add(username);
+
+        Iterator<String> eldest = recentContacts.iterator();
+        while (recentContacts.size() > Config.CLIENT_RECENT_CONTACTS) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    // Wywoływane w wątku interfejsu - listy są małe (zalogowani, ostatni rozmówcy, strony wyników)
+    private void refreshRoster() {
+        Set<String> others = new LinkedHashSet<>(recentContacts);
+        others.addAll(searchResults);
+        others.removeAll(onlineUsers);
+        others.remove(client.getUser().getUsername());
+
+        userListModel.update(onlineUsers, others);
+    }
+
     private void returnToPublicChat() {
         currentChatPartner = null;
+        currentRoom = null;
+        oldestDisplayedId = Integer.MAX_VALUE;
         setTitle("Chat App - " + client.getUser().getUsername());
 
         chatArea.setText("");
@@ -196,16 +514,14 @@ public class ChatFrame extends JFrame {
         String content = messageField.getText().trim();
 
         if (!content.isEmpty()) {
-            boolean sent;
-
-            if (currentChatPartner == null) {
-                sent = client.sendMessage(content);
-            } else {
-                sent = client.sendPrivateMessage(content, currentChatPartner);
-            }
+            boolean sent = sendToConversation(content, currentRoom, currentChatPartner);
 
             if (sent) {
                 messageField.setText("");
+
+                if (!client.isConnected()) {
+                    statusLabel.setText("Brak połączenia - wiadomości w kolejce: " + client.getPendingCount());
+                }
             } else {
                 JOptionPane.showMessageDialog(
                         this,
@@ -217,6 +533,317 @@ public class ChatFrame extends JFrame {
         }
     }
 
+    // Pokój, rozmowa prywatna albo (oba null) czat ogólny
+    private boolean sendToConversation(String content, String room, String partner) {
+        if (room != null) {
+            return client.sendRoomMessage(content, room);
+        } else if (partner == null) {
+            return client.sendMessage(content);
+        }
+        return client.sendPrivateMessage(content, partner);
+    }
+
+    // Plik trafia do rozmowy otwartej w chwili wyboru, nawet jeśli w trakcie wysyłki użytkownik przejdzie do innej
+    private void handleAttachFile() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = chooser.getSelectedFile();
+        String room = currentRoom;
+        String partner = currentChatPartner;
+        statusLabel.setText("Wysyłanie pliku " + file.getName() + "...");
+
+        client.uploadAttachment(file.toPath(),
+                (done, total) -> showTransferProgress("Wysyłanie", file.getName(), done, total),
+                attachment -> SwingUtilities.invokeLater(() -> {
+                    sendToConversation(attachment.toContent(), room, partner);
+                    statusLabel.setText("Wysłano plik " + attachment);
+                }),
+                error -> showTransferError("Nie udało się wysłać pliku " + file.getName(), error));
+    }
+
+    private void handleAttachmentClick(Point point) {
+        try {
+            int line = chatArea.getLineOfOffset(chatArea.viewToModel2D(point));
+            int start = chatArea.getLineStartOffset(line);
+            String text = chatArea.getText(start, chatArea.getLineEndOffset(line) - start).trim();
+
+            int marker = text.lastIndexOf(" #");
+            Attachment attachment = marker >= 0 ? displayedAttachments.get(text.substring(marker + 2)) : null;
+            if (attachment != null) {
+                downloadAttachment(attachment);
+            }
+        } catch (BadLocationException e) {
+            Logger.debug("Kliknięcie poza tekstem rozmowy");
+        }
+    }
+
+    private void downloadAttachment(Attachment attachment) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(attachment.getName()));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Path target = chooser.getSelectedFile().toPath();
+        statusLabel.setText("Pobieranie pliku " + attachment + "...");
+
+        client.downloadAttachment(attachment, target,
+                (done, total) -> showTransferProgress("Pobieranie", attachment.getName(), done, total),
+                path -> SwingUtilities.invokeLater(() -> statusLabel.setText("Pobrano plik do " + path)),
+                error -> showTransferError("Nie udało się pobrać pliku " + attachment.getName(), error));
+    }
+
+    private void showTransferProgress(String action, String name, long done, long total) {
+        long percent = total > 0 ? done * 100 / total : 100;
+        SwingUtilities.invokeLater(() -> statusLabel.setText(action + " " + name + ": " + percent + "%"));
+    }
+
+    private void showTransferError(String message, String reason) {
+        SwingUtilities.invokeLater(() -> {
+            statusLabel.setText(message);
+            JOptionPane.showMessageDialog(this, message + (reason != null ? ":\n" + reason : ""),
+                    "Błąd", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    private void requestOlderHistory() {
+        if (oldestDisplayedId <= 1) {
+            statusLabel.setText("Brak starszych wiadomości");
+            return;
+        }
+
+        String viewKey = currentViewKey();
+        int beforeId = oldestDisplayedId;
+        statusLabel.setText("Pobieranie starszych wiadomości...");
+
+        // Pełna strona w lokalnym magazynie - bez pytania serwera. Odczyt z dysku w tle, jak przy starcie;
+        // handleOlderHistory wraca do wątku interfejsu.
+        localStore.getBeforeAsync(viewKey, beforeId, Config.HISTORY_PAGE_SIZE, local -> {
+            if (local.size() == Config.HISTORY_PAGE_SIZE) {
+                handleOlderHistory(new MessageBatch(MessageBatch.Type.OLDER_HISTORY, viewKey, local));
+            } else {
+                client.requestOlderHistory(beforeId, viewKey.isEmpty() ? null : viewKey);
+            }
+        });
+    }
+
+    private void handleOlderHistory(MessageBatch batch) {
+        SwingUtilities.invokeLater(() -> {
+            List<Message> messages = batch.getMessages();
+            if (!batch.getKey().isEmpty()) {
+                conversationCache.merge(batch.getKey(), messages);
+            }
+
+            // Odpowiedź mogła przyjść po przełączeniu rozmowy
+            if (!currentViewKey().equals(batch.getKey())) {
+                return;
+            }
+
+            if (messages.isEmpty()) {
+                statusLabel.setText("Brak starszych wiadomości");
+                oldestDisplayedId = 1;
+                return;
+            }
+
+            StringBuilder text = new StringBuilder();
+            for (Message message : messages) {
+                text.append(formatMessage(message));
+                oldestDisplayedId = Math.min(oldestDisplayedId, message.getId());
+            }
+
+            if (currentViewKey().isEmpty()) {
+                publicMessageHistory.addAll(0, messages);
+            }
+
+            chatArea.insert(text.toString(), 0);
+            chatArea.setCaretPosition(0);
+            statusLabel.setText("Połączono");
+        });
+    }
+
+    private void handleHistoryChunk(MessageBatch chunk) {
+        localStore.saveAsync(chunk.getMessages());
+        if (chunk.isLast() && !chunk.getKey().isEmpty()) {
+            localStore.markLoadedAsync(chunk.getKey());
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            List<Message> messages = chunk.getMessages();
+            boolean isPublic = chunk.getKey().isEmpty();
+
+            if (!isPublic) {
+                // Rozmowa prywatna lub pokój (także pobierane w tle) - do pamięci podręcznej
+                conversationCache.merge(chunk.getKey(), messages);
+                if (chunk.isLast()) {
+                    conversationCache.markLoaded(chunk.getKey());
+                    pendingHistoryRequests.remove(chunk.getKey());
+                }
+
+                // Widok jest odtwarzany z pamięci - części pobrane przed jego otwarciem
+                // i wiadomości na żywo są już scalone we właściwej kolejności
+                if (currentViewKey().equals(chunk.getKey())) {
+                    renderConversation(chunk.getKey());
+                }
+                return;
+            }
+
+            insertPublicHistory(messages);
+            if (chunk.isLast() && currentViewKey().isEmpty()) {
+                scrollToBottom();
+            }
+        });
+    }
+
+    // Wiadomości wszystkich rozmów nowsze niż lokalna historia: czat ogólny trafia za historią z dysku,
+    // rozmowy prywatne i pokoje do pamięci podręcznej (a niezaładowane - do pobrania w tle)
+    private void handleSyncChunk(MessageBatch chunk) {
+        boolean truncated = Config.SYNC_TRUNCATED_KEY.equals(chunk.getKey());
+        if (truncated) {
+            // Klient był za daleko w tyle - zapisane rozmowy mają luki i trzeba je pobrać od nowa;
+            // starsze wiadomości spod luki przy przewijaniu przyjdą z serwera
+            localStore.markSyncGapAsync(client.getSyncSinceId());
+        }
+        localStore.saveAsync(chunk.getMessages());
+
+        SwingUtilities.invokeLater(() -> {
+            if (truncated) {
+                conversationCache.clear();
+            }
+
+            String ownUsername = client.getUser().getUsername();
+            List<Message> publicMessages = new ArrayList<>();
+            Map<String, List<Message>> conversations = new HashMap<>();
+
+            for (Message message : chunk.getMessages()) {
+                String key = ConversationCache.keyOf(message, ownUsername);
+                if (key.isEmpty()) {
+                    publicMessages.add(message);
+                } else {
+                    conversations.computeIfAbsent(key, k -> new ArrayList<>()).add(message);
+                }
+            }
+
+            insertPublicHistory(publicMessages);
+
+            for (Map.Entry<String, List<Message>> entry : conversations.entrySet()) {
+                conversationCache.merge(entry.getKey(), entry.getValue());
+                if (!conversationCache.isLoaded(entry.getKey())) {
+                    enqueuePrefetch(entry.getKey());
+                }
+                if (currentViewKey().equals(entry.getKey())) {
+                    renderConversation(entry.getKey());
+                }
+            }
+
+            if (chunk.isLast() && currentViewKey().isEmpty()) {
+                scrollToBottom();
+            }
+        });
+    }
+
+    // Historia czatu ogólnego (z dysku, z synchronizacji) trafia za wcześniejszą historią, a przed
+    // wiadomościami na żywo. Wiadomości już znane (na żywo, sprzed ponownego połączenia) są pomijane.
+    private void insertPublicHistory(List<Message> messages) {
+        Set<Integer> knownIds = new HashSet<>();
+        for (Message message : publicMessageHistory) {
+            knownIds.add(message.getId());
+        }
+
+        List<Message> missing = new ArrayList<>();
+        for (Message message : messages) {
+            if (!knownIds.contains(message.getId())) {
+                missing.add(message);
+            }
+        }
+
+        publicMessageHistory.addAll(publicHistoryInsertIndex, missing);
+        publicHistoryInsertIndex += missing.size();
+
+        if (!currentViewKey().isEmpty()) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Message message : missing) {
+            text.append(formatMessage(message));
+            trackOldestDisplayed(message);
+        }
+
+        chatArea.insert(text.toString(), historyInsertOffset);
+        historyInsertOffset += text.length();
+    }
+
+    private void handleSearch() {
+        String query = JOptionPane.showInputDialog(this, "Szukaj w wiadomościach:", "Wyszukiwanie",
+                JOptionPane.QUESTION_MESSAGE);
+
+        if (query != null && !query.trim().isEmpty()) {
+            statusLabel.setText("Wyszukiwanie...");
+            client.searchMessages(query.trim());
+        }
+    }
+
+    private void showSearchResults(MessageBatch results) {
+        showMessageList("Wyniki wyszukiwania: " + results.getKey(), "Brak wyników dla: " + results.getKey(),
+                results.getMessages());
+    }
+
+    private void handleShowMentions() {
+        unreadMentions = 0;
+        mentionsButton.setText("Wzmianki");
+        statusLabel.setText("Pobieranie wzmianek...");
+        client.requestMentions(Integer.MAX_VALUE);
+    }
+
+    // Serwer odsyła wzmianki rosnąco - na liście najnowsze są na górze, jak w wynikach wyszukiwania
+    private void showMentions(MessageBatch mentions) {
+        List<Message> newestFirst = new ArrayList<>(mentions.getMessages());
+        Collections.reverse(newestFirst);
+        showMessageList("Wzmianki o Tobie", "Nikt jeszcze o Tobie nie wspomniał", newestFirst);
+    }
+
+    // conversation: #pokój albo pusty napis dla czatu ogólnego
+    private void handleMentionNotification(String sender, String conversation) {
+        SwingUtilities.invokeLater(() -> {
+            unreadMentions++;
+            mentionsButton.setText("Wzmianki (" + unreadMentions + ")");
+            statusLabel.setText(sender + " wspomina o Tobie " +
+                    (conversation.isEmpty() ? "na czacie ogólnym" : "w " + conversation));
+        });
+    }
+
+    private void showMessageList(String title, String emptyText, List<Message> messages) {
+        SwingUtilities.invokeLater(() -> {
+            statusLabel.setText("Połączono");
+
+            JTextArea resultsArea = new JTextArea(15, 50);
+            resultsArea.setEditable(false);
+            resultsArea.setLineWrap(true);
+            resultsArea.setWrapStyleWord(true);
+
+            if (messages.isEmpty()) {
+                resultsArea.append(emptyText + "\n");
+            }
+
+            for (Message message : messages) {
+                String time = message.getTimestamp().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+                String conversation = message.isPrivate() ?
+                        message.getSender().getUsername() + " -> " + message.getReceiver().getUsername() :
+                        message.isRoomMessage() ?
+                                message.getSender().getUsername() + " @ #" + message.getRoomName() :
+                                message.getSender().getUsername();
+
+                resultsArea.append(String.format("[%s] %s: %s\n", time, conversation, message.getContent()));
+            }
+            resultsArea.setCaretPosition(0);
+
+            JOptionPane.showMessageDialog(this, new JScrollPane(resultsArea), title, JOptionPane.PLAIN_MESSAGE);
+        });
+    }
+
     private void handleLogout(ActionEvent e) {
         isLoggingOut = true;
         client.logout();
@@ -230,64 +857,270 @@ public class ChatFrame extends JFrame {
         }
 
         currentChatPartner = username;
+        currentRoom = null;
+        oldestDisplayedId = Integer.MAX_VALUE;
         setTitle("Chat App - " + client.getUser().getUsername() + " (Rozmowa z: " + username + ")");
 
-        chatArea.setText("");
-        chatArea.append("Rozpoczęto prywatną konwersację z użytkownikiem: " + username + "\n");
+        addRecentContact(username);
+        refreshRoster();
 
-        client.requestPrivateMessageHistory(username);
+        // Rozmowa z pamięci podręcznej od razu; serwer jest pytany tylko o niezaładowaną historię
+        viewHeader = "Rozpoczęto prywatną konwersację z użytkownikiem: " + username + "\n";
+        renderConversation(username);
+
+        if (!conversationCache.isLoaded(username)) {
+            requestHistory(username);
+        }
+        schedulePrefetch();
+    }
+
+    private void handleJoinRoom() {
+        String roomName = JOptionPane.showInputDialog(this, "Nazwa pokoju:", "Dołącz do pokoju",
+                JOptionPane.QUESTION_MESSAGE);
+
+        if (roomName != null && !roomName.trim().isEmpty()) {
+            openRoom(roomName.trim());
+        }
+    }
+
+    private void handleLeaveRoom() {
+        String roomName = currentRoom != null ? currentRoom : roomList.getSelectedValue();
+        if (roomName == null) {
+            return;
+        }
+
+        client.leaveRoom(roomName);
+        // Po ponownym dołączeniu historia musi przyjść od nowa - bez wiadomości z czasu nieobecności
+        conversationCache.remove(Config.ROOM_KEY_PREFIX + roomName);
+        localStore.forgetAsync(Config.ROOM_KEY_PREFIX + roomName);
+        pendingHistoryRequests.remove(Config.ROOM_KEY_PREFIX + roomName);
+        if (roomName.equals(currentRoom)) {
+            returnToPublicChat();
+        }
+    }
+
+    // Otwarcie pokoju to dołączenie do niego - serwer odsyła historię pokoju. Pokój, do którego
+    // już należymy i którego historia jest w pamięci, otwiera się bez zapytania serwera.
+    private void openRoom(String roomName) {
+        currentRoom = roomName;
+        currentChatPartner = null;
+        oldestDisplayedId = Integer.MAX_VALUE;
+        setTitle("Chat App - " + client.getUser().getUsername() + " (Pokój: #" + roomName + ")");
+
+        String key = Config.ROOM_KEY_PREFIX + roomName;
+        viewHeader = "Pokój #" + roomName + "\n";
+        renderConversation(key);
+
+        if (!roomListModel.contains(roomName)) {
+            pendingHistoryRequests.put(key, System.currentTimeMillis());
+            client.joinRoom(roomName);
+        } else if (!conversationCache.isLoaded(key)) {
+            requestHistory(key);
+        }
+        schedulePrefetch();
+    }
+
+    // Zwraca false, jeśli historia jest już w drodze (np. pobierana w tle) - jej części i tak trafią do widoku
+    private boolean requestHistory(String key) {
+        Long requestedAt = pendingHistoryRequests.get(key);
+        long now = System.currentTimeMillis();
+
+        if (requestedAt != null && now - requestedAt < Config.CLIENT_HISTORY_REQUEST_TIMEOUT_MS) {
+            return false;
+        }
+
+        pendingHistoryRequests.put(key, now);
+        if (key.startsWith(Config.ROOM_KEY_PREFIX)) {
+            client.joinRoom(key.substring(Config.ROOM_KEY_PREFIX.length()));
+        } else {
+            client.requestPrivateMessageHistory(key);
+        }
+        return true;
+    }
+
+    // Ostatnie rozmowy bez załadowanej historii trafiają do kolejki pobierania w tle
+    private void schedulePrefetch() {
+        for (String key : conversationCache.getRecentKeys(Config.CLIENT_PREFETCH_CONVERSATIONS + 1)) {
+            enqueuePrefetch(key);
+        }
+    }
+
+    private void enqueuePrefetch(String key) {
+        if (!conversationCache.isLoaded(key) && !prefetchQueue.contains(key)) {
+            prefetchQueue.add(key);
+        }
+    }
+
+    private void prefetchNext() {
+        String key;
+        while ((key = prefetchQueue.poll()) != null) {
+            if (conversationCache.isLoaded(key) || key.equals(currentViewKey())) {
+                continue;
+            }
+            // Pobranie historii pokoju to dołączenie - tylko dla pokojów, do których już należymy
+            if (key.startsWith(Config.ROOM_KEY_PREFIX) &&
+                    !roomListModel.contains(key.substring(Config.ROOM_KEY_PREFIX.length()))) {
+                continue;
+            }
+
+            if (requestHistory(key)) {
+                return;
+            }
+        }
+    }
+
+    // Widok rozmowy prywatnej lub pokoju odtworzony z pamięci podręcznej
+    private void renderConversation(String key) {
+        StringBuilder text = new StringBuilder(viewHeader);
+        oldestDisplayedId = Integer.MAX_VALUE;
+
+        for (Message message : conversationCache.getMessages(key)) {
+            text.append(formatMessage(message));
+            trackOldestDisplayed(message);
+        }
+
+        chatArea.setText(text.toString());
+        scrollToBottom();
+    }
+
+    // Klucz bieżącej rozmowy jak w paczkach historii: "" dla czatu ogólnego, #<pokój> lub nazwa rozmówcy
+    private String currentViewKey() {
+        if (currentRoom != null) {
+            return Config.ROOM_KEY_PREFIX + currentRoom;
+        }
+        return currentChatPartner != null ? currentChatPartner : "";
+    }
+
+    private void handleThrottled(String operation, long retryAfterMs) {
+        SwingUtilities.invokeLater(() -> {
+            forgetRejectedHistoryRequests(operation);
+            resendOutboxLater(operation, retryAfterMs);
+            long seconds = Math.max(1, (retryAfterMs + 999) / 1000);
+            statusLabel.setText("Zbyt wiele żądań - spróbuj ponownie za " + seconds + " s");
+        });
+    }
+
+    private void handleServerOverloaded(String operation, long retryAfterMs) {
+        SwingUtilities.invokeLater(() -> {
+            forgetRejectedHistoryRequests(operation);
+            long seconds = Math.max(1, (retryAfterMs + 999) / 1000);
+            statusLabel.setText("Serwer przeciążony - historia niedostępna, spróbuj ponownie za " + seconds + " s");
+        });
+    }
+
+    // Odrzucona wiadomość czeka w kolejce nadawczej - po czasie z ramki wysyłana jest cała kolejka
+    private void resendOutboxLater(String operation, long retryAfterMs) {
+        if (!"PUBLIC_MESSAGE".equals(operation) && !"PRIVATE_MESSAGE".equals(operation)) {
+            return;
+        }
+
+        Timer timer = new Timer((int) retryAfterMs, e -> client.flushOutbox());
+        timer.setRepeats(false);
+        timer.start();
+    }
+
+    // Nie wiadomo, które żądanie odrzucono - wszystkie można ponowić (powtórzone części historii
+    // scalają się w pamięci podręcznej bez duplikatów)
+    private void forgetRejectedHistoryRequests(String operation) {
+        if ("HISTORY".equals(operation)) {
+            pendingHistoryRequests.clear();
+        }
     }
 
     private void handleConnectionStatusChanged(boolean connected) {
         SwingUtilities.invokeLater(() -> {
             if (connected) {
                 statusLabel.setText("Połączono");
-                messageField.setEnabled(true);
-                sendButton.setEnabled(true);
-                logoutButton.setEnabled(true);
-            } else {
-                statusLabel.setText("Rozłączono");
-                messageField.setEnabled(false);
-                sendButton.setEnabled(false);
-                logoutButton.setEnabled(false);
-
-                if (!isLoggingOut) {
-                    showConnectionLostDialog();
-                }
+            } else if (!isLoggingOut) {
+                // Pisanie jest nadal możliwe - wiadomości czekają w kolejce nadawczej
+                statusLabel.setText("Rozłączono - ponowne łączenie...");
+                startReconnecting();
             }
         });
     }
 
-    private void showConnectionLostDialog() {
-        JOptionPane.showMessageDialog(
-                this,
-                "Utracono połączenie z serwerem.",
-                "Rozłączono",
-                JOptionPane.ERROR_MESSAGE
-        );
+    private void startReconnecting() {
+        if (!reconnecting) {
+            reconnecting = true;
+            scheduleReconnect(Config.CLIENT_RECONNECT_INITIAL_DELAY_MS);
+        }
+    }
 
-        dispose();
-        new LoginFrame().setVisible(true);
+    private void scheduleReconnect(int delayMs) {
+        Timer timer = new Timer(delayMs, e -> attemptReconnect(delayMs));
+        timer.setRepeats(false);
+        timer.start();
     }
 
-    private void updateUserList(List<String> users) {
+    // Połączenie i logowanie w tle; serwer dosyła wiadomości nowsze niż najnowsza zapisana lokalnie,
+    // a klient po zalogowaniu wysyła kolejkę nadawczą jedną ramką. Nieudana próba podwaja odstęp.
+    private void attemptReconnect(int delayMs) {
+        if (isLoggingOut) {
+            return;
+        }
+
+        statusLabel.setText("Ponowne łączenie...");
+
+        Thread reconnector = new Thread(() -> {
+            boolean success = client.connect(client.getServerHost(), client.getServerPort()) &&
+                    client.reauthenticate(localStore.getHighWaterMark());
+
+            SwingUtilities.invokeLater(() -> {
+                if (success) {
+                    reconnected();
+                } else {
+                    int nextDelayMs = Math.min(delayMs * 2, Config.CLIENT_RECONNECT_MAX_DELAY_MS);
+                    statusLabel.setText("Rozłączono - ponowna próba za " + nextDelayMs / 1000 + " s");
+                    scheduleReconnect(nextDelayMs);
+                }
+            });
+        }, "Reconnect");
+
+        reconnector.setDaemon(true);
+        reconnector.start();
+    }
+
+    private void reconnected() {
+        reconnecting = false;
+
+        // Okno zamknięto w trakcie próby
+        if (isLoggingOut) {
+            client.logout();
+            return;
+        }
+
+        // Wiadomości z synchronizacji są nowsze niż wszystko, co jest już wyświetlone - trafiają na koniec
+        publicHistoryInsertIndex = publicMessageHistory.size();
+        if (currentViewKey().isEmpty()) {
+            historyInsertOffset = chatArea.getDocument().getLength();
+        }
+        pendingHistoryRequests.clear();
+
+        client.startReceiving();
+        statusLabel.setText("Połączono");
+        Logger.info("Ponownie połączono z serwerem");
+    }
+
+    private void updateUserList(List<String> online) {
+        Logger.debug("Zaktualizowano listę użytkowników: " + online.size() + " zalogowanych");
+
         SwingUtilities.invokeLater(() -> {
+            onlineUsers = online;
+            refreshRoster();
             statusLabel.setText("Połączono");
-            userListModel.clear();
+        });
+    }
 
-            if (users != null && !users.isEmpty()) {
-                users.forEach(userListModel::addElement);
-                Logger.debug("Zaktualizowano listę użytkowników: " + users.size() + " użytkowników");
-            } else {
-                Logger.warn("Otrzymano pustą listę użytkowników!");
-            }
+    private void updateRoomList(List<String> rooms) {
+        SwingUtilities.invokeLater(() -> {
+            roomListModel.clear();
+            rooms.forEach(roomListModel::addElement);
         });
     }
 
     private void handleMessageReceived(Message message) {
-        // Sprawdź czy to wiadomość publiczna i zapisz ją w historii
-        if (message.getSender() != null && !message.isPrivate()) {
-            publicMessageHistory.add(message);
+        if (message.getSender() != null) {
+            localStore.saveAsync(List.of(message));
         }
 
         // Wyświetl wiadomość w UI
@@ -297,6 +1130,7 @@ public class ChatFrame extends JFrame {
     private void displayPublicMessageHistory() {
         if (publicMessageHistory.isEmpty()) {
             chatArea.append("Nie znaleziono historii wiadomości dla czatu głównego.\n");
+            historyInsertOffset = chatArea.getDocument().getLength();
             return;
         }
 
@@ -304,14 +1138,13 @@ public class ChatFrame extends JFrame {
 
         for (Message message : publicMessageHistory) {
             if (message.getSender() != null) {
-                String time = message.getTimestamp().format(timeFormatter);
-                String sender = message.getSender().getUsername();
-                String content = message.getContent();
-
-                chatArea.append(String.format("[%s] %s: %s\n", time, sender, content));
+                chatArea.append(formatMessage(message));
+                trackOldestDisplayed(message);
             }
         }
 
+        // Części historii, które jeszcze nie dotarły, trafią przed znacznik końca
+        historyInsertOffset = chatArea.getDocument().getLength();
         chatArea.append("--- Koniec historii ---\n\n");
 
         // Przewiń na dół
@@ -327,6 +1160,8 @@ public class ChatFrame extends JFrame {
                 return;
             }
 
+            recordLiveMessage(message);
+
             // Sprawdź, czy wiadomość ma być wyświetlona w bieżącym widoku czatu
             if (shouldDisplayMessageInCurrentView(message)) {
                 formatAndDisplayMessage(message);
@@ -334,15 +1169,41 @@ public class ChatFrame extends JFrame {
         });
     }
 
+    // Wiadomości publiczne trafiają do historii czatu ogólnego, pozostałe utrzymują pamięć podręczną
+    // aktualną; rozmowa bez historii jest pobierana w tle - skoro ktoś pisze, pewnie zaraz zostanie otwarta
+    private void recordLiveMessage(Message message) {
+        String key = ConversationCache.keyOf(message, client.getUser().getUsername());
+        if (key.isEmpty()) {
+            publicMessageHistory.add(message);
+            return;
+        }
+
+        conversationCache.add(key, message);
+        if (!conversationCache.isLoaded(key)) {
+            enqueuePrefetch(key);
+        }
+
+        // Niezalogowany rozmówca pojawia się na liście jako ostatni kontakt
+        if (message.isPrivate()) {
+            addRecentContact(key);
+            if (!onlineUsers.contains(key)) {
+                refreshRoster();
+            }
+        }
+    }
+
     private boolean shouldDisplayMessageInCurrentView(Message message) {
         boolean isPrivateMessage = message.isPrivate();
         String senderUsername = message.getSender().getUsername();
         String receiverUsername = isPrivateMessage && message.getReceiver() != null ?
                 message.getReceiver().getUsername() : null;
 
-        if (currentChatPartner == null) {
+        if (currentRoom != null) {
+            // Jesteśmy w pokoju - pokazuj tylko jego wiadomości
+            return message.isRoomMessage() && currentRoom.equals(message.getRoomName());
+        } else if (currentChatPartner == null) {
             // Jesteśmy w czacie grupowym - pokazuj tylko wiadomości publiczne
-            return !isPrivateMessage;
+            return !isPrivateMessage && !message.isRoomMessage();
         } else {
             // Jesteśmy w czacie prywatnym - pokazuj tylko wiadomości z/do bieżącego partnera
             return isPrivateMessage &&
@@ -352,14 +1213,32 @@ public class ChatFrame extends JFrame {
     }
 
     private void formatAndDisplayMessage(Message message) {
+        chatArea.append(formatMessage(message));
+        trackOldestDisplayed(message);
+
+        // Przewijanie do nowej wiadomości
+        scrollToBottom();
+    }
+
+    private String formatMessage(Message message) {
         String time = message.getTimestamp().format(timeFormatter);
         String sender = message.getSender().getUsername();
         String content = message.getContent();
 
-        chatArea.append(String.format("[%s] %s: %s\n", time, sender, content));
+        Attachment attachment = Attachment.parse(content);
+        if (attachment != null) {
+            String shortHash = attachment.getSha256().substring(0, 8);
+            displayedAttachments.put(shortHash, attachment);
+            content = "[plik] " + attachment + " #" + shortHash;
+        }
+
+        return String.format("[%s] %s: %s\n", time, sender, content);
+    }
 
-        // Przewijanie do nowej wiadomości
-        scrollToBottom();
+    private void trackOldestDisplayed(Message message) {
+        if (message.getId() > 0) {
+            oldestDisplayedId = Math.min(oldestDisplayedId, message.getId());
+        }
     }
 
     private void scrollToBottom() {
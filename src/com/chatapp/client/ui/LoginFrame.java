@@ -1,6 +1,10 @@
 package com.chatapp.client.ui;
 
+import com.chatapp.client.cache.LocalMessageStore;
+import com.chatapp.client.cache.Outbox;
 import com.chatapp.client.network.ChatClient;
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.AuthRequest;
 import com.chatapp.util.Logger;
 
 import javax.swing.*;
@@ -159,12 +163,26 @@ public class LoginFrame extends JFrame {
                 }
             }
 
+            // Ramka logowania podaje najnowszą wiadomość zapisaną lokalnie - serwer odsyła od razu
+            // listę użytkowników, pokoje i brakującą historię, bez osobnych żądań po zalogowaniu
+            LocalMessageStore localStore = new LocalMessageStore(username, client.getServerHost(), client.getServerPort());
+            AuthRequest request = new AuthRequest(username, password);
+            request.setSinceId(localStore.getHighWaterMark());
+            request.setHistoryLimit(Config.MESSAGE_HISTORY_LIMIT);
+
+            // Wiadomości niewysłane w poprzedniej sesji idą zaraz po zalogowaniu
+            client.setOutbox(new Outbox(localStore));
+
             // Próba logowania
-            boolean success = client.authenticate(username, password);
+            boolean success = client.authenticate(request);
+            if (!success) {
+                client.setOutbox(null);
+                localStore.close();
+            }
 
             SwingUtilities.invokeLater(() -> {
                 if (success) {
-                    openChatWindow();
+                    openChatWindow(localStore);
                 } else {
                     statusLabel.setText("Błąd autoryzacji");
                     loginButton.setEnabled(true);
@@ -179,12 +197,12 @@ public class LoginFrame extends JFrame {
         }).start();
     }
 
-    private void openChatWindow() {
+    private void openChatWindow(LocalMessageStore localStore) {
         // Ukrycie okna logowania
         setVisible(false);
 
         // Otwarcie okna czatu
-        ChatFrame chatFrame = new ChatFrame(client);
+        ChatFrame chatFrame = new ChatFrame(client, localStore);
         chatFrame.setVisible(true);
 
         // Zamknięcie okna logowania
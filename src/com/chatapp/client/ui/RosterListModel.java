@@ -0,0 +1,183 @@
+package com.chatapp.client.ui;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+
+// Model listy użytkowników dla dużych list: zalogowani na górze, potem pozostali, w obu grupach
+// alfabetycznie. Nowa lista jest sortowana poza wątkiem interfejsu, a JList dostaje najwyżej dwa
+// zdarzenia obejmujące tylko zmieniony fragment (wspólny początek i koniec list są pomijane),
+// zamiast zdarzenia na każdy element. Filtr to prefiks nazwy - zakres w posortowanej grupie
+// wyznaczany wyszukiwaniem binarnym, więc widok nie jest kopiowany przy każdym naciśnięciu klawisza.
+public class RosterListModel extends AbstractListModel<String> {
+
+    // Posortowana grupa użytkowników; klucze (małe litery) służą do porównań i wyszukiwania prefiksu
+    private static final class Section {
+        final String[] names;
+        final String[] keys;
+
+        Section(Collection<String> usernames) {
+            String[][] entries = new String[usernames.size()][];
+            int i = 0;
+            for (String username : usernames) {
+                entries[i++] = new String[]{username.toLowerCase(Locale.ROOT), username};
+            }
+
+            Arrays.sort(entries, (a, b) -> {
+                int byKey = a[0].compareTo(b[0]);
+                return byKey != 0 ? byKey : a[1].compareTo(b[1]);
+            });
+
+            names = new String[entries.length];
+            keys = new String[entries.length];
+            for (i = 0; i < entries.length; i++) {
+                keys[i] = entries[i][0];
+                names[i] = entries[i][1];
+            }
+        }
+
+        // Pierwszy indeks, którego klucz nie jest mniejszy niż key
+        int lowerBound(String key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final Section EMPTY = new Section(Collections.emptyList());
+
+    // Widok: fragmenty obu grup pasujące do filtra
+    private static final class View {
+        final Section online;
+        final Section offline;
+        final int onlineFrom;
+        final int onlineCount;
+        final int offlineFrom;
+        final int offlineCount;
+
+        View(Section online, Section offline, String filter) {
+            this.online = online;
+            this.offline = offline;
+
+            if (filter.isEmpty()) {
+                onlineFrom = 0;
+                onlineCount = online.names.length;
+                offlineFrom = 0;
+                offlineCount = offline.names.length;
+            } else {
+                // Wszystkie klucze zaczynające się od prefiksu leżą w [prefiks, prefiks + '\uffff')
+                String key = filter.toLowerCase(Locale.ROOT);
+                String end = key + '\uffff';
+                onlineFrom = online.lowerBound(key);
+                onlineCount = online.lowerBound(end) - onlineFrom;
+                offlineFrom = offline.lowerBound(key);
+                offlineCount = offline.lowerBound(end) - offlineFrom;
+            }
+        }
+
+        int size() {
+            return onlineCount + offlineCount;
+        }
+
+        String get(int index) {
+            return index < onlineCount ? online.names[onlineFrom + index] :
+                    offline.names[offlineFrom + index - onlineCount];
+        }
+
+        boolean same(int index, View other, int otherIndex) {
+            return (index < onlineCount) == (otherIndex < other.onlineCount) && get(index).equals(other.get(otherIndex));
+        }
+    }
+
+    private Section online = EMPTY;
+    private Section offline = EMPTY;
+    private String filter = "";
+    private View view = new View(EMPTY, EMPTY, "");
+
+    // Może być wywoływane z dowolnego wątku - sortowanie odbywa się w wątku wywołującym,
+    // a podmiana modelu w wątku interfejsu
+    public void update(Collection<String> onlineUsernames, Collection<String> offlineUsernames) {
+        Section sortedOnline = new Section(onlineUsernames);
+        Section sortedOffline = new Section(offlineUsernames);
+
+        SwingUtilities.invokeLater(() -> {
+            online = sortedOnline;
+            offline = sortedOffline;
+            apply();
+        });
+    }
+
+    public void setFilter(String prefix) {
+        String normalized = prefix == null ? "" : prefix.trim();
+        if (!normalized.equals(filter)) {
+            filter = normalized;
+            apply();
+        }
+    }
+
+    private void apply() {
+        View previous = view;
+        View next = new View(online, offline, filter);
+        view = next;
+
+        int oldSize = previous.size();
+        int newSize = next.size();
+        int common = Math.min(oldSize, newSize);
+
+        int prefix = 0;
+        while (prefix < common && previous.same(prefix, next, prefix)) {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < common - prefix && previous.same(oldSize - 1 - suffix, next, newSize - 1 - suffix)) {
+            suffix++;
+        }
+
+        int oldChanged = oldSize - prefix - suffix;
+        int newChanged = newSize - prefix - suffix;
+        int overlap = Math.min(oldChanged, newChanged);
+
+        if (overlap > 0) {
+            fireContentsChanged(this, prefix, prefix + overlap - 1);
+        }
+        if (newChanged > oldChanged) {
+            fireIntervalAdded(this, prefix + overlap, prefix + newChanged - 1);
+        } else if (oldChanged > newChanged) {
+            fireIntervalRemoved(this, prefix + overlap, prefix + oldChanged - 1);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return view.size();
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return view.get(index);
+    }
+
+    // Dla indeksu spoza listy (np. prototyp komórki) - false
+    public boolean isOnline(int index) {
+        return index >= 0 && index < view.onlineCount;
+    }
+
+    public int getOnlineCount() {
+        return online.names.length;
+    }
+
+    public int getTotalCount() {
+        return online.names.length + offline.names.length;
+    }
+}
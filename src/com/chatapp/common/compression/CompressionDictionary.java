@@ -0,0 +1,96 @@
+package com.chatapp.common.compression;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.MessageBatch;
+import com.chatapp.common.model.User;
+import com.chatapp.common.model.UserPage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Adler32;
+
+// Wspólny słownik kompresji: serializowane przykładowe ramki (opisy klas Message, User, MessageBatch,
+// UserPage, LocalDateTime, nazwy pól i typów) i częste napisy protokołu. Każda ramka to osobny strumień
+// serializacji z pełnymi opisami klas - bez słownika pierwsza ramka połączenia kompresuje się słabo.
+// Słownik jest budowany z klas protokołu, więc klient i serwer z tej samej wersji mają go identycznego;
+// identyfikator (Adler-32, jak w formacie zlib) jest porównywany przy logowaniu.
+public final class CompressionDictionary {
+    private static final byte[] BYTES = build();
+    private static final long ID = checksum(BYTES);
+
+    private CompressionDictionary() {
+    }
+
+    public static byte[] bytes() {
+        return BYTES;
+    }
+
+    public static long id() {
+        return ID;
+    }
+
+    private static byte[] build() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 1, 1, 12, 0);
+        User user = new User(1, "user");
+        User admin = new User(2, "admin");
+
+        Message publicMessage = new Message(user, "Cześć wszystkim");
+        publicMessage.setId(1);
+        publicMessage.setTimestamp(timestamp);
+
+        Message privateMessage = new Message(admin, user, "Wiadomość prywatna");
+        privateMessage.setId(2);
+        privateMessage.setTimestamp(timestamp);
+
+        Message roomMessage = new Message(user, "Wiadomość w pokoju");
+        roomMessage.setId(3);
+        roomMessage.setTimestamp(timestamp);
+        roomMessage.setRoomName("pokoj");
+        roomMessage.setRoomId(1);
+
+        List<Message> messages = new ArrayList<>();
+        messages.add(publicMessage);
+        messages.add(privateMessage);
+        messages.add(roomMessage);
+
+        List<String> usernames = new ArrayList<>();
+        usernames.add("admin");
+        usernames.add("user");
+
+        Message userList = new Message(null, Config.USER_LIST_PREFIX + "admin,user");
+        userList.setTimestamp(timestamp);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            // Najczęstsze ramki na końcu - deflate najtaniej odwołuje się do bliskich fragmentów
+            bytes.write((Config.ROOM_LIST_PREFIX + Config.SYNC_TRUNCATED_KEY + Config.ROOM_KEY_PREFIX)
+                    .getBytes(StandardCharsets.UTF_8));
+            bytes.write(serialize(new UserPage("a", usernames, null)));
+            bytes.write(serialize(userList));
+            bytes.write(serialize(new MessageBatch(MessageBatch.Type.HISTORY, "", messages)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Nie można zbudować słownika kompresji", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] serialize(Object frame) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(frame);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long checksum(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return adler.getValue();
+    }
+}
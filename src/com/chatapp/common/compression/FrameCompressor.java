@@ -0,0 +1,59 @@
+package com.chatapp.common.compression;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.CompressedFrame;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.MessageBatch;
+import com.chatapp.common.model.UserPage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+// Kompresja ramek jednego połączenia. Kontekst deflate jest ciągły (SYNC_FLUSH po każdej ramce),
+// więc powtarzające się opisy klas i nazwy użytkowników z wcześniejszych ramek też są wykorzystywane.
+// Ramki muszą być kompresowane w kolejności wysyłki - wywołujący trzyma blokadę zapisu połączenia.
+// Kompresowane są tylko ramki, które bywają duże (historia, wyniki, listy); małe ramki na żywo idą bez zmian.
+public class FrameCompressor {
+    private final Deflater deflater = new Deflater(Config.COMPRESSION_LEVEL);
+    private final byte[] buffer = new byte[Config.OUTPUT_BUFFER_SIZE];
+
+    public FrameCompressor() {
+        deflater.setDictionary(CompressionDictionary.bytes());
+    }
+
+    public static boolean isCandidate(Object frame) {
+        if (frame instanceof MessageBatch || frame instanceof UserPage) {
+            return true;
+        }
+        if (frame instanceof Message) {
+            String content = ((Message) frame).getContent();
+            return ((Message) frame).getSender() == null && content != null &&
+                    (content.startsWith(Config.USER_LIST_PREFIX) || content.startsWith(Config.ROOM_LIST_PREFIX));
+        }
+        return false;
+    }
+
+    // Ramka skompresowana albo ta sama ramka, jeśli po serializacji jest mniejsza niż próg
+    public Object compress(Object frame) throws IOException {
+        byte[] serialized = CompressionDictionary.serialize(frame);
+        if (serialized.length < Config.COMPRESSION_THRESHOLD_BYTES) {
+            return frame;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(serialized.length / 2);
+        deflater.setInput(serialized);
+
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            compressed.write(buffer, 0, count);
+        } while (count == buffer.length || !deflater.needsInput());
+
+        return new CompressedFrame(compressed.toByteArray(), serialized.length);
+    }
+
+    public void close() {
+        deflater.end();
+    }
+}
@@ -0,0 +1,55 @@
+package com.chatapp.common.compression;
+
+import com.chatapp.common.model.CompressedFrame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Rozpakowanie ramek jednego połączenia (odpowiednik FrameCompressor; ramki w kolejności odbioru)
+public class FrameDecompressor {
+    private final Inflater inflater = new Inflater();
+
+    public Object decompress(CompressedFrame frame) throws IOException, ClassNotFoundException {
+        // Bajt zapasu: po danych ramki w strumieniu jest jeszcze znacznik SYNC_FLUSH, który inflater
+        // musi przeczytać, zanim dostanie kolejną ramkę - potrzebuje do tego wolnego miejsca w buforze
+        byte[] serialized = new byte[frame.getOriginalLength() + 1];
+        int length = 0;
+        inflater.setInput(frame.getData());
+
+        try {
+            while (!inflater.needsInput()) {
+                int count = inflater.inflate(serialized, length, serialized.length - length);
+
+                if (count == 0 && inflater.needsDictionary()) {
+                    // Słownik innej wersji protokołu - serwer nie powinien był włączyć kompresji.
+                    // getAdler() zwraca sumę jako int ze znakiem, identyfikator słownika jest bez znaku.
+                    long dictionaryId = inflater.getAdler() & 0xFFFFFFFFL;
+                    if (dictionaryId != CompressionDictionary.id()) {
+                        throw new IOException("Nieznany słownik kompresji: " + dictionaryId);
+                    }
+                    inflater.setDictionary(CompressionDictionary.bytes());
+                } else if (count == 0 && (inflater.finished() || length == serialized.length)) {
+                    break;
+                }
+                length += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Uszkodzona skompresowana ramka: " + e.getMessage());
+        }
+
+        if (length != frame.getOriginalLength()) {
+            throw new IOException("Nieprawidłowa długość skompresowanej ramki: " + length);
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(serialized, 0, length))) {
+            return input.readObject();
+        }
+    }
+
+    public void close() {
+        inflater.end();
+    }
+}
@@ -2,24 +2,269 @@ package com.chatapp.common.config;
 
 public class Config {
     // Ustawienia serwera
-    public static final int SERVER_PORT = 8888;
+    // Port można zmienić przy starcie (-Dchatapp.port=8889), np. dla drugiego węzła klastra na tym samym hoście
+    public static final int SERVER_PORT = Integer.getInteger("chatapp.port", 8888);
     public static final int MAX_CLIENTS = 50;
 
-    // Ustawienia bazy danych
-    public static final String DB_URL = "jdbc:h2:./chatdb;AUTO_SERVER=TRUE";
+    // Ustawienia nawiązywania połączenia (strumienie + logowanie) - poza wątkiem akceptującym
+    public static final int HANDSHAKE_TIMEOUT_MS = 10000;
+    public static final int HANDSHAKE_THREADS = 8;
+    public static final int HANDSHAKE_QUEUE_CAPACITY = 256;
+
+    // Ustawienia utrzymania połączenia: ping po HEARTBEAT_INTERVAL_MS ciszy od klienta,
+    // zamknięcie po IDLE_TIMEOUT_MS ciszy lub gdy zapis do klienta stoi dłużej niż WRITE_STALL_TIMEOUT_MS
+    public static final int HEARTBEAT_INTERVAL_MS = 15000;
+    public static final int IDLE_TIMEOUT_MS = 45000;
+    public static final int WRITE_STALL_TIMEOUT_MS = 20000;
+    public static final int TIMER_WHEEL_TICK_MS = 100;
+    public static final int TIMER_WHEEL_SLOTS = 512;
+
+    // Sklejanie zapisów do gniazd: przy częstych ramkach wysyłka najpóźniej po COALESCE_WINDOW_MS
+    // lub po zebraniu FLUSH_THRESHOLD_BYTES
+    public static final int OUTPUT_BUFFER_SIZE = 32 * 1024;
+    public static final int FLUSH_THRESHOLD_BYTES = 8 * 1024;
+    public static final int COALESCE_WINDOW_MS = 3;
+    // Wątki odmierzające okno sklejania - tylko przekazują opróżnienie do kolejki wyjściowej połączenia
+    public static final int FLUSH_THREADS = 1;
+    // Odczyt z gniazd (serwer i klient) przez bufor - ramka nie jest czytana po kilka bajtów
+    public static final int INPUT_BUFFER_SIZE = 16 * 1024;
+
+    // Kompresja dużych ramek (historia, listy użytkowników i pokojów, wyniki), uzgadniana przy logowaniu.
+    // Ramki mniejsze niż COMPRESSION_THRESHOLD_BYTES po serializacji (wiadomości na żywo) idą bez kompresji.
+    public static final boolean COMPRESSION_ENABLED =
+            Boolean.parseBoolean(System.getProperty("chatapp.compression", "true"));
+    public static final int COMPRESSION_LEVEL = 6;
+    public static final int COMPRESSION_THRESHOLD_BYTES = 512;
+
+    // Kolejki wyjściowe połączeń: pas LIVE przed pasem BULK, historia dzielona na paczki.
+    // Klient z więcej niż OUTBOUND_QUEUE_LIMIT ramkami w kolejce jest rozłączany.
+    // Za przebieg zapisu trwający dłużej niż OUTBOUND_BLOCKED_AFTER_MS pula dostaje wątek zastępczy.
+    public static final int OUTBOUND_THREADS = 8;
+    public static final int OUTBOUND_BLOCKED_AFTER_MS = 250;
+    public static final int OUTBOUND_BLOCKED_CHECK_MS = 100;
+    public static final int OUTBOUND_MAX_BLOCKED_WRITERS = 64;
+    public static final int OUTBOUND_QUEUE_LIMIT = 2000;
+    public static final int OUTBOUND_DRAIN_BATCH = 64;
+    public static final int HISTORY_CHUNK_SIZE = 25;
+
+    // Hasła: PBKDF2-HMAC-SHA256; koszt (liczba iteracji) można zmienić bez migracji - starsze skróty
+    // i hasła zapisane jawnie są przeliczane przy najbliższym logowaniu
+    public static final int PASSWORD_HASH_ITERATIONS = Integer.getInteger("chatapp.password.iterations", 120_000);
+    public static final int PASSWORD_SALT_BYTES = 16;
+    public static final int PASSWORD_HASH_BYTES = 32;
+    // Weryfikacja haseł w osobnej, ograniczonej puli - fala logowań nie zajmuje wątków połączeń
+    public static final int AUTH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int AUTH_QUEUE_CAPACITY = 128;
+
+    // Przetwarzanie wiadomości: każda rozmowa (czat ogólny, pokój, para użytkowników) ma własną kolejkę
+    // wykonywaną szeregowo, a kolejki dzielą CONVERSATION_THREADS wątków
+    public static final int CONVERSATION_THREADS = 8;
+    public static final int CONVERSATION_DRAIN_BATCH = 32;
+
+    // Strażnik przeciążenia: wartości, przy których dany sygnał daje presję 1.0 (najwyższy poziom degradacji)
+    public static final int GOVERNOR_INTERVAL_MS = 500;
+    public static final int GOVERNOR_QUEUED_FRAMES_LIMIT = 20000;
+    public static final int GOVERNOR_STORE_LATENCY_LIMIT_MS = 200;
+    public static final double GOVERNOR_HEAP_LIMIT = 0.9;
+    public static final int PRESENCE_COALESCE_MS = 2000;
+    public static final int GOVERNOR_LOGIN_DELAY_MS = 500;
+    public static final int GOVERNOR_RETRY_AFTER_MS = 5000;
+
+    // Limity częstotliwości na użytkownika (żetony na sekundę i maksymalna seria).
+    // Po RATE_LIMIT_MAX_VIOLATIONS kolejnych odrzuceniach połączenie jest zamykane.
+    public static final double RATE_PUBLIC_PER_SECOND = 5;
+    public static final int RATE_PUBLIC_BURST = 10;
+    public static final double RATE_PRIVATE_PER_SECOND = 5;
+    public static final int RATE_PRIVATE_BURST = 10;
+    public static final double RATE_HISTORY_PER_SECOND = 1;
+    public static final int RATE_HISTORY_BURST = 5;
+    public static final double RATE_USER_LIST_PER_SECOND = 0.5;
+    public static final int RATE_USER_LIST_BURST = 3;
+    // Fragmenty załączników (ATTACHMENT_CHUNK_SIZE) - ok. 10 MB/s na użytkownika; klient sam się do tego
+    // dostosowuje, a seria mieści pełne okna (ATTACHMENT_UPLOAD_WINDOW) wszystkich wysyłek połączenia
+    public static final double RATE_ATTACHMENT_CHUNK_PER_SECOND = 160;
+    public static final int RATE_ATTACHMENT_CHUNK_BURST = 32;
+    public static final int RATE_LIMIT_MAX_VIOLATIONS = 100;
+
+    // Ustawienia bazy danych. Węzły klastra na różnych maszynach wskazują wspólny serwer H2:
+    // -Dchatapp.db.url=jdbc:h2:tcp://db-host/./chatdb
+    public static final String DB_URL = System.getProperty("chatapp.db.url", "jdbc:h2:./chatdb;AUTO_SERVER=TRUE");
     public static final String DB_USER = "sa";
     public static final String DB_PASSWORD = "";
 
+    // Magazyn danych serwera: "h2" lub "memory" (bez zapisu na dysk, np. do testów obciążeniowych).
+    // Można zmienić przy starcie: -Dchatapp.storage=memory
+    public static final String STORAGE_TYPE = System.getProperty("chatapp.storage", "h2");
+
+    // Magazyn wiadomości: "h2" (tabela messages) lub "log" (dziennik mapowany do pamięci).
+    // Można zmienić przy starcie: -Dchatapp.messageStore=log. W klastrze dziennik nie jest używany - każdy
+    // węzeł nadawałby identyfikatory niezależnie.
+    public static final String MESSAGE_STORE = System.getProperty("chatapp.messageStore", "h2");
+    public static final String MESSAGE_LOG_DIR = "./message-log";
+    public static final int LOG_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int LOG_INDEX_INTERVAL = 32;
+    public static final int LOG_FLUSH_INTERVAL_MS = 1000;
+
+    // Ustawienia klastra (włączony, gdy podano listę węzłów):
+    // -Dchatapp.cluster.peers=host1:9888,host2:9888 -Dchatapp.cluster.port=9888 -Dchatapp.nodeId=node-1
+    // Węzły powinny korzystać ze wspólnej bazy danych, aby historia i identyfikatory wiadomości były spójne.
+    // Katalogi zapisywane przez jeden proces (indeks wyszukiwania) są w klastrze osobne dla każdego węzła.
+    public static final String CLUSTER_PEERS = System.getProperty("chatapp.cluster.peers", "");
+    public static final boolean CLUSTER_ENABLED = !CLUSTER_PEERS.isEmpty();
+    public static final int CLUSTER_PORT = Integer.getInteger("chatapp.cluster.port", 9888);
+    // Adres interfejsu sieci klastra, na którym nasłuchuje port klastra (pusty - wszystkie interfejsy).
+    // Niezależnie od tego połączenia przychodzące są przyjmowane tylko z adresów węzłów z listy peers.
+    public static final String CLUSTER_BIND_ADDRESS = System.getProperty("chatapp.cluster.bind", "");
+    public static final String CLUSTER_NODE_ID = System.getProperty("chatapp.nodeId",
+            "node-" + ProcessHandle.current().pid());
+    public static final int CLUSTER_QUEUE_CAPACITY = 100000;
+    public static final int CLUSTER_BATCH_MAX = 512;
+    public static final int CLUSTER_PRESENCE_INTERVAL_MS = 10000;
+
     // Ustawienia połączenia klienta
     public static final String SERVER_ADDRESS = "localhost";
 
+    // TLS między klientem a serwerem (-Dchatapp.tls=true po obu stronach). Serwer potrzebuje magazynu
+    // kluczy PKCS12, klient - magazynu zaufanych certyfikatów (pusty: domyślne certyfikaty JDK).
+    // Uzgadnianie TLS odbywa się w puli handshake, w limicie HANDSHAKE_TIMEOUT_MS.
+    public static final boolean TLS_ENABLED = Boolean.parseBoolean(System.getProperty("chatapp.tls", "false"));
+    public static final String TLS_KEYSTORE = System.getProperty("chatapp.tls.keystore", "");
+    public static final String TLS_KEYSTORE_PASSWORD = System.getProperty("chatapp.tls.keystorePassword", "");
+    public static final String TLS_TRUSTSTORE = System.getProperty("chatapp.tls.truststore", "");
+    public static final String TLS_TRUSTSTORE_PASSWORD = System.getProperty("chatapp.tls.truststorePassword", "");
+    public static final String[] TLS_PROTOCOLS = {"TLSv1.3", "TLSv1.2"};
+    // Pamięć sesji do wznawiania (po obu stronach)
+    public static final int TLS_SESSION_CACHE_SIZE = 1000;
+    public static final int TLS_SESSION_TIMEOUT_S = 24 * 60 * 60;
+
+    // Załączniki: pliki na dysku serwera poza bazą, adresowane sumą SHA-256 (ten sam plik jest zapisany raz).
+    // Wysyłanie w ramkach FileChunk przez połączenie czatu, z wznawianiem od zapisanego fragmentu;
+    // pobieranie przez osobny port (port serwera + ATTACHMENT_PORT_OFFSET) z jednorazowym biletem.
+    // Węzły klastra powinny korzystać ze wspólnego katalogu, jak ze wspólnej bazy.
+    public static final String ATTACHMENT_DIR = System.getProperty("chatapp.attachments", "./attachments");
+    public static final int ATTACHMENT_PORT_OFFSET = 1;
+    public static final long ATTACHMENT_MAX_BYTES = 100L * 1024 * 1024;
+    public static final int ATTACHMENT_CHUNK_SIZE = 64 * 1024;
+    // Niepotwierdzone fragmenty w drodze - klient czeka na potwierdzenia, zanim wyśle kolejne
+    public static final int ATTACHMENT_UPLOAD_WINDOW = 8;
+    public static final int ATTACHMENT_MAX_UPLOADS_PER_CONNECTION = 4;
+    public static final int ATTACHMENT_ACK_TIMEOUT_MS = 15000;
+    public static final int ATTACHMENT_TICKET_TTL_MS = 60000;
+    public static final int ATTACHMENT_DOWNLOAD_THREADS = 8;
+    // Kolejne próby bez postępu (przy działającym połączeniu), po których przesyłanie jest przerywane
+    public static final int ATTACHMENT_TRANSFER_ATTEMPTS = 3;
+    // Porzucone, niedokończone wysyłki (bez zapisu przez ATTACHMENT_PARTIAL_TTL_HOURS) są usuwane przy starcie
+    // serwera i co ATTACHMENT_CLEANUP_INTERVAL_MINUTES. Niedokończone wysyłki jednego użytkownika zajmują
+    // najwyżej ATTACHMENT_MAX_PARTIAL_BYTES_PER_USER (liczone według zadeklarowanych rozmiarów plików).
+    public static final int ATTACHMENT_PARTIAL_TTL_HOURS = 24;
+    public static final int ATTACHMENT_CLEANUP_INTERVAL_MINUTES = 60;
+    public static final long ATTACHMENT_MAX_PARTIAL_BYTES_PER_USER = 4 * ATTACHMENT_MAX_BYTES;
+
+    // Ustawienia pamięci podręcznej rozmów klienta
+    public static final long CLIENT_CACHE_MAX_BYTES = 4L * 1024 * 1024;
+    public static final int CLIENT_CACHE_MAX_MESSAGES = 1000;
+    // Ile ostatnich rozmów pobierać w tle i co ile (limit żądań historii to 1/s)
+    public static final int CLIENT_PREFETCH_CONVERSATIONS = 3;
+    public static final int CLIENT_PREFETCH_INTERVAL_MS = 1500;
+    // Po tym czasie niezrealizowane żądanie historii (np. odrzucone przez limit) można ponowić
+    public static final int CLIENT_HISTORY_REQUEST_TIMEOUT_MS = 10000;
+
+    // Lista użytkowników klienta: zalogowani, ostatni rozmówcy i wyniki wyszukiwania w katalogu
+    public static final int CLIENT_RECENT_CONTACTS = 50;
+    // Wyszukiwanie w katalogu rusza po przerwie w pisaniu (limit żądań jak dla historii)
+    public static final int CLIENT_USER_SEARCH_DELAY_MS = 400;
+
+    // Lokalny magazyn wiadomości klienta: <katalog>/<użytkownik>/<serwer>.mv.db
+    public static final String CLIENT_DATA_DIR = System.getProperty("chatapp.client.dir",
+            System.getProperty("user.home") + "/.chatapp");
+
+    // Synchronizacja klienta po zalogowaniu (wiadomości nowsze niż najnowsza zapisana u klienta).
+    // Gdy klient jest za daleko w tyle, dostaje zwykłą historię czatu ogólnego z kluczem SYNC_TRUNCATED_KEY.
+    public static final int SYNC_MAX_MESSAGES = 2000;
+    public static final int SYNC_SCAN_LIMIT = 50000;
+    public static final int SYNC_SCAN_BATCH = 1000;
+    public static final String SYNC_TRUNCATED_KEY = "TRUNCATED";
+
+    // Kolejka nadawcza klienta: wiadomość czeka w niej (i w lokalnym magazynie) do potwierdzenia przez
+    // serwer - kopii zwrotnej albo OUTBOX_ACK_PREFIX<klucz> dla wiadomości już wcześniej przyjętej.
+    // Klucz jest zapisywany razem z wiadomością (unikalny dla nadawcy); serwer trzyma dodatkowo
+    // IDEMPOTENCY_KEYS_CAPACITY ostatnich kluczy w pamięci jako szybką ścieżkę.
+    public static final String OUTBOX_ACK_PREFIX = "OUTBOX_ACK:";
+    public static final int IDEMPOTENCY_KEYS_CAPACITY = 100_000;
+    public static final int CLIENT_ID_MAX_LENGTH = 36;
+    // Ponowne łączenie po zerwaniu połączenia: odstęp podwajany do CLIENT_RECONNECT_MAX_DELAY_MS
+    public static final int CLIENT_RECONNECT_INITIAL_DELAY_MS = 1000;
+    public static final int CLIENT_RECONNECT_MAX_DELAY_MS = 30000;
+
     // Ustawienia wiadomości
     public static final int MESSAGE_HISTORY_LIMIT = 200;
+    public static final int HISTORY_PAGE_SIZE = 50;
+
+    // Ustawienia archiwizacji starych wiadomości (RETENTION_DAYS <= 0 wyłącza archiwizację).
+    // W klastrze archiwizuje tylko węzeł uruchomiony z -Dchatapp.retention=true; pozostałe węzły
+    // czytają archiwum (wspólny katalog: -Dchatapp.archive=<ścieżka>), ale do niego nie piszą.
+    public static final int RETENTION_DAYS = 365;
+    public static final int RETENTION_CHECK_INTERVAL_MINUTES = 60;
+    public static final int RETENTION_BATCH_SIZE = 500;
+    public static final int RETENTION_BATCH_PAUSE_MS = 200;
+    public static final boolean RETENTION_ENABLED = Boolean.parseBoolean(
+            System.getProperty("chatapp.retention", String.valueOf(!CLUSTER_ENABLED)));
+    public static final String ARCHIVE_DIR = System.getProperty("chatapp.archive", "./archive");
+
+    // Ustawienia podglądu bazy danych (panel administracyjny)
+    public static final int ADMIN_PAGE_SIZE = 100;
+    public static final int ADMIN_PAGE_CACHE_PAGES = 20;
+
+    // Ustawienia wyszukiwania wiadomości
+    public static final String SEARCH_INDEX_DIR = System.getProperty("chatapp.searchIndex",
+            CLUSTER_ENABLED ? "./search-index-" + CLUSTER_NODE_ID : "./search-index");
+    public static final int SEARCH_SEGMENT_MAX_DOCS = 10000;
+    public static final int SEARCH_MAX_SEGMENTS = 8;
+    public static final int SEARCH_MERGE_INTERVAL_SECONDS = 60;
+    public static final int SEARCH_RESULT_LIMIT = 50;
+    public static final int USER_SEARCH_PAGE_SIZE = 50;
+    // Strona listy wzmianek użytkownika (GET_MENTIONS)
+    public static final int MENTIONS_PAGE_SIZE = 50;
+
+    // Ustawienia pokojów
+    public static final int ROOM_NAME_MAX_LENGTH = 32;
+    // Klucz rozmowy w pokoju (paczki historii, żądania starszej historii): #<nazwa pokoju>
+    public static final String ROOM_KEY_PREFIX = "#";
 
     // Specjalne komendy
     public static final String CMD_GET_USER_LIST = "__GET_USERLIST__";
     public static final String CMD_GET_PRIVATE_HISTORY = "GET_PRIVATE_HISTORY:";
     public static final String CMD_REGISTER = "REGISTER";
+    public static final String CMD_SEARCH_MESSAGES = "SEARCH_MESSAGES:";
+    public static final String CMD_SEARCH_USERS = "SEARCH_USERS:";
+    // Oddziela prefiks od kursora strony w SEARCH_USERS (nazwy użytkowników nie zawierają nowej linii)
+    public static final String SEARCH_USERS_CURSOR_SEPARATOR = "\n";
+    public static final String CMD_GET_OLDER_HISTORY = "GET_OLDER_HISTORY:";
+    public static final String CMD_GET_HISTORY_SINCE = "GET_HISTORY_SINCE:";
+    public static final String CMD_PING = "__PING__";
+    public static final String CMD_PONG = "__PONG__";
+    public static final String CMD_JOIN_ROOM = "JOIN_ROOM:";
+    public static final String CMD_LEAVE_ROOM = "LEAVE_ROOM:";
+    // Wzmianki: GET_MENTIONS:<beforeId> -> paczka MENTIONS z wiadomościami o id < beforeId, w których
+    // wspomniano użytkownika. Powiadomienie na żywo: MENTION:<id wiadomości>:<#pokój lub pusty>:<nadawca>
+    public static final String CMD_GET_MENTIONS = "GET_MENTIONS:";
+    public static final String MENTION_PREFIX = "MENTION:";
+    // Załączniki: UPLOAD_BEGIN:<sha256>:<rozmiar> -> UPLOAD_OFFSET:<sha256>:<zapisane bajty> (także po każdym
+    // fragmencie; rozmiar pliku = plik zapisany i sprawdzony) albo UPLOAD_FAILED:<sha256>:<powód>.
+    // DOWNLOAD:<sha256> -> DOWNLOAD_TICKET:<sha256>:<port>:<bilet> (pusty bilet - brak pliku).
+    // Wiadomość z załącznikiem: ATTACHMENT:<sha256>:<rozmiar>:<nazwa pliku>
+    public static final String CMD_UPLOAD_BEGIN = "UPLOAD_BEGIN:";
+    public static final String UPLOAD_OFFSET_PREFIX = "UPLOAD_OFFSET:";
+    public static final String UPLOAD_FAILED_PREFIX = "UPLOAD_FAILED:";
+    public static final String CMD_DOWNLOAD = "DOWNLOAD:";
+    public static final String DOWNLOAD_TICKET_PREFIX = "DOWNLOAD_TICKET:";
+    public static final String ATTACHMENT_PREFIX = "ATTACHMENT:";
+    // Odpowiedź serwera na przekroczenie limitu: THROTTLED:<operacja>:<ms do ponowienia>
+    public static final String THROTTLED_PREFIX = "THROTTLED:";
+    // Odpowiedź serwera przeciążonego: OVERLOADED:<operacja>:<ms do ponowienia>
+    public static final String OVERLOADED_PREFIX = "OVERLOADED:";
 
     public static final String USER_LIST_PREFIX = "USER_LIST:";
+    // Pokoje, do których należy użytkownik: ROOM_LIST:<pokój>,<pokój>
+    public static final String ROOM_LIST_PREFIX = "ROOM_LIST:";
 }
\ No newline at end of file
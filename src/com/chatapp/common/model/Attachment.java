@@ -0,0 +1,105 @@
+package com.chatapp.common.model;
+
+import com.chatapp.common.config.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+// Odwołanie do załącznika w treści wiadomości: ATTACHMENT:<sha256>:<rozmiar>:<nazwa pliku>.
+// W bazie (i w historii, wyszukiwaniu, archiwum) zapisywane jest tylko to odwołanie - sam plik leży
+// w magazynie załączników serwera.
+public class Attachment {
+    private final String sha256;
+    private final long size;
+    private final String name;
+
+    public Attachment(String sha256, long size, String name) {
+        this.sha256 = sha256;
+        this.size = size;
+        this.name = name;
+    }
+
+    // Odwołanie z treści wiadomości lub null, jeśli to zwykła wiadomość
+    public static Attachment parse(String content) {
+        if (content == null || !content.startsWith(Config.ATTACHMENT_PREFIX)) {
+            return null;
+        }
+
+        String[] parts = content.substring(Config.ATTACHMENT_PREFIX.length()).split(":", 3);
+        if (parts.length < 3 || !isValidHash(parts[0])) {
+            return null;
+        }
+
+        try {
+            return new Attachment(parts[0], Long.parseLong(parts[1]), parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 64 cyfry szesnastkowe (małe litery) - hash jest też nazwą pliku w magazynie
+    public static boolean isValidHash(String sha256) {
+        if (sha256 == null || sha256.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < sha256.length(); i++) {
+            char c = sha256.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Suma SHA-256 pliku liczona strumieniowo (plik nie jest wczytywany w całości)
+    public static String hashOf(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[Config.ATTACHMENT_CHUNK_SIZE];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Brak algorytmu SHA-256", e);
+        }
+    }
+
+    public String toContent() {
+        return Config.ATTACHMENT_PREFIX + sha256 + ":" + size + ":" + name;
+    }
+
+    public static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    // Gettery
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + formatSize(size) + ")";
+    }
+}
@@ -0,0 +1,88 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+
+// Ramka logowania: dane uwierzytelniające i to, czego klient potrzebuje zaraz po zalogowaniu.
+// Serwer odpowiada na nią jednym strumieniem (użytkownik, lista użytkowników, pokoje, historia)
+// bez czekania na kolejne żądania - logowanie to jedna wymiana zamiast kilku.
+public class AuthRequest implements Serializable {
+
+    // Wartość sinceId oznaczająca, że klient nie chce historii przy logowaniu
+    public static final int NO_HISTORY = -1;
+
+    private String username;
+    private String password;
+    // Najnowsza wiadomość zapisana u klienta (0 - brak zapisanych, NO_HISTORY - bez historii)
+    private int sinceId = NO_HISTORY;
+    // Liczba wiadomości czatu ogólnego, gdy klient nie ma zapisanej historii lub jest za daleko w tyle
+    private int historyLimit;
+    private boolean rosterWanted = true;
+    // Identyfikator słownika kompresji obsługiwanego przez klienta (0 - bez kompresji)
+    private long compressionDictionaryId;
+
+    public AuthRequest() {
+    }
+
+    public AuthRequest(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    // Gettery i settery
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getSinceId() {
+        return sinceId;
+    }
+
+    public void setSinceId(int sinceId) {
+        this.sinceId = sinceId;
+    }
+
+    public int getHistoryLimit() {
+        return historyLimit;
+    }
+
+    public void setHistoryLimit(int historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
+    public boolean isRosterWanted() {
+        return rosterWanted;
+    }
+
+    public void setRosterWanted(boolean rosterWanted) {
+        this.rosterWanted = rosterWanted;
+    }
+
+    public long getCompressionDictionaryId() {
+        return compressionDictionaryId;
+    }
+
+    public void setCompressionDictionaryId(long compressionDictionaryId) {
+        this.compressionDictionaryId = compressionDictionaryId;
+    }
+
+    public boolean isHistoryWanted() {
+        return sinceId != NO_HISTORY;
+    }
+
+    @Override
+    public String toString() {
+        return "Logowanie " + username + " (historia od " + sinceId + ", lista użytkowników: " + rosterWanted + ")";
+    }
+}
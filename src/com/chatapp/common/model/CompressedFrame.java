@@ -0,0 +1,38 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+
+// Ramka skompresowana (Deflater ze wspólnym słownikiem, kontekst ciągły w obrębie połączenia):
+// serializowany obiekt ramki po kompresji. Wysyłana tylko do klientów, którzy zgłosili obsługę
+// kompresji przy logowaniu, i tylko dla dużych ramek (historia, listy użytkowników).
+public class CompressedFrame implements Serializable {
+
+    private byte[] data;
+    // Rozmiar ramki przed kompresją (bufor przy rozpakowaniu)
+    private int originalLength;
+
+    public CompressedFrame() {
+    }
+
+    public CompressedFrame(byte[] data, int originalLength) {
+        this.data = data;
+        this.originalLength = originalLength;
+    }
+
+    // Gettery i settery
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    public void setOriginalLength(int originalLength) {
+        this.originalLength = originalLength;
+    }
+}
@@ -0,0 +1,53 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+
+// Fragment wysyłanego załącznika (od klienta). Plik jest czytany i zapisywany po fragmencie,
+// więc żadna ze stron nie trzyma go w całości w pamięci.
+public class FileChunk implements Serializable {
+
+    // Suma SHA-256 całego pliku (szesnastkowo) - identyfikator załącznika
+    private String sha256;
+    // Położenie fragmentu w pliku; serwer przyjmuje tylko fragment zaczynający się na końcu zapisanej części
+    private long offset;
+    private byte[] data;
+
+    public FileChunk() {
+    }
+
+    public FileChunk(String sha256, long offset, byte[] data) {
+        this.sha256 = sha256;
+        this.offset = offset;
+        this.data = data;
+    }
+
+    // Gettery i settery
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        return "Fragment " + sha256 + " @" + offset + " (" + (data != null ? data.length : 0) + " B)";
+    }
+}
@@ -11,6 +11,13 @@ public class Message implements Serializable {
     private User receiver;
     private String content;
     private LocalDateTime timestamp;
+    // Pokój, do którego należy wiadomość (null = czat ogólny lub rozmowa prywatna).
+    // Klient podaje tylko nazwę, identyfikator uzupełnia serwer.
+    private String roomName;
+    private int roomId;
+    // Klucz idempotencji nadany przez klienta - ponownie wysłana wiadomość (z kolejki nadawczej
+    // po zerwaniu połączenia) jest rozpoznawana przez serwer i nie jest zapisywana drugi raz
+    private String clientId;
 
     public Message() {
         this.timestamp = LocalDateTime.now();
@@ -70,10 +77,38 @@ public class Message implements Serializable {
         this.timestamp = timestamp;
     }
 
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public void setRoomName(String roomName) {
+        this.roomName = roomName;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(int roomId) {
+        this.roomId = roomId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
     public boolean isPrivate() {
         return receiver != null;
     }
 
+    public boolean isRoomMessage() {
+        return roomName != null;
+    }
+
     public boolean isSystemMessage() {
         return sender == null;
     }
@@ -82,6 +117,8 @@ public class Message implements Serializable {
     public String toString() {
         if (isPrivate()) {
             return "[" + timestamp.toLocalTime() + "] " + sender.getUsername() + " -> " + receiver.getUsername() + ": " + content;
+        } else if (isRoomMessage()) {
+            return "[" + timestamp.toLocalTime() + "] " + sender.getUsername() + " @ #" + roomName + ": " + content;
         } else {
             return "[" + timestamp.toLocalTime() + "] " + (sender != null ? sender.getUsername() : "System") + ": " + content;
         }
@@ -0,0 +1,79 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// Paczka wiadomości wysyłana jedną ramką (np. wyniki wyszukiwania, starsza historia,
+// kolejne części historii rozmowy wysyłanej przy otwarciu rozmowy, synchronizacja po zalogowaniu)
+public class MessageBatch implements Serializable {
+
+    public enum Type {
+        SEARCH_RESULTS,
+        OLDER_HISTORY,
+        HISTORY,
+        // Wiadomości wszystkich rozmów nowsze niż najnowsza zapisana u klienta
+        SYNC,
+        // Od klienta: wiadomości z kolejki nadawczej wysyłane jedną ramką po ponownym połączeniu
+        OUTBOX,
+        // Wiadomości, w których wspomniano użytkownika (strona listy wzmianek)
+        MENTIONS
+    }
+
+    private Type type;
+    // Klucz paczki - dla wyników wyszukiwania jest to treść zapytania,
+    // dla historii nazwa rozmówcy (pusty napis oznacza czat ogólny),
+    // dla synchronizacji pusty napis lub Config.SYNC_TRUNCATED_KEY, dla wzmianek beforeId z żądania
+    private String key;
+    private List<Message> messages;
+    // Dla historii dzielonej na części: czy to ostatnia część
+    private boolean last = true;
+
+    public MessageBatch() {
+        this.messages = new ArrayList<>();
+    }
+
+    public MessageBatch(Type type, String key, List<Message> messages) {
+        this.type = type;
+        this.key = key;
+        this.messages = messages;
+    }
+
+    // Gettery i settery
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public void setLast(boolean last) {
+        this.last = last;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + key + "]: " + messages.size() + " wiadomości";
+    }
+}
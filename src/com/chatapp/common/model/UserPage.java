@@ -0,0 +1,59 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// Strona wyników wyszukiwania w katalogu użytkowników (wysyłana jedną ramką)
+public class UserPage implements Serializable {
+
+    // Prefiks nazwy, o który pytał klient
+    private String query;
+    private List<String> usernames;
+    // Kursor następnej strony; null oznacza ostatnią stronę
+    private String nextCursor;
+
+    public UserPage() {
+        this.usernames = new ArrayList<>();
+    }
+
+    public UserPage(String query, List<String> usernames, String nextCursor) {
+        this.query = query;
+        this.usernames = usernames;
+        this.nextCursor = nextCursor;
+    }
+
+    // Gettery i settery
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public List<String> getUsernames() {
+        return usernames;
+    }
+
+    public void setUsernames(List<String> usernames) {
+        this.usernames = usernames;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Użytkownicy [" + query + "]: " + usernames.size() + (hasMore() ? " (są kolejne)" : "");
+    }
+}
@@ -0,0 +1,107 @@
+package com.chatapp.common.security;
+
+import com.chatapp.common.config.Config;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+// Konteksty TLS serwera i klienta. Pamięć sesji obu stron (i bilety sesji TLS 1.3, domyślnie włączone
+// w JDK) pozwala wznowić sesję przy ponownym połączeniu bez pełnego uzgadniania kluczy - klient musi
+// w tym celu używać jednego kontekstu przez cały czas działania (clientContext()).
+public final class TlsContexts {
+    private static SSLContext clientContext;
+
+    private TlsContexts() {
+    }
+
+    public static SSLContext createServerContext(String keystorePath, char[] password) throws IOException {
+        try {
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(load(keystorePath, password), password);
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), null, null);
+            configureSessions(context.getServerSessionContext());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Nie można utworzyć kontekstu TLS serwera: " + e.getMessage(), e);
+        }
+    }
+
+    // Pusta ścieżka - domyślne zaufane certyfikaty JDK
+    public static SSLContext createClientContext(String truststorePath, char[] password) throws IOException {
+        try {
+            TrustManager[] trustManagers = null;
+            if (!truststorePath.isEmpty()) {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(load(truststorePath, password));
+                trustManagers = factory.getTrustManagers();
+            }
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trustManagers, null);
+            configureSessions(context.getClientSessionContext());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Nie można utworzyć kontekstu TLS klienta: " + e.getMessage(), e);
+        }
+    }
+
+    public static synchronized SSLContext clientContext() throws IOException {
+        if (clientContext == null) {
+            clientContext = createClientContext(Config.TLS_TRUSTSTORE, Config.TLS_TRUSTSTORE_PASSWORD.toCharArray());
+        }
+        return clientContext;
+    }
+
+    // Gniazdo klienta do serwera: zwykłe albo (przy TLS) z zakończonym uzgadnianiem. Wspólny kontekst
+    // klienta - ponowne połączenie wznawia sesję TLS z jego pamięci zamiast pełnego uzgadniania kluczy.
+    public static Socket openClientSocket(String host, int port) throws IOException {
+        if (!Config.TLS_ENABLED) {
+            return new Socket(host, port);
+        }
+
+        SSLSocket socket = (SSLSocket) clientContext().getSocketFactory().createSocket(host, port);
+        configureClient(socket);
+        socket.startHandshake();
+        return socket;
+    }
+
+    public static void configureServer(SSLServerSocket serverSocket) {
+        serverSocket.setEnabledProtocols(Config.TLS_PROTOCOLS);
+    }
+
+    // Weryfikacja nazwy hosta jak w HTTPS - certyfikat serwera musi zawierać adres, pod który łączy się klient
+    public static void configureClient(SSLSocket socket) {
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setProtocols(Config.TLS_PROTOCOLS);
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(parameters);
+    }
+
+    private static void configureSessions(SSLSessionContext sessions) {
+        sessions.setSessionCacheSize(Config.TLS_SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(Config.TLS_SESSION_TIMEOUT_S);
+    }
+
+    private static KeyStore load(String path, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Files.newInputStream(Paths.get(path))) {
+            keyStore.load(input, password);
+        }
+        return keyStore;
+    }
+}
@@ -0,0 +1,223 @@
+package com.chatapp.server.attachment;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.security.TlsContexts;
+import com.chatapp.server.network.ServerMetrics;
+import com.chatapp.util.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+// Pobieranie załączników przez osobny port - duże pliki nie przechodzą przez kolejki wyjściowe połączeń
+// czatu. Klient dostaje jednorazowy bilet przez połączenie czatu (DOWNLOAD:<sha256>), a tutaj wysyła:
+// bilet (writeUTF) i położenie, od którego pobiera (writeLong, wznawianie). Odpowiedź: rozmiar pliku
+// (writeLong, -1 dla nieważnego biletu), a po nim bajty od podanego położenia do końca.
+// Bez TLS plik idzie do gniazda przez FileChannel.transferTo (bez kopiowania przez stertę); przy TLS
+// dane muszą zostać zaszyfrowane, więc są kopiowane przez bufor.
+public class AttachmentServer implements AutoCloseable {
+    private static final int TOKEN_BYTES = 16;
+
+    private static class Ticket {
+        final String sha256;
+        final long expiresAt;
+
+        Ticket(String sha256) {
+            this.sha256 = sha256;
+            this.expiresAt = System.currentTimeMillis() + Config.ATTACHMENT_TICKET_TTL_MS;
+        }
+    }
+
+    private final AttachmentStore store;
+    private final ServerMetrics metrics;
+    private final int port;
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final ExecutorService downloadPool;
+    private ServerSocketChannel plainChannel;
+    private ServerSocket tlsSocket;
+    private volatile boolean running;
+
+    public AttachmentServer(AttachmentStore store, ServerMetrics metrics, int port) {
+        this.store = store;
+        this.metrics = metrics;
+        this.port = port;
+        downloadPool = Executors.newFixedThreadPool(Config.ATTACHMENT_DOWNLOAD_THREADS, r -> {
+            Thread thread = new Thread(r, "Attachment-Download");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // tlsContext == null - zwykłe TCP
+    public void start(SSLContext tlsContext) throws IOException {
+        if (tlsContext != null) {
+            SSLServerSocket socket = (SSLServerSocket) tlsContext.getServerSocketFactory().createServerSocket(port);
+            TlsContexts.configureServer(socket);
+            tlsSocket = socket;
+        } else {
+            plainChannel = ServerSocketChannel.open();
+            plainChannel.bind(new InetSocketAddress(port));
+        }
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "Attachment-Accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Logger.info("Pobieranie załączników na porcie " + port);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // Bilet ważny ATTACHMENT_TICKET_TTL_MS, na jedno pobranie
+    public String issueTicket(String sha256) {
+        long now = System.currentTimeMillis();
+        tickets.values().removeIf(ticket -> ticket.expiresAt < now);
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        tickets.put(token, new Ticket(sha256));
+        return token;
+    }
+
+    private String redeem(String token) {
+        Ticket ticket = tickets.remove(token);
+        return ticket != null && ticket.expiresAt >= System.currentTimeMillis() ? ticket.sha256 : null;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = plainChannel != null ? plainChannel.accept().socket() : tlsSocket.accept();
+                try {
+                    downloadPool.execute(() -> serve(socket));
+                } catch (RejectedExecutionException e) {
+                    closeQuietly(socket);
+                }
+            } catch (IOException e) {
+                if (!running) {
+                    break;
+                }
+                Logger.error("Błąd podczas akceptowania pobierania załącznika: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setSoTimeout(Config.HANDSHAKE_TIMEOUT_MS);
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).startHandshake();
+            }
+
+            DataInputStream request = new DataInputStream(socket.getInputStream());
+            String sha256 = redeem(request.readUTF());
+            long offset = request.readLong();
+            Path file = sha256 != null && store.exists(sha256) ? store.pathOf(sha256) : null;
+            long size = file != null ? Files.size(file) : -1;
+
+            if (file == null || offset < 0 || offset > size) {
+                Logger.warn("Odrzucono pobieranie załącznika: " + socket.getInetAddress().getHostAddress());
+                writeHeader(socket, -1);
+                return;
+            }
+
+            long start = System.nanoTime();
+            SocketChannel channel = socket.getChannel();
+            if (channel != null) {
+                sendZeroCopy(channel, file, offset, size);
+            } else {
+                sendCopied(socket, file, offset, size);
+            }
+            metrics.attachmentDownloaded(size - offset, System.nanoTime() - start);
+        } catch (IOException e) {
+            Logger.warn("Przerwane pobieranie załącznika: " + e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private void writeHeader(Socket socket, long size) throws IOException {
+        DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+        output.writeLong(size);
+        output.flush();
+    }
+
+    private void sendZeroCopy(SocketChannel channel, Path file, long offset, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(size);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset;
+            while (position < size) {
+                position += source.transferTo(position, size - position, channel);
+            }
+        }
+    }
+
+    private void sendCopied(Socket socket, Path file, long offset, long size) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream(), Config.ATTACHMENT_CHUNK_SIZE));
+        output.writeLong(size);
+
+        try (InputStream source = Files.newInputStream(file)) {
+            source.skipNBytes(offset);
+            source.transferTo(output);
+        }
+        output.flush();
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Gniazdo i tak jest porzucane
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        downloadPool.shutdownNow();
+
+        try {
+            if (plainChannel != null) {
+                plainChannel.close();
+            }
+            if (tlsSocket != null) {
+                tlsSocket.close();
+            }
+        } catch (IOException e) {
+            Logger.error("Błąd podczas zamykania portu załączników: " + e.getMessage());
+        }
+    }
+}
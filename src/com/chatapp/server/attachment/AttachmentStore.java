@@ -0,0 +1,238 @@
+package com.chatapp.server.attachment;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Attachment;
+import com.chatapp.util.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Magazyn załączników na dysku, poza bazą: <katalog>/<2 pierwsze znaki sumy>/<sha256>. Plik jest
+// zapisywany raz niezależnie od liczby wysyłek i wiadomości. Wysyłka trwa w <katalog>/partial/<sha256>.part
+// (przerwana może być wznowiona od zapisanego fragmentu) i po sprawdzeniu sumy jest przenoszona na miejsce.
+// Blokady pasmowe według sumy: ten sam plik wysyłany naraz z dwóch połączeń nie jest dopisywany równolegle.
+// Niedokończona wysyłka rezerwuje zadeklarowany rozmiar u użytkownika, który ją rozpoczął, do zakończenia
+// lub usunięcia części - porzucone części są usuwane okresowo, więc rezerwacje nie rosną bez końca.
+public class AttachmentStore implements AutoCloseable {
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path root;
+    private final Path partialDir;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ScheduledExecutorService cleaner;
+
+    // Rezerwacje niedokończonych wysyłek według sumy i ich łączny rozmiar według użytkownika; chronione reservations
+    private final Object reservations = new Object();
+    private final Map<String, PartialUpload> partials = new HashMap<>();
+    private final Map<Integer, Long> partialBytes = new HashMap<>();
+
+    private static final class PartialUpload {
+        final int userId;
+        final long size;
+        final long reservedAt = System.currentTimeMillis();
+
+        PartialUpload(int userId, long size) {
+            this.userId = userId;
+            this.size = size;
+        }
+    }
+
+    public AttachmentStore(String directory) {
+        this.root = Paths.get(directory);
+        this.partialDir = root.resolve("partial");
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        try {
+            Files.createDirectories(partialDir);
+        } catch (IOException e) {
+            Logger.error("Nie można przygotować katalogu załączników " + root + ": " + e.getMessage());
+        }
+
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Attachment-Cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::removeAbandonedUploadsSafely, 0,
+                Config.ATTACHMENT_CLEANUP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public Path pathOf(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    public boolean exists(String sha256) {
+        return Attachment.isValidHash(sha256) && Files.isRegularFile(pathOf(sha256));
+    }
+
+    // Liczba bajtów już zapisanych dla wysyłki: rozmiar pliku, jeśli jest już w magazynie
+    // (ten sam plik wysłany wcześniej - nic nie trzeba przesyłać), albo długość niedokończonej części.
+    // -1, jeśli nowa wysyłka przekroczyłaby limit niedokończonych wysyłek użytkownika.
+    public long begin(int userId, String sha256, long size) throws IOException {
+        synchronized (lockFor(sha256)) {
+            if (exists(sha256)) {
+                return Files.size(pathOf(sha256));
+            }
+
+            Path partial = partialOf(sha256);
+            long length = Files.exists(partial) ? Files.size(partial) : 0;
+            if (length > size) {
+                Files.delete(partial);
+                release(sha256);
+                length = 0;
+            }
+            return reserve(userId, sha256, size) ? length : -1;
+        }
+    }
+
+    // Dopisanie fragmentu; zwraca liczbę zapisanych bajtów po operacji. Fragment spoza kolejności
+    // (offset różny od zapisanej długości) lub większy niż ATTACHMENT_CHUNK_SIZE jest pomijany - klient
+    // wznowi od zwróconej długości.
+    // Po ostatnim fragmencie suma jest sprawdzana, a plik przenoszony do magazynu.
+    public long append(String sha256, long size, long offset, byte[] data) throws IOException {
+        synchronized (lockFor(sha256)) {
+            if (exists(sha256)) {
+                return Files.size(pathOf(sha256));
+            }
+
+            Path partial = partialOf(sha256);
+            long length = Files.exists(partial) ? Files.size(partial) : 0;
+            if (offset != length || data.length > Config.ATTACHMENT_CHUNK_SIZE || length + data.length > size) {
+                return length;
+            }
+
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            length += data.length;
+
+            if (length == size) {
+                complete(sha256, partial);
+            }
+            return length;
+        }
+    }
+
+    private void complete(String sha256, Path partial) throws IOException {
+        String actual = Attachment.hashOf(partial);
+        if (!actual.equals(sha256)) {
+            Files.delete(partial);
+            release(sha256);
+            throw new IOException("Suma SHA-256 nie zgadza się (otrzymano " + actual + ")");
+        }
+
+        Path target = pathOf(sha256);
+        Files.createDirectories(target.getParent());
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        release(sha256);
+    }
+
+    // Ta sama wysyłka wznawiana przez innego użytkownika nie jest liczona drugi raz
+    private boolean reserve(int userId, String sha256, long size) {
+        synchronized (reservations) {
+            if (partials.containsKey(sha256)) {
+                return true;
+            }
+
+            long reserved = partialBytes.getOrDefault(userId, 0L);
+            if (reserved + size > Config.ATTACHMENT_MAX_PARTIAL_BYTES_PER_USER) {
+                return false;
+            }
+            partials.put(sha256, new PartialUpload(userId, size));
+            partialBytes.put(userId, reserved + size);
+            return true;
+        }
+    }
+
+    private void release(String sha256) {
+        synchronized (reservations) {
+            PartialUpload upload = partials.remove(sha256);
+            if (upload != null) {
+                unreserve(upload);
+            }
+        }
+    }
+
+    private void unreserve(PartialUpload upload) {
+        partialBytes.computeIfPresent(upload.userId, (id, reserved) ->
+                reserved - upload.size > 0 ? reserved - upload.size : null);
+    }
+
+    private void removeAbandonedUploadsSafely() {
+        try {
+            removeAbandonedUploads();
+        } catch (Exception e) {
+            Logger.error("Błąd podczas usuwania porzuconych wysyłek załączników: " + e.getMessage());
+        }
+    }
+
+    private void removeAbandonedUploads() throws IOException {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(Config.ATTACHMENT_PARTIAL_TTL_HOURS);
+        int removed = 0;
+
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(partialDir, "*.part")) {
+            for (Path part : parts) {
+                String name = part.getFileName().toString();
+                String sha256 = name.substring(0, name.length() - ".part".length());
+
+                synchronized (lockFor(sha256)) {
+                    if (Files.exists(part) && Files.getLastModifiedTime(part).toMillis() < cutoff) {
+                        Files.delete(part);
+                        release(sha256);
+                        removed++;
+                    }
+                }
+            }
+        }
+
+        // Rezerwacje wysyłek, które nie zapisały żadnego fragmentu
+        synchronized (reservations) {
+            Iterator<Map.Entry<String, PartialUpload>> it = partials.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, PartialUpload> entry = it.next();
+                PartialUpload upload = entry.getValue();
+                if (upload.reservedAt < cutoff && !Files.exists(partialOf(entry.getKey()))) {
+                    it.remove();
+                    unreserve(upload);
+                }
+            }
+        }
+
+        if (removed > 0) {
+            Logger.info("Usunięto porzucone wysyłki załączników: " + removed);
+        }
+    }
+
+    private Path partialOf(String sha256) {
+        return partialDir.resolve(sha256 + ".part");
+    }
+
+    private Object lockFor(String sha256) {
+        return locks[(sha256.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    @Override
+    public void close() {
+        cleaner.shutdownNow();
+    }
+}
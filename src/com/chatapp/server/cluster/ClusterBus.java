@@ -0,0 +1,130 @@
+package com.chatapp.server.cluster;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Szyna zdarzeń między węzłami klastra.
+// publish() tylko dodaje zdarzenie do kolejki; jeden wątek wydawcy zabiera wszystko, co się w niej
+// zebrało (do CLUSTER_BATCH_MAX) i wysyła jedną paczką - przy małym ruchu zdarzenie idzie od razu,
+// przy dużym paczki rosną, a liczba wysyłek nie rośnie razem z liczbą wiadomości.
+public class ClusterBus implements AutoCloseable {
+
+    public interface Listener {
+        void onClusterEvent(ClusterEvent event);
+    }
+
+    private final String nodeId;
+    private final ClusterTransport transport;
+    private final BlockingQueue<ClusterEvent> outgoing = new LinkedBlockingQueue<>(Config.CLUSTER_QUEUE_CAPACITY);
+    private final Thread publisher;
+    private volatile boolean running;
+
+    private final AtomicLong eventsPublished = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+
+    public ClusterBus(String nodeId, ClusterTransport transport) {
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.publisher = new Thread(this::publishLoop, "Cluster-Publisher");
+        publisher.setDaemon(true);
+    }
+
+    // Szyna skonfigurowana właściwościami systemowymi; null, jeśli klaster nie jest włączony
+    public static ClusterBus fromConfig() {
+        if (!Config.CLUSTER_ENABLED) {
+            return null;
+        }
+        return new ClusterBus(Config.CLUSTER_NODE_ID,
+                new TcpMeshTransport(Config.CLUSTER_BIND_ADDRESS, Config.CLUSTER_PORT, Config.CLUSTER_PEERS));
+    }
+
+    public void start(Listener listener) {
+        running = true;
+
+        transport.start(nodeId, batch -> {
+            for (ClusterEvent event : batch) {
+                // Zabezpieczenie przed własnymi zdarzeniami (np. węzeł wpisany na własną listę peers)
+                if (nodeId.equals(event.getOriginNode())) {
+                    continue;
+                }
+
+                eventsReceived.incrementAndGet();
+                try {
+                    listener.onClusterEvent(event);
+                } catch (Exception e) {
+                    Logger.error("Błąd podczas obsługi zdarzenia klastra " + event + ": " + e.getMessage());
+                }
+            }
+        });
+
+        publisher.start();
+    }
+
+    public void publish(ClusterEvent event) {
+        event.setOriginNode(nodeId);
+
+        if (outgoing.offer(event)) {
+            eventsPublished.incrementAndGet();
+        } else {
+            // Pozostałe węzły nie nadążają - lepiej zgubić zdarzenie niż zablokować obsługę klientów
+            eventsDropped.incrementAndGet();
+        }
+    }
+
+    private void publishLoop() {
+        List<ClusterEvent> batch = new ArrayList<>();
+
+        while (running) {
+            try {
+                batch.add(outgoing.take());
+                outgoing.drainTo(batch, Config.CLUSTER_BATCH_MAX - 1);
+
+                transport.send(batch);
+                batchesSent.incrementAndGet();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                Logger.error("Błąd podczas wysyłania paczki zdarzeń klastra: " + e.getMessage());
+            }
+
+            // Nowa lista - transport lub odbiorca mógł zachować referencję
+            batch = new ArrayList<>();
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String describe() {
+        long batches = batchesSent.get();
+        long published = eventsPublished.get();
+
+        return "Węzeł klastra: " + nodeId + " (" + transport.describe() + ")\n" +
+                "Zdarzenia wysłane/odebrane/odrzucone: " + published + "/" + eventsReceived.get() + "/" +
+                eventsDropped.get() + ", paczki: " + batches +
+                (batches > 0 ? String.format(", średnio %.1f zdarzeń/paczkę", (double) published / batches) : "") + "\n";
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        publisher.interrupt();
+
+        try {
+            publisher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        transport.close();
+    }
+}
@@ -0,0 +1,122 @@
+package com.chatapp.server.cluster;
+
+import com.chatapp.common.model.Message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// Zdarzenie przesyłane między węzłami klastra
+public class ClusterEvent implements Serializable {
+
+    public enum Type {
+        // Wiadomość publiczna (lub pokoju) do rozesłania klientom wszystkich węzłów
+        BROADCAST,
+        // Wiadomość prywatna do doręczenia odbiorcy, jeśli jest połączony z danym węzłem
+        PRIVATE,
+        // Pełna lista użytkowników zalogowanych na węźle nadawcy
+        PRESENCE,
+        // Dołączenie do pokoju lub jego opuszczenie (stan w magazynie jest już zapisany)
+        ROOM_MEMBERSHIP,
+        // Nowy użytkownik (przy wspólnej bazie) - do katalogu użytkowników pozostałych węzłów
+        USER_REGISTERED
+    }
+
+    private Type type;
+    private String originNode;
+    private Message message;
+    private List<String> onlineUsers;
+    private int roomId;
+    private String roomName;
+    private int userId;
+    private boolean joined;
+    private String username;
+
+    public ClusterEvent() {
+    }
+
+    public static ClusterEvent broadcast(Message message) {
+        ClusterEvent event = new ClusterEvent();
+        event.type = Type.BROADCAST;
+        event.message = message;
+        return event;
+    }
+
+    public static ClusterEvent privateMessage(Message message) {
+        ClusterEvent event = new ClusterEvent();
+        event.type = Type.PRIVATE;
+        event.message = message;
+        return event;
+    }
+
+    public static ClusterEvent presence(List<String> onlineUsers) {
+        ClusterEvent event = new ClusterEvent();
+        event.type = Type.PRESENCE;
+        event.onlineUsers = new ArrayList<>(onlineUsers);
+        return event;
+    }
+
+    public static ClusterEvent roomMembership(int roomId, String roomName, int userId, boolean joined) {
+        ClusterEvent event = new ClusterEvent();
+        event.type = Type.ROOM_MEMBERSHIP;
+        event.roomId = roomId;
+        event.roomName = roomName;
+        event.userId = userId;
+        event.joined = joined;
+        return event;
+    }
+
+    public static ClusterEvent userRegistered(int userId, String username) {
+        ClusterEvent event = new ClusterEvent();
+        event.type = Type.USER_REGISTERED;
+        event.userId = userId;
+        event.username = username;
+        return event;
+    }
+
+    // Gettery i settery
+    public Type getType() {
+        return type;
+    }
+
+    public String getOriginNode() {
+        return originNode;
+    }
+
+    public void setOriginNode(String originNode) {
+        this.originNode = originNode;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public List<String> getOnlineUsers() {
+        return onlineUsers;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public boolean isJoined() {
+        return joined;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String toString() {
+        return type + " z węzła " + originNode;
+    }
+}
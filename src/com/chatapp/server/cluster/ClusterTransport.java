@@ -0,0 +1,20 @@
+package com.chatapp.server.cluster;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// Transport paczek zdarzeń między węzłami klastra.
+// send() wywołuje tylko jeden wątek (wydawca ClusterBus); odbiorca może być wywoływany z wielu wątków.
+public interface ClusterTransport extends AutoCloseable {
+
+    void start(String nodeId, Consumer<List<ClusterEvent>> receiver);
+
+    // Wysyła paczkę do wszystkich pozostałych węzłów; niedostępne węzły są pomijane
+    void send(List<ClusterEvent> batch);
+
+    // Opis stanu połączeń do panelu administracyjnego
+    String describe();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,49 @@
+package com.chatapp.server.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Transport w obrębie jednego procesu - kilka instancji ChatServer połączonych wspólnym węzłem
+// (Hub). Do testów i uruchomień deweloperskich klastra bez sieci.
+public class LoopbackTransport implements ClusterTransport {
+
+    // Wspólny punkt wymiany dla wszystkich węzłów w procesie
+    public static class Hub {
+        private final List<LoopbackTransport> members = new CopyOnWriteArrayList<>();
+    }
+
+    private final Hub hub;
+    private volatile Consumer<List<ClusterEvent>> receiver;
+
+    public LoopbackTransport(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void start(String nodeId, Consumer<List<ClusterEvent>> receiver) {
+        this.receiver = receiver;
+        hub.members.add(this);
+    }
+
+    @Override
+    public void send(List<ClusterEvent> batch) {
+        for (LoopbackTransport member : hub.members) {
+            if (member != this) {
+                // Kopia listy - jak przy przesyłaniu przez sieć, odbiorca nie współdzieli jej z nadawcą
+                member.receiver.accept(new ArrayList<>(batch));
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "loopback, węzłów w procesie: " + hub.members.size();
+    }
+
+    @Override
+    public void close() {
+        hub.members.remove(this);
+    }
+}
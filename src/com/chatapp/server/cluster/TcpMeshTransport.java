@@ -0,0 +1,255 @@
+package com.chatapp.server.cluster;
+
+import com.chatapp.util.Logger;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Transport TCP w topologii pełnej siatki: każdy węzeł nasłuchuje na porcie klastra i sam łączy się
+// z każdym węzłem z listy peers. Paczka zdarzeń to jeden obiekt w strumieniu ObjectOutputStream.
+// Zerwane połączenie wychodzące jest odtwarzane przy kolejnej wysyłce, nie częściej niż co RECONNECT_DELAY_MS.
+// Połączenia przychodzące są przyjmowane tylko z adresów węzłów z listy peers, a odczyt obiektów
+// ogranicza filtr - strumień może zawierać wyłącznie klasy zdarzeń klastra i modelu wiadomości.
+public class TcpMeshTransport implements ClusterTransport {
+    private static final int RECONNECT_DELAY_MS = 2000;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    // Co ile paczek czyścić tablicę referencji ObjectOutputStream (inaczej rośnie bez końca)
+    private static final int RESET_INTERVAL = 64;
+    private static final ObjectInputFilter EVENT_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;maxarray=1000000;maxrefs=2000000;" +
+            "com.chatapp.server.cluster.ClusterEvent;com.chatapp.server.cluster.ClusterEvent$Type;" +
+            "com.chatapp.common.model.Message;com.chatapp.common.model.User;" +
+            "java.util.ArrayList;java.lang.String;java.lang.Enum;java.lang.Object;java.time.Ser;java.time.LocalDateTime;!*");
+
+    private final String bindAddress;
+    private final int port;
+    private final List<PeerLink> peers = new ArrayList<>();
+    private final Set<Socket> inboundSockets = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private String nodeId;
+
+    // Połączenie wychodzące do jednego węzła; używane wyłącznie z wątku wydawcy
+    private static class PeerLink {
+        final String host;
+        final int port;
+        Socket socket;
+        ObjectOutputStream output;
+        long nextAttemptAt;
+        int batchesSinceReset;
+
+        PeerLink(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        String address() {
+            return host + ":" + port;
+        }
+    }
+
+    // peers w formacie host:port,host:port; bindAddress pusty - nasłuch na wszystkich interfejsach
+    public TcpMeshTransport(String bindAddress, int port, String peerList) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+
+        for (String peer : peerList.split(",")) {
+            String trimmed = peer.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+
+            int separator = trimmed.lastIndexOf(':');
+            if (separator <= 0) {
+                Logger.warn("Pominięto nieprawidłowy adres węzła klastra: " + trimmed);
+                continue;
+            }
+            peers.add(new PeerLink(trimmed.substring(0, separator), Integer.parseInt(trimmed.substring(separator + 1))));
+        }
+    }
+
+    @Override
+    public void start(String nodeId, Consumer<List<ClusterEvent>> receiver) {
+        this.nodeId = nodeId;
+        running = true;
+
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(bindAddress.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(bindAddress, port));
+        } catch (IOException e) {
+            Logger.error("Nie można otworzyć portu klastra " + port + ": " + e.getMessage());
+            return;
+        }
+
+        Thread acceptThread = new Thread(() -> acceptLoop(receiver), "Cluster-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        Logger.info("Węzeł klastra " + nodeId + " nasłuchuje na porcie " + port + ", węzły: " + peers.size());
+    }
+
+    private void acceptLoop(Consumer<List<ClusterEvent>> receiver) {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (!isPeerAddress(socket.getInetAddress())) {
+                    Logger.warn("Odrzucono połączenie klastra spoza listy węzłów: " + socket.getInetAddress().getHostAddress());
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                inboundSockets.add(socket);
+
+                Thread reader = new Thread(() -> readLoop(socket, receiver), "Cluster-Reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    Logger.error("Błąd podczas przyjmowania połączenia klastra: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Adresy węzłów są rozwiązywane przy każdym połączeniu - nazwa hosta mogła zmienić adres
+    private boolean isPeerAddress(InetAddress address) {
+        for (PeerLink peer : peers) {
+            try {
+                for (InetAddress peerAddress : InetAddress.getAllByName(peer.host)) {
+                    if (peerAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                Logger.debug("Nie można rozwiązać adresu węzła klastra " + peer.host + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readLoop(Socket socket, Consumer<List<ClusterEvent>> receiver) {
+        String remoteNode = socket.getRemoteSocketAddress().toString();
+
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            input.setObjectInputFilter(EVENT_FILTER);
+            // Pierwszy obiekt to identyfikator węzła nadawcy
+            remoteNode = (String) input.readObject();
+            Logger.info("Połączono węzeł klastra: " + remoteNode);
+
+            while (running) {
+                receiver.accept((List<ClusterEvent>) input.readObject());
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            if (running) {
+                Logger.warn("Rozłączono węzeł klastra " + remoteNode + ": " + e.getMessage());
+            }
+        } finally {
+            inboundSockets.remove(socket);
+        }
+    }
+
+    @Override
+    public void send(List<ClusterEvent> batch) {
+        for (PeerLink peer : peers) {
+            if (peer.output == null && !connect(peer)) {
+                continue;
+            }
+
+            try {
+                peer.output.writeObject(batch);
+                peer.output.flush();
+
+                if (++peer.batchesSinceReset >= RESET_INTERVAL) {
+                    peer.output.reset();
+                    peer.batchesSinceReset = 0;
+                }
+            } catch (IOException e) {
+                Logger.warn("Błąd wysyłki do węzła " + peer.address() + ": " + e.getMessage());
+                disconnect(peer);
+            }
+        }
+    }
+
+    private boolean connect(PeerLink peer) {
+        long now = System.currentTimeMillis();
+        if (now < peer.nextAttemptAt) {
+            return false;
+        }
+
+        try {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(peer.host, peer.port), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+
+            ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeObject(nodeId);
+            output.flush();
+
+            peer.socket = socket;
+            peer.output = output;
+            peer.batchesSinceReset = 0;
+            Logger.info("Połączono z węzłem klastra " + peer.address());
+            return true;
+        } catch (IOException e) {
+            peer.nextAttemptAt = now + RECONNECT_DELAY_MS;
+            Logger.debug("Węzeł klastra " + peer.address() + " niedostępny: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void disconnect(PeerLink peer) {
+        try {
+            if (peer.socket != null) {
+                peer.socket.close();
+            }
+        } catch (IOException e) {
+            Logger.error("Błąd podczas zamykania połączenia klastra: " + e.getMessage());
+        }
+
+        peer.socket = null;
+        peer.output = null;
+        peer.nextAttemptAt = System.currentTimeMillis() + RECONNECT_DELAY_MS;
+    }
+
+    @Override
+    public String describe() {
+        int connected = 0;
+        for (PeerLink peer : peers) {
+            if (peer.output != null) {
+                connected++;
+            }
+        }
+        return "TCP, port " + port + ", połączenia wychodzące: " + connected + "/" + peers.size() +
+                ", przychodzące: " + inboundSockets.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket socket : inboundSockets) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            Logger.error("Błąd podczas zamykania transportu klastra: " + e.getMessage());
+        }
+
+        for (PeerLink peer : peers) {
+            disconnect(peer);
+        }
+    }
+}
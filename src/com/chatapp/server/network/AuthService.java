@@ -0,0 +1,85 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.User;
+import com.chatapp.server.storage.UserStore;
+import com.chatapp.util.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Logowanie i rejestracja w osobnej puli o ograniczonej kolejce. Liczenie skrótu hasła celowo kosztuje
+// dziesiątki milisekund procesora - pula o rozmiarze zbliżonym do liczby rdzeni ogranicza, ile takich
+// obliczeń trwa naraz, a przepełniona kolejka odrzuca nadmiar zamiast zagłodzić obsługę rozmów.
+public class AuthService implements AutoCloseable {
+    private final UserStore userStore;
+    private final ServerMetrics metrics;
+    private final ThreadPoolExecutor pool;
+
+    public AuthService(UserStore userStore, ServerMetrics metrics) {
+        this.userStore = userStore;
+        this.metrics = metrics;
+        this.pool = new ThreadPoolExecutor(Config.AUTH_THREADS, Config.AUTH_THREADS,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Config.AUTH_QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "Auth");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    // Null przy błędnych danych, przepełnionej kolejce lub przekroczeniu czasu
+    public User authenticate(String username, String password, long timeoutMs) {
+        return execute(() -> userStore.authenticateUser(username, password), timeoutMs);
+    }
+
+    // Null, jeśli nazwa jest zajęta lub żądanie nie zostało obsłużone
+    public User register(String username, String password, long timeoutMs) {
+        return execute(() -> userStore.registerUser(username, password), timeoutMs);
+    }
+
+    private User execute(Callable<User> call, long timeoutMs) {
+        long start = System.nanoTime();
+        Future<User> future;
+
+        try {
+            future = pool.submit(call);
+        } catch (RejectedExecutionException e) {
+            Logger.warn("Kolejka logowania pełna - żądanie odrzucone");
+            metrics.authRejected();
+            return null;
+        }
+
+        try {
+            User user = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            metrics.authCompleted(System.nanoTime() - start, user != null);
+            return user;
+        } catch (TimeoutException e) {
+            Logger.warn("Przekroczono czas logowania w puli uwierzytelniania");
+            future.cancel(true);
+            metrics.authRejected();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.error("Błąd podczas uwierzytelniania: " + e.getCause());
+            metrics.authCompleted(System.nanoTime() - start, false);
+        }
+        return null;
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
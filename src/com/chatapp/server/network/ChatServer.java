@@ -3,46 +3,213 @@ package com.chatapp.server.network;
 import com.chatapp.common.config.Config;
 import com.chatapp.common.model.Message;
 import com.chatapp.common.model.User;
+import com.chatapp.common.model.UserPage;
+import com.chatapp.common.security.TlsContexts;
+import com.chatapp.server.attachment.AttachmentServer;
+import com.chatapp.server.attachment.AttachmentStore;
+import com.chatapp.server.cluster.ClusterBus;
+import com.chatapp.server.cluster.ClusterEvent;
+import com.chatapp.server.room.Room;
+import com.chatapp.server.room.RoomRegistry;
+import com.chatapp.server.search.MentionMatcher;
+import com.chatapp.server.search.SearchIndex;
+import com.chatapp.server.search.UserDirectory;
 import com.chatapp.server.storage.DatabaseManager;
+import com.chatapp.server.storage.MentionStore;
+import com.chatapp.server.storage.MessageArchive;
+import com.chatapp.server.storage.MessageStore;
+import com.chatapp.server.storage.RetentionJob;
+import com.chatapp.server.storage.Storage;
+import com.chatapp.server.storage.UserStore;
 import com.chatapp.util.Logger;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class ChatServer implements AutoCloseable {
     private ServerSocket serverSocket;
+    private final int port;
     private ExecutorService threadPool;
+    // Osobna, ograniczona pula na nawiązywanie połączeń - wolny klient nie blokuje wątku akceptującego
+    private ThreadPoolExecutor handshakePool;
+    // Terminy logowania i bezczynności wszystkich połączeń
+    private TimerWheel timerWheel;
+    // Wspólna pula zapisująca kolejki wyjściowe klientów (OutboundQueue) - wątki rozsyłające
+    // wiadomości nie blokują się na wolnych odbiorcach, a zablokowany zapis dostaje wątek zastępczy
+    private OutboundPool outboundPool;
+    // Odmierzanie okna sklejania (CoalescingOutputStream) - samo opróżnienie wykonuje kolejka wyjściowa
+    private ScheduledExecutorService flushScheduler;
+    // Szeregowa obsługa wiadomości każdej rozmowy (zapis, doręczenie)
+    private ConversationExecutor conversations;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final RateLimiter rateLimiter = new RateLimiter();
+    // Klucze wiadomości już przyjętych - ponownie wysłane z kolejki nadawczej klienta są pomijane
+    private final IdempotencyKeys idempotencyKeys = new IdempotencyKeys(Config.IDEMPOTENCY_KEYS_CAPACITY);
+    private OverloadGovernor governor;
+    // Zaplanowana (sklejona) wysyłka listy użytkowników przy przeciążeniu
+    private final AtomicBoolean presenceBroadcastPending = new AtomicBoolean();
     private List<ClientHandler> clients;
-    private DatabaseManager dbManager;
+    // Połączenia według identyfikatora użytkownika - rozsyłanie w pokoju odwiedza tylko członków
+    private final Map<Integer, List<ClientHandler>> clientsByUserId = new ConcurrentHashMap<>();
+    private RoomRegistry rooms;
+    private Storage storage;
+    private UserStore userStore;
+    private AuthService authService;
+    // Wyszukiwanie użytkowników po prefiksie - klienci dostają listę tylko zalogowanych
+    private UserDirectory userDirectory;
+    // Wzmianki @użytkownik wyodrębniane przy zapisie wiadomości
+    private MentionMatcher mentionMatcher;
+    private MentionStore mentionStore;
+    private MessageStore messageStore;
+    private SearchIndex searchIndex;
+    private MessageArchive archive;
+    private RetentionJob retentionJob;
+    // Załączniki na dysku i osobny port do ich pobierania
+    private AttachmentStore attachments;
+    private AttachmentServer attachmentServer;
+    // Kontekst TLS (null bez TLS) - wspólny dla portu czatu i portu załączników
+    private SSLContext tlsContext;
+    // Szyna klastra (null w trybie pojedynczego serwera) i zalogowani na pozostałych węzłach
+    private ClusterBus cluster;
+    private final Map<String, RemotePresence> remotePresence = new ConcurrentHashMap<>();
     private volatile boolean running;
 
+    private static class RemotePresence {
+        final List<String> usernames;
+        final long updatedAt;
+
+        RemotePresence(List<String> usernames) {
+            this.usernames = usernames;
+            this.updatedAt = System.currentTimeMillis();
+        }
+    }
+
     public ChatServer() {
+        this(Storage.create(Config.STORAGE_TYPE), ClusterBus.fromConfig());
+    }
+
+    public ChatServer(Storage storage) {
+        this(storage, null);
+    }
+
+    public ChatServer(Storage storage, ClusterBus cluster) {
+        this(storage, cluster, Config.SERVER_PORT);
+    }
+
+    public ChatServer(Storage storage, ClusterBus cluster, int port) {
+        this.port = port;
+        this.cluster = cluster;
         clients = new CopyOnWriteArrayList<>();
         threadPool = Executors.newFixedThreadPool(Config.MAX_CLIENTS);
-        dbManager = new DatabaseManager();
+        handshakePool = new ThreadPoolExecutor(Config.HANDSHAKE_THREADS, Config.HANDSHAKE_THREADS,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Config.HANDSHAKE_QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "Handshake");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        handshakePool.allowCoreThreadTimeOut(true);
+        timerWheel = new TimerWheel("Connection-Timers", Config.TIMER_WHEEL_TICK_MS, Config.TIMER_WHEEL_SLOTS);
+        outboundPool = new OutboundPool();
+        scheduleBlockedWriterCheck();
+        flushScheduler = Executors.newScheduledThreadPool(Config.FLUSH_THREADS, r -> {
+            Thread thread = new Thread(r, "Socket-Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        conversations = new ConversationExecutor();
+        governor = new OverloadGovernor(this::getQueuedFrames, () -> handshakePool.getQueue().size());
+        scheduleGovernorSample();
+
+        this.storage = storage;
+        userStore = storage.getUserStore();
+        authService = new AuthService(userStore, metrics);
+        userDirectory = new UserDirectory(userStore);
+        mentionMatcher = new MentionMatcher(userStore);
+        messageStore = storage.getMessageStore();
+        mentionStore = storage.getMentionStore();
+        rooms = new RoomRegistry(storage.getRoomStore());
+
+        // Indeks na dysku tylko dla trwałego magazynu - inaczej po restarcie wskazywałby nieistniejące wiadomości
+        searchIndex = new SearchIndex(storage.isPersistent() ? Config.SEARCH_INDEX_DIR : null);
+        searchIndex.open(messageStore);
+
+        attachments = new AttachmentStore(Config.ATTACHMENT_DIR);
+        attachmentServer = new AttachmentServer(attachments, metrics, port + Config.ATTACHMENT_PORT_OFFSET);
+
+        // Archiwizacja dotyczy tabeli messages w bazie H2. W klastrze przenosi wiadomości tylko jeden węzeł -
+        // dwa zadania archiwizowałyby i usuwały te same wiersze; pozostałe węzły archiwum tylko czytają.
+        DatabaseManager dbManager = storage.getDbManager();
+        if (dbManager != null) {
+            archive = new MessageArchive(Config.ARCHIVE_DIR, !Config.RETENTION_ENABLED);
+            if (Config.RETENTION_ENABLED) {
+                retentionJob = new RetentionJob(dbManager, archive);
+                retentionJob.start();
+            } else {
+                Logger.info("Archiwizacja wiadomości wykonywana przez inny węzeł klastra");
+            }
+        }
         running = false;
     }
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(Config.SERVER_PORT);
+            serverSocket = createServerSocket();
             running = true;
 
-            Logger.info("Serwer uruchomiony na porcie " + Config.SERVER_PORT);
+            Logger.info("Serwer uruchomiony na porcie " + port + (Config.TLS_ENABLED ? " (TLS)" : ""));
+
+            // Bez portu załączników czat działa dalej - nie można tylko pobierać plików
+            try {
+                attachmentServer.start(tlsContext);
+            } catch (IOException e) {
+                Logger.error("Nie można uruchomić pobierania załączników na porcie " + attachmentServer.getPort() +
+                        ": " + e.getMessage());
+            }
+
+            if (cluster != null) {
+                cluster.start(this::onClusterEvent);
+                schedulePresenceRefresh();
+            }
 
             while (running) {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     Logger.info("Nowe połączenie: " + clientSocket.getInetAddress().getHostAddress());
+                    metrics.connectionAccepted();
 
+                    // Sklejaniem małych zapisów zajmuje się CoalescingOutputStream - algorytm Nagle'a
+                    // dokładałby tylko opóźnienie
+                    clientSocket.setTcpNoDelay(true);
+
+                    // Wątek akceptujący tylko przekazuje połączenie dalej - strumienie i logowanie w puli handshake
                     ClientHandler clientHandler = new ClientHandler(clientSocket, this);
-                    threadPool.execute(clientHandler);
+                    try {
+                        handshakePool.execute(clientHandler::handshake);
+                    } catch (RejectedExecutionException e) {
+                        Logger.warn("Odrzucono połączenie - kolejka nawiązywania połączeń pełna: " +
+                                clientSocket.getInetAddress().getHostAddress());
+                        metrics.connectionRejected();
+                        closeQuietly(clientSocket);
+                    }
                 } catch (IOException e) {
                     if (!running) break;
                     Logger.error("Błąd podczas akceptowania połączenia: " + e.getMessage());
@@ -55,54 +222,516 @@ public class ChatServer implements AutoCloseable {
         }
     }
 
-    public void broadcastMessage(Message message) {
-        if (message == null || message.getSender() == null) return;
+    // Przy TLS gniazdo akceptujące tylko przyjmuje połączenia - uzgadnianie TLS wykonuje pula handshake
+    private ServerSocket createServerSocket() throws IOException {
+        if (!Config.TLS_ENABLED) {
+            return new ServerSocket(port);
+        }
+
+        tlsContext = TlsContexts.createServerContext(Config.TLS_KEYSTORE, Config.TLS_KEYSTORE_PASSWORD.toCharArray());
+        SSLServerSocket tlsSocket = (SSLServerSocket) tlsContext.getServerSocketFactory().createServerSocket(port);
+        TlsContexts.configureServer(tlsSocket);
+        return tlsSocket;
+    }
+
+    // Twardy limit czasu nawiązywania połączenia: po jego upływie gniazdo jest zamykane,
+    // co przerywa ewentualny blokujący odczyt w puli handshake
+    TimerWheel.Timeout scheduleHandshakeDeadline(ClientHandler client) {
+        Socket socket = client.getSocket();
+        return timerWheel.schedule(() -> {
+            Logger.warn("Przekroczono czas logowania, zamykanie połączenia: " + socket.getInetAddress().getHostAddress());
+            metrics.handshakeTimedOut();
+            closeQuietly(socket);
+        }, Config.HANDSHAKE_TIMEOUT_MS);
+    }
+
+    TimerWheel.Timeout scheduleLivenessCheck(Runnable check, long delayMs) {
+        return timerWheel.schedule(check, delayMs);
+    }
+
+    private void scheduleBlockedWriterCheck() {
+        timerWheel.schedule(() -> {
+            outboundPool.compensateBlockedWriters();
+            scheduleBlockedWriterCheck();
+        }, Config.OUTBOUND_BLOCKED_CHECK_MS);
+    }
+
+    private void scheduleGovernorSample() {
+        timerWheel.schedule(() -> {
+            governor.sample();
+            scheduleGovernorSample();
+        }, Config.GOVERNOR_INTERVAL_MS);
+    }
+
+    // Pomiar czasu wywołania magazynu danych - sygnał dla strażnika przeciążenia
+    private <T> T timed(Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            governor.recordStoreLatency(System.nanoTime() - start);
+        }
+    }
+
+    // Ramki w kolejkach wyjściowych i wiadomości czekające w kolejkach rozmów
+    private int getQueuedFrames() {
+        int queuedFrames = conversations.getPendingTasks();
+        for (ClientHandler client : clients) {
+            queuedFrames += client.getOutboundDepth();
+        }
+        return queuedFrames;
+    }
+
+    // Strumień wyjściowy klienta z adaptacyjnym opróżnianiem
+    CoalescingOutputStream createOutputStream(Socket socket) throws IOException {
+        return new CoalescingOutputStream(socket.getOutputStream(), flushScheduler, metrics);
+    }
+
+    OutboundQueue createOutboundQueue(OutboundQueue.FrameWriter writer, OutboundQueue.Flusher flusher,
+                                      Runnable onFailure) {
+        return new OutboundQueue(outboundPool, writer, flusher, onFailure);
+    }
+
+    // Obsługa wiadomości w kolejce jej rozmowy - wywoływane z wątku sesji po wstępnej weryfikacji
+    void submitInConversation(Message message, Runnable task) {
+        conversations.submit(message, task);
+    }
+
+    // Przekazanie zalogowanego klienta do puli obsługi sesji
+    void startSession(ClientHandler client) {
+        threadPool.execute(client);
+    }
+
+    void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Logger.error("Błąd podczas zamykania gniazda: " + e.getMessage());
+        }
+    }
+
+    // Niezapisana wiadomość nie jest rozsyłana - zostaje w kolejce nadawczej klienta do ponownej wysyłki
+    public boolean broadcastMessage(Message message) {
+        if (message == null || message.getSender() == null) return false;
 
         // Zapisanie wiadomości w bazie danych
-        dbManager.saveMessage(message);
+        if (!saveMessage(message)) {
+            return false;
+        }
 
         // Wysłanie wiadomości do wszystkich klientów oprócz nadawcy
-        int senderId = message.getSender().getId();
+        deliverToLocalClients(message);
+
+        // Klienci pozostałych węzłów
+        if (cluster != null) {
+            cluster.publish(ClusterEvent.broadcast(message));
+        }
+        return true;
+    }
+
+    // Nadawca jest pomijany po nazwie - identyfikatory z magazynów różnych węzłów mogą się pokrywać
+    private void deliverToLocalClients(Message message) {
+        String senderName = message.getSender().getUsername();
 
         for (ClientHandler client : clients) {
-            if (client.getUser() != null && client.getUser().getId() != senderId) {
+            if (client.getUser() != null && !client.getUser().getUsername().equals(senderName)) {
                 client.sendMessage(message);
             }
         }
     }
 
-    public List<String> getUsernameList(ClientHandler excludeClient) {
-        List<String> usernames = new ArrayList<>();
+    // Wiadomość pokoju (z uzupełnionym roomId) trafia tylko do członków pokoju, łącznie z nadawcą -
+    // koszt zależy od liczby członków, a nie od liczby połączonych klientów
+    public boolean broadcastRoomMessage(Message message) {
+        if (!saveMessage(message)) {
+            return false;
+        }
+
+        deliverToRoomMembers(rooms.get(message.getRoomId()), message);
+
+        if (cluster != null) {
+            cluster.publish(ClusterEvent.broadcast(message));
+        }
+        return true;
+    }
+
+    private void deliverToRoomMembers(Room room, Message message) {
+        if (room == null) {
+            return;
+        }
+
+        for (int userId : room.getMembers()) {
+            List<ClientHandler> connections = clientsByUserId.get(userId);
+            if (connections != null) {
+                for (ClientHandler client : connections) {
+                    client.sendMessage(message);
+                }
+            }
+        }
+    }
+
+    // Dołączenie do pokoju (tworzy pokój, jeśli nie istnieje). Null przy błędzie.
+    public Room joinRoom(User user, String roomName) {
+        Room room = rooms.join(roomName, user.getId());
+
+        if (room != null && cluster != null) {
+            cluster.publish(ClusterEvent.roomMembership(room.getId(), room.getName(), user.getId(), true));
+        }
+        return room;
+    }
+
+    public Room leaveRoom(User user, String roomName) {
+        Room room = rooms.leave(roomName, user.getId());
+
+        if (room != null && cluster != null) {
+            cluster.publish(ClusterEvent.roomMembership(room.getId(), room.getName(), user.getId(), false));
+        }
+        return room;
+    }
+
+    // Doręczenie wiadomości prywatnej odbiorcy połączonemu z tym węzłem. Jeśli go tu nie ma,
+    // a serwer pracuje w klastrze, wiadomość trafia do pozostałych węzłów. Zwraca true przy doręczeniu lokalnym.
+    public boolean deliverPrivateMessage(Message message) {
+        if (deliverToLocalReceiver(message)) {
+            return true;
+        }
+
+        if (cluster != null) {
+            cluster.publish(ClusterEvent.privateMessage(message));
+        }
+        return false;
+    }
+
+    private boolean deliverToLocalReceiver(Message message) {
+        String receiverName = message.getReceiver().getUsername();
 
-        // Dodaj wszystkich aktualnie zalogowanych użytkowników
         for (ClientHandler client : clients) {
-            if (client.getUser() != null && client != excludeClient) {
+            if (client.getUser() != null && client.getUser().getUsername().equals(receiverName)) {
+                client.sendMessage(message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Zdarzenia z pozostałych węzłów klastra (wątki transportu)
+    private void onClusterEvent(ClusterEvent event) {
+        switch (event.getType()) {
+            case BROADCAST:
+                indexRemoteMessage(event.getMessage());
+                // Wzmianki zapisał węzeł nadawcy - tutaj tylko powiadomienie połączonych wspomnianych
+                notifyMentioned(event.getMessage(), findMentions(event.getMessage()));
+                if (event.getMessage().isRoomMessage()) {
+                    // Po nazwie - identyfikatory pokojów w osobnych magazynach węzłów mogą się różnić
+                    deliverToRoomMembers(rooms.get(event.getMessage().getRoomName()), event.getMessage());
+                } else {
+                    deliverToLocalClients(event.getMessage());
+                }
+                break;
+            case PRIVATE:
+                indexRemoteMessage(event.getMessage());
+                deliverToLocalReceiver(event.getMessage());
+                break;
+            case PRESENCE:
+                RemotePresence previous = remotePresence.put(event.getOriginNode(),
+                        new RemotePresence(event.getOnlineUsers()));
+                if (previous == null || !previous.usernames.equals(event.getOnlineUsers())) {
+                    refreshUserLists();
+                }
+                break;
+            case ROOM_MEMBERSHIP:
+                rooms.applyRemoteMembership(event.getRoomId(), event.getRoomName(), event.getUserId(), event.isJoined());
+                break;
+            case USER_REGISTERED:
+                userDirectory.add(event.getUsername());
+                // Identyfikator z innego węzła jest ważny tylko przy wspólnej bazie
+                if (storage.isPersistent()) {
+                    mentionMatcher.add(new User(event.getUserId(), event.getUsername()));
+                }
+                break;
+        }
+    }
+
+    // Przy wspólnej bazie wiadomość zapisana na innym węźle ma właściwy identyfikator - trafia do lokalnego
+    // indeksu wyszukiwania. Magazyny w pamięci są osobne dla każdego węzła, więc tam indeks pozostaje lokalny.
+    private void indexRemoteMessage(Message message) {
+        if (storage.isPersistent()) {
+            searchIndex.add(message);
+        }
+    }
+
+    // Okresowe ogłaszanie listy zalogowanych (naprawia stan po zerwanych połączeniach między węzłami)
+    // i usuwanie wpisów węzłów, które przestały się odzywać
+    private void schedulePresenceRefresh() {
+        timerWheel.schedule(() -> {
+            if (!running) {
+                return;
+            }
+
+            publishPresence();
+
+            long staleBefore = System.currentTimeMillis() - 3L * Config.CLUSTER_PRESENCE_INTERVAL_MS;
+            if (remotePresence.values().removeIf(presence -> presence.updatedAt < staleBefore)) {
+                refreshUserLists();
+            }
+
+            schedulePresenceRefresh();
+        }, Config.CLUSTER_PRESENCE_INTERVAL_MS);
+    }
+
+    private void publishPresence() {
+        if (cluster == null) {
+            return;
+        }
+
+        List<String> usernames = new ArrayList<>();
+        for (ClientHandler client : clients) {
+            if (client.getUser() != null) {
                 usernames.add(client.getUser().getUsername());
             }
         }
+        cluster.publish(ClusterEvent.presence(usernames));
+    }
+
+    // Zapis wiadomości w bazie wraz z aktualizacją indeksu wyszukiwania i zapisem wzmianek
+    public boolean saveMessage(Message message) {
+        boolean saved = timed(() -> messageStore.saveMessage(message));
+
+        if (saved) {
+            searchIndex.add(message);
+            recordMentions(message);
+        }
 
-        // Dodaj także użytkowników z bazy danych
-        for (User user : dbManager.getAllUsers()) {
-            if (excludeClient == null ||
-                    (excludeClient.getUser() != null && !user.getUsername().equals(excludeClient.getUser().getUsername()))) {
-                if (!usernames.contains(user.getUsername())) {
-                    usernames.add(user.getUsername());
+        return saved;
+    }
+
+    // Trwałe sprawdzenie klucza idempotencji - także wiadomości zapisane przed restartem lub przez inny węzeł
+    public boolean isClientMessageSaved(User sender, String clientId) {
+        return timed(() -> messageStore.isClientMessageSaved(sender.getId(), clientId));
+    }
+
+    // Wzmianki są zapisywane razem z wiadomością, a wspomniani połączeni z tym węzłem dostają powiadomienie
+    private void recordMentions(Message message) {
+        List<User> mentioned = findMentions(message);
+        if (mentioned.isEmpty()) {
+            return;
+        }
+
+        List<Integer> userIds = new ArrayList<>();
+        for (User user : mentioned) {
+            userIds.add(user.getId());
+        }
+        if (timed(() -> mentionStore.saveMentions(message.getId(), userIds))) {
+            metrics.mentionsRecorded(userIds.size());
+        }
+        notifyMentioned(message, mentioned);
+    }
+
+    // Wspomniani, którzy mogą zobaczyć wiadomość: w pokoju jego członkowie, w rozmowie prywatnej tylko
+    // odbiorca. Nadawca wspominający samego siebie jest pomijany (po nazwie - jak przy rozsyłaniu).
+    private List<User> findMentions(Message message) {
+        List<User> mentioned = mentionMatcher.find(message.getContent());
+        Room room = message.isRoomMessage() ? rooms.get(message.getRoomName()) : null;
+
+        mentioned.removeIf(user -> user.getUsername().equals(message.getSender().getUsername()) ||
+                (message.isPrivate() && !user.getUsername().equals(message.getReceiver().getUsername())) ||
+                (message.isRoomMessage() && (room == null || !room.contains(user.getId()))));
+        return mentioned;
+    }
+
+    // Wiadomość prywatna sama trafia tylko do wspomnianego odbiorcy - powiadomienie dotyczy czatu ogólnego i pokojów
+    private void notifyMentioned(Message message, List<User> mentioned) {
+        if (message.isPrivate()) {
+            return;
+        }
+
+        for (User user : mentioned) {
+            List<ClientHandler> connections = clientsByUserId.get(user.getId());
+            if (connections != null) {
+                for (ClientHandler client : connections) {
+                    client.sendMentionNotification(message);
+                    metrics.mentionNotificationSent();
+                }
+            }
+        }
+    }
+
+    public List<Message> searchMessages(User requester, String query) {
+        List<Integer> ids = searchIndex.search(query, requester.getId(),
+                roomId -> rooms.isMember(roomId, requester.getId()), Config.SEARCH_RESULT_LIMIT);
+        List<Message> messages = getMessagesByIds(ids);
+        messages.sort((a, b) -> Integer.compare(b.getId(), a.getId()));
+        return messages;
+    }
+
+    // Strona listy wzmianek użytkownika (rosnąco): odczyt po kluczu magazynu wzmianek, a treść wiadomości
+    // po identyfikatorach. Wzmianki z pokojów, które użytkownik opuścił, są pomijane - jak w wyszukiwaniu.
+    public List<Message> getMentions(User requester, int beforeId, int limit) {
+        List<Integer> ids = timed(() -> mentionStore.getMentionedMessageIds(requester.getId(), beforeId, limit));
+        List<Message> messages = getMessagesByIds(ids);
+
+        messages.removeIf(message -> message.isRoomMessage() && !rooms.isMember(message.getRoomId(), requester.getId()));
+        messages.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return messages;
+    }
+
+    private List<Message> getMessagesByIds(List<Integer> ids) {
+        List<Message> messages = timed(() -> messageStore.getMessagesByIds(ids));
+
+        // Wiadomości przeniesione do archiwum nie są już w bazie - doczytaj je z archiwum
+        if (archive != null && messages.size() < ids.size()) {
+            List<Integer> missing = new ArrayList<>(ids);
+            for (Message message : messages) {
+                missing.remove(Integer.valueOf(message.getId()));
+            }
+            messages.addAll(archive.getMessagesByIds(missing));
+        }
+
+        return messages;
+    }
+
+    // Strona starszej historii rozmowy: najpierw z bazy, a gdy ta się skończy - z archiwum.
+    // Dla czatu ogólnego otherUser = null.
+    public List<Message> getOlderMessages(User requester, User otherUser, int beforeId, int limit) {
+        int user1Id = otherUser != null ? requester.getId() : 0;
+        int user2Id = otherUser != null ? otherUser.getId() : 0;
+
+        List<Message> messages = timed(() -> messageStore.getMessagesBefore(user1Id, user2Id, beforeId, limit));
+
+        if (archive != null && messages.size() < limit) {
+            int archiveBeforeId = messages.isEmpty() ? beforeId : messages.get(0).getId();
+            List<Message> archived = archive.getMessagesBefore(user1Id, user2Id, archiveBeforeId, limit - messages.size());
+            archived.addAll(messages);
+            messages = archived;
+        }
+
+        return messages;
+    }
+
+    // Strona historii pokoju: najpierw z bazy, potem z archiwum
+    public List<Message> getOlderRoomMessages(Room room, int beforeId, int limit) {
+        List<Message> messages = timed(() -> messageStore.getRoomMessagesBefore(room.getId(), beforeId, limit));
+
+        if (archive != null && messages.size() < limit) {
+            int archiveBeforeId = messages.isEmpty() ? beforeId : messages.get(0).getId();
+            List<Message> archived = archive.getRoomMessagesBefore(room.getId(), archiveBeforeId, limit - messages.size());
+            archived.addAll(messages);
+            messages = archived;
+        }
+
+        return messages;
+    }
+
+    public List<Message> getRecentMessages(int limit) {
+        return timed(() -> messageStore.getRecentMessages(limit));
+    }
+
+    // Wiadomości widoczne dla użytkownika (czat ogólny, jego rozmowy prywatne, jego pokoje) o id > afterId,
+    // rosnąco. Null, jeśli jest ich więcej niż maxMessages albo trzeba by przejrzeć więcej niż
+    // SYNC_SCAN_LIMIT wiadomości - klient jest wtedy za daleko w tyle na synchronizację różnicową.
+    public List<Message> getMessagesSince(User requester, int afterId, int maxMessages) {
+        List<Message> visible = new ArrayList<>();
+        int cursor = afterId;
+        int scanned = 0;
+
+        while (scanned < Config.SYNC_SCAN_LIMIT) {
+            int from = cursor;
+            List<Message> page = timed(() -> messageStore.getMessagesAfter(from, Config.SYNC_SCAN_BATCH));
+
+            for (Message message : page) {
+                if (isVisibleTo(message, requester)) {
+                    if (visible.size() == maxMessages) {
+                        return null;
+                    }
+                    visible.add(message);
+                }
+            }
+
+            if (page.size() < Config.SYNC_SCAN_BATCH) {
+                return visible;
+            }
+
+            scanned += page.size();
+            cursor = page.get(page.size() - 1).getId();
+        }
+
+        return null;
+    }
+
+    private boolean isVisibleTo(Message message, User user) {
+        if (message.isRoomMessage()) {
+            return rooms.isMember(message.getRoomId(), user.getId());
+        }
+        if (message.isPrivate()) {
+            return message.getSender().getId() == user.getId() || message.getReceiver().getId() == user.getId();
+        }
+        return true;
+    }
+
+    public List<Message> getPrivateMessages(User requester, User otherUser, int limit) {
+        return timed(() -> messageStore.getPrivateMessages(requester.getId(), otherUser.getId(), limit));
+    }
+
+    // Zmiana listy zalogowanych na tym węźle
+    private void presenceChanged() {
+        publishPresence();
+        refreshUserLists();
+    }
+
+    // Przy przeciążeniu kolejne zmiany są sklejane w jedną wysyłkę co PRESENCE_COALESCE_MS -
+    // rozsyłanie listy kosztuje zapytanie i ramkę na każdego klienta.
+    private void refreshUserLists() {
+        if (!governor.isAtLeast(OverloadGovernor.Level.COALESCE_PRESENCE)) {
+            sendUserListToAll();
+            return;
+        }
+
+        metrics.presenceUpdateCoalesced();
+
+        if (presenceBroadcastPending.compareAndSet(false, true)) {
+            timerWheel.schedule(() -> {
+                presenceBroadcastPending.set(false);
+                try {
+                    // Poza wątkiem koła - wysyłka odpytuje magazyn
+                    outboundPool.execute(this::sendUserListToAll);
+                } catch (RejectedExecutionException e) {
+                    // Serwer jest zatrzymywany
                 }
+            }, Config.PRESENCE_COALESCE_MS);
+        }
+    }
+
+    // Zalogowani na tym i pozostałych węzłach klastra, bez powtórzeń
+    private List<String> getOnlineUsernames() {
+        Set<String> usernames = new LinkedHashSet<>();
+
+        for (ClientHandler client : clients) {
+            if (client.getUser() != null) {
+                usernames.add(client.getUser().getUsername());
             }
         }
 
-        return usernames;
+        for (RemotePresence presence : remotePresence.values()) {
+            usernames.addAll(presence.usernames);
+        }
+
+        return new ArrayList<>(usernames);
+    }
+
+    public void sendUserList(ClientHandler client) {
+        client.sendUserList(getOnlineUsernames());
     }
 
+    // Lista jest wyznaczana raz dla wszystkich klientów; każdy klient pomija na niej siebie przy wysyłce
     public void sendUserListToAll() {
         try {
             Logger.debug("Wysyłanie listy użytkowników do wszystkich klientów");
 
+            List<String> online = getOnlineUsernames();
+
             for (ClientHandler client : clients) {
                 if (client.getUser() != null) {
-                    // Filtruj listę dla każdego klienta, aby nie widział siebie
-                    List<String> filteredUsernames = getUsernameList(client);
-                    client.sendUserList(filteredUsernames);
+                    client.sendUserList(online);
                 }
             }
         } catch (Exception e) {
@@ -110,16 +739,37 @@ public class ChatServer implements AutoCloseable {
         }
     }
 
+    // Pozostali użytkownicy są wyszukiwani w katalogu, strona po stronie
+    public UserPage searchUsers(String prefix, String afterCursor) {
+        return userDirectory.search(prefix, afterCursor, Config.USER_SEARCH_PAGE_SIZE);
+    }
+
+    public void userRegistered(User user) {
+        userDirectory.add(user.getUsername());
+        mentionMatcher.add(user);
+
+        if (cluster != null) {
+            cluster.publish(ClusterEvent.userRegistered(user.getId(), user.getUsername()));
+        }
+    }
+
     public void addClient(ClientHandler client) {
         clients.add(client);
+        clientsByUserId.computeIfAbsent(client.getUser().getId(), id -> new CopyOnWriteArrayList<>()).add(client);
         Logger.info("Nowy klient połączony. Aktywnych klientów: " + clients.size());
-        sendUserListToAll();
+        presenceChanged();
     }
 
     public void removeClient(ClientHandler client) {
-        clients.remove(client);
-        Logger.info("Klient rozłączony. Aktywnych klientów: " + clients.size());
-        sendUserListToAll();
+        // Połączenia zamknięte przed zalogowaniem nie były zarejestrowane
+        if (clients.remove(client)) {
+            clientsByUserId.computeIfPresent(client.getUser().getId(), (id, connections) -> {
+                connections.remove(client);
+                return connections.isEmpty() ? null : connections;
+            });
+            Logger.info("Klient rozłączony. Aktywnych klientów: " + clients.size());
+            presenceChanged();
+        }
     }
 
     @Override
@@ -131,8 +781,15 @@ public class ChatServer implements AutoCloseable {
             client.close();
         }
         clients.clear();
+        clientsByUserId.clear();
 
-        // Zamknięcie puli wątków
+        // Zamknięcie pul wątków
+        handshakePool.shutdownNow();
+        outboundPool.shutdownNow();
+        conversations.close();
+        authService.close();
+        flushScheduler.shutdownNow();
+        timerWheel.close();
         threadPool.shutdown();
 
         // Zamknięcie gniazda serwera
@@ -144,16 +801,88 @@ public class ChatServer implements AutoCloseable {
             Logger.error("Błąd podczas zamykania serwera: " + e.getMessage());
         }
 
-        // Zamknięcie połączenia z bazą danych
-        if (dbManager != null) {
-            dbManager.close();
+        attachmentServer.close();
+        attachments.close();
+
+        // Odłączenie od klastra
+        if (cluster != null) {
+            cluster.close();
+        }
+
+        // Zatrzymanie archiwizacji
+        if (retentionJob != null) {
+            retentionJob.close();
+        }
+
+        // Zapis indeksu wyszukiwania
+        if (searchIndex != null) {
+            searchIndex.close();
+        }
+
+        // Zamknięcie magazynu danych
+        if (storage != null) {
+            storage.close();
         }
 
         Logger.info("Serwer zatrzymany");
     }
 
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    public AuthService getAuthService() {
+        return authService;
+    }
+
+    public MessageStore getMessageStore() {
+        return messageStore;
+    }
+
+    // Null, jeśli serwer nie korzysta z bazy H2
     public DatabaseManager getDbManager() {
-        return dbManager;
+        return storage.getDbManager();
+    }
+
+    public AttachmentStore getAttachments() {
+        return attachments;
+    }
+
+    public AttachmentServer getAttachmentServer() {
+        return attachmentServer;
+    }
+
+    public RoomRegistry getRooms() {
+        return rooms;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public IdempotencyKeys getIdempotencyKeys() {
+        return idempotencyKeys;
+    }
+
+    public OverloadGovernor getGovernor() {
+        return governor;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Podsumowanie stanu serwera dla panelu administracyjnego
+    public String getMetricsReport() {
+        return governor.describe() +
+                (cluster != null ? cluster.describe() : "") +
+                "Aktywni klienci: " + clients.size() + "\n" +
+                "Pokoje: " + rooms.size() + "\n" +
+                "Użytkownicy w katalogu: " + userDirectory.size() + "\n" +
+                "Ramki w kolejkach wyjściowych i rozmów: " + getQueuedFrames() + "\n" +
+                "Aktywne kolejki rozmów: " + conversations.getActiveConversations() + "\n" +
+                "Oczekujące logowania: " + authService.getQueueDepth() + "\n" +
+                metrics.describe();
     }
 
     public List<ClientHandler> getClients() {
@@ -162,7 +891,10 @@ public class ChatServer implements AutoCloseable {
     public static void main(String[] args) {
         Logger.setMinLevel(Logger.LogLevel.INFO);
         System.out.println("Uruchamianie serwera czatu...");
-        ChatServer server = new ChatServer();
+
+        // Opcjonalny argument: typ magazynu ("h2" lub "memory")
+        String storageType = args.length > 0 ? args[0] : Config.STORAGE_TYPE;
+        ChatServer server = new ChatServer(Storage.create(storageType), ClusterBus.fromConfig());
         server.start();
     }
 }
\ No newline at end of file
@@ -1,66 +1,148 @@
 package com.chatapp.server.network;
 
+import com.chatapp.common.compression.CompressionDictionary;
+import com.chatapp.common.compression.FrameCompressor;
 import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Attachment;
+import com.chatapp.common.model.CompressedFrame;
+import com.chatapp.common.model.AuthRequest;
+import com.chatapp.common.model.FileChunk;
 import com.chatapp.common.model.Message;
+import com.chatapp.common.model.MessageBatch;
 import com.chatapp.common.model.User;
+import com.chatapp.common.model.UserPage;
+import com.chatapp.server.attachment.AttachmentServer;
+import com.chatapp.server.room.Room;
+import com.chatapp.server.room.RoomRegistry;
 import com.chatapp.util.Logger;
 
+import javax.net.ssl.SSLSocket;
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 public class ClientHandler implements Runnable, AutoCloseable {
     private final Socket socket;
     private final ChatServer server;
     private ObjectInputStream input;
     private ObjectOutputStream output;
+    private CoalescingOutputStream socketOutput;
+    private OutboundQueue outbound;
     private User user;
-    private boolean running;
+    // Czego klient potrzebuje po zalogowaniu - wysyłane na początku sesji bez czekania na żądania
+    private AuthRequest loginRequest;
+    // Kompresja dużych ramek, jeśli klient zgłosił ten sam słownik (null - bez kompresji); chroniona writeLock
+    private FrameCompressor compressor;
+    private volatile boolean running;
 
+    // Utrzymanie połączenia: czas ostatniego odczytu od klienta
+    private final Object writeLock = new Object();
+    private volatile long lastReadAt;
+    private volatile TimerWheel.Timeout livenessCheck;
+
+    // Kolejne odrzucenia przez limit częstotliwości (zerowane po dozwolonej operacji)
+    private int consecutiveViolations;
+
+    // Rozpoczęte wysyłki załączników (suma SHA-256 -> zgłoszony rozmiar); tylko wątek czytający
+    private final Map<String, Long> uploads = new HashMap<>();
+
+    // Konstruktor wywoływany w wątku akceptującym - nie wykonuje żadnych operacji we/wy
     public ClientHandler(Socket socket, ChatServer server) {
         this.socket = socket;
         this.server = server;
         this.running = true;
+    }
+
+    // Etap 2: nawiązanie strumieni i autoryzacja w puli handshake, z twardym limitem czasu.
+    // Klient jest rejestrowany na serwerze dopiero po udanym logowaniu, a obsługa sesji
+    // przechodzi wtedy do puli wątków klientów.
+    public void handshake() {
+        TimerWheel.Timeout deadline = server.scheduleHandshakeDeadline(this);
+        boolean sessionStarted = false;
 
         try {
+            socket.setSoTimeout(Config.HANDSHAKE_TIMEOUT_MS);
+
+            // Uzgadnianie TLS w puli handshake, a nie w wątku akceptującym - wolny klient nie blokuje
+            // przyjmowania kolejnych połączeń, a limit czasu obejmuje także TLS
+            if (socket instanceof SSLSocket) {
+                long start = System.nanoTime();
+                ((SSLSocket) socket).startHandshake();
+                server.getMetrics().tlsHandshakeCompleted(System.nanoTime() - start);
+            }
+
             // Inicjalizacja strumieni we/wy
-            output = new ObjectOutputStream(socket.getOutputStream());
+            socketOutput = server.createOutputStream(socket);
+            output = new ObjectOutputStream(socketOutput);
             output.flush();
-            input = new ObjectInputStream(socket.getInputStream());
-
-            // Dodaj klienta do serwera
-            server.addClient(this);
-        } catch (IOException e) {
-            Logger.error("Błąd podczas inicjalizacji strumieni: " + e.getMessage());
-            close();
-        }
-    }
+            input = new ObjectInputStream(new BufferedInputStream(socket.getInputStream(), Config.INPUT_BUFFER_SIZE));
+            outbound = server.createOutboundQueue(this::writeFrame, socketOutput::flushDeferred, this::close);
+            socketOutput.setFlushHandoff(outbound::requestFlush);
 
-    @Override
-    public void run() {
-        try {
             // Autoryzacja/rejestracja
             Object obj = input.readObject();
 
+            // Przy najwyższym poziomie przeciążenia logowania są spowalniane - ograniczona pula handshake
+            // przyjmuje wtedy mniej nowych klientów, a zalogowani zachowują zasoby
+            if (server.getGovernor().isAtLeast(OverloadGovernor.Level.SLOW_LOGINS)) {
+                server.getMetrics().loginDelayed();
+                delayLogin();
+            }
+
             if (isRegistrationRequest(obj)) {
                 handleRegistration((Message) obj);
-                return;
-            } else if (obj instanceof User) {
-                // Logowanie
-                if (!handleAuthentication((User) obj)) {
-                    return;
+            } else if (obj instanceof AuthRequest || obj instanceof User) {
+                // Logowanie (starsi klienci wysyłają samego użytkownika - dostają listę użytkowników bez historii)
+                AuthRequest request = obj instanceof AuthRequest ? (AuthRequest) obj :
+                        new AuthRequest(((User) obj).getUsername(), ((User) obj).getPassword());
+
+                if (handleAuthentication(request) && deadline.cancel()) {
+                    socket.setSoTimeout(0);
+
+                    // Dodaj klienta do serwera i przekaż sesję do puli klientów
+                    server.addClient(this);
+                    server.startSession(this);
+                    sessionStarted = true;
                 }
-
-                // Wysyłanie historii i listy użytkowników
-                sendMessageHistory();
-                sendUserList(server.getUsernameList(this));
-
-                // Główna pętla obsługi wiadomości
-                processMessages();
             } else {
                 // Nieznany typ obiektu
                 sendAuthenticationFailure();
             }
+        } catch (SocketTimeoutException e) {
+            Logger.warn("Przekroczono czas nawiązywania połączenia: " + socket.getInetAddress().getHostAddress());
+            // Licznik zwiększa tylko ten mechanizm (odczyt lub koło czasowe), który zadziałał pierwszy
+            if (deadline.cancel()) {
+                server.getMetrics().handshakeTimedOut();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            Logger.error("Błąd podczas nawiązywania połączenia: " + e.getMessage());
+        } finally {
+            deadline.cancel();
+
+            if (!sessionStarted) {
+                close();
+            }
+        }
+    }
+
+    // Etap 3: sesja zalogowanego użytkownika
+    @Override
+    public void run() {
+        try {
+            lastReadAt = System.currentTimeMillis();
+            scheduleLivenessCheck();
+
+            // Odpowiedź na logowanie jednym strumieniem: klient podał w ramce logowania, czego potrzebuje,
+            // więc lista użytkowników, pokoje i historia idą od razu, bez kolejnych żądań
+            sendLoginResponse();
+
+            // Główna pętla obsługi wiadomości
+            processMessages();
         } catch (IOException | ClassNotFoundException e) {
             Logger.error("Klient rozłączony: " + e.getMessage());
         } finally {
@@ -68,6 +150,14 @@ public class ClientHandler implements Runnable, AutoCloseable {
         }
     }
 
+    private void delayLogin() {
+        try {
+            Thread.sleep(Config.GOVERNOR_LOGIN_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private boolean isRegistrationRequest(Object obj) {
         return obj instanceof Message &&
                 ((Message) obj).getContent() != null &&
@@ -77,39 +167,47 @@ public class ClientHandler implements Runnable, AutoCloseable {
     private void handleRegistration(Message registerMsg) throws IOException {
         User credentials = registerMsg.getSender();
 
-        // Próba rejestracji
-        User registeredUser = server.getDbManager().registerUser(
-                credentials.getUsername(),
-                credentials.getPassword()
-        );
+        // Próba rejestracji (nazwa z prefiksem pokoju byłaby nieodróżnialna od klucza rozmowy w pokoju)
+        User registeredUser = credentials.getUsername().startsWith(Config.ROOM_KEY_PREFIX) ? null :
+                server.getAuthService().register(
+                        credentials.getUsername(),
+                        credentials.getPassword(),
+                        Config.HANDSHAKE_TIMEOUT_MS
+                );
+
+        if (registeredUser != null) {
+            server.userRegistered(registeredUser);
+        }
 
-        // Wyślij odpowiedź
+        // Wyślij odpowiedź (połączenie zostanie zamknięte po zakończeniu handshake)
         output.writeObject(registeredUser);
         output.flush();
-
-        // Zamknij połączenie po rejestracji
-        close();
     }
 
-    private boolean handleAuthentication(User credentials) throws IOException {
-        // Próba autoryzacji
-        User authenticatedUser = server.getDbManager().authenticateUser(
-                credentials.getUsername(),
-                credentials.getPassword()
+    private boolean handleAuthentication(AuthRequest request) throws IOException {
+        // Próba autoryzacji - skrót hasła liczony w puli uwierzytelniania
+        User authenticatedUser = server.getAuthService().authenticate(
+                request.getUsername(),
+                request.getPassword(),
+                Config.HANDSHAKE_TIMEOUT_MS
         );
 
         if (authenticatedUser != null) {
             // Autoryzacja powiodła się
             this.user = authenticatedUser;
+            this.loginRequest = request;
+
+            if (Config.COMPRESSION_ENABLED && request.getCompressionDictionaryId() == CompressionDictionary.id()) {
+                synchronized (writeLock) {
+                    compressor = new FrameCompressor();
+                }
+            }
 
             // Wyślij potwierdzenie do klienta
             output.writeObject(authenticatedUser);
             output.flush();
 
             Logger.info("Użytkownik zalogowany: " + user.getUsername());
-
-            // Wyślij zaktualizowaną listę użytkowników
-            server.sendUserListToAll();
             return true;
         } else {
             // Autoryzacja nie powiodła się
@@ -127,31 +225,162 @@ public class ClientHandler implements Runnable, AutoCloseable {
     private void processMessages() throws IOException, ClassNotFoundException {
         while (running) {
             Object obj = input.readObject();
+            lastReadAt = System.currentTimeMillis();
 
             if (obj instanceof Message) {
-                Message message = (Message) obj;
-                String content = message.getContent();
-
-                if (content != null) {
-                    if (content.equals(Config.CMD_GET_USER_LIST)) {
-                        handleUserListRequest();
-                    } else if (content.startsWith(Config.CMD_GET_PRIVATE_HISTORY)) {
-                        handlePrivateHistoryRequest(content);
-                    } else if (message.isPrivate()) {
-                        handlePrivateMessage(message);
-                    } else {
-                        // Standardowa wiadomość publiczna
-                        sendMessage(message);  // Wyślij kopię do nadawcy
-                        server.broadcastMessage(message);  // Broadcast do innych
-                    }
+                handleFrame((Message) obj);
+            } else if (obj instanceof MessageBatch && ((MessageBatch) obj).getType() == MessageBatch.Type.OUTBOX) {
+                handleOutbox((MessageBatch) obj);
+            } else if (obj instanceof FileChunk && checkRateLimit(RateLimiter.Operation.ATTACHMENT_CHUNK)) {
+                // Odrzucony fragment psuje kolejność - klient wznowi wysyłkę od potwierdzonej długości
+                handleFileChunk((FileChunk) obj);
+            }
+        }
+    }
+
+    // Kolejka nadawcza klienta po ponownym połączeniu - wiadomości w kolejności nadania. Po pierwszym
+    // odrzuceniu przez limit reszta nie jest przetwarzana (jedno odrzucenie zamiast serii prowadzącej
+    // do rozłączenia); klient wyśle niepotwierdzone wiadomości ponownie po czasie z ramki THROTTLED.
+    private void handleOutbox(MessageBatch batch) throws IOException {
+        Logger.debug("Kolejka nadawcza od " + user.getUsername() + ": " + batch.getMessages().size() + " wiadomości");
+        server.getMetrics().outboxReceived(batch.getMessages().size());
+
+        for (Message message : batch.getMessages()) {
+            if (!running || !handleFrame(message)) {
+                break;
+            }
+        }
+    }
+
+    // Zwraca false, jeśli ramka została odrzucona przez limit lub przy przeciążeniu
+    private boolean handleFrame(Message message) throws IOException {
+        String content = message.getContent();
+
+        if (content != null) {
+            if (content.equals(Config.CMD_PONG)) {
+                // Odpowiedź na ping - wystarczy odnotowany odczyt
+                return true;
+            }
+
+            String clientId = message.getClientId();
+            if (clientId != null && clientId.length() > Config.CLIENT_ID_MAX_LENGTH) {
+                // Klucz nie zmieściłby się w magazynie - wiadomość bez deduplikacji zamiast utraconej
+                Logger.warn("Zbyt długi klucz wiadomości od " + user.getUsername() + " - pominięty");
+                message.setClientId(null);
+                clientId = null;
+            }
+
+            RateLimiter.Operation operation = operationOf(message);
+            if (!checkRateLimit(operation) || rejectedByGovernor(operation)) {
+                return false;
+            }
+
+            if (content.equals(Config.CMD_GET_USER_LIST)) {
+                handleUserListRequest();
+            } else if (content.startsWith(Config.CMD_GET_PRIVATE_HISTORY)) {
+                handlePrivateHistoryRequest(content);
+            } else if (content.startsWith(Config.CMD_SEARCH_MESSAGES)) {
+                handleSearchRequest(content);
+            } else if (content.startsWith(Config.CMD_SEARCH_USERS)) {
+                handleUserSearchRequest(content);
+            } else if (content.startsWith(Config.CMD_GET_OLDER_HISTORY)) {
+                handleOlderHistoryRequest(content);
+            } else if (content.startsWith(Config.CMD_GET_HISTORY_SINCE)) {
+                handleHistorySinceRequest(content);
+            } else if (content.startsWith(Config.CMD_GET_MENTIONS)) {
+                handleMentionsRequest(content);
+            } else if (content.startsWith(Config.CMD_JOIN_ROOM)) {
+                handleJoinRoom(content.substring(Config.CMD_JOIN_ROOM.length()));
+            } else if (content.startsWith(Config.CMD_LEAVE_ROOM)) {
+                handleLeaveRoom(content.substring(Config.CMD_LEAVE_ROOM.length()));
+            } else if (content.startsWith(Config.CMD_UPLOAD_BEGIN)) {
+                handleUploadBegin(content.substring(Config.CMD_UPLOAD_BEGIN.length()));
+            } else if (content.startsWith(Config.CMD_DOWNLOAD)) {
+                handleDownloadRequest(content.substring(Config.CMD_DOWNLOAD.length()));
+            } else if (isMissingAttachment(message)) {
+                Logger.warn("Wiadomość od " + user.getUsername() + " wskazuje nieistniejący załącznik: " + content);
+                if (clientId != null) {
+                    sendSystemMessage(Config.OUTBOX_ACK_PREFIX + clientId);
                 }
+            } else if (message.isRoomMessage()) {
+                handleRoomMessage(message);
+            } else if (message.isPrivate()) {
+                handlePrivateMessage(message);
+            } else {
+                handlePublicMessage(message);
             }
         }
+
+        return true;
+    }
+
+    // Wyszukiwanie i dołączenie do pokoju (wysyła historię) obciążają serwer podobnie jak historia - wspólny limit.
+    // Opuszczenie pokoju jest tanie i nie może być odrzucane przy przeciążeniu. Synchronizacja po zalogowaniu
+    // zastępuje historię wysyłaną dawniej bezwarunkowo przy logowaniu - też nie jest odrzucana.
+    private RateLimiter.Operation operationOf(Message message) {
+        String content = message.getContent();
+
+        if (content.equals(Config.CMD_GET_USER_LIST) || content.startsWith(Config.CMD_LEAVE_ROOM) ||
+                content.startsWith(Config.CMD_GET_HISTORY_SINCE)) {
+            return RateLimiter.Operation.USER_LIST;
+        } else if (content.startsWith(Config.CMD_GET_PRIVATE_HISTORY) ||
+                content.startsWith(Config.CMD_SEARCH_MESSAGES) ||
+                content.startsWith(Config.CMD_SEARCH_USERS) ||
+                content.startsWith(Config.CMD_GET_OLDER_HISTORY) ||
+                content.startsWith(Config.CMD_GET_MENTIONS) ||
+                content.startsWith(Config.CMD_JOIN_ROOM) ||
+                content.startsWith(Config.CMD_UPLOAD_BEGIN) ||
+                content.startsWith(Config.CMD_DOWNLOAD)) {
+            return RateLimiter.Operation.HISTORY;
+        } else if (message.isPrivate()) {
+            return RateLimiter.Operation.PRIVATE_MESSAGE;
+        }
+        return RateLimiter.Operation.PUBLIC_MESSAGE;
+    }
+
+    // Zwraca false, jeśli operacja przekracza limit - klient dostaje wtedy ramkę THROTTLED,
+    // a po zbyt wielu kolejnych odrzuceniach połączenie jest zamykane
+    private boolean checkRateLimit(RateLimiter.Operation operation) throws IOException {
+        long retryAfterMs = server.getRateLimiter().tryAcquire(user.getId(), operation);
+
+        if (retryAfterMs == 0) {
+            consecutiveViolations = 0;
+            return true;
+        }
+
+        server.getMetrics().operationRateLimited(operation);
+
+        if (++consecutiveViolations >= Config.RATE_LIMIT_MAX_VIOLATIONS) {
+            Logger.warn("Użytkownik " + user.getUsername() + " przekroczył limit " + consecutiveViolations +
+                    " razy z rzędu - zamykanie połączenia");
+            server.getMetrics().rateLimitDisconnect();
+            running = false;
+            return false;
+        }
+
+        // Ramka zwrotna tylko przy pierwszym odrzuceniu w serii, aby nie wzmacniać zalewu
+        if (consecutiveViolations == 1) {
+            Logger.debug("Limit " + operation + " dla " + user.getUsername() + ", ponowienie za " + retryAfterMs + " ms");
+            sendSystemMessage(Config.THROTTLED_PREFIX + operation + ":" + retryAfterMs);
+        }
+        return false;
+    }
+
+    // Przy przeciążeniu żądania historii (i wyszukiwania) są odrzucane w pierwszej kolejności
+    private boolean rejectedByGovernor(RateLimiter.Operation operation) {
+        if (operation != RateLimiter.Operation.HISTORY ||
+                !server.getGovernor().isAtLeast(OverloadGovernor.Level.REJECT_HISTORY)) {
+            return false;
+        }
+
+        server.getMetrics().historyRejectedOverload();
+        sendSystemMessage(Config.OVERLOADED_PREFIX + operation + ":" + Config.GOVERNOR_RETRY_AFTER_MS);
+        return true;
     }
 
     private void handleUserListRequest() {
         Logger.debug("Otrzymano żądanie listy użytkowników od " + user.getUsername());
-        sendUserList(server.getUsernameList(this));
+        server.sendUserList(this);
     }
 
     private void handlePrivateHistoryRequest(String content) {
@@ -166,24 +395,282 @@ public class ClientHandler implements Runnable, AutoCloseable {
             }
 
             // Pobierz historię prywatnych wiadomości
-            List<Message> privateMessages = server.getDbManager().getPrivateMessages(
-                    user.getId(), otherUser.getId(), 100);
+            List<Message> privateMessages = server.getPrivateMessages(user, otherUser, 100);
 
-            // Wyślij historię wiadomości
-            for (Message message : privateMessages) {
-                sendMessage(message);
-                Thread.sleep(10);  // Małe opóźnienie dla stabilności
+            // Wyślij historię w paczkach na pasie BULK
+            sendHistoryChunks(otherUsername, privateMessages);
+        } catch (Exception e) {
+            Logger.error("Błąd podczas obsługi żądania historii prywatnych wiadomości: " + e.getMessage());
+        }
+    }
+
+    private void handleSearchRequest(String content) {
+        String query = content.substring(Config.CMD_SEARCH_MESSAGES.length());
+
+        long start = System.nanoTime();
+        List<Message> results = server.searchMessages(user, query);
+        Logger.debug("Wyszukiwanie \"" + query + "\" dla " + user.getUsername() + ": " + results.size() +
+                " wyników w " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        sendBatch(new MessageBatch(MessageBatch.Type.SEARCH_RESULTS, query, results));
+    }
+
+    // Format: GET_MENTIONS:<beforeId> (Integer.MAX_VALUE - najnowsze wzmianki)
+    private void handleMentionsRequest(String content) {
+        String beforeId = content.substring(Config.CMD_GET_MENTIONS.length());
+
+        try {
+            List<Message> mentions = server.getMentions(user, Integer.parseInt(beforeId), Config.MENTIONS_PAGE_SIZE);
+            sendBatch(new MessageBatch(MessageBatch.Type.MENTIONS, beforeId, mentions));
+        } catch (NumberFormatException e) {
+            Logger.warn("Nieprawidłowe żądanie wzmianek od " + user.getUsername() + ": " + content);
+        }
+    }
+
+    // Format: SEARCH_USERS:<prefiks>[<separator><kursor strony>]
+    private void handleUserSearchRequest(String content) {
+        String[] parts = content.substring(Config.CMD_SEARCH_USERS.length())
+                .split(Config.SEARCH_USERS_CURSOR_SEPARATOR, 2);
+        String prefix = parts[0];
+        String cursor = parts.length > 1 && !parts[1].isEmpty() ? parts[1] : null;
+
+        UserPage page = server.searchUsers(prefix, cursor);
+        page.getUsernames().remove(user.getUsername());
+
+        enqueue(page, OutboundQueue.Lane.BULK);
+    }
+
+    // Format: GET_OLDER_HISTORY:<beforeId> dla czatu ogólnego, GET_OLDER_HISTORY:<beforeId>:<użytkownik>
+    // lub GET_OLDER_HISTORY:<beforeId>:#<pokój>
+    private void handleOlderHistoryRequest(String content) {
+        String[] parts = content.substring(Config.CMD_GET_OLDER_HISTORY.length()).split(":", 2);
+
+        try {
+            int beforeId = Integer.parseInt(parts[0]);
+            String otherUsername = parts.length > 1 ? parts[1] : "";
+            User otherUser = null;
+
+            if (otherUsername.startsWith(Config.ROOM_KEY_PREFIX)) {
+                Room room = findMemberRoom(otherUsername.substring(Config.ROOM_KEY_PREFIX.length()));
+                if (room != null) {
+                    List<Message> messages = server.getOlderRoomMessages(room, beforeId, Config.HISTORY_PAGE_SIZE);
+                    sendBatch(new MessageBatch(MessageBatch.Type.OLDER_HISTORY, otherUsername, messages));
+                }
+                return;
             }
 
-            // Oznaczenie końca historii
+            if (!otherUsername.isEmpty()) {
+                otherUser = findUserByUsername(otherUsername);
+                if (otherUser == null) {
+                    return;
+                }
+            }
 
-        } catch (Exception e) {
-            Logger.error("Błąd podczas obsługi żądania historii prywatnych wiadomości: " + e.getMessage());
+            List<Message> messages = server.getOlderMessages(user, otherUser, beforeId, Config.HISTORY_PAGE_SIZE);
+            sendBatch(new MessageBatch(MessageBatch.Type.OLDER_HISTORY, otherUsername, messages));
+        } catch (NumberFormatException e) {
+            Logger.warn("Nieprawidłowe żądanie starszej historii: " + content);
         }
     }
 
+    private void handleJoinRoom(String roomName) {
+        if (!RoomRegistry.isValidName(roomName)) {
+            Logger.warn("Nieprawidłowa nazwa pokoju od " + user.getUsername() + ": " + roomName);
+            return;
+        }
+
+        Room room = server.joinRoom(user, roomName);
+        if (room == null) {
+            return;
+        }
+
+        Logger.debug("Użytkownik " + user.getUsername() + " w pokoju " + room);
+        sendRoomList();
+
+        // Ponowne dołączenie (otwarcie pokoju w oknie klienta) także odsyła historię
+        List<Message> history = server.getOlderRoomMessages(room, Integer.MAX_VALUE, Config.MESSAGE_HISTORY_LIMIT);
+        sendHistoryChunks(Config.ROOM_KEY_PREFIX + room.getName(), history);
+    }
+
+    private void handleLeaveRoom(String roomName) {
+        if (server.leaveRoom(user, roomName) != null) {
+            Logger.debug("Użytkownik " + user.getUsername() + " opuścił pokój #" + roomName);
+        }
+        sendRoomList();
+    }
+
+    // Format: UPLOAD_BEGIN:<sha256>:<rozmiar>. Odpowiedź UPLOAD_OFFSET z liczbą już zapisanych bajtów -
+    // klient wysyła fragmenty od tego miejsca (wznowienie), a przy pełnym rozmiarze nie wysyła nic.
+    private void handleUploadBegin(String request) {
+        String[] parts = request.split(":", 2);
+        String sha256 = parts[0];
+
+        try {
+            long size = Long.parseLong(parts.length > 1 ? parts[1] : "");
+            if (!Attachment.isValidHash(sha256) || size <= 0 || size > Config.ATTACHMENT_MAX_BYTES) {
+                sendUploadFailed(sha256, "Nieprawidłowy plik lub rozmiar powyżej " +
+                        Attachment.formatSize(Config.ATTACHMENT_MAX_BYTES));
+                return;
+            }
+            if (!uploads.containsKey(sha256) && uploads.size() >= Config.ATTACHMENT_MAX_UPLOADS_PER_CONNECTION) {
+                sendUploadFailed(sha256, "Zbyt wiele jednoczesnych wysyłek");
+                return;
+            }
+
+            long offset = server.getAttachments().begin(user.getId(), sha256, size);
+            if (offset < 0) {
+                Logger.warn("Limit niedokończonych wysyłek załączników dla " + user.getUsername());
+                sendUploadFailed(sha256, "Zbyt wiele niedokończonych wysyłek - dokończ lub poczekaj na ich usunięcie");
+                return;
+            }
+            if (offset == size) {
+                uploads.remove(sha256);
+                server.getMetrics().attachmentDeduplicated();
+            } else {
+                uploads.put(sha256, size);
+            }
+
+            Logger.debug("Wysyłka załącznika " + sha256 + " od " + user.getUsername() + ": " + offset + "/" + size + " B");
+            sendUploadOffset(sha256, offset);
+        } catch (NumberFormatException e) {
+            Logger.warn("Nieprawidłowe żądanie wysyłki załącznika: " + request);
+        } catch (IOException e) {
+            Logger.error("Błąd magazynu załączników: " + e.getMessage());
+            sendUploadFailed(sha256, "Błąd zapisu na serwerze");
+        }
+    }
+
+    // Każdy fragment jest potwierdzany liczbą zapisanych bajtów (pas BULK) - klient wysyła najwyżej
+    // ATTACHMENT_UPLOAD_WINDOW fragmentów bez potwierdzenia, więc wysyłka nie zalewa połączenia
+    private void handleFileChunk(FileChunk chunk) {
+        String sha256 = chunk.getSha256();
+        Long size = uploads.get(sha256);
+
+        if (size == null || chunk.getData() == null) {
+            Logger.debug("Fragment załącznika bez rozpoczętej wysyłki: " + chunk);
+            return;
+        }
+
+        if (chunk.getData().length > Config.ATTACHMENT_CHUNK_SIZE) {
+            uploads.remove(sha256);
+            Logger.warn("Zbyt duży fragment załącznika od " + user.getUsername() + ": " + chunk.getData().length + " B");
+            sendUploadFailed(sha256, "Zbyt duży fragment");
+            return;
+        }
+
+        server.getMetrics().attachmentChunkReceived(chunk.getData().length);
+
+        try {
+            long length = server.getAttachments().append(sha256, size, chunk.getOffset(), chunk.getData());
+            if (length == size) {
+                uploads.remove(sha256);
+                server.getMetrics().attachmentStored();
+                Logger.info("Zapisano załącznik " + sha256 + " (" + Attachment.formatSize(size) + ") od " + user.getUsername());
+            }
+            sendUploadOffset(sha256, length);
+        } catch (IOException e) {
+            uploads.remove(sha256);
+            Logger.error("Nie udało się zapisać załącznika " + sha256 + ": " + e.getMessage());
+            sendUploadFailed(sha256, e.getMessage());
+        }
+    }
+
+    private void sendUploadOffset(String sha256, long offset) {
+        enqueue(new Message(null, Config.UPLOAD_OFFSET_PREFIX + sha256 + ":" + offset), OutboundQueue.Lane.BULK);
+    }
+
+    private void sendUploadFailed(String sha256, String reason) {
+        enqueue(new Message(null, Config.UPLOAD_FAILED_PREFIX + sha256 + ":" + reason), OutboundQueue.Lane.BULK);
+    }
+
+    // Format: DOWNLOAD:<sha256>. Bilet jest jednorazowy; sam plik idzie osobnym portem.
+    private void handleDownloadRequest(String sha256) {
+        AttachmentServer attachmentServer = server.getAttachmentServer();
+        String token = server.getAttachments().exists(sha256) ? attachmentServer.issueTicket(sha256) : "";
+
+        enqueue(new Message(null, Config.DOWNLOAD_TICKET_PREFIX + sha256 + ":" + attachmentServer.getPort() + ":" + token),
+                OutboundQueue.Lane.BULK);
+    }
+
+    // Odwołanie do załącznika, którego nie ma w magazynie (np. niedokończona wysyłka)
+    private boolean isMissingAttachment(Message message) {
+        Attachment attachment = Attachment.parse(message.getContent());
+        return attachment != null && !server.getAttachments().exists(attachment.getSha256());
+    }
+
+    private void handleRoomMessage(Message message) {
+        Room room = findMemberRoom(message.getRoomName());
+
+        if (room == null) {
+            Logger.warn("Użytkownik " + user.getUsername() + " nie należy do pokoju #" + message.getRoomName());
+            // Wiadomość z kolejki nadawczej nie zostanie już dostarczona - klient może ją usunąć
+            if (message.getClientId() != null) {
+                sendSystemMessage(Config.OUTBOX_ACK_PREFIX + message.getClientId());
+            }
+            return;
+        }
+
+        message.setSender(user);
+        message.setRoomId(room.getId());
+        message.setRoomName(room.getName());
+
+        // Kopię dostaje także nadawca (jako członek pokoju), już z identyfikatorem nadanym przez bazę
+        submitOnce(message, () -> server.broadcastRoomMessage(message));
+    }
+
+    // Zapis wiadomości w kolejce jej rozmowy z kluczem idempotencji. Klucz jest zajmowany przez add() dopiero
+    // w zadaniu rozmowy i zwalniany, gdy zapis się nie powiódł - wiadomość wysłana ponownie z kolejki
+    // nadawczej klienta jest wtedy zapisywana, a nie tylko potwierdzana. Powtórzenie już zapisanej
+    // wiadomości (potwierdzenie nie dotarło przed zerwaniem połączenia) dostaje tylko potwierdzenie.
+    // Klucz nieznany w pamięci tego węzła jest sprawdzany w magazynie (restart, inny węzeł klastra).
+    private void submitOnce(Message message, BooleanSupplier save) {
+        server.submitInConversation(message, () -> {
+            String clientId = message.getClientId();
+            IdempotencyKeys keys = server.getIdempotencyKeys();
+
+            if (clientId != null && (!keys.add(user.getId(), clientId) || server.isClientMessageSaved(user, clientId))) {
+                server.getMetrics().duplicateMessageDropped();
+                sendSystemMessage(Config.OUTBOX_ACK_PREFIX + clientId);
+                return;
+            }
+
+            boolean saved = false;
+            try {
+                saved = save.getAsBoolean();
+            } finally {
+                if (!saved && clientId != null) {
+                    keys.remove(user.getId(), clientId);
+                }
+            }
+        });
+    }
+
+    // Pokój, do którego należy użytkownik, lub null
+    private Room findMemberRoom(String roomName) {
+        Room room = server.getRooms().get(roomName);
+        return room != null && room.contains(user.getId()) ? room : null;
+    }
+
+    // Standardowa wiadomość publiczna - najpierw zapis i broadcast, aby kopia nadawcy miała już
+    // identyfikator nadany przez bazę. Wszystkie wiadomości czatu ogólnego przechodzą przez jedną kolejkę.
+    private void handlePublicMessage(Message message) {
+        // Nadawcą jest zawsze zalogowany użytkownik, nie ten podany przez klienta
+        message.setSender(user);
+
+        submitOnce(message, () -> {
+            if (!server.broadcastMessage(message)) {  // Zapis i broadcast do innych
+                return false;
+            }
+            sendMessage(message);  // Wyślij kopię do nadawcy
+            return true;
+        });
+    }
+
     private void handlePrivateMessage(Message message) {
         try {
+            // Nadawca z sesji - od niego zależy też klucz rozmowy i widoczność wiadomości
+            message.setSender(user);
+
             Logger.debug("Obsługa prywatnej wiadomości od " + message.getSender().getUsername() +
                     " do " + message.getReceiver().getUsername());
 
@@ -194,16 +681,21 @@ public class ClientHandler implements Runnable, AutoCloseable {
                 // Zaktualizuj obiekt wiadomości z pełnym obiektem odbiorcy
                 message.setReceiver(receiver);
 
-                // Zapisz wiadomość w bazie danych
-                boolean saved = server.getDbManager().saveMessage(message);
+                // Zapis i doręczenie w kolejce rozmowy tej pary użytkowników
+                submitOnce(message, () -> {
+                    if (!server.saveMessage(message)) {
+                        return false;
+                    }
 
-                if (saved) {
-                    // Znajdź ClientHandler odbiorcy i wyślij mu wiadomość
-                    deliverPrivateMessage(message, receiver);
+                    // Doręcz odbiorcy - lokalnie lub przez pozostałe węzły klastra
+                    if (!server.deliverPrivateMessage(message)) {
+                        Logger.debug("Odbiorca nie jest połączony z tym węzłem: " + receiver.getUsername());
+                    }
 
                     // Wyślij kopię wiadomości z powrotem do nadawcy
                     sendMessage(message);
-                }
+                    return true;
+                });
             } else {
                 Logger.warn("Nie znaleziono użytkownika: " + message.getReceiver().getUsername());
                 // Nawet jeśli nie znaleźliśmy odbiorcy, wyślij kopię wiadomości do nadawcy
@@ -215,7 +707,7 @@ public class ClientHandler implements Runnable, AutoCloseable {
     }
 
     private User findUserByUsername(String username) {
-        List<User> users = server.getDbManager().getAllUsers();
+        List<User> users = server.getUserStore().getAllUsers();
 
         for (User u : users) {
             if (u.getUsername().equals(username)) {
@@ -226,85 +718,239 @@ public class ClientHandler implements Runnable, AutoCloseable {
         return null;
     }
 
-    private void deliverPrivateMessage(Message message, User receiver) {
-        boolean delivered = false;
+    // Sprawdzenie wykonywane w wątku koła czasowego co HEARTBEAT_INTERVAL_MS - tylko nieblokujące operacje:
+    // zamknięcie gniazda lub dodanie pingu do kolejki wyjściowej
+    private void checkLiveness() {
+        if (!running) {
+            return;
+        }
 
-        for (ClientHandler client : server.getClients()) {
-            if (client.getUser() != null && client.getUser().getUsername().equals(receiver.getUsername())) {
-                client.sendMessage(message);
-                Logger.debug("Prywatna wiadomość dostarczona do " + receiver.getUsername());
-                delivered = true;
-                break;
+        long now = System.currentTimeMillis();
+        long idleMs = now - lastReadAt;
+        long writeStarted = socketOutput.getPhysicalWriteStartedAt();
+
+        if (idleMs >= Config.IDLE_TIMEOUT_MS) {
+            Logger.warn("Brak odpowiedzi od " + user.getUsername() + " przez " + idleMs + " ms - zamykanie połączenia");
+            server.getMetrics().idleConnectionReaped();
+            server.closeQuietly(socket);
+        } else if (writeStarted != 0 && now - writeStarted >= Config.WRITE_STALL_TIMEOUT_MS) {
+            Logger.warn("Zapis do " + user.getUsername() + " zablokowany od " + (now - writeStarted) + " ms - zamykanie połączenia");
+            server.getMetrics().stalledConnectionReaped();
+            server.closeQuietly(socket);
+        } else {
+            if (idleMs >= Config.HEARTBEAT_INTERVAL_MS) {
+                sendPing();
+                server.getMetrics().pingSent();
             }
+            scheduleLivenessCheck();
+        }
+    }
+
+    private void scheduleLivenessCheck() {
+        livenessCheck = server.scheduleLivenessCheck(this::checkLiveness, Config.HEARTBEAT_INTERVAL_MS);
+    }
+
+    private void sendPing() {
+        sendSystemMessage(Config.CMD_PING);
+    }
+
+    // Format: GET_HISTORY_SINCE:<id najnowszej wiadomości zapisanej u klienta>. Klient bez lokalnej
+    // historii (0) lub zbyt daleko w tyle dostaje ostatnie wiadomości czatu ogólnego, jak dawniej przy logowaniu.
+    private void sendLoginResponse() {
+        if (loginRequest.isRosterWanted()) {
+            server.sendUserList(this);
         }
+        sendRoomList();
 
-        if (!delivered) {
-            Logger.debug("Odbiorca offline - wiadomość zapisana tylko w bazie danych");
+        if (loginRequest.isHistoryWanted()) {
+            int limit = loginRequest.getHistoryLimit() > 0 ?
+                    Math.min(loginRequest.getHistoryLimit(), Config.MESSAGE_HISTORY_LIMIT) : Config.MESSAGE_HISTORY_LIMIT;
+            sendHistorySince(loginRequest.getSinceId(), limit);
         }
     }
 
-    private void sendMessageHistory() {
+    private void handleHistorySinceRequest(String content) {
         try {
-            // Pobierz wiadomości
-            List<Message> recentMessages = server.getDbManager().getRecentMessages(Config.MESSAGE_HISTORY_LIMIT);
-
-            Logger.debug("Wysyłanie historii " + recentMessages.size() + " wiadomości do użytkownika: " + user.getUsername());
+            int afterId = Integer.parseInt(content.substring(Config.CMD_GET_HISTORY_SINCE.length()));
+            sendHistorySince(afterId, Config.MESSAGE_HISTORY_LIMIT);
+        } catch (NumberFormatException e) {
+            Logger.warn("Nieprawidłowe żądanie synchronizacji: " + content);
+        }
+    }
 
-            for (Message message : recentMessages) {
-                output.writeObject(message);
-                output.flush();
-                Thread.sleep(10);  // Małe opóźnienie dla stabilności
+    // Wiadomości nowsze niż afterId widoczne dla użytkownika, a przy braku zapisanej historii
+    // (lub zbyt dużym zaległym fragmencie) ostatnie historyLimit wiadomości czatu ogólnego
+    private void sendHistorySince(int afterId, int historyLimit) {
+        try {
+            List<Message> messages = afterId > 0 ? server.getMessagesSince(user, afterId, Config.SYNC_MAX_MESSAGES) : null;
+            String key = "";
+
+            if (messages == null) {
+                if (afterId > 0) {
+                    Logger.debug("Użytkownik " + user.getUsername() + " jest za daleko w tyle (od " + afterId +
+                            ") - wysyłanie pełnej historii");
+                    key = Config.SYNC_TRUNCATED_KEY;
+                }
+                messages = server.getRecentMessages(historyLimit);
             }
 
-            // Oznaczenie końca historii
+            Logger.debug("Synchronizacja od " + afterId + ": " + messages.size() + " wiadomości dla użytkownika: " +
+                    user.getUsername());
 
+            sendChunks(MessageBatch.Type.SYNC, key, messages);
         } catch (Exception e) {
             Logger.error("Błąd podczas wysyłania historii: " + e.getMessage());
         }
     }
 
-    private void sendSystemMessage(String content) throws IOException {
-        Message message = new Message(null, content);
-        output.writeObject(message);
-        output.flush();
+    private void sendHistoryChunks(String key, List<Message> messages) {
+        sendChunks(MessageBatch.Type.HISTORY, key, messages);
     }
 
-    public void sendUserList(List<String> usernames) {
-        try {
-            // Utwórz specjalną wiadomość systemową z listą użytkowników
-            String content = Config.USER_LIST_PREFIX + String.join(",", usernames);
-            Message userListMessage = new Message(null, content);
+    // Historia jest dzielona na paczki, aby wiadomości na żywo mogły być wysyłane pomiędzy nimi.
+    // Pusta historia też jest wysyłana (jedna pusta paczka), aby klient wiedział, że się zakończyła.
+    private void sendChunks(MessageBatch.Type type, String key, List<Message> messages) {
+        int chunkSize = Config.HISTORY_CHUNK_SIZE;
+        int start = 0;
+
+        do {
+            int end = Math.min(messages.size(), start + chunkSize);
+            MessageBatch chunk = new MessageBatch(type, key,
+                    new ArrayList<>(messages.subList(start, end)));
+            chunk.setLast(end == messages.size());
+            sendBatch(chunk);
+            start = end;
+        } while (start < messages.size());
+    }
+
+    private void sendSystemMessage(String content) {
+        Message message = new Message(null, content);
+        enqueue(message, OutboundQueue.Lane.LIVE);
+    }
 
-            output.writeObject(userListMessage);
+    // Zapis ramki wywoływany przez OutboundQueue (jeden wątek naraz); blokada chroni przed zapisami
+    // z etapu logowania. Błędy obsługuje kolejka, już poza blokadą.
+    private void writeFrame(Object frame) throws IOException {
+        synchronized (writeLock) {
+            output.writeObject(compressor != null && FrameCompressor.isCandidate(frame) ? compress(frame) : frame);
+            // Miękkie opróżnienie - przy dużym ruchu ramki są sklejane w CoalescingOutputStream
             output.flush();
-        } catch (IOException e) {
-            Logger.error("Błąd podczas wysyłania listy użytkowników: " + e.getMessage());
         }
     }
 
+    private Object compress(Object frame) throws IOException {
+        long start = System.nanoTime();
+        Object compressed = compressor.compress(frame);
+
+        if (compressed instanceof CompressedFrame) {
+            CompressedFrame compressedFrame = (CompressedFrame) compressed;
+            server.getMetrics().frameCompressed(compressedFrame.getOriginalLength(),
+                    compressedFrame.getData().length, System.nanoTime() - start);
+        } else {
+            server.getMetrics().compressionSkipped();
+        }
+        return compressed;
+    }
+
+    // Format: USER_LIST:<zalogowani, po przecinku>, bez tego klienta. Pozostali użytkownicy są
+    // dostępne przez wyszukiwanie (SEARCH_USERS) - ramka nie rośnie razem z liczbą rejestracji.
+    public void sendUserList(List<String> online) {
+        StringBuilder content = new StringBuilder(Config.USER_LIST_PREFIX);
+        appendUsernames(content, online, user.getUsername());
+
+        Message userListMessage = new Message(null, content.toString());
+
+        enqueue(userListMessage, OutboundQueue.Lane.LIVE);
+    }
+
+    private static void appendUsernames(StringBuilder content, List<String> usernames, String excluded) {
+        boolean first = true;
+        for (String username : usernames) {
+            if (username.equals(excluded)) {
+                continue;
+            }
+            if (!first) {
+                content.append(',');
+            }
+            content.append(username);
+            first = false;
+        }
+    }
+
+    private void sendRoomList() {
+        String content = Config.ROOM_LIST_PREFIX + String.join(",", server.getRooms().getRoomNamesOf(user.getId()));
+        enqueue(new Message(null, content), OutboundQueue.Lane.LIVE);
+    }
+
     public void sendMessage(Message message) {
-        try {
-            output.writeObject(message);
-            output.flush();
-        } catch (IOException e) {
-            Logger.error("Błąd podczas wysyłania wiadomości: " + e.getMessage());
-            close();
+        enqueue(message, OutboundQueue.Lane.LIVE);
+    }
+
+    // Format: MENTION:<id wiadomości>:<#pokój lub pusty napis dla czatu ogólnego>:<nadawca>
+    public void sendMentionNotification(Message message) {
+        String conversation = message.isRoomMessage() ? Config.ROOM_KEY_PREFIX + message.getRoomName() : "";
+        sendSystemMessage(Config.MENTION_PREFIX + message.getId() + ":" + conversation + ":" +
+                message.getSender().getUsername());
+    }
+
+    // Paczki wiadomości (historia, wyniki wyszukiwania) idą pasem BULK
+    public void sendBatch(MessageBatch batch) {
+        enqueue(batch, OutboundQueue.Lane.BULK);
+    }
+
+    private void enqueue(Object frame, OutboundQueue.Lane lane) {
+        if (outbound == null || !running) {
+            return;
+        }
+
+        if (!outbound.enqueue(frame, lane)) {
+            if (running) {
+                Logger.warn("Klient " + (user != null ? user.getUsername() : socket.getInetAddress().getHostAddress()) +
+                        " nie nadąża z odbiorem - zamykanie połączenia");
+                server.getMetrics().slowConsumerDisconnected();
+                server.closeQuietly(socket);
+            }
         }
     }
 
+    public int getOutboundDepth() {
+        return outbound != null ? outbound.getDepth() : 0;
+    }
+
     public User getUser() {
         return user;
     }
 
+    Socket getSocket() {
+        return socket;
+    }
+
     @Override
     public void close() {
         try {
             running = false;
 
+            if (outbound != null) {
+                outbound.close();
+            }
+
+            TimerWheel.Timeout check = livenessCheck;
+            if (check != null) {
+                check.cancel();
+            }
+
             if (input != null) input.close();
             if (output != null) output.close();
             if (socket != null && !socket.isClosed()) socket.close();
 
+            // Pamięć natywna kontekstu deflate
+            synchronized (writeLock) {
+                if (compressor != null) {
+                    compressor.close();
+                    compressor = null;
+                }
+            }
+
             server.removeClient(this);
         } catch (IOException e) {
             Logger.error("Błąd podczas zamykania połączenia: " + e.getMessage());
@@ -0,0 +1,157 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Bufor wyjściowy gniazda z adaptacyjnym opróżnianiem, umieszczany pod ObjectOutputStream.
+// flush() wywoływany po każdej ramce jest "miękki": gdy połączenie było bezczynne, dane idą od razu;
+// gdy ramki następują szybko po sobie, są sklejane i wysyłane po COALESCE_WINDOW_MS
+// lub po zebraniu FLUSH_THRESHOLD_BYTES - jedno wywołanie systemowe zamiast wielu małych.
+// Dzięki temu gniazdo może pracować z TCP_NODELAY bez zalewania sieci drobnymi segmentami.
+// Wątek zegara tylko odmierza okno i przekazuje opróżnienie do kolejki wyjściowej połączenia (flushHandoff),
+// która wywołuje flushDeferred() - zablokowany klient zajmuje swój wątek zapisu, a nie wspólny zegar.
+public class CoalescingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final ScheduledExecutorService flushScheduler;
+    private final ServerMetrics metrics;
+    private final byte[] buffer = new byte[Config.OUTPUT_BUFFER_SIZE];
+    private final long windowNanos = TimeUnit.MILLISECONDS.toNanos(Config.COALESCE_WINDOW_MS);
+
+    private int count;
+    private long lastFlushNanos;
+    private boolean flushScheduled;
+    private boolean closed;
+    // Zlecenie odroczonego opróżnienia; bez niego (etap logowania) dane idą od razu
+    private volatile Runnable flushHandoff;
+    // Początek trwającego zapisu do gniazda (0 = brak) - do wykrywania zablokowanych połączeń
+    private volatile long physicalWriteStartedAt;
+
+    public CoalescingOutputStream(OutputStream out, ScheduledExecutorService flushScheduler, ServerMetrics metrics) {
+        this.out = out;
+        this.flushScheduler = flushScheduler;
+        this.metrics = metrics;
+        this.lastFlushNanos = System.nanoTime() - windowNanos;
+    }
+
+    public void setFlushHandoff(Runnable flushHandoff) {
+        this.flushHandoff = flushHandoff;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+
+        if (len >= buffer.length) {
+            // Duży blok - bez kopiowania przez bufor
+            flushBuffer();
+            physicalWrite(b, off, len);
+            return;
+        }
+
+        if (len > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        // Jak w strumieniu gniazda: opróżnienie po zamknięciu (np. podwójne close) nic nie robi
+        if (closed) {
+            return;
+        }
+        ensureOpen();
+
+        if (count == 0) {
+            return;
+        }
+
+        long sinceLastFlush = System.nanoTime() - lastFlushNanos;
+        Runnable handoff = flushHandoff;
+
+        if (handoff == null || count >= Config.FLUSH_THRESHOLD_BYTES || sinceLastFlush >= windowNanos) {
+            // Połączenie bezczynne lub bufor pełny - wysyłka od razu
+            flushBuffer();
+        } else if (!flushScheduled) {
+            // Pod obciążeniem - dalsze ramki z okna zostaną wysłane razem
+            flushScheduled = true;
+            try {
+                flushScheduler.schedule(handoff, windowNanos - sinceLastFlush, TimeUnit.NANOSECONDS);
+                metrics.flushCoalesced();
+            } catch (RejectedExecutionException e) {
+                flushScheduled = false;
+                flushBuffer();
+            }
+        }
+    }
+
+    // Odroczone opróżnienie - wywoływane przez wątek kolejki wyjściowej, który obsłuży też błąd zapisu
+    public synchronized void flushDeferred() throws IOException {
+        flushScheduled = false;
+
+        if (closed) {
+            return;
+        }
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            physicalWrite(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void physicalWrite(byte[] b, int off, int len) throws IOException {
+        physicalWriteStartedAt = System.currentTimeMillis();
+        try {
+            out.write(b, off, len);
+            out.flush();
+        } finally {
+            physicalWriteStartedAt = 0;
+        }
+
+        lastFlushNanos = System.nanoTime();
+        metrics.socketWrite(len);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Strumień zamknięty");
+        }
+    }
+
+    public long getPhysicalWriteStartedAt() {
+        return physicalWriteStartedAt;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            flushBuffer();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+import com.chatapp.util.Logger;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Szeregowe wykonywanie obsługi wiadomości w obrębie rozmowy.
+// Każda rozmowa ma własną kolejkę zadań (aktora), wykonywaną przez co najwyżej jeden wątek wspólnej puli
+// naraz - zapis i doręczenie wiadomości jednej rozmowy nie przeplatają się, więc kolejność identyfikatorów
+// z bazy jest kolejnością doręczenia. Różne rozmowy są obsługiwane równolegle.
+// Kolejka bezczynnej rozmowy jest usuwana - liczba aktorów zależy od aktywnych, a nie wszystkich rozmów.
+public class ConversationExecutor implements AutoCloseable {
+    private final ExecutorService workers;
+    private final Map<Long, Actor> actors = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    private class Actor implements Runnable {
+        final long key;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Actor(long key) {
+            this.key = key;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Serwer jest zatrzymywany
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            // Ograniczona liczba zadań na przebieg - ruchliwa rozmowa nie zajmuje wątku na stałe
+            for (int i = 0; i < Config.CONVERSATION_DRAIN_BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+
+                pendingTasks.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Logger.error("Błąd podczas obsługi wiadomości w rozmowie " + key + ": " + e.getMessage());
+                }
+            }
+
+            scheduled.set(false);
+
+            if (!tasks.isEmpty()) {
+                schedule();
+            } else {
+                // Usunięcie jest atomowe względem submit() (compute na tym samym kluczu) - zadanie dodane
+                // wcześniej zatrzymuje aktora w mapie, dodane później trafia już do nowego. Aktor obsługiwany
+                // właśnie przez inny wątek zostaje - posprząta po sobie ten wątek.
+                actors.computeIfPresent(key, (k, actor) ->
+                        actor == this && tasks.isEmpty() && !scheduled.get() ? null : actor);
+            }
+        }
+    }
+
+    public ConversationExecutor() {
+        workers = Executors.newFixedThreadPool(Config.CONVERSATION_THREADS, r -> {
+            Thread thread = new Thread(r, "Conversation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Klucz rozmowy: 0 - czat ogólny, ujemny - pokój, dodatni - para (mniejszy id, większy id)
+    public static long conversationKey(Message message) {
+        if (message.isRoomMessage()) {
+            return -(long) message.getRoomId();
+        }
+        if (!message.isPrivate()) {
+            return 0L;
+        }
+
+        int low = Math.min(message.getSender().getId(), message.getReceiver().getId());
+        int high = Math.max(message.getSender().getId(), message.getReceiver().getId());
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    // Wykonuje zadanie w kolejce rozmowy wiadomości
+    public void submit(Message message, Runnable task) {
+        long key = conversationKey(message);
+        pendingTasks.incrementAndGet();
+
+        Actor target = actors.compute(key, (k, actor) -> {
+            Actor result = actor != null ? actor : new Actor(k);
+            result.tasks.add(task);
+            return result;
+        });
+
+        target.schedule();
+    }
+
+    public int getPendingTasks() {
+        return pendingTasks.get();
+    }
+
+    public int getActiveConversations() {
+        return actors.size();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        actors.clear();
+    }
+}
@@ -0,0 +1,39 @@
+package com.chatapp.server.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Ostatnio przyjęte klucze idempotencji wiadomości (użytkownik + klucz nadany przez klienta).
+// Klient po ponownym połączeniu wysyła całą kolejkę nadawczą, także wiadomości, które serwer przyjął,
+// ale potwierdzenie nie dotarło - takie są pomijane. To tylko szybka ścieżka tego węzła (ostatnie capacity
+// kluczy): klucz jest zapisywany z wiadomością, a brak w pamięci sprawdza magazyn wiadomości.
+public class IdempotencyKeys {
+    private final Map<String, Boolean> keys;
+
+    public IdempotencyKeys(int capacity) {
+        this.keys = new LinkedHashMap<>(1024, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static String keyOf(int userId, String clientId) {
+        return userId + ":" + clientId;
+    }
+
+    // Zwraca false, jeśli klucz był już przyjęty - jedyne sprawdzenie, atomowe razem z dodaniem
+    public synchronized boolean add(int userId, String clientId) {
+        return keys.put(keyOf(userId, clientId), Boolean.TRUE) == null;
+    }
+
+    // Zwolnienie klucza wiadomości, której nie udało się zapisać - ponowna wysyłka zostanie zapisana
+    public synchronized void remove(int userId, String clientId) {
+        keys.remove(keyOf(userId, clientId));
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+}
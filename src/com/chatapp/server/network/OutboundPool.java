@@ -0,0 +1,67 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.util.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Pula zapisująca kolejki wyjściowe klientów. Zapis do klienta, który nie odbiera danych, blokuje wątek
+// do czasu zwolnienia bufora gniazda lub zamknięcia połączenia po WRITE_STALL_TIMEOUT_MS - przy stałej
+// liczbie wątków kilku takich klientów wstrzymałoby wysyłkę do wszystkich pozostałych.
+// Przebieg trwający dłużej niż OUTBOUND_BLOCKED_AFTER_MS jest uznawany za zablokowany i pula dostaje
+// za niego wątek zastępczy (najwyżej OUTBOUND_MAX_BLOCKED_WRITERS), więc zablokowany zapis zajmuje
+// tylko własny wątek. Po odblokowaniu nadmiarowe wątki kończą się, gdy staną się bezczynne.
+public class OutboundPool extends ThreadPoolExecutor {
+    // Początek bieżącego zadania każdego zajętego wątku
+    private final Map<Thread, Long> runningSince = new ConcurrentHashMap<>();
+
+    public OutboundPool() {
+        super(Config.OUTBOUND_THREADS, Config.OUTBOUND_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "Outbound");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        runningSince.put(thread, System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable error) {
+        runningSince.remove(Thread.currentThread());
+    }
+
+    // Wywoływane okresowo z koła czasowego - tylko zmiana rozmiaru puli, bez blokowania
+    public synchronized void compensateBlockedWriters() {
+        long blockedBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Config.OUTBOUND_BLOCKED_AFTER_MS);
+        int blocked = 0;
+        for (long started : runningSince.values()) {
+            if (started - blockedBefore <= 0) {
+                blocked++;
+            }
+        }
+
+        int target = Config.OUTBOUND_THREADS + Math.min(blocked, Config.OUTBOUND_MAX_BLOCKED_WRITERS);
+        int current = getCorePoolSize();
+        if (target == current) {
+            return;
+        }
+
+        // Kolejność zmian zachowuje warunek rdzeń <= maksimum
+        if (target > current) {
+            setMaximumPoolSize(target);
+            setCorePoolSize(target);
+            Logger.debug("Zablokowane zapisy do klientów: " + blocked + " - pula wyjściowa powiększona do " + target);
+        } else {
+            setCorePoolSize(target);
+            setMaximumPoolSize(target);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.util.Logger;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Kolejka wyjściowa połączenia z dwoma pasami priorytetu.
+// Pas LIVE (wiadomości na żywo, lista użytkowników, ramki sterujące) jest zawsze opróżniany przed pasem BULK
+// (historia, wyniki wyszukiwania), a duże transfery są dzielone na paczki - nowa wiadomość czeka
+// najwyżej na dokończenie jednej paczki, a nie całej historii.
+// Ramki zapisuje wspólna pula wątków; w danej chwili połączenie obsługuje co najwyżej jeden wątek,
+// więc kolejność w obrębie pasa jest zachowana. Ten sam wątek wykonuje odroczone opróżnienie bufora
+// gniazda (requestFlush) - blokujący zapis do wolnego klienta nigdy nie trafia do wątków zegara.
+public class OutboundQueue {
+    public enum Lane {
+        LIVE,
+        BULK
+    }
+
+    public interface FrameWriter {
+        void write(Object frame) throws IOException;
+    }
+
+    public interface Flusher {
+        void flush() throws IOException;
+    }
+
+    private final Queue<Object> liveFrames = new ConcurrentLinkedQueue<>();
+    private final Queue<Object> bulkFrames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Executor executor;
+    private final FrameWriter writer;
+    private final Flusher flusher;
+    private final Runnable onFailure;
+    private volatile boolean flushRequested;
+    private volatile boolean closed;
+
+    public OutboundQueue(Executor executor, FrameWriter writer, Flusher flusher, Runnable onFailure) {
+        this.executor = executor;
+        this.writer = writer;
+        this.flusher = flusher;
+        this.onFailure = onFailure;
+    }
+
+    // Zwraca false, jeśli kolejka jest zamknięta lub przepełniona (odbiorca nie nadąża)
+    public boolean enqueue(Object frame, Lane lane) {
+        if (closed) {
+            return false;
+        }
+
+        if (depth.incrementAndGet() > Config.OUTBOUND_QUEUE_LIMIT) {
+            depth.decrementAndGet();
+            return false;
+        }
+
+        (lane == Lane.LIVE ? liveFrames : bulkFrames).add(frame);
+        scheduleDrain();
+        return true;
+    }
+
+    // Wywoływane przez wątek zegara po upływie okna sklejania - nie blokuje, tylko zleca opróżnienie
+    public void requestFlush() {
+        if (closed) {
+            return;
+        }
+
+        flushRequested = true;
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Serwer jest zatrzymywany
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            // Ograniczona liczba ramek na przebieg - jedno ruchliwe połączenie nie zajmuje wątku na stałe
+            for (int i = 0; i < Config.OUTBOUND_DRAIN_BATCH && !closed; i++) {
+                Object frame = liveFrames.poll();
+                if (frame == null) {
+                    frame = bulkFrames.poll();
+                }
+                if (frame == null) {
+                    break;
+                }
+
+                depth.decrementAndGet();
+                writer.write(frame);
+            }
+
+            if (flushRequested && !closed) {
+                flushRequested = false;
+                flusher.flush();
+            }
+        } catch (IOException e) {
+            Logger.debug("Błąd zapisu do klienta: " + e.getMessage());
+            fail();
+            return;
+        } catch (RuntimeException e) {
+            // Strumień obiektów mógł zostać przerwany w połowie ramki - połączenia nie da się kontynuować
+            Logger.error("Nieoczekiwany błąd zapisu do klienta: " + e);
+            fail();
+            return;
+        } finally {
+            draining.set(false);
+        }
+
+        // Flaga sprawdzana po zwolnieniu draining - zlecenie opróżnienia z trwającego przebiegu nie ginie
+        if (!closed && (flushRequested || !liveFrames.isEmpty() || !bulkFrames.isEmpty())) {
+            scheduleDrain();
+        }
+    }
+
+    private void fail() {
+        close();
+        onFailure.run();
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public void close() {
+        closed = true;
+        liveFrames.clear();
+        bulkFrames.clear();
+        depth.set(0);
+    }
+}
@@ -0,0 +1,122 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.util.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+// Strażnik przeciążenia serwera. Co GOVERNOR_INTERVAL_MS łączy trzy sygnały - zapełnienie kolejek
+// (wyjściowych i logowania), średnie opóźnienie magazynu danych oraz zajętość sterty - w jeden
+// wskaźnik presji i na jego podstawie wybiera poziom degradacji. Kolejne poziomy obejmują poprzednie:
+// najpierw sklejanie aktualizacji listy użytkowników, potem odrzucanie żądań historii, na końcu
+// spowolnienie nowych logowań. Rozmowy zalogowanych użytkowników nie są ograniczane na żadnym poziomie.
+public class OverloadGovernor {
+    public enum Level {
+        NORMAL("normalna praca"),
+        COALESCE_PRESENCE("sklejanie aktualizacji listy użytkowników"),
+        REJECT_HISTORY("odrzucanie żądań historii"),
+        SLOW_LOGINS("spowolnienie logowań");
+
+        private final String description;
+
+        Level(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    // Progi wskaźnika presji dla kolejnych poziomów; zejście poziom niżej wymaga spadku o HYSTERESIS
+    private static final double[] THRESHOLDS = {0, 0.6, 0.8, 1.0};
+    private static final double HYSTERESIS = 0.15;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final IntSupplier queuedFrames;
+    private final IntSupplier pendingHandshakes;
+
+    private volatile Level level = Level.NORMAL;
+    private volatile double pressure;
+    private volatile double queuePressure;
+    private volatile double storePressure;
+    private volatile double heapPressure;
+    // Średnia krocząca opóźnienia magazynu w nanosekundach (aktualizowana bez blokad - przybliżenie wystarcza)
+    private volatile double storeLatencyEwma;
+
+    public OverloadGovernor(IntSupplier queuedFrames, IntSupplier pendingHandshakes) {
+        this.queuedFrames = queuedFrames;
+        this.pendingHandshakes = pendingHandshakes;
+    }
+
+    public void recordStoreLatency(long nanos) {
+        double current = storeLatencyEwma;
+        storeLatencyEwma = current == 0 ? nanos : current + EWMA_WEIGHT * (nanos - current);
+    }
+
+    // Wywoływane okresowo z koła czasowego
+    public void sample() {
+        queuePressure = Math.max(
+                (double) queuedFrames.getAsInt() / Config.GOVERNOR_QUEUED_FRAMES_LIMIT,
+                (double) pendingHandshakes.getAsInt() / Config.HANDSHAKE_QUEUE_CAPACITY);
+
+        storePressure = storeLatencyEwma / TimeUnit.MILLISECONDS.toNanos(Config.GOVERNOR_STORE_LATENCY_LIMIT_MS);
+
+        Runtime runtime = Runtime.getRuntime();
+        double heapUsed = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        heapPressure = heapUsed / Config.GOVERNOR_HEAP_LIMIT;
+
+        pressure = Math.max(queuePressure, Math.max(storePressure, heapPressure));
+        updateLevel(pressure);
+
+        // Brak nowych pomiarów (np. cisza na serwerze) nie może zamrozić wysokiej średniej
+        storeLatencyEwma = storeLatencyEwma * (1 - EWMA_WEIGHT);
+    }
+
+    private void updateLevel(double pressure) {
+        Level current = level;
+        Level target = current;
+
+        // W górę od razu do właściwego poziomu
+        for (Level candidate : Level.values()) {
+            if (candidate.ordinal() > current.ordinal() && pressure >= THRESHOLDS[candidate.ordinal()]) {
+                target = candidate;
+            }
+        }
+
+        // W dół o jeden poziom naraz, z histerezą
+        if (target == current && current != Level.NORMAL &&
+                pressure < THRESHOLDS[current.ordinal()] - HYSTERESIS) {
+            target = Level.values()[current.ordinal() - 1];
+        }
+
+        if (target != current) {
+            level = target;
+            String message = "Poziom przeciążenia: " + target.getDescription() +
+                    String.format(" (presja %.2f: kolejki %.2f, magazyn %.2f, sterta %.2f)",
+                            pressure, queuePressure, storePressure, heapPressure);
+
+            if (target.ordinal() > current.ordinal()) {
+                Logger.warn(message);
+            } else {
+                Logger.info(message);
+            }
+        }
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isAtLeast(Level threshold) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    public String describe() {
+        return String.format("Stan serwera: %s%nPresja: %.2f (kolejki %.2f, magazyn %.2f, sterta %.2f)%n" +
+                        "Średnie opóźnienie magazynu: %.1f ms%n",
+                level.getDescription(), pressure, queuePressure, storePressure, heapPressure,
+                storeLatencyEwma / 1_000_000.0);
+    }
+}
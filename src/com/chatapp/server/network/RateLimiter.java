@@ -0,0 +1,64 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.config.Config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Limity częstotliwości operacji na użytkownika (kubełek żetonów).
+// Stan każdego kubełka to jedna liczba - teoretyczny czas przybycia kolejnego żądania (GCRA),
+// aktualizowana przez CAS bez blokad. Limity są liczone per użytkownik, więc ponowne połączenie ich nie zeruje.
+public class RateLimiter {
+    public enum Operation {
+        PUBLIC_MESSAGE(Config.RATE_PUBLIC_PER_SECOND, Config.RATE_PUBLIC_BURST),
+        PRIVATE_MESSAGE(Config.RATE_PRIVATE_PER_SECOND, Config.RATE_PRIVATE_BURST),
+        HISTORY(Config.RATE_HISTORY_PER_SECOND, Config.RATE_HISTORY_BURST),
+        USER_LIST(Config.RATE_USER_LIST_PER_SECOND, Config.RATE_USER_LIST_BURST),
+        ATTACHMENT_CHUNK(Config.RATE_ATTACHMENT_CHUNK_PER_SECOND, Config.RATE_ATTACHMENT_CHUNK_BURST);
+
+        // Odstęp między żetonami i tolerancja serii w nanosekundach
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        Operation(double perSecond, int burst) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.burstNanos = intervalNanos * Math.max(0, burst - 1);
+        }
+    }
+
+    private static final int OPERATIONS = Operation.values().length;
+
+    private final Map<Integer, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+
+    // Zwraca 0, jeśli operacja jest dozwolona, w przeciwnym razie liczbę milisekund do następnego żetonu
+    public long tryAcquire(int userId, Operation operation) {
+        AtomicLongArray userBuckets = buckets.computeIfAbsent(userId, id -> newBuckets());
+        int index = operation.ordinal();
+        long now = System.nanoTime();
+
+        while (true) {
+            long arrival = userBuckets.get(index);
+            long start = Math.max(arrival, now);
+
+            if (start - now > operation.burstNanos) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(start - now - operation.burstNanos));
+            }
+
+            if (userBuckets.compareAndSet(index, arrival, start + operation.intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLongArray newBuckets() {
+        AtomicLongArray array = new AtomicLongArray(OPERATIONS);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            array.set(i, now);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,255 @@
+package com.chatapp.server.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Liczniki pracy serwera widoczne w panelu administracyjnym ("Statystyki").
+// Wyłącznie liczniki atomowe - aktualizacja nie wymaga blokad na ścieżce obsługi klientów.
+public class ServerMetrics {
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+    private final AtomicLong connectionsRejected = new AtomicLong();
+    private final AtomicLong handshakeTimeouts = new AtomicLong();
+    private final AtomicLong idleConnectionsReaped = new AtomicLong();
+    private final AtomicLong stalledConnectionsReaped = new AtomicLong();
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLongArray rateLimited = new AtomicLongArray(RateLimiter.Operation.values().length);
+    private final AtomicLong rateLimitDisconnects = new AtomicLong();
+    private final AtomicLong socketWrites = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong coalescedFlushes = new AtomicLong();
+    private final AtomicLong slowConsumersDisconnected = new AtomicLong();
+    private final AtomicLong presenceUpdatesCoalesced = new AtomicLong();
+    private final AtomicLong historyRejectedOverload = new AtomicLong();
+    private final AtomicLong loginsDelayed = new AtomicLong();
+    private final AtomicLong authRequests = new AtomicLong();
+    private final AtomicLong authFailures = new AtomicLong();
+    private final AtomicLong authRejected = new AtomicLong();
+    private final AtomicLong authLatencyTotalNanos = new AtomicLong();
+    private final AtomicLong authLatencyMaxNanos = new AtomicLong();
+    private final AtomicLong outboxBatches = new AtomicLong();
+    private final AtomicLong outboxMessages = new AtomicLong();
+    private final AtomicLong duplicateMessages = new AtomicLong();
+    private final AtomicLong framesCompressed = new AtomicLong();
+    private final AtomicLong framesBelowThreshold = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private final AtomicLong attachmentChunks = new AtomicLong();
+    private final AtomicLong attachmentBytesReceived = new AtomicLong();
+    private final AtomicLong attachmentsStored = new AtomicLong();
+    private final AtomicLong attachmentsDeduplicated = new AtomicLong();
+    private final AtomicLong attachmentDownloads = new AtomicLong();
+    private final AtomicLong attachmentBytesSent = new AtomicLong();
+    private final AtomicLong attachmentDownloadNanos = new AtomicLong();
+    private final AtomicLong tlsHandshakeNanos = new AtomicLong();
+    private final AtomicLong mentionedMessages = new AtomicLong();
+    private final AtomicLong mentionsRecorded = new AtomicLong();
+    private final AtomicLong mentionNotifications = new AtomicLong();
+
+    public void connectionAccepted() {
+        connectionsAccepted.incrementAndGet();
+    }
+
+    public void connectionRejected() {
+        connectionsRejected.incrementAndGet();
+    }
+
+    public void handshakeTimedOut() {
+        handshakeTimeouts.incrementAndGet();
+    }
+
+    public void idleConnectionReaped() {
+        idleConnectionsReaped.incrementAndGet();
+    }
+
+    public void stalledConnectionReaped() {
+        stalledConnectionsReaped.incrementAndGet();
+    }
+
+    public void pingSent() {
+        pingsSent.incrementAndGet();
+    }
+
+    public void operationRateLimited(RateLimiter.Operation operation) {
+        rateLimited.incrementAndGet(operation.ordinal());
+    }
+
+    public void rateLimitDisconnect() {
+        rateLimitDisconnects.incrementAndGet();
+    }
+
+    // Jedno wywołanie zapisu do gniazda
+    public void socketWrite(long bytes) {
+        socketWrites.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public void flushCoalesced() {
+        coalescedFlushes.incrementAndGet();
+    }
+
+    public void slowConsumerDisconnected() {
+        slowConsumersDisconnected.incrementAndGet();
+    }
+
+    public void presenceUpdateCoalesced() {
+        presenceUpdatesCoalesced.incrementAndGet();
+    }
+
+    public void historyRejectedOverload() {
+        historyRejectedOverload.incrementAndGet();
+    }
+
+    public void loginDelayed() {
+        loginsDelayed.incrementAndGet();
+    }
+
+    // Zakończone logowanie lub rejestracja: czas od zlecenia (z oczekiwaniem w kolejce puli) do wyniku
+    public void authCompleted(long nanos, boolean success) {
+        authRequests.incrementAndGet();
+        if (!success) {
+            authFailures.incrementAndGet();
+        }
+        authLatencyTotalNanos.addAndGet(nanos);
+        authLatencyMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Żądanie nieprzyjęte (pełna kolejka) lub niezakończone w limicie czasu
+    public void authRejected() {
+        authRejected.incrementAndGet();
+    }
+
+    // Kolejka nadawcza klienta wysłana po ponownym połączeniu
+    public void outboxReceived(int messages) {
+        outboxBatches.incrementAndGet();
+        outboxMessages.addAndGet(messages);
+    }
+
+    public void duplicateMessageDropped() {
+        duplicateMessages.incrementAndGet();
+    }
+
+    // Czas obejmuje serializację ramki i kompresję
+    public void frameCompressed(int originalBytes, int compressedBytes, long nanos) {
+        framesCompressed.incrementAndGet();
+        bytesBeforeCompression.addAndGet(originalBytes);
+        bytesAfterCompression.addAndGet(compressedBytes);
+        compressionNanos.addAndGet(nanos);
+    }
+
+    public void compressionSkipped() {
+        framesBelowThreshold.incrementAndGet();
+    }
+
+    // Uzgadnianie TLS w puli handshake (pełne lub wznowienie sesji)
+    public void tlsHandshakeCompleted(long nanos) {
+        tlsHandshakes.incrementAndGet();
+        tlsHandshakeNanos.addAndGet(nanos);
+    }
+
+    public void attachmentChunkReceived(int bytes) {
+        attachmentChunks.incrementAndGet();
+        attachmentBytesReceived.addAndGet(bytes);
+    }
+
+    public void attachmentStored() {
+        attachmentsStored.incrementAndGet();
+    }
+
+    // Wysyłka pliku, który już jest w magazynie - nic nie trzeba przesyłać
+    public void attachmentDeduplicated() {
+        attachmentsDeduplicated.incrementAndGet();
+    }
+
+    public void attachmentDownloaded(long bytes, long nanos) {
+        attachmentDownloads.incrementAndGet();
+        attachmentBytesSent.addAndGet(bytes);
+        attachmentDownloadNanos.addAndGet(nanos);
+    }
+
+    public void mentionsRecorded(int mentions) {
+        mentionedMessages.incrementAndGet();
+        mentionsRecorded.addAndGet(mentions);
+    }
+
+    public void mentionNotificationSent() {
+        mentionNotifications.incrementAndGet();
+    }
+
+    public long getRateLimited(RateLimiter.Operation operation) {
+        return rateLimited.get(operation.ordinal());
+    }
+
+    public long getReapedConnections() {
+        return idleConnectionsReaped.get() + stalledConnectionsReaped.get();
+    }
+
+    // Czytelne podsumowanie do wyświetlenia w oknie serwera
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Przyjęte połączenia: ").append(connectionsAccepted.get()).append('\n');
+        sb.append("Odrzucone połączenia: ").append(connectionsRejected.get()).append('\n');
+        sb.append("Przekroczony czas logowania: ").append(handshakeTimeouts.get()).append('\n');
+        sb.append("Usunięte bezczynne połączenia: ").append(idleConnectionsReaped.get()).append('\n');
+        sb.append("Usunięte zablokowane połączenia: ").append(stalledConnectionsReaped.get()).append('\n');
+        sb.append("Wysłane pingi: ").append(pingsSent.get()).append('\n');
+        sb.append("Odrzucone przez limit (publiczne/prywatne/historia/lista/załączniki): ")
+                .append(getRateLimited(RateLimiter.Operation.PUBLIC_MESSAGE)).append('/')
+                .append(getRateLimited(RateLimiter.Operation.PRIVATE_MESSAGE)).append('/')
+                .append(getRateLimited(RateLimiter.Operation.HISTORY)).append('/')
+                .append(getRateLimited(RateLimiter.Operation.USER_LIST)).append('/')
+                .append(getRateLimited(RateLimiter.Operation.ATTACHMENT_CHUNK)).append('\n');
+        sb.append("Rozłączeni za zalewanie: ").append(rateLimitDisconnects.get()).append('\n');
+
+        long writes = socketWrites.get();
+        long bytes = bytesWritten.get();
+        sb.append("Zapisy do gniazd: ").append(writes).append(", wysłane bajty: ").append(bytes)
+                .append(", średnio B/zapis: ").append(writes > 0 ? bytes / writes : 0).append('\n');
+        sb.append("Odroczone (sklejone) opróżnienia: ").append(coalescedFlushes.get()).append('\n');
+        sb.append("Rozłączeni - przepełniona kolejka wyjściowa: ").append(slowConsumersDisconnected.get()).append('\n');
+        sb.append("Przeciążenie - sklejone aktualizacje listy / odrzucona historia / spowolnione logowania: ")
+                .append(presenceUpdatesCoalesced.get()).append('/')
+                .append(historyRejectedOverload.get()).append('/')
+                .append(loginsDelayed.get()).append('\n');
+
+        long requests = authRequests.get();
+        sb.append("Logowania i rejestracje: ").append(requests)
+                .append(", nieudane: ").append(authFailures.get())
+                .append(", odrzucone (kolejka/czas): ").append(authRejected.get())
+                .append(String.format(", średni czas: %.1f ms, maks.: %.1f ms",
+                        requests > 0 ? authLatencyTotalNanos.get() / 1_000_000.0 / requests : 0.0,
+                        authLatencyMaxNanos.get() / 1_000_000.0)).append('\n');
+        sb.append("Kolejki nadawcze klientów: ").append(outboxBatches.get())
+                .append(", wiadomości: ").append(outboxMessages.get())
+                .append(", pominięte duplikaty: ").append(duplicateMessages.get()).append('\n');
+
+        long compressed = framesCompressed.get();
+        long before = bytesBeforeCompression.get();
+        sb.append("Kompresja: ramki ").append(compressed)
+                .append(", poniżej progu: ").append(framesBelowThreshold.get())
+                .append(", bajty ").append(before).append(" -> ").append(bytesAfterCompression.get())
+                .append(String.format(" (%.0f%%), średni czas: %.1f µs/ramkę",
+                        before > 0 ? 100.0 * bytesAfterCompression.get() / before : 100.0,
+                        compressed > 0 ? compressionNanos.get() / 1000.0 / compressed : 0.0)).append('\n');
+
+        long handshakes = tlsHandshakes.get();
+        sb.append("Uzgodnienia TLS: ").append(handshakes)
+                .append(String.format(", średni czas: %.1f ms",
+                        handshakes > 0 ? tlsHandshakeNanos.get() / 1_000_000.0 / handshakes : 0.0)).append('\n');
+
+        double downloadSeconds = attachmentDownloadNanos.get() / 1e9;
+        sb.append("Załączniki: zapisane ").append(attachmentsStored.get())
+                .append(", bez przesyłania (już w magazynie): ").append(attachmentsDeduplicated.get())
+                .append(", odebrane fragmenty: ").append(attachmentChunks.get())
+                .append(" (").append(attachmentBytesReceived.get()).append(" B)")
+                .append(", pobrania: ").append(attachmentDownloads.get())
+                .append(" (").append(attachmentBytesSent.get()).append(" B")
+                .append(String.format(", %.1f MB/s)", downloadSeconds > 0 ?
+                        attachmentBytesSent.get() / downloadSeconds / (1024 * 1024) : 0.0)).append('\n');
+        sb.append("Wzmianki: ").append(mentionsRecorded.get())
+                .append(" w ").append(mentionedMessages.get()).append(" wiadomościach")
+                .append(", powiadomienia: ").append(mentionNotifications.get()).append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.chatapp.server.network;
+
+import com.chatapp.util.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Haszowane koło czasowe dla terminów połączeń (logowanie, bezczynność).
+// Dodanie i anulowanie terminu kosztuje O(1) niezależnie od liczby połączeń, a jeden wątek
+// obsługuje wszystkie terminy z dokładnością do jednego taktu.
+// Zadania wykonują się w wątku koła - muszą być krótkie i nie mogą blokować (np. na zapisie do gniazda).
+public class TimerWheel implements AutoCloseable {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickMs;
+    private final int mask;
+    // Kubełki dostępne wyłącznie z wątku koła; nowe terminy trafiają najpierw do kolejki
+    private final List<Timeout>[] buckets;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // Zwraca false, jeśli zadanie już się wykonało (lub wykonuje)
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        private boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    Logger.error("Błąd w zadaniu koła czasowego: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, long tickMs, int slots) {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("Liczba kubełków musi być potęgą dwójki: " + slots);
+        }
+
+        this.tickMs = tickMs;
+        this.mask = slots - 1;
+        this.buckets = (List<Timeout>[]) new List<?>[slots];
+        for (int i = 0; i < slots; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+
+        this.startTime = now();
+        this.worker = new Thread(this::runWorker, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delayMs) {
+        Timeout timeout = new Timeout(task, now() + Math.max(0, delayMs));
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void runWorker() {
+        while (running) {
+            long sleepMs = startTime + (tick + 1) * tickMs - now();
+
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+
+            transferNewTimeouts();
+            expireBucket(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+
+            // Termin w przeszłości trafia do bieżącego kubełka
+            long targetTick = Math.max((timeout.deadline - startTime + tickMs - 1) / tickMs, tick);
+            timeout.remainingRounds = (targetTick - tick) / buckets.length;
+            buckets[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    private void expireBucket(List<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+
+            if (timeout.isCancelled()) {
+                iterator.remove();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                iterator.remove();
+                timeout.expire();
+            }
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+}
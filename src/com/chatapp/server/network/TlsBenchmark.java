@@ -0,0 +1,266 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
+import com.chatapp.common.security.TlsContexts;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Pomiar kosztu TLS na lokalnym połączeniu: nawiązania połączeń na sekundę (zwykłe TCP, pełne
+// uzgadnianie TLS, wznowienie sesji TLS) oraz przepustowość ramek w stanie ustalonym z TLS i bez.
+// Uruchomienie: java com.chatapp.server.network.TlsBenchmark [magazyn.p12 hasło]
+// Bez argumentów tworzony jest tymczasowy certyfikat dla localhost (keytool z bieżącego JDK).
+public class TlsBenchmark {
+    private static final int CONNECTIONS = 300;
+    private static final int WARMUP_CONNECTIONS = 50;
+    private static final int FRAMES = 50_000;
+    private static final int CONTENT_LENGTH = 200;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // Pierwszy bajt od klienta wybiera tryb serwera
+    private static final int MODE_PING = 'P';
+    private static final int MODE_FRAMES = 'F';
+
+    public static void main(String[] args) throws Exception {
+        Path keystore;
+        char[] password;
+        if (args.length >= 2) {
+            keystore = Paths.get(args[0]);
+            password = args[1].toCharArray();
+        } else {
+            password = "benchmark".toCharArray();
+            keystore = generateKeystore(password);
+        }
+
+        SSLContext serverContext = TlsContexts.createServerContext(keystore.toString(), password);
+        ExecutorService workers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "TlsBenchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ServerSocket plainServer = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+             SSLServerSocket tlsServer = (SSLServerSocket) serverContext.getServerSocketFactory()
+                     .createServerSocket(0, 128, InetAddress.getLoopbackAddress())) {
+            TlsContexts.configureServer(tlsServer);
+            serve(plainServer, workers);
+            serve(tlsServer, workers);
+
+            int plainPort = plainServer.getLocalPort();
+            int tlsPort = tlsServer.getLocalPort();
+            SSLContext sharedClient = TlsContexts.createClientContext(keystore.toString(), password);
+            SSLContext freshClient = TlsContexts.createClientContext(keystore.toString(), password);
+
+            System.out.println("Nawiązania połączeń (" + CONNECTIONS + " prób, po " + WARMUP_CONNECTIONS + " rozgrzewkowych):");
+            report("  TCP", measureConnections(() -> ping(new Socket("localhost", plainPort))));
+            // Pamięć sesji czyszczona przed każdym połączeniem - zawsze pełne uzgadnianie
+            report("  TLS pełne", measureConnections(() -> {
+                forgetSessions(freshClient);
+                ping(openTls(freshClient, tlsPort));
+            }));
+            // Wspólny kontekst - kolejne połączenia wznawiają sesję (bilet sesji TLS 1.3)
+            report("  TLS wznowione", measureConnections(() -> ping(openTls(sharedClient, tlsPort))));
+
+            System.out.println("Przepustowość (" + FRAMES + " ramek Message, treść " + CONTENT_LENGTH + " znaków):");
+            measureFrames(null, new Socket("localhost", plainPort));
+            measureFrames(null, openTls(sharedClient, tlsPort));
+            measureFrames("  TCP", new Socket("localhost", plainPort));
+            measureFrames("  TLS", openTls(sharedClient, tlsPort));
+        } finally {
+            workers.shutdownNow();
+            if (args.length < 2) {
+                Files.deleteIfExists(keystore);
+            }
+        }
+    }
+
+    private interface Connection {
+        void open() throws Exception;
+    }
+
+    private static double measureConnections(Connection connection) throws Exception {
+        for (int i = 0; i < WARMUP_CONNECTIONS; i++) {
+            connection.open();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            connection.open();
+        }
+        return CONNECTIONS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void report(String label, double perSecond) {
+        System.out.printf("%-16s %8.0f połączeń/s (%.2f ms/połączenie)%n", label, perSecond, 1000.0 / perSecond);
+    }
+
+    private static void forgetSessions(SSLContext context) {
+        SSLSessionContext sessions = context.getClientSessionContext();
+        for (byte[] id : Collections.list(sessions.getIds())) {
+            SSLSession session = sessions.getSession(id);
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+    }
+
+    private static SSLSocket openTls(SSLContext context, int port) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("localhost", port);
+        TlsContexts.configureClient(socket);
+        socket.startHandshake();
+        return socket;
+    }
+
+    // Połączenie uznajemy za gotowe, gdy serwer odpowie na pierwszy bajt
+    private static void ping(Socket socket) throws IOException {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            s.getOutputStream().write(MODE_PING);
+            s.getOutputStream().flush();
+            if (s.getInputStream().read() != MODE_PING) {
+                throw new IOException("Brak odpowiedzi serwera");
+            }
+        }
+    }
+
+    // Ramki jak w kliencie: ObjectOutputStream na buforowanym strumieniu, reset i flush po każdej.
+    // Bez etykiety - przebieg rozgrzewkowy, bez wyniku
+    private static void measureFrames(String label, Socket socket) throws IOException {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            OutputStream raw = s.getOutputStream();
+            raw.write(MODE_FRAMES);
+
+            CountingOutputStream counter = new CountingOutputStream(raw);
+            ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(counter, BUFFER_SIZE));
+            char[] content = new char[CONTENT_LENGTH];
+            Arrays.fill(content, 'x');
+            User sender = new User(1, "benchmark");
+
+            long start = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) {
+                output.writeObject(new Message(sender, new String(content)));
+                output.reset();
+                output.flush();
+            }
+            output.writeObject(null);
+            output.flush();
+
+            // Serwer potwierdza po odczytaniu wszystkich ramek
+            if (s.getInputStream().read() != MODE_FRAMES) {
+                throw new IOException("Brak potwierdzenia serwera");
+            }
+            if (label == null) {
+                return;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-16s %8.0f ramek/s, %6.1f MB/s%n", label,
+                    FRAMES / seconds, counter.count / seconds / (1024 * 1024));
+        }
+    }
+
+    private static void serve(ServerSocket serverSocket, ExecutorService workers) {
+        workers.execute(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    workers.execute(() -> handle(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    private static void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream input = s.getInputStream();
+            int mode = input.read();
+
+            if (mode == MODE_FRAMES) {
+                ObjectInputStream frames = new ObjectInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+                while (frames.readObject() != null) {
+                    // Tylko odczyt - mierzymy transport, nie obsługę wiadomości
+                }
+            }
+
+            s.getOutputStream().write(mode);
+            s.getOutputStream().flush();
+        } catch (EOFException e) {
+            // Klient zamknął połączenie
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Błąd połączenia testowego: " + e.getMessage());
+        }
+    }
+
+    // Samopodpisany certyfikat dla localhost; ten sam plik służy klientowi jako magazyn zaufanych certyfikatów
+    private static Path generateKeystore(char[] password) throws IOException, InterruptedException {
+        Path keystore = Files.createTempFile("chatapp-tls", ".p12");
+        Files.delete(keystore);
+
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair",
+                "-alias", "chatapp", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-validity", "1", "-storetype", "PKCS12", "-keystore", keystore.toString(),
+                "-storepass", new String(password), "-keypass", new String(password))
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "chatapp-keytool.log"))
+                .start();
+
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool zakończył się błędem (szczegóły w chatapp-keytool.log)");
+        }
+        return keystore;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream target;
+        long count;
+
+        CountingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.server.room;
+
+import java.util.Arrays;
+
+// Pokój z zestawem członków trzymanym jako posortowana tablica int.
+// Rozsyłanie czyta tablicę bez blokad (kopiowanie przy zapisie) - dołączanie i opuszczanie pokoju
+// są rzadkie w porównaniu z wiadomościami, a pokój z 20 członkami zajmuje 80 bajtów zamiast
+// 20 obiektów Integer w zbiorze haszującym.
+public class Room {
+    private static final int[] EMPTY = new int[0];
+
+    private final int id;
+    private final String name;
+    private volatile int[] members = EMPTY;
+
+    public Room(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Migawka członków - wywołujący nie może jej modyfikować
+    public int[] getMembers() {
+        return members;
+    }
+
+    public int getMemberCount() {
+        return members.length;
+    }
+
+    public boolean contains(int userId) {
+        return Arrays.binarySearch(members, userId) >= 0;
+    }
+
+    // Zwraca false, jeśli użytkownik już był członkiem
+    public synchronized boolean add(int userId) {
+        int[] current = members;
+        int position = Arrays.binarySearch(current, userId);
+        if (position >= 0) {
+            return false;
+        }
+
+        int insertAt = -position - 1;
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = userId;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        members = updated;
+        return true;
+    }
+
+    // Zwraca false, jeśli użytkownik nie był członkiem
+    public synchronized boolean remove(int userId) {
+        int[] current = members;
+        int position = Arrays.binarySearch(current, userId);
+        if (position < 0) {
+            return false;
+        }
+
+        int[] updated = new int[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+        members = updated;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + name + " (" + members.length + " członków)";
+    }
+}
@@ -0,0 +1,129 @@
+package com.chatapp.server.room;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.server.storage.RoomStore;
+import com.chatapp.util.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pokoje serwera z członkostwem wczytanym z magazynu przy starcie. Zmiany członkostwa są najpierw
+// zapisywane w magazynie, a dopiero potem widoczne w pamięci - po restarcie stan jest ten sam.
+public class RoomRegistry {
+    private final RoomStore store;
+    private final Map<String, Room> roomsByName = new ConcurrentHashMap<>();
+    private final Map<Integer, Room> roomsById = new ConcurrentHashMap<>();
+
+    public RoomRegistry(RoomStore store) {
+        this.store = store;
+
+        for (Map.Entry<Integer, String> entry : store.getRooms().entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+
+        int memberships = 0;
+        for (int[] membership : store.getRoomMemberships()) {
+            Room room = roomsById.get(membership[0]);
+            if (room != null && room.add(membership[1])) {
+                memberships++;
+            }
+        }
+
+        Logger.info("Wczytano pokoje: " + roomsById.size() + ", członkostw: " + memberships);
+    }
+
+    // Nazwa pokoju: niepusta, bez znaków używanych jako separatory w protokole
+    public static boolean isValidName(String name) {
+        return name != null && !name.isEmpty() && name.length() <= Config.ROOM_NAME_MAX_LENGTH &&
+                name.indexOf(':') < 0 && name.indexOf(',') < 0 && !name.startsWith(Config.ROOM_KEY_PREFIX) &&
+                name.trim().equals(name);
+    }
+
+    // Dołącza użytkownika do pokoju, tworząc pokój, jeśli nie istnieje. Null przy błędzie magazynu.
+    public Room join(String name, int userId) {
+        Room room = roomsByName.get(name);
+
+        if (room == null) {
+            int roomId = store.getOrCreateRoom(name);
+            if (roomId < 0) {
+                return null;
+            }
+            room = register(roomId, name);
+        }
+
+        if (!room.contains(userId)) {
+            if (!store.addRoomMember(room.getId(), userId)) {
+                return null;
+            }
+            room.add(userId);
+        }
+
+        return room;
+    }
+
+    // Null, jeśli pokój nie istnieje lub zapis się nie powiódł
+    public Room leave(String name, int userId) {
+        Room room = roomsByName.get(name);
+
+        if (room == null || !store.removeRoomMember(room.getId(), userId)) {
+            return null;
+        }
+
+        room.remove(userId);
+        return room;
+    }
+
+    // Zmiana członkostwa wykonana na innym węźle klastra (magazyn jest już zaktualizowany)
+    public void applyRemoteMembership(int roomId, String name, int userId, boolean joined) {
+        Room room = roomsById.get(roomId);
+        if (room == null) {
+            room = register(roomId, name);
+        }
+
+        if (joined) {
+            room.add(userId);
+        } else {
+            room.remove(userId);
+        }
+    }
+
+    private Room register(int roomId, String name) {
+        Room room = roomsById.computeIfAbsent(roomId, id -> new Room(id, name));
+        roomsByName.putIfAbsent(name, room);
+        return room;
+    }
+
+    public Room get(String name) {
+        return roomsByName.get(name);
+    }
+
+    public Room get(int roomId) {
+        return roomsById.get(roomId);
+    }
+
+    public boolean isMember(int roomId, int userId) {
+        Room room = roomsById.get(roomId);
+        return room != null && room.contains(userId);
+    }
+
+    // Nazwy pokojów użytkownika, alfabetycznie
+    public List<String> getRoomNamesOf(int userId) {
+        List<String> names = new ArrayList<>();
+
+        for (Room room : roomsById.values()) {
+            if (room.contains(userId)) {
+                names.add(room.getName());
+            }
+        }
+
+        Collections.sort(names);
+        return names;
+    }
+
+    public int size() {
+        return roomsById.size();
+    }
+}
@@ -0,0 +1,195 @@
+package com.chatapp.server.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+// Niezmienny segment indeksu zapisany w pliku i mapowany do pamięci.
+// Układ pliku:
+//   MAGIC, VERSION, liczba wiadomości, (id, nadawca, odbiorca) dla każdej wiadomości,
+//   listy identyfikatorów zakodowane różnicowo jako varint,
+//   słownik (token, przesunięcie listy, długość listy), na końcu przesunięcie słownika (long).
+public class DiskSegment implements IndexSegment {
+    private static final int MAGIC = 0x43485358;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int[] docIds;
+    // token -> (przesunięcie << 32 | liczba identyfikatorów)
+    private final Map<String, Long> dictionary;
+
+    private DiskSegment(File file, MappedByteBuffer buffer, int[] docIds, Map<String, Long> dictionary) {
+        this.file = file;
+        this.buffer = buffer;
+        this.docIds = docIds;
+        this.dictionary = dictionary;
+    }
+
+    // Otwiera segment i rejestruje zawarte w nim wiadomości w tabeli widoczności
+    public static DiskSegment open(File file, DocTable docs) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Nieprawidłowy nagłówek segmentu: " + file.getName());
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(8);
+
+        int docCount = in.getInt();
+        int[] docIds = new int[docCount];
+        for (int i = 0; i < docCount; i++) {
+            int id = in.getInt();
+            int sender = in.getInt();
+            int receiver = in.getInt();
+            docIds[i] = id;
+            docs.put(id, sender, receiver);
+        }
+
+        int dictionaryOffset = (int) buffer.getLong(buffer.capacity() - 8);
+        in.position(dictionaryOffset);
+
+        int termCount = in.getInt();
+        Map<String, Long> dictionary = new HashMap<>(termCount * 2);
+        for (int i = 0; i < termCount; i++) {
+            byte[] termBytes = new byte[in.getShort() & 0xFFFF];
+            in.get(termBytes);
+            long offset = in.getInt();
+            long count = in.getInt();
+            dictionary.put(new String(termBytes, StandardCharsets.UTF_8), (offset << 32) | count);
+        }
+
+        return new DiskSegment(file, buffer, docIds, dictionary);
+    }
+
+    // Zapisuje segment do pliku tymczasowego i podmienia go atomowo
+    public static DiskSegment write(File file, int[] docIds, SortedMap<String, int[]> postings, DocTable docs)
+            throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(docIds.length);
+            for (int id : docIds) {
+                out.writeInt(id);
+                out.writeInt(docs.getSender(id));
+                out.writeInt(docs.getReceiver(id));
+            }
+
+            Map<String, Integer> offsets = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+                offsets.put(entry.getKey(), out.size());
+                int previous = 0;
+                for (int id : entry.getValue()) {
+                    writeVarInt(out, id - previous);
+                    previous = id;
+                }
+            }
+
+            long dictionaryOffset = out.size();
+            out.writeInt(postings.size());
+            for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+                byte[] termBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(termBytes.length);
+                out.write(termBytes);
+                out.writeInt(offsets.get(entry.getKey()));
+                out.writeInt(entry.getValue().length);
+            }
+            out.writeLong(dictionaryOffset);
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Nie można zastąpić pliku segmentu: " + file.getName());
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Nie można zapisać pliku segmentu: " + file.getName());
+        }
+
+        return open(file, docs);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    @Override
+    public int[] getPostings(String term) {
+        Long entry = dictionary.get(term);
+
+        if (entry == null) {
+            return new int[0];
+        }
+
+        int offset = (int) (entry >>> 32);
+        int count = (int) (entry & 0xFFFFFFFFL);
+        int[] ids = new int[count];
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarInt(in);
+            ids[i] = previous;
+        }
+
+        return ids;
+    }
+
+    @Override
+    public Collection<String> getTerms() {
+        return new ArrayList<>(dictionary.keySet());
+    }
+
+    @Override
+    public int[] getDocIds() {
+        return docIds.clone();
+    }
+
+    @Override
+    public int getDocCount() {
+        return docIds.length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+package com.chatapp.server.search;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// Dla każdej zaindeksowanej wiadomości pamięta nadawcę i odbiorcę (0 = wiadomość publiczna, -id pokoju),
+// aby filtrować wyniki bez sięgania do bazy danych. Tablice są indeksowane identyfikatorem wiadomości.
+public class DocTable {
+    private int[] senders = new int[1024];
+    private int[] receivers = new int[1024];
+    private int maxId;
+
+    public synchronized void put(int id, int senderId, int receiverId) {
+        if (id >= senders.length) {
+            int capacity = Math.max(id + 1, senders.length * 2);
+            senders = Arrays.copyOf(senders, capacity);
+            receivers = Arrays.copyOf(receivers, capacity);
+        }
+
+        senders[id] = senderId;
+        receivers[id] = receiverId;
+        maxId = Math.max(maxId, id);
+    }
+
+    public synchronized boolean contains(int id) {
+        return id > 0 && id < senders.length && senders[id] != 0;
+    }
+
+    public synchronized int getSender(int id) {
+        return id < senders.length ? senders[id] : 0;
+    }
+
+    public synchronized int getReceiver(int id) {
+        return id < receivers.length ? receivers[id] : 0;
+    }
+
+    // Wiadomość publiczna jest widoczna dla wszystkich, prywatna tylko dla jej uczestników,
+    // a wiadomość pokoju - dla członków, o których rozstrzyga roomAccess (id pokoju)
+    public boolean isVisibleTo(int id, int userId, IntPredicate roomAccess) {
+        int sender;
+        int receiver;
+
+        synchronized (this) {
+            if (id <= 0 || id >= senders.length || senders[id] == 0) {
+                return false;
+            }
+            sender = senders[id];
+            receiver = receivers[id];
+        }
+
+        if (receiver < 0) {
+            return roomAccess.test(-receiver);
+        }
+        return receiver == 0 || sender == userId || receiver == userId;
+    }
+
+    public synchronized int getMaxId() {
+        return maxId;
+    }
+}
@@ -0,0 +1,16 @@
+package com.chatapp.server.search;
+
+import java.util.Collection;
+
+// Segment indeksu odwróconego: token -> posortowana lista identyfikatorów wiadomości
+public interface IndexSegment {
+
+    int[] getPostings(String term);
+
+    Collection<String> getTerms();
+
+    // Identyfikatory wiadomości zawartych w segmencie
+    int[] getDocIds();
+
+    int getDocCount();
+}
@@ -0,0 +1,61 @@
+package com.chatapp.server.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+// Segment budowany na bieżąco w pamięci. Modyfikacje i odczyty są synchronizowane przez SearchIndex,
+// a po zamrożeniu (przed zapisem na dysk lub scaleniem z innymi zamrożonymi) segment jest już tylko czytany.
+public class MemorySegment implements IndexSegment {
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final PostingList docIds;
+
+    public MemorySegment() {
+        this(new PostingList(256));
+    }
+
+    private MemorySegment(PostingList docIds) {
+        this.docIds = docIds;
+    }
+
+    // Segment scalony z zamrożonych segmentów (indeks bez katalogu) - od razu tylko do odczytu
+    public static MemorySegment merged(int[] docIds, SortedMap<String, int[]> postings) {
+        MemorySegment segment = new MemorySegment(new PostingList(docIds));
+        for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+            segment.postings.put(entry.getKey(), new PostingList(entry.getValue()));
+        }
+        return segment;
+    }
+
+    public void add(int messageId, Set<String> tokens) {
+        docIds.add(messageId);
+
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, t -> new PostingList()).add(messageId);
+        }
+    }
+
+    @Override
+    public int[] getPostings(String term) {
+        PostingList list = postings.get(term);
+        return list != null ? list.toArray() : new int[0];
+    }
+
+    @Override
+    public Collection<String> getTerms() {
+        return new ArrayList<>(postings.keySet());
+    }
+
+    @Override
+    public int[] getDocIds() {
+        return docIds.toArray();
+    }
+
+    @Override
+    public int getDocCount() {
+        return docIds.size();
+    }
+}
@@ -0,0 +1,176 @@
+package com.chatapp.server.search;
+
+import com.chatapp.common.model.User;
+import com.chatapp.server.storage.UserStore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+// Wyszukiwanie wzmianek @użytkownik w treści wiadomości - jednym przejściem po tekście, niezależnie od
+// liczby użytkowników (automat Aho-Corasick zbudowany ze wszystkich nazw poprzedzonych '@').
+// Wielkość liter nie ma znaczenia. Wzmianka musi zaczynać się na początku tekstu lub po znaku innym niż
+// litera i cyfra (adres e-mail nie jest wzmianką) i kończyć się przed takim znakiem - "@ann" nie pasuje
+// w "@anna". Spośród wzmianek zaczynających się od tego samego '@' wygrywa najdłuższa nazwa.
+// Automat jest niezmienny i podmieniany w całości; nowe rejestracje trafiają najpierw na krótką listę
+// sprawdzaną bezpośrednio, a automat jest przebudowywany dopiero po REBUILD_THRESHOLD rejestracjach.
+public class MentionMatcher {
+    private static final int REBUILD_THRESHOLD = 64;
+    private static final char MARKER = '@';
+
+    private static class Node {
+        final Map<Character, Node> next = new HashMap<>();
+        Node fail;
+        // Użytkownik, którego wzmianka kończy się w tym węźle, i najbliższy taki węzeł po łańcuchu fail
+        User user;
+        int length;
+        Node output;
+    }
+
+    // Niezmienny po zbudowaniu - czytany bez blokad
+    private static class Automaton {
+        final Node root = new Node();
+        final Map<String, User> usersByKey;
+
+        Automaton(Map<String, User> usersByKey) {
+            this.usersByKey = usersByKey;
+            for (Map.Entry<String, User> entry : usersByKey.entrySet()) {
+                insert(MARKER + entry.getKey(), entry.getValue());
+            }
+            link();
+        }
+
+        private void insert(String pattern, User user) {
+            Node node = root;
+            for (int i = 0; i < pattern.length(); i++) {
+                node = node.next.computeIfAbsent(pattern.charAt(i), c -> new Node());
+            }
+            node.user = user;
+            node.length = pattern.length();
+        }
+
+        // Przejścia awaryjne wyznaczane wszerz - węzeł płytszy jest gotowy przed głębszym
+        private void link() {
+            Queue<Node> queue = new ArrayDeque<>();
+            for (Node child : root.next.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                    Node child = entry.getValue();
+                    Node fallback = node.fail;
+                    while (fallback != null && !fallback.next.containsKey(entry.getKey())) {
+                        fallback = fallback.fail;
+                    }
+                    child.fail = fallback != null ? fallback.next.get(entry.getKey()) : root;
+                    child.output = child.fail.user != null ? child.fail : child.fail.output;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private volatile Automaton automaton;
+    // Rejestracje jeszcze nieobecne w automacie (kopia przy zapisie)
+    private volatile List<User> pending = new ArrayList<>();
+
+    public MentionMatcher(UserStore userStore) {
+        Map<String, User> usersByKey = new HashMap<>();
+        for (User user : userStore.getAllUsers()) {
+            usersByKey.put(keyOf(user.getUsername()), user);
+        }
+        automaton = new Automaton(usersByKey);
+    }
+
+    public synchronized void add(User user) {
+        String key = keyOf(user.getUsername());
+        if (automaton.usersByKey.containsKey(key)) {
+            return;
+        }
+
+        List<User> updated = new ArrayList<>(pending);
+        updated.add(user);
+
+        if (updated.size() >= REBUILD_THRESHOLD) {
+            Map<String, User> usersByKey = new HashMap<>(automaton.usersByKey);
+            for (User added : updated) {
+                usersByKey.put(keyOf(added.getUsername()), added);
+            }
+            automaton = new Automaton(usersByKey);
+            updated = new ArrayList<>();
+        }
+        pending = updated;
+    }
+
+    // Użytkownicy wspomniani w tekście, bez powtórzeń, w kolejności pierwszej wzmianki
+    public List<User> find(String text) {
+        if (text == null || text.indexOf(MARKER) < 0) {
+            return new ArrayList<>();
+        }
+
+        String lower = keyOf(text);
+        Automaton current = automaton;
+        // Najdłuższa wzmianka dla położenia '@', od którego się zaczyna
+        Map<Integer, User> byStart = new HashMap<>();
+        Map<Integer, Integer> lengths = new HashMap<>();
+        Node node = current.root;
+
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            while (node != current.root && !node.next.containsKey(c)) {
+                node = node.fail;
+            }
+            node = node.next.getOrDefault(c, current.root);
+
+            for (Node match = node.user != null ? node : node.output; match != null; match = match.output) {
+                record(lower, i + 1 - match.length, match.length, match.user, byStart, lengths);
+            }
+        }
+
+        for (User user : pending) {
+            String pattern = MARKER + keyOf(user.getUsername());
+            for (int start = lower.indexOf(pattern); start >= 0; start = lower.indexOf(pattern, start + 1)) {
+                record(lower, start, pattern.length(), user, byStart, lengths);
+            }
+        }
+
+        Map<Integer, User> ordered = new LinkedHashMap<>();
+        byStart.keySet().stream().sorted().forEach(start -> {
+            User user = byStart.get(start);
+            ordered.putIfAbsent(user.getId(), user);
+        });
+        return new ArrayList<>(ordered.values());
+    }
+
+    private static void record(String text, int start, int length, User user,
+                               Map<Integer, User> byStart, Map<Integer, Integer> lengths) {
+        int end = start + length;
+        boolean separatedBefore = start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1));
+        boolean separatedAfter = end == text.length() || !isNameCharacter(text.charAt(end));
+
+        if (separatedBefore && separatedAfter && length > lengths.getOrDefault(start, 0)) {
+            byStart.put(start, user);
+            lengths.put(start, length);
+        }
+    }
+
+    private static boolean isNameCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    // Małe litery znak po znaku - długość tekstu się nie zmienia, więc położenia wzmianek się zgadzają
+    private static String keyOf(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,102 @@
+package com.chatapp.server.search;
+
+import java.util.Arrays;
+
+// Rosnąca lista identyfikatorów wiadomości oparta na tablicy int (bez opakowywania w Integer)
+public class PostingList {
+    private int[] ids;
+    private int size;
+
+    public PostingList() {
+        this(4);
+    }
+
+    public PostingList(int capacity) {
+        this.ids = new int[Math.max(capacity, 1)];
+    }
+
+    public PostingList(int[] sortedIds) {
+        this.ids = sortedIds;
+        this.size = sortedIds.length;
+    }
+
+    public void add(int id) {
+        if (size > 0 && ids[size - 1] >= id) {
+            // Rzadki przypadek: wiadomości zapisane równolegle mogą przyjść w innej kolejności
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            insertAt(-pos - 1, id);
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        ids[size++] = id;
+    }
+
+    private void insertAt(int index, int id) {
+        ensureCapacity(size + 1);
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        return ids[index];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    // Suma posortowanych list (identyfikatory w różnych segmentach mogą się powtarzać po reindeksacji)
+    public static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                result[k++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[k++] = b[j++];
+            } else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) result[k++] = a[i++];
+        while (j < b.length) result[k++] = b[j++];
+
+        return k == result.length ? result : Arrays.copyOf(result, k);
+    }
+
+    // Część wspólna posortowanych list
+    public static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, k);
+    }
+}
@@ -0,0 +1,330 @@
+package com.chatapp.server.search;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+import com.chatapp.server.storage.MessageStore;
+import com.chatapp.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+// Przyrostowy indeks odwrócony treści wiadomości.
+// Nowe wiadomości trafiają do segmentu w pamięci, który po zapełnieniu jest zapisywany na dysk
+// jako niezmienny segment. Wątek konserwacji okresowo scala segmenty dyskowe w jeden.
+// Bez katalogu (directoryPath = null) indeks działa tylko w pamięci - dla magazynów nietrwałych;
+// zamrożone segmenty są wtedy scalane w jeden większy segment w pamięci.
+public class SearchIndex implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+
+    private final File directory;
+    private final DocTable docs = new DocTable();
+    private final Object lock = new Object();
+    private final ScheduledExecutorService maintenance;
+
+    private MemorySegment memorySegment = new MemorySegment();
+    // Segmenty zamrożone (czekające na zapis) i dyskowe; lista podmieniana w całości pod blokadą
+    private volatile List<IndexSegment> segments = Collections.emptyList();
+    private int nextSegmentNumber = 1;
+
+    public SearchIndex(String directoryPath) {
+        this.directory = directoryPath != null ? new File(directoryPath) : null;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SearchIndex-Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Wczytuje segmenty z dysku i dopisuje do indeksu wiadomości zapisane po ostatnim zrzucie
+    public void open(MessageStore messageStore) {
+        maintenance.scheduleWithFixedDelay(this::mergeSegmentsIfNeeded,
+                Config.SEARCH_MERGE_INTERVAL_SECONDS, Config.SEARCH_MERGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        if (directory == null) {
+            catchUp(messageStore);
+            return;
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Logger.error("Nie można utworzyć katalogu indeksu: " + directory.getPath());
+        }
+
+        List<IndexSegment> loaded = new ArrayList<>();
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            Arrays.sort(files);
+
+            for (File file : files) {
+                String name = file.getName();
+
+                if (name.endsWith(".tmp")) {
+                    // Pozostałość po przerwanym zapisie
+                    file.delete();
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        loaded.add(DiskSegment.open(file, docs));
+                        nextSegmentNumber = Math.max(nextSegmentNumber, parseSegmentNumber(name) + 1);
+                    } catch (IOException | RuntimeException e) {
+                        Logger.error("Pominięto uszkodzony segment " + name + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        segments = Collections.unmodifiableList(loaded);
+        catchUp(messageStore);
+
+        Logger.info("Indeks wyszukiwania gotowy: " + loaded.size() + " segmentów, ostatnia wiadomość " + docs.getMaxId());
+    }
+
+    private void catchUp(MessageStore messageStore) {
+        int afterId = docs.getMaxId();
+        int indexed = 0;
+
+        while (true) {
+            List<Message> batch = messageStore.getMessagesAfter(afterId, Config.SEARCH_SEGMENT_MAX_DOCS);
+
+            for (Message message : batch) {
+                add(message);
+                afterId = message.getId();
+            }
+            indexed += batch.size();
+
+            if (batch.size() < Config.SEARCH_SEGMENT_MAX_DOCS) {
+                break;
+            }
+        }
+
+        if (indexed > 0) {
+            Logger.info("Zaindeksowano " + indexed + " wiadomości brakujących w indeksie");
+        }
+    }
+
+    public void add(Message message) {
+        if (message == null || message.getId() <= 0 || message.getSender() == null) {
+            return;
+        }
+
+        int receiverId = message.isPrivate() ? message.getReceiver().getId() :
+                message.isRoomMessage() ? -message.getRoomId() : 0;
+        Set<String> tokens = Tokenizer.tokenize(message.getContent());
+
+        synchronized (lock) {
+            docs.put(message.getId(), message.getSender().getId(), receiverId);
+            memorySegment.add(message.getId(), tokens);
+
+            if (memorySegment.getDocCount() >= Config.SEARCH_SEGMENT_MAX_DOCS) {
+                freezeMemorySegment();
+            }
+        }
+    }
+
+    // Wywoływane pod blokadą: zamrożony segment pozostaje widoczny dla zapytań do czasu zapisu na dysk
+    private void freezeMemorySegment() {
+        MemorySegment frozen = memorySegment;
+        memorySegment = new MemorySegment();
+
+        List<IndexSegment> updated = new ArrayList<>(segments);
+        updated.add(frozen);
+        segments = Collections.unmodifiableList(updated);
+
+        if (directory != null) {
+            int segmentNumber = nextSegmentNumber++;
+            maintenance.execute(() -> flush(frozen, segmentNumber));
+        }
+    }
+
+    private void flush(MemorySegment frozen, int segmentNumber) {
+        try {
+            DiskSegment disk = DiskSegment.write(segmentFile(segmentNumber), frozen.getDocIds(),
+                    collectPostings(Collections.singletonList(frozen)), docs);
+            replaceSegments(Collections.singletonList(frozen), disk);
+            Logger.debug("Zapisano segment indeksu " + disk.getFile().getName() + " (" + disk.getDocCount() + " wiadomości)");
+        } catch (IOException e) {
+            // Segment zostaje w pamięci - zostanie odtworzony z bazy przy następnym starcie
+            Logger.error("Błąd podczas zapisu segmentu indeksu: " + e.getMessage());
+        }
+    }
+
+    private void mergeSegmentsIfNeeded() {
+        if (directory == null) {
+            mergeMemorySegmentsIfNeeded();
+            return;
+        }
+
+        List<IndexSegment> diskSegments = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            if (segment instanceof DiskSegment) {
+                diskSegments.add(segment);
+            }
+        }
+
+        if (diskSegments.size() <= Config.SEARCH_MAX_SEGMENTS) {
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            PostingList allDocs = collectDocIds(diskSegments);
+
+            int segmentNumber;
+            synchronized (lock) {
+                segmentNumber = nextSegmentNumber++;
+            }
+
+            DiskSegment merged = DiskSegment.write(segmentFile(segmentNumber), allDocs.toArray(),
+                    collectPostings(diskSegments), docs);
+            replaceSegments(diskSegments, merged);
+
+            for (IndexSegment segment : diskSegments) {
+                File file = ((DiskSegment) segment).getFile();
+                if (!file.delete()) {
+                    Logger.warn("Nie można usunąć scalonego segmentu: " + file.getName());
+                }
+            }
+
+            Logger.info("Scalono " + diskSegments.size() + " segmentów indeksu w " +
+                    (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            Logger.error("Błąd podczas scalania segmentów indeksu: " + e.getMessage());
+        }
+    }
+
+    // Indeks bez katalogu: zamrożone segmenty (wszystkie poza bieżącym) scalane w jeden w pamięci
+    private void mergeMemorySegmentsIfNeeded() {
+        List<IndexSegment> frozen = segments;
+
+        if (frozen.size() <= Config.SEARCH_MAX_SEGMENTS) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        MemorySegment merged = MemorySegment.merged(collectDocIds(frozen).toArray(), collectPostings(frozen));
+        replaceSegments(frozen, merged);
+
+        Logger.info("Scalono " + frozen.size() + " segmentów indeksu w pamięci w " +
+                (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private PostingList collectDocIds(List<IndexSegment> sources) {
+        PostingList allDocs = new PostingList();
+        for (IndexSegment segment : sources) {
+            for (int id : segment.getDocIds()) {
+                allDocs.add(id);
+            }
+        }
+        return allDocs;
+    }
+
+    private SortedMap<String, int[]> collectPostings(List<IndexSegment> sources) {
+        SortedMap<String, int[]> postings = new TreeMap<>();
+
+        for (IndexSegment segment : sources) {
+            for (String term : segment.getTerms()) {
+                int[] ids = segment.getPostings(term);
+                postings.merge(term, ids, PostingList::union);
+            }
+        }
+
+        return postings;
+    }
+
+    private void replaceSegments(List<IndexSegment> removed, IndexSegment added) {
+        synchronized (lock) {
+            List<IndexSegment> updated = new ArrayList<>(segments);
+            updated.removeAll(removed);
+            updated.add(added);
+            segments = Collections.unmodifiableList(updated);
+        }
+    }
+
+    // Zwraca identyfikatory najnowszych wiadomości zawierających wszystkie tokeny zapytania,
+    // widocznych dla podanego użytkownika (od najnowszej). roomAccess mówi, czy użytkownik należy do pokoju.
+    public List<Integer> search(String query, int userId, IntPredicate roomAccess, int limit) {
+        Set<String> tokens = Tokenizer.tokenize(query);
+        List<Integer> result = new ArrayList<>();
+
+        if (tokens.isEmpty()) {
+            return result;
+        }
+
+        int[] matches = null;
+
+        for (String token : tokens) {
+            int[] postings = collectTokenPostings(token);
+            matches = matches == null ? postings : PostingList.intersect(matches, postings);
+
+            if (matches.length == 0) {
+                return result;
+            }
+        }
+
+        for (int i = matches.length - 1; i >= 0 && result.size() < limit; i--) {
+            if (docs.isVisibleTo(matches[i], userId, roomAccess)) {
+                result.add(matches[i]);
+            }
+        }
+
+        return result;
+    }
+
+    private int[] collectTokenPostings(String token) {
+        int[] postings;
+        List<IndexSegment> snapshot;
+
+        synchronized (lock) {
+            postings = memorySegment.getPostings(token);
+            snapshot = segments;
+        }
+
+        for (IndexSegment segment : snapshot) {
+            postings = PostingList.union(postings, segment.getPostings(token));
+        }
+
+        return postings;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private int parseSegmentNumber(String name) {
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        // Zrzut bieżącego segmentu, aby po restarcie nie indeksować go ponownie
+        synchronized (lock) {
+            if (directory != null && memorySegment.getDocCount() > 0) {
+                freezeMemorySegment();
+            }
+        }
+
+        maintenance.shutdown();
+        try {
+            if (!maintenance.awaitTermination(10, TimeUnit.SECONDS)) {
+                Logger.warn("Indeks wyszukiwania nie został zapisany w całości");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
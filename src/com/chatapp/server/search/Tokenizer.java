@@ -0,0 +1,43 @@
+package com.chatapp.server.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+public class Tokenizer {
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 50;
+
+    // Dzieli tekst na unikalne tokeny (małe litery, tylko litery i cyfry)
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+
+        if (text == null) {
+            return tokens;
+        }
+
+        StringBuilder current = new StringBuilder();
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c)) {
+                current.append(c);
+            } else {
+                addToken(tokens, current);
+            }
+        }
+        addToken(tokens, current);
+
+        return tokens;
+    }
+
+    private static void addToken(Set<String> tokens, StringBuilder current) {
+        int length = current.length();
+
+        if (length >= MIN_TOKEN_LENGTH && length <= MAX_TOKEN_LENGTH) {
+            tokens.add(current.toString().toLowerCase(Locale.ROOT));
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,70 @@
+package com.chatapp.server.search;
+
+import com.chatapp.common.model.User;
+import com.chatapp.common.model.UserPage;
+import com.chatapp.server.storage.UserStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Katalog użytkowników: posortowany indeks nazw do wyszukiwania po prefiksie ze stronicowaniem.
+// Wczytywany raz przy starcie serwera, nowe rejestracje są dopisywane na bieżąco - lista wszystkich
+// użytkowników nie jest już wysyłana klientom, tylko przeszukiwana tutaj.
+// Klucz to nazwa małymi literami + '\0' + nazwa: porządek bez rozróżniania wielkości liter, a nazwy
+// różniące się tylko wielkością liter nie nadpisują się nawzajem. Kursor strony to klucz jej ostatniego wpisu.
+public class UserDirectory {
+    private final ConcurrentSkipListMap<String, String> usernames = new ConcurrentSkipListMap<>();
+
+    public UserDirectory(UserStore userStore) {
+        for (User user : userStore.getAllUsers()) {
+            add(user.getUsername());
+        }
+    }
+
+    public void add(String username) {
+        usernames.put(keyOf(username), username);
+    }
+
+    private static String keyOf(String username) {
+        return username.toLowerCase(Locale.ROOT) + '\0' + username;
+    }
+
+    // Użytkownicy, których nazwa zaczyna się od prefiksu (bez względu na wielkość liter), po kursorze afterCursor
+    public UserPage search(String prefix, String afterCursor, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        String to = from + '\uffff';
+
+        // Kursor spoza zakresu prefiksu (np. po zmianie zapytania) jest ignorowany albo kończy wyniki
+        NavigableMap<String, String> range;
+        if (afterCursor == null || afterCursor.compareTo(from) < 0) {
+            range = usernames.subMap(from, true, to, false);
+        } else if (afterCursor.compareTo(to) < 0) {
+            range = usernames.subMap(afterCursor, false, to, false);
+        } else {
+            return new UserPage(prefix, new ArrayList<>(), null);
+        }
+
+        List<String> page = new ArrayList<>();
+        String lastKey = null;
+        boolean more = false;
+
+        for (Map.Entry<String, String> entry : range.entrySet()) {
+            if (page.size() == limit) {
+                more = true;
+                break;
+            }
+            page.add(entry.getValue());
+            lastKey = entry.getKey();
+        }
+
+        return new UserPage(prefix, page, more ? lastKey : null);
+    }
+
+    public int size() {
+        return usernames.size();
+    }
+}
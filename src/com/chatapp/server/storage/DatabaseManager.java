@@ -3,15 +3,36 @@ package com.chatapp.server.storage;
 import com.chatapp.common.config.Config;
 import com.chatapp.common.model.Message;
 import com.chatapp.common.model.User;
+import com.chatapp.server.storage.log.MessageLog;
 import com.chatapp.util.Logger;
 
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+public class DatabaseManager implements UserStore, MessageStore, RoomStore, MentionStore, AutoCloseable {
+    // Kolumny sortowania podglądu wiadomości (indeksy jak w tabeli DatabaseUI, null = brak sortowania)
+    private static final String[] MESSAGE_SORT_COLUMNS = {"m.id", "sender.username", null, null, "m.timestamp"};
+
+    // SQLSTATE naruszenia unikalności (indeks idx_messages_client)
+    private static final String DUPLICATE_KEY_STATE = "23505";
+
+    private static final String MESSAGE_WITH_USERS_SELECT = "SELECT m.id, m.content, m.timestamp, " +
+            "sender.id AS sender_id, sender.username AS sender_username, " +
+            "receiver.id AS receiver_id, receiver.username AS receiver_username, " +
+            "room.id AS room_id, room.name AS room_name " +
+            "FROM messages m " +
+            "JOIN users sender ON m.sender_id = sender.id " +
+            "LEFT JOIN users receiver ON m.receiver_id = receiver.id " +
+            "LEFT JOIN rooms room ON m.room_id = room.id ";
 
-public class DatabaseManager implements AutoCloseable {
     private Connection connection;
+    // Dziennik wiadomości używany zamiast tabeli messages, gdy Config.MESSAGE_STORE = "log"
+    private MessageLog messageLog;
 
     public DatabaseManager() {
         try {
@@ -21,11 +42,41 @@ public class DatabaseManager implements AutoCloseable {
                     Config.DB_PASSWORD
             );
             initializeDatabase();
+            openMessageLogIfConfigured();
         } catch (SQLException e) {
             Logger.error("Błąd podczas łączenia z bazą danych: " + e.getMessage());
         }
     }
 
+    private void openMessageLogIfConfigured() {
+        if (!"log".equalsIgnoreCase(Config.MESSAGE_STORE)) {
+            return;
+        }
+        if (Config.CLUSTER_ENABLED) {
+            // Dziennik ma własny licznik identyfikatorów w pamięci procesu - węzły nadawałyby te same id
+            Logger.warn("Dziennik wiadomości nie jest obsługiwany w klastrze - używana jest tabela messages");
+            return;
+        }
+
+        try {
+            // Nowy dziennik kontynuuje numerację tabeli messages, aby identyfikatory się nie powtarzały
+            messageLog = new MessageLog(Config.MESSAGE_LOG_DIR, getMaxMessageId() + 1);
+            Logger.info("Wiadomości przechowywane w dzienniku: " + Config.MESSAGE_LOG_DIR);
+        } catch (IOException e) {
+            Logger.error("Nie można otworzyć dziennika wiadomości, używana jest baza H2: " + e.getMessage());
+        }
+    }
+
+    private int getMaxMessageId() {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM messages")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas odczytu największego identyfikatora wiadomości: " + e.getMessage());
+            return 0;
+        }
+    }
+
     private void initializeDatabase() {
         try {
             createTablesIfNotExist();
@@ -41,9 +92,12 @@ public class DatabaseManager implements AutoCloseable {
             stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
                     "id INT AUTO_INCREMENT PRIMARY KEY, " +
                     "username VARCHAR(50) NOT NULL UNIQUE, " +
-                    "password VARCHAR(100) NOT NULL" +
+                    "password VARCHAR(255) NOT NULL" +
                     ")");
 
+            // Skróty haseł nie mieszczą się w kolumnie o długości z wcześniejszych wersji
+            stmt.execute("ALTER TABLE users ALTER COLUMN password VARCHAR(255) NOT NULL");
+
             // Tabela wiadomości
             stmt.execute("CREATE TABLE IF NOT EXISTS messages (" +
                     "id INT AUTO_INCREMENT PRIMARY KEY, " +
@@ -54,6 +108,44 @@ public class DatabaseManager implements AutoCloseable {
                     "FOREIGN KEY (sender_id) REFERENCES users(id), " +
                     "FOREIGN KEY (receiver_id) REFERENCES users(id)" +
                     ")");
+
+            // Indeks dla sortowania i stronicowania po czasie
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_timestamp ON messages(timestamp, id)");
+
+            // Pokoje i ich członkowie
+            stmt.execute("CREATE TABLE IF NOT EXISTS rooms (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "name VARCHAR(" + Config.ROOM_NAME_MAX_LENGTH + ") NOT NULL UNIQUE, " +
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+
+            stmt.execute("CREATE TABLE IF NOT EXISTS room_members (" +
+                    "room_id INT NOT NULL, " +
+                    "user_id INT NOT NULL, " +
+                    "PRIMARY KEY (room_id, user_id), " +
+                    "FOREIGN KEY (room_id) REFERENCES rooms(id), " +
+                    "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                    ")");
+
+            // Wiadomości pokoju mają room_id, czat ogólny - receiver_id i room_id równe NULL.
+            // Kolumna dodawana także do baz utworzonych przed wprowadzeniem pokojów.
+            stmt.execute("ALTER TABLE messages ADD COLUMN IF NOT EXISTS room_id INT");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_room ON messages(room_id, id)");
+
+            // Klucz idempotencji z kolejki nadawczej klienta - unikalny dla nadawcy, więc wiadomość wysłana
+            // ponownie po restarcie serwera lub do innego węzła klastra nie zostanie zapisana drugi raz.
+            // Wiadomości bez klucza mają NULL (indeks unikalny nie porównuje wartości NULL).
+            stmt.execute("ALTER TABLE messages ADD COLUMN IF NOT EXISTS client_id VARCHAR(" + Config.CLIENT_ID_MAX_LENGTH + ")");
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_messages_client ON messages(sender_id, client_id)");
+
+            // Wzmianki @użytkownik - lista wzmianek użytkownika to przedział klucza głównego, bez przeglądania
+            // treści wiadomości. Bez klucza obcego do messages: wiadomości mogą być w dzienniku lub w archiwum.
+            stmt.execute("CREATE TABLE IF NOT EXISTS mentions (" +
+                    "user_id INT NOT NULL, " +
+                    "message_id INT NOT NULL, " +
+                    "PRIMARY KEY (user_id, message_id), " +
+                    "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                    ")");
         }
     }
 
@@ -67,12 +159,12 @@ public class DatabaseManager implements AutoCloseable {
 
                     // Dodaj admin/admin
                     insertStmt.setString(1, "admin");
-                    insertStmt.setString(2, "admin");
+                    insertStmt.setString(2, PasswordHasher.hash("admin"));
                     insertStmt.executeUpdate();
 
                     // Dodaj user/user
                     insertStmt.setString(1, "user");
-                    insertStmt.setString(2, "user");
+                    insertStmt.setString(2, PasswordHasher.hash("user"));
                     insertStmt.executeUpdate();
 
                     Logger.info("Dodano testowych użytkowników: admin/admin, user/user");
@@ -81,6 +173,7 @@ public class DatabaseManager implements AutoCloseable {
         }
     }
 
+    @Override
     public User registerUser(String username, String password) {
         try {
             // Sprawdzenie czy użytkownik już istnieje
@@ -101,7 +194,7 @@ public class DatabaseManager implements AutoCloseable {
                     Statement.RETURN_GENERATED_KEYS)) {
 
                 insertStmt.setString(1, username);
-                insertStmt.setString(2, password); // W produkcji powinno być hashowane!
+                insertStmt.setString(2, PasswordHasher.hash(password));
 
                 int affectedRows = insertStmt.executeUpdate();
                 if (affectedRows == 0) {
@@ -112,9 +205,8 @@ public class DatabaseManager implements AutoCloseable {
                 try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
                     if (generatedKeys.next()) {
                         int userId = generatedKeys.getInt(1);
-                        User user = new User(userId, username);
-                        user.setPassword(password);
-                        return user;
+                        // Hasło nie wraca do wywołującego (ani do klienta w odpowiedzi na rejestrację)
+                        return new User(userId, username);
                     }
                 }
             }
@@ -126,6 +218,7 @@ public class DatabaseManager implements AutoCloseable {
         }
     }
 
+    @Override
     public User authenticateUser(String username, String password) {
         try {
             try (PreparedStatement stmt = connection.prepareStatement(
@@ -137,9 +230,13 @@ public class DatabaseManager implements AutoCloseable {
                     if (rs.next()) {
                         String storedPassword = rs.getString("password");
 
-                        if (password.equals(storedPassword)) {
+                        if (PasswordHasher.verify(password, storedPassword)) {
                             User user = new User(rs.getInt("id"), rs.getString("username"));
                             Logger.debug("Autoryzacja udana dla: " + user.getUsername());
+
+                            if (PasswordHasher.needsRehash(storedPassword)) {
+                                updatePasswordHash(user, password);
+                            }
                             return user;
                         }
                     }
@@ -153,24 +250,51 @@ public class DatabaseManager implements AutoCloseable {
         }
     }
 
+    // Zastąpienie hasła jawnego (lub skrótu o niższym koszcie) skrótem z bieżącymi ustawieniami
+    private void updatePasswordHash(User user, String password) {
+        try (PreparedStatement stmt = connection.prepareStatement("UPDATE users SET password = ? WHERE id = ?")) {
+            stmt.setString(1, PasswordHasher.hash(password));
+            stmt.setInt(2, user.getId());
+            stmt.executeUpdate();
+            Logger.info("Zaktualizowano skrót hasła użytkownika: " + user.getUsername());
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas aktualizacji skrótu hasła: " + e.getMessage());
+        }
+    }
+
+    @Override
     public boolean saveMessage(Message message) {
+        if (messageLog != null) {
+            return messageLog.append(message);
+        }
+
         try {
             String sql;
             PreparedStatement stmt;
 
             if (message.isPrivate()) {
-                sql = "INSERT INTO messages (sender_id, receiver_id, content, timestamp) VALUES (?, ?, ?, ?)";
+                sql = "INSERT INTO messages (sender_id, receiver_id, content, timestamp, client_id) VALUES (?, ?, ?, ?, ?)";
                 stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
                 stmt.setInt(1, message.getSender().getId());
                 stmt.setInt(2, message.getReceiver().getId());
                 stmt.setString(3, message.getContent());
                 stmt.setTimestamp(4, Timestamp.valueOf(message.getTimestamp()));
+                stmt.setString(5, message.getClientId());
+            } else if (message.isRoomMessage()) {
+                sql = "INSERT INTO messages (sender_id, room_id, content, timestamp, client_id) VALUES (?, ?, ?, ?, ?)";
+                stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                stmt.setInt(1, message.getSender().getId());
+                stmt.setInt(2, message.getRoomId());
+                stmt.setString(3, message.getContent());
+                stmt.setTimestamp(4, Timestamp.valueOf(message.getTimestamp()));
+                stmt.setString(5, message.getClientId());
             } else {
-                sql = "INSERT INTO messages (sender_id, content, timestamp) VALUES (?, ?, ?)";
+                sql = "INSERT INTO messages (sender_id, content, timestamp, client_id) VALUES (?, ?, ?, ?)";
                 stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
                 stmt.setInt(1, message.getSender().getId());
                 stmt.setString(2, message.getContent());
                 stmt.setTimestamp(3, Timestamp.valueOf(message.getTimestamp()));
+                stmt.setString(4, message.getClientId());
             }
 
             int affectedRows = stmt.executeUpdate();
@@ -188,45 +312,146 @@ public class DatabaseManager implements AutoCloseable {
             stmt.close();
             return false;
         } catch (SQLException e) {
-            Logger.error("Błąd podczas zapisywania wiadomości: " + e.getMessage());
+            if (DUPLICATE_KEY_STATE.equals(e.getSQLState())) {
+                // Ta sama wiadomość zapisana równolegle (np. przez inny węzeł klastra)
+                Logger.warn("Wiadomość z kluczem " + message.getClientId() + " jest już zapisana");
+            } else {
+                Logger.error("Błąd podczas zapisywania wiadomości: " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isClientMessageSaved(int senderId, String clientId) {
+        if (messageLog != null) {
+            return messageLog.isClientMessageSaved(senderId, clientId);
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT 1 FROM messages WHERE sender_id = ? AND client_id = ?")) {
+            stmt.setInt(1, senderId);
+            stmt.setString(2, clientId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas sprawdzania klucza wiadomości: " + e.getMessage());
             return false;
         }
     }
 
+    // Najnowsze wiadomości prywatnej rozmowy (rosnąco)
+    @Override
     public List<Message> getPrivateMessages(int user1Id, int user2Id, int limit) {
+        return getMessagesBefore(user1Id, user2Id, Integer.MAX_VALUE, limit);
+    }
+
+    // Najnowsze wiadomości rozmowy o identyfikatorze mniejszym niż beforeId (rosnąco).
+    // Dla czatu ogólnego user1Id i user2Id = 0.
+    @Override
+    public List<Message> getMessagesBefore(int user1Id, int user2Id, int beforeId, int limit) {
+        if (messageLog != null) {
+            return messageLog.getMessagesBefore(user1Id, user2Id, beforeId, limit);
+        }
+
+        if (user1Id == 0) {
+            return queryMessagesBefore("m.receiver_id IS NULL AND m.room_id IS NULL ", beforeId, limit);
+        }
+
+        return queryMessagesBefore(
+                "((m.sender_id = ? AND m.receiver_id = ?) OR (m.sender_id = ? AND m.receiver_id = ?)) ",
+                beforeId, limit, user1Id, user2Id, user2Id, user1Id);
+    }
+
+    @Override
+    public List<Message> getRoomMessagesBefore(int roomId, int beforeId, int limit) {
+        if (messageLog != null) {
+            return messageLog.getRoomMessagesBefore(roomId, beforeId, limit);
+        }
+
+        return queryMessagesBefore("m.room_id = ? ", beforeId, limit, roomId);
+    }
+
+    private List<Message> queryMessagesBefore(String conversationFilter, int beforeId, int limit, int... filterParams) {
         List<Message> messages = new ArrayList<>();
 
-        try {
-            String sql = "SELECT m.id, m.content, m.timestamp, " +
-                    "sender.id AS sender_id, sender.username AS sender_username, " +
-                    "receiver.id AS receiver_id, receiver.username AS receiver_username " +
-                    "FROM messages m " +
-                    "JOIN users sender ON m.sender_id = sender.id " +
-                    "JOIN users receiver ON m.receiver_id = receiver.id " +
-                    "WHERE (m.sender_id = ? AND m.receiver_id = ?) OR (m.sender_id = ? AND m.receiver_id = ?) " +
-                    "ORDER BY m.timestamp ASC LIMIT ?";
+        String sql = MESSAGE_WITH_USERS_SELECT + "WHERE m.id < ? AND " + conversationFilter +
+                "ORDER BY m.id DESC LIMIT ?";
 
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setInt(1, user1Id);
-                stmt.setInt(2, user2Id);
-                stmt.setInt(3, user2Id);
-                stmt.setInt(4, user1Id);
-                stmt.setInt(5, limit);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setInt(index++, beforeId);
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        messages.add(createMessageFromResultSet(rs, true));
-                    }
+            for (int param : filterParams) {
+                stmt.setInt(index++, param);
+            }
+            stmt.setInt(index, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(0, createMessageWithUsersFromResultSet(rs));
                 }
             }
         } catch (SQLException e) {
-            Logger.error("Błąd podczas pobierania prywatnych wiadomości: " + e.getMessage());
+            Logger.error("Błąd podczas pobierania starszych wiadomości: " + e.getMessage());
         }
 
         return messages;
     }
 
+    public List<Message> getMessagesOlderThan(LocalDateTime cutoff, int limit) {
+        // Archiwizacja dotyczy tylko tabeli messages
+        if (messageLog != null) {
+            return new ArrayList<>();
+        }
+
+        List<Message> messages = new ArrayList<>();
+
+        String sql = MESSAGE_WITH_USERS_SELECT + "WHERE m.timestamp < ? ORDER BY m.id ASC LIMIT ?";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(createMessageWithUsersFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas pobierania wiadomości do archiwizacji: " + e.getMessage());
+        }
+
+        return messages;
+    }
+
+    // Zwraca liczbę usuniętych wiadomości (0 przy błędzie) - wywołujący sprawdza, czy usunięto całą paczkę
+    public int deleteMessages(List<Integer> ids) {
+        int deleted = 0;
+
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM messages WHERE id = ?")) {
+            for (Integer id : ids) {
+                stmt.setInt(1, id);
+                stmt.addBatch();
+            }
+            for (int count : stmt.executeBatch()) {
+                deleted += Math.max(count, 0);
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas usuwania wiadomości: " + e.getMessage());
+        }
+
+        return deleted;
+    }
+
+    @Override
     public List<Message> getRecentMessages(int limit) {
+        if (messageLog != null) {
+            return messageLog.getMessagesBefore(0, 0, Integer.MAX_VALUE, limit);
+        }
+
         List<Message> messages = new ArrayList<>();
 
         try {
@@ -234,7 +459,7 @@ public class DatabaseManager implements AutoCloseable {
                     "u.id AS user_id, u.username " +
                     "FROM messages m " +
                     "JOIN users u ON m.sender_id = u.id " +
-                    "WHERE m.receiver_id IS NULL " +
+                    "WHERE m.receiver_id IS NULL AND m.room_id IS NULL " +
                     "ORDER BY m.timestamp DESC LIMIT ?";
 
             try (PreparedStatement stmt = connection.prepareStatement(sql)) {
@@ -253,6 +478,99 @@ public class DatabaseManager implements AutoCloseable {
         return messages;
     }
 
+    // Wiadomości (publiczne i prywatne) o identyfikatorze większym niż podany, rosnąco
+    @Override
+    public List<Message> getMessagesAfter(int afterId, int limit) {
+        if (messageLog != null) {
+            return messageLog.getMessagesAfter(afterId, limit);
+        }
+
+        List<Message> messages = new ArrayList<>();
+
+        String sql = MESSAGE_WITH_USERS_SELECT + "WHERE m.id > ? ORDER BY m.id ASC LIMIT ?";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(createMessageWithUsersFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas pobierania nowych wiadomości: " + e.getMessage());
+        }
+
+        return messages;
+    }
+
+    // Wiadomości o podanych identyfikatorach, w kolejności listy
+    @Override
+    public List<Message> getMessagesByIds(List<Integer> ids) {
+        if (messageLog != null) {
+            return messageLog.getMessagesByIds(ids);
+        }
+
+        List<Message> messages = new ArrayList<>();
+
+        if (ids.isEmpty()) {
+            return messages;
+        }
+
+        StringBuilder sql = new StringBuilder(MESSAGE_WITH_USERS_SELECT).append("WHERE m.id IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setInt(i + 1, ids.get(i));
+            }
+
+            Map<Integer, Message> byId = new HashMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Message message = createMessageWithUsersFromResultSet(rs);
+                    byId.put(message.getId(), message);
+                }
+            }
+
+            for (Integer id : ids) {
+                Message message = byId.get(id);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas pobierania wiadomości po identyfikatorach: " + e.getMessage());
+        }
+
+        return messages;
+    }
+
+    private Message createMessageWithUsersFromResultSet(ResultSet rs) throws SQLException {
+        Message message = new Message();
+        message.setId(rs.getInt("id"));
+        message.setContent(rs.getString("content"));
+        message.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+        message.setSender(new User(rs.getInt("sender_id"), rs.getString("sender_username")));
+
+        int receiverId = rs.getInt("receiver_id");
+        if (!rs.wasNull()) {
+            message.setReceiver(new User(receiverId, rs.getString("receiver_username")));
+        }
+
+        int roomId = rs.getInt("room_id");
+        if (!rs.wasNull()) {
+            message.setRoomId(roomId);
+            message.setRoomName(rs.getString("room_name"));
+        }
+
+        return message;
+    }
+
     private Message createMessageFromResultSet(ResultSet rs, boolean isPrivate) throws SQLException {
         Message message = new Message();
         message.setId(rs.getInt("id"));
@@ -272,6 +590,139 @@ public class DatabaseManager implements AutoCloseable {
         return message;
     }
 
+    @Override
+    public synchronized int getOrCreateRoom(String name) {
+        try {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM rooms WHERE name = ?")) {
+                stmt.setString(1, name);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt(1);
+                    }
+                }
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT INTO rooms (name) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setString(1, name);
+                stmt.executeUpdate();
+
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        Logger.info("Utworzono pokój: " + name);
+                        return generatedKeys.getInt(1);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas tworzenia pokoju " + name + ": " + e.getMessage());
+        }
+
+        return -1;
+    }
+
+    @Override
+    public Map<Integer, String> getRooms() {
+        Map<Integer, String> rooms = new HashMap<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, name FROM rooms")) {
+            while (rs.next()) {
+                rooms.put(rs.getInt("id"), rs.getString("name"));
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas pobierania pokojów: " + e.getMessage());
+        }
+
+        return rooms;
+    }
+
+    @Override
+    public List<int[]> getRoomMemberships() {
+        List<int[]> memberships = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT room_id, user_id FROM room_members")) {
+            while (rs.next()) {
+                memberships.add(new int[]{rs.getInt("room_id"), rs.getInt("user_id")});
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas pobierania członków pokojów: " + e.getMessage());
+        }
+
+        return memberships;
+    }
+
+    @Override
+    public boolean addRoomMember(int roomId, int userId) {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "MERGE INTO room_members (room_id, user_id) KEY (room_id, user_id) VALUES (?, ?)")) {
+            stmt.setInt(1, roomId);
+            stmt.setInt(2, userId);
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas dodawania członka pokoju: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean removeRoomMember(int roomId, int userId) {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM room_members WHERE room_id = ? AND user_id = ?")) {
+            stmt.setInt(1, roomId);
+            stmt.setInt(2, userId);
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas usuwania członka pokoju: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean saveMentions(int messageId, List<Integer> userIds) {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "MERGE INTO mentions (user_id, message_id) KEY (user_id, message_id) VALUES (?, ?)")) {
+            for (Integer userId : userIds) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, messageId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            return true;
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas zapisywania wzmianek: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<Integer> getMentionedMessageIds(int userId, int beforeId, int limit) {
+        List<Integer> ids = new ArrayList<>();
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT message_id FROM mentions WHERE user_id = ? AND message_id < ? " +
+                        "ORDER BY message_id DESC LIMIT ?")) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, beforeId);
+            stmt.setInt(3, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(0, rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas pobierania wzmianek: " + e.getMessage());
+        }
+
+        return ids;
+    }
+
+    @Override
     public List<User> getAllUsers() {
         List<User> users = new ArrayList<>();
 
@@ -301,7 +752,7 @@ public class DatabaseManager implements AutoCloseable {
                         Object[] row = {
                                 rs.getInt("id"),
                                 rs.getString("username"),
-                                rs.getString("password")
+                                PasswordHasher.describe(rs.getString("password"))
                         };
                         users.add(row);
                     }
@@ -314,47 +765,175 @@ public class DatabaseManager implements AutoCloseable {
         return users;
     }
 
-    public List<Object[]> getAllMessagesWithUsernames() {
+    // W trybie dziennika podgląd pokazuje wiadomości tylko w kolejności zapisu - bez filtrowania i sortowania
+    public boolean supportsDisplayQueries() {
+        return messageLog == null;
+    }
+
+    public int countMessagesForDisplay(String filter) {
+        if (messageLog != null) {
+            return messageLog.getMessageCount();
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM MESSAGES m " +
+                "JOIN USERS sender ON m.sender_id = sender.id");
+        List<Object> params = new ArrayList<>();
+        appendDisplayFilter(sql, params, filter, true);
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            bindParameters(stmt, params);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            Logger.error("Błąd podczas liczenia wiadomości: " + e.getMessage());
+        }
+
+        return 0;
+    }
+
+    public static boolean isSortableDisplayColumn(int column) {
+        return column >= 0 && column < MESSAGE_SORT_COLUMNS.length && MESSAGE_SORT_COLUMNS[column] != null;
+    }
+
+    // Pobiera jedną stronę wiadomości do podglądu. Jeśli znany jest klucz ostatniego wiersza
+    // poprzedniej strony (afterKey = {wartość sortowania, id}), używane jest zapytanie keyset
+    // zamiast OFFSET, dzięki czemu koszt nie rośnie wraz z numerem strony.
+    public List<Object[]> getMessagesPageForDisplay(int sortColumn, boolean ascending, String filter,
+                                                    Object[] afterKey, int offset, int limit) {
+        if (messageLog != null) {
+            List<Object[]> rows = new ArrayList<>();
+            int afterId = afterKey != null ? (Integer) afterKey[1] : messageLog.getFirstId() - 1;
+
+            // Bez klucza poprzedniej strony (przeskok przy przewijaniu) pozycja jest odliczana
+            // po kolejnych wiadomościach, a nie wyliczana z identyfikatorów
+            for (int skip = afterKey != null ? 0 : offset; skip > 0; ) {
+                List<Message> skipped = messageLog.getMessagesAfter(afterId, Math.min(skip, limit));
+                if (skipped.isEmpty()) {
+                    return rows;
+                }
+                afterId = skipped.get(skipped.size() - 1).getId();
+                skip -= skipped.size();
+            }
+
+            for (Message message : messageLog.getMessagesAfter(afterId, limit)) {
+                rows.add(new Object[]{
+                        message.getId(),
+                        message.getSender().getUsername(),
+                        describeMessageType(message.isPrivate() ? message.getReceiver().getUsername() : null,
+                                message.getRoomName()),
+                        message.getContent(),
+                        Timestamp.valueOf(message.getTimestamp())
+                });
+            }
+            return rows;
+        }
+
         List<Object[]> messages = new ArrayList<>();
 
-        try {
-            String sql = "SELECT m.id, sender.username AS sender_username, " +
-                    "receiver.username AS receiver_username, m.content, m.timestamp " +
-                    "FROM MESSAGES m " +
-                    "JOIN USERS sender ON m.sender_id = sender.id " +
-                    "LEFT JOIN USERS receiver ON m.receiver_id = receiver.id " +
-                    "ORDER BY m.timestamp";
+        String sortExpr = isSortableDisplayColumn(sortColumn) ? MESSAGE_SORT_COLUMNS[sortColumn] : "m.id";
+        String direction = ascending ? "ASC" : "DESC";
+        String comparator = ascending ? ">" : "<";
+
+        StringBuilder sql = new StringBuilder("SELECT m.id, sender.username AS sender_username, " +
+                "receiver.username AS receiver_username, room.name AS room_name, m.content, m.timestamp " +
+                "FROM MESSAGES m " +
+                "JOIN USERS sender ON m.sender_id = sender.id " +
+                "LEFT JOIN USERS receiver ON m.receiver_id = receiver.id " +
+                "LEFT JOIN ROOMS room ON m.room_id = room.id");
+        List<Object> params = new ArrayList<>();
+        boolean firstCondition = appendDisplayFilter(sql, params, filter, true);
+
+        if (afterKey != null) {
+            sql.append(firstCondition ? " WHERE " : " AND ");
+
+            if (sortExpr.equals("m.id")) {
+                sql.append("m.id ").append(comparator).append(" ?");
+                params.add(afterKey[1]);
+            } else {
+                sql.append("(").append(sortExpr).append(" ").append(comparator).append(" ? OR (")
+                        .append(sortExpr).append(" = ? AND m.id ").append(comparator).append(" ?))");
+                params.add(afterKey[0]);
+                params.add(afterKey[0]);
+                params.add(afterKey[1]);
+            }
+        }
 
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        String receiverUsername = rs.getString("receiver_username");
-                        String messageType = receiverUsername == null ? "Publiczna" : "Prywatna do " + receiverUsername;
+        sql.append(" ORDER BY ");
+        if (!sortExpr.equals("m.id")) {
+            sql.append(sortExpr).append(" ").append(direction).append(", ");
+        }
+        sql.append("m.id ").append(direction).append(" LIMIT ?");
+        params.add(limit);
 
-                        Object[] message = {
-                                rs.getInt("id"),
-                                rs.getString("sender_username"),
-                                messageType,
-                                rs.getString("content"),
-                                rs.getTimestamp("timestamp")
-                        };
-                        messages.add(message);
-                    }
+        if (afterKey == null && offset > 0) {
+            sql.append(" OFFSET ?");
+            params.add(offset);
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            bindParameters(stmt, params);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String messageType = describeMessageType(rs.getString("receiver_username"), rs.getString("room_name"));
+
+                    Object[] message = {
+                            rs.getInt("id"),
+                            rs.getString("sender_username"),
+                            messageType,
+                            rs.getString("content"),
+                            rs.getTimestamp("timestamp")
+                    };
+                    messages.add(message);
                 }
             }
         } catch (SQLException e) {
-            Logger.error("Błąd podczas pobierania wiadomości: " + e.getMessage());
+            Logger.error("Błąd podczas pobierania strony wiadomości: " + e.getMessage());
         }
 
         return messages;
     }
 
+    private static String describeMessageType(String receiverUsername, String roomName) {
+        if (receiverUsername != null) {
+            return "Prywatna do " + receiverUsername;
+        }
+        return roomName != null ? "Pokój #" + roomName : "Publiczna";
+    }
+
+    private boolean appendDisplayFilter(StringBuilder sql, List<Object> params, String filter, boolean firstCondition) {
+        if (filter == null || filter.trim().isEmpty()) {
+            return firstCondition;
+        }
+
+        String pattern = "%" + filter.trim().toLowerCase() + "%";
+        sql.append(firstCondition ? " WHERE " : " AND ");
+        sql.append("(LOWER(sender.username) LIKE ? OR LOWER(m.content) LIKE ?)");
+        params.add(pattern);
+        params.add(pattern);
+        return false;
+    }
+
+    private void bindParameters(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
     public void showDatabaseContentUI() {
         new DatabaseUI(this).showDatabaseContentUI();
     }
 
     @Override
     public void close() {
+        if (messageLog != null) {
+            messageLog.close();
+        }
+
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -5,6 +5,10 @@ import com.chatapp.util.Logger;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.List;
 
 public class DatabaseUI {
@@ -24,48 +28,93 @@ public class DatabaseUI {
 
         // Panel użytkowników
         JPanel usersPanel = new JPanel(new BorderLayout());
-        String[] userColumns = {"ID", "Nazwa użytkownika", "Hasło"};
+        String[] userColumns = {"ID", "Nazwa użytkownika", "Zapis hasła"};
         DefaultTableModel userModel = new DefaultTableModel(userColumns, 0);
         JTable userTable = new JTable(userModel);
         JScrollPane userScrollPane = new JScrollPane(userTable);
         usersPanel.add(userScrollPane, BorderLayout.CENTER);
 
-        // Panel wiadomości
+        // Panel wiadomości - dane wczytywane stronami w tle
         JPanel messagesPanel = new JPanel(new BorderLayout());
-        String[] msgColumns = {"ID", "Nadawca", "Typ", "Treść", "Czas"};
-        DefaultTableModel msgModel = new DefaultTableModel(msgColumns, 0);
+        PagedMessageTableModel msgModel = new PagedMessageTableModel(dbManager);
         JTable msgTable = new JTable(msgModel);
         JScrollPane msgScrollPane = new JScrollPane(msgTable);
+        messagesPanel.add(createFilterPanel(msgModel), BorderLayout.NORTH);
         messagesPanel.add(msgScrollPane, BorderLayout.CENTER);
 
+        // Sortowanie po stronie bazy po kliknięciu w nagłówek kolumny
+        msgTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = msgTable.convertColumnIndexToModel(msgTable.columnAtPoint(e.getPoint()));
+                msgModel.toggleSort(column);
+            }
+        });
+
         tabbedPane.addTab("Użytkownicy", usersPanel);
         tabbedPane.addTab("Wiadomości", messagesPanel);
 
         dataFrame.add(tabbedPane);
+        dataFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                msgModel.shutdown();
+            }
+        });
+        dataFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         dataFrame.setVisible(true);
 
         // Wczytanie danych
-        try {
-            loadUsers(userModel);
-            loadMessages(msgModel);
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(dataFrame,
-                    "Wystąpił błąd podczas ładowania danych: " + e.getMessage(),
-                    "Błąd", JOptionPane.ERROR_MESSAGE);
-        }
+        loadUsers(dataFrame, userModel);
+        msgModel.reload();
     }
 
-    private void loadUsers(DefaultTableModel model) {
-        List<Object[]> users = dbManager.getAllUsersForDisplay();
-        for (Object[] user : users) {
-            model.addRow(user);
+    private JPanel createFilterPanel(PagedMessageTableModel model) {
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 0));
+        filterPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+
+        JTextField filterField = new JTextField();
+        JButton filterButton = new JButton("Filtruj");
+
+        filterPanel.add(new JLabel("Nadawca lub treść:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        filterPanel.add(filterButton, BorderLayout.EAST);
+
+        filterField.addActionListener(e -> model.setFilter(filterField.getText()));
+        filterButton.addActionListener(e -> model.setFilter(filterField.getText()));
+
+        // Dziennik wiadomości nie obsługuje filtrowania - pole nie może udawać, że działa
+        if (!dbManager.supportsDisplayQueries()) {
+            filterField.setEnabled(false);
+            filterButton.setEnabled(false);
+            filterPanel.setToolTipText("Filtrowanie i sortowanie niedostępne w trybie dziennika wiadomości");
+            filterField.setToolTipText(filterPanel.getToolTipText());
         }
+
+        return filterPanel;
     }
 
-    private void loadMessages(DefaultTableModel model) {
-        List<Object[]> messages = dbManager.getAllMessagesWithUsernames();
-        for (Object[] message : messages) {
-            model.addRow(message);
-        }
+    private void loadUsers(JFrame dataFrame, DefaultTableModel model) {
+        // Zapytanie w tle, aby nie blokować wątku EDT
+        new SwingWorker<List<Object[]>, Void>() {
+            @Override
+            protected List<Object[]> doInBackground() {
+                return dbManager.getAllUsersForDisplay();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    for (Object[] user : get()) {
+                        model.addRow(user);
+                    }
+                } catch (Exception e) {
+                    Logger.error("Błąd podczas ładowania użytkowników: " + e.getMessage());
+                    JOptionPane.showMessageDialog(dataFrame,
+                            "Wystąpił błąd podczas ładowania danych: " + e.getMessage(),
+                            "Błąd", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
-}
\ No newline at end of file
+}
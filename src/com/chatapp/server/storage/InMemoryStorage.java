@@ -0,0 +1,311 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
+import com.chatapp.util.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Magazyn użytkowników i wiadomości trzymany wyłącznie w pamięci - do testów obciążeniowych,
+// benchmarków i instancji tymczasowych. Dane znikają po zatrzymaniu serwera.
+// Wiadomości są rozłożone na STRIPES niezależnych części według rozmowy, każda z własną blokadą,
+// więc zapisy do różnych rozmów nie konkurują o jedną blokadę.
+public class InMemoryStorage implements UserStore, MessageStore, RoomStore, MentionStore {
+    private static final int STRIPES = 64;
+    private static final long PUBLIC_CONVERSATION = 0L;
+
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final AtomicInteger userIds = new AtomicInteger();
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Map<Integer, Message> messagesById = new ConcurrentHashMap<>();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    // Klucze idempotencji zapisanych wiadomości ("nadawca:klucz")
+    private final Set<String> clientKeys = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Integer> roomIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> roomNames = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> roomMembers = new ConcurrentHashMap<>();
+    private final AtomicInteger roomIdSequence = new AtomicInteger();
+
+    // Wzmianki: użytkownik -> posortowane identyfikatory wiadomości
+    private final Map<Integer, NavigableSet<Integer>> mentions = new ConcurrentHashMap<>();
+
+    private static class Stripe {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Map<Long, List<Message>> conversations = new HashMap<>();
+    }
+
+    public InMemoryStorage() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        // Te same konta testowe co w bazie H2
+        registerUser("admin", "admin");
+        registerUser("user", "user");
+        Logger.info("Magazyn w pamięci gotowy, testowi użytkownicy: admin/admin, user/user");
+    }
+
+    @Override
+    public User registerUser(String username, String password) {
+        // Przy zajętej nazwie identyfikator przepada - nie ma to znaczenia poza estetyką numeracji
+        User user = new User(userIds.incrementAndGet(), username);
+        user.setPassword(PasswordHasher.hash(password));
+
+        if (usersByName.putIfAbsent(username, user) != null) {
+            return null;
+        }
+
+        return new User(user.getId(), username);
+    }
+
+    @Override
+    public User authenticateUser(String username, String password) {
+        User stored = usersByName.get(username);
+
+        if (stored != null && PasswordHasher.verify(password, stored.getPassword())) {
+            return new User(stored.getId(), stored.getUsername());
+        }
+        return null;
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        List<User> users = new ArrayList<>();
+
+        for (User stored : usersByName.values()) {
+            users.add(new User(stored.getId(), stored.getUsername()));
+        }
+        return users;
+    }
+
+    @Override
+    public boolean saveMessage(Message message) {
+        // Odpowiednik unikalnego indeksu (nadawca, klucz) w bazie
+        if (message.getClientId() != null &&
+                !clientKeys.add(clientKeyOf(message.getSender().getId(), message.getClientId()))) {
+            return false;
+        }
+
+        long key = conversationKey(message);
+        Stripe stripe = stripeFor(key);
+
+        stripe.lock.writeLock().lock();
+        try {
+            // Identyfikator nadawany pod blokadą części - w obrębie rozmowy lista jest posortowana po id
+            message.setId(messageIds.incrementAndGet());
+            Message copy = copyOf(message);
+
+            stripe.conversations.computeIfAbsent(key, k -> new ArrayList<>()).add(copy);
+            messagesById.put(copy.getId(), copy);
+            return true;
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isClientMessageSaved(int senderId, String clientId) {
+        return clientKeys.contains(clientKeyOf(senderId, clientId));
+    }
+
+    private static String clientKeyOf(int senderId, String clientId) {
+        return senderId + ":" + clientId;
+    }
+
+    @Override
+    public List<Message> getRecentMessages(int limit) {
+        return getMessagesBefore(0, 0, Integer.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<Message> getPrivateMessages(int user1Id, int user2Id, int limit) {
+        return getMessagesBefore(user1Id, user2Id, Integer.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<Message> getMessagesBefore(int user1Id, int user2Id, int beforeId, int limit) {
+        return getConversationBefore(user1Id == 0 ? PUBLIC_CONVERSATION : conversationKey(user1Id, user2Id),
+                beforeId, limit);
+    }
+
+    private List<Message> getConversationBefore(long key, int beforeId, int limit) {
+        Stripe stripe = stripeFor(key);
+
+        stripe.lock.readLock().lock();
+        try {
+            List<Message> conversation = stripe.conversations.get(key);
+
+            if (conversation == null) {
+                return new ArrayList<>();
+            }
+
+            int end = lowerBound(conversation, beforeId);
+            return new ArrayList<>(conversation.subList(Math.max(0, end - limit), end));
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getRoomMessagesBefore(int roomId, int beforeId, int limit) {
+        return getConversationBefore(roomKey(roomId), beforeId, limit);
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int afterId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        int lastId = messageIds.get();
+
+        for (int id = afterId + 1; id <= lastId && messages.size() < limit; id++) {
+            Message message = messagesById.get(id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(List<Integer> ids) {
+        List<Message> messages = new ArrayList<>();
+
+        for (Integer id : ids) {
+            Message message = messagesById.get(id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    // Indeks pierwszej wiadomości o id >= beforeId
+    private int lowerBound(List<Message> conversation, int beforeId) {
+        int low = 0;
+        int high = conversation.size();
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (conversation.get(mid).getId() < beforeId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Stripe stripeFor(long key) {
+        return stripes[(Long.hashCode(key) & 0x7FFFFFFF) % STRIPES];
+    }
+
+    private long conversationKey(Message message) {
+        if (message.isRoomMessage()) {
+            return roomKey(message.getRoomId());
+        }
+        if (!message.isPrivate()) {
+            return PUBLIC_CONVERSATION;
+        }
+        return conversationKey(message.getSender().getId(), message.getReceiver().getId());
+    }
+
+    private long conversationKey(int user1Id, int user2Id) {
+        int low = Math.min(user1Id, user2Id);
+        int high = Math.max(user1Id, user2Id);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    // Pokoje mają klucze ujemne - klucze rozmów prywatnych są zawsze dodatnie
+    private long roomKey(int roomId) {
+        return -(long) roomId;
+    }
+
+    private Message copyOf(Message message) {
+        Message copy = new Message();
+        copy.setId(message.getId());
+        copy.setSender(new User(message.getSender().getId(), message.getSender().getUsername()));
+        if (message.isPrivate()) {
+            copy.setReceiver(new User(message.getReceiver().getId(), message.getReceiver().getUsername()));
+        }
+        copy.setRoomId(message.getRoomId());
+        copy.setRoomName(message.getRoomName());
+        copy.setContent(message.getContent());
+        copy.setTimestamp(message.getTimestamp());
+        return copy;
+    }
+
+    @Override
+    public int getOrCreateRoom(String name) {
+        return roomIds.computeIfAbsent(name, n -> {
+            int id = roomIdSequence.incrementAndGet();
+            roomNames.put(id, n);
+            return id;
+        });
+    }
+
+    @Override
+    public Map<Integer, String> getRooms() {
+        return new HashMap<>(roomNames);
+    }
+
+    @Override
+    public List<int[]> getRoomMemberships() {
+        List<int[]> memberships = new ArrayList<>();
+
+        for (Map.Entry<Integer, Set<Integer>> entry : roomMembers.entrySet()) {
+            for (Integer userId : entry.getValue()) {
+                memberships.add(new int[]{entry.getKey(), userId});
+            }
+        }
+        return memberships;
+    }
+
+    @Override
+    public boolean addRoomMember(int roomId, int userId) {
+        roomMembers.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+        return true;
+    }
+
+    @Override
+    public boolean removeRoomMember(int roomId, int userId) {
+        Set<Integer> members = roomMembers.get(roomId);
+        if (members != null) {
+            members.remove(userId);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean saveMentions(int messageId, List<Integer> userIds) {
+        for (Integer userId : userIds) {
+            mentions.computeIfAbsent(userId, id -> new ConcurrentSkipListSet<>()).add(messageId);
+        }
+        return true;
+    }
+
+    @Override
+    public List<Integer> getMentionedMessageIds(int userId, int beforeId, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        NavigableSet<Integer> mentioned = mentions.get(userId);
+
+        if (mentioned != null) {
+            for (Integer id : mentioned.headSet(beforeId, false).descendingSet()) {
+                if (ids.size() == limit) {
+                    break;
+                }
+                ids.add(0, id);
+            }
+        }
+        return ids;
+    }
+}
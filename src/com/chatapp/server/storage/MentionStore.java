@@ -0,0 +1,14 @@
+package com.chatapp.server.storage;
+
+import java.util.List;
+
+// Magazyn wzmianek @użytkownik wyodrębnionych z wiadomości przy zapisie - lista wzmianek użytkownika
+// jest odczytywana po kluczu (użytkownik, wiadomość), bez przeglądania treści wiadomości
+public interface MentionStore {
+
+    // Zwraca false przy błędzie zapisu (ponowny zapis tej samej wzmianki nie jest błędem)
+    boolean saveMentions(int messageId, List<Integer> userIds);
+
+    // Identyfikatory najnowszych wiadomości o id < beforeId, w których wspomniano użytkownika (rosnąco)
+    List<Integer> getMentionedMessageIds(int userId, int beforeId, int limit);
+}
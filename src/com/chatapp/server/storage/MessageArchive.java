@@ -0,0 +1,311 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
+import com.chatapp.util.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Archiwum starych wiadomości w skompresowanych plikach partycjonowanych po miesiącu.
+// Każda paczka przeniesiona z bazy jest dopisywana jako osobny człon GZIP, a obok partycji
+// trzymany jest plik z zakresem identyfikatorów, dzięki któremu odczyt pomija niepotrzebne partycje.
+// Archiwum tylko do odczytu (węzeł klastra, który nie archiwizuje) wczytuje zakresy partycji przed każdym
+// odczytem - partycje dopisuje wtedy inny proces.
+public class MessageArchive {
+    private static final String PARTITION_PREFIX = "messages-";
+    private static final String DATA_SUFFIX = ".gz";
+    private static final String RANGE_SUFFIX = ".range";
+
+    private final File directory;
+    // Miesiąc -> {najmniejszy id, największy id}, posortowane od najstarszego
+    private final TreeMap<YearMonth, int[]> partitions = new TreeMap<>();
+    private final boolean readOnly;
+
+    public MessageArchive(String directoryPath, boolean readOnly) {
+        this.directory = new File(directoryPath);
+        this.readOnly = readOnly;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Logger.error("Nie można utworzyć katalogu archiwum: " + directory.getPath());
+        }
+
+        loadPartitionRanges();
+        Logger.info("Archiwum wiadomości: " + partitions.size() + " partycji" + (readOnly ? " (tylko odczyt)" : ""));
+    }
+
+    private void refreshIfReadOnly() {
+        if (readOnly) {
+            partitions.clear();
+            loadPartitionRanges();
+        }
+    }
+
+    private void loadPartitionRanges() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PARTITION_PREFIX) && name.endsWith(DATA_SUFFIX));
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            YearMonth month = YearMonth.parse(name.substring(PARTITION_PREFIX.length(), name.length() - DATA_SUFFIX.length()));
+            File rangeFile = rangeFile(month);
+
+            // Bez pliku zakresu w archiwum innego procesu partycja jest właśnie tworzona - pomijana
+            if (readOnly && !rangeFile.exists()) {
+                continue;
+            }
+
+            try {
+                if (rangeFile.exists()) {
+                    String[] parts = new String(Files.readAllBytes(rangeFile.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+                    partitions.put(month, new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])});
+                } else {
+                    // Brak pliku zakresu (np. przerwany zapis) - odtworzenie z danych
+                    int[] range = {Integer.MAX_VALUE, 0};
+                    for (Message message : readPartition(month)) {
+                        range[0] = Math.min(range[0], message.getId());
+                        range[1] = Math.max(range[1], message.getId());
+                    }
+                    partitions.put(month, range);
+                    writeRange(month, range);
+                }
+            } catch (IOException | RuntimeException e) {
+                Logger.error("Błąd podczas wczytywania partycji archiwum " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Dopisuje wiadomości do partycji miesięcznych. Dane są synchronizowane na dysk przed powrotem,
+    // więc wywołujący może bezpiecznie usunąć je z bazy.
+    public synchronized void append(List<Message> messages) throws IOException {
+        if (readOnly) {
+            throw new IOException("Archiwum tylko do odczytu: " + directory.getPath());
+        }
+        Map<YearMonth, List<Message>> byMonth = new TreeMap<>();
+        for (Message message : messages) {
+            byMonth.computeIfAbsent(YearMonth.from(message.getTimestamp()), m -> new ArrayList<>()).add(message);
+        }
+
+        for (Map.Entry<YearMonth, List<Message>> entry : byMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+
+            try (FileOutputStream fileOut = new FileOutputStream(dataFile(month), true)) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(new BufferedOutputStream(fileOut), 8192);
+                DataOutputStream out = new DataOutputStream(gzipOut);
+
+                for (Message message : entry.getValue()) {
+                    writeMessage(out, message);
+                }
+
+                out.flush();
+                gzipOut.finish();
+                gzipOut.flush();
+                fileOut.getFD().sync();
+            }
+
+            int[] range = partitions.computeIfAbsent(month, m -> new int[]{Integer.MAX_VALUE, 0});
+            for (Message message : entry.getValue()) {
+                range[0] = Math.min(range[0], message.getId());
+                range[1] = Math.max(range[1], message.getId());
+            }
+            writeRange(month, range);
+        }
+    }
+
+    // Największy zarchiwizowany identyfikator (0 - archiwum puste). Paczki są archiwizowane rosnąco po id,
+    // więc wiadomość o mniejszym id, która jest jeszcze w bazie, ma już kopię w archiwum.
+    public synchronized int getMaxArchivedId() {
+        refreshIfReadOnly();
+
+        int max = 0;
+        for (int[] range : partitions.values()) {
+            max = Math.max(max, range[1]);
+        }
+        return max;
+    }
+
+    // Najnowsze wiadomości rozmowy starsze niż beforeId (rosnąco). Dla rozmowy publicznej user1Id i user2Id = 0.
+    public synchronized List<Message> getMessagesBefore(int user1Id, int user2Id, int beforeId, int limit) {
+        refreshIfReadOnly();
+        return collectBefore(message -> belongsToConversation(message, user1Id, user2Id), beforeId, limit);
+    }
+
+    public synchronized List<Message> getRoomMessagesBefore(int roomId, int beforeId, int limit) {
+        refreshIfReadOnly();
+        return collectBefore(message -> message.isRoomMessage() && message.getRoomId() == roomId, beforeId, limit);
+    }
+
+    private List<Message> collectBefore(Predicate<Message> conversation, int beforeId, int limit) {
+        List<Message> matching = new ArrayList<>();
+
+        // Partycje od najnowszej - zakończ, gdy zebrano wystarczająco wiadomości
+        for (Map.Entry<YearMonth, int[]> entry : partitions.descendingMap().entrySet()) {
+            if (entry.getValue()[0] >= beforeId) {
+                continue;
+            }
+
+            for (Message message : readPartition(entry.getKey())) {
+                if (message.getId() < beforeId && conversation.test(message)) {
+                    matching.add(message);
+                }
+            }
+
+            if (matching.size() >= limit) {
+                break;
+            }
+        }
+
+        matching.sort(Comparator.comparingInt(Message::getId));
+        return new ArrayList<>(matching.subList(Math.max(0, matching.size() - limit), matching.size()));
+    }
+
+    public synchronized List<Message> getMessagesByIds(Collection<Integer> ids) {
+        refreshIfReadOnly();
+        Map<Integer, Message> found = new HashMap<>();
+        Set<Integer> remaining = new HashSet<>(ids);
+
+        for (Map.Entry<YearMonth, int[]> entry : partitions.descendingMap().entrySet()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+
+            int[] range = entry.getValue();
+            boolean inRange = remaining.stream().anyMatch(id -> id >= range[0] && id <= range[1]);
+            if (!inRange) {
+                continue;
+            }
+
+            for (Message message : readPartition(entry.getKey())) {
+                if (remaining.remove(message.getId())) {
+                    found.put(message.getId(), message);
+                }
+            }
+        }
+
+        List<Message> result = new ArrayList<>();
+        for (Integer id : ids) {
+            Message message = found.get(id);
+            if (message != null) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    private boolean belongsToConversation(Message message, int user1Id, int user2Id) {
+        if (user1Id == 0) {
+            return !message.isPrivate() && !message.isRoomMessage();
+        }
+
+        if (!message.isPrivate()) {
+            return false;
+        }
+
+        int sender = message.getSender().getId();
+        int receiver = message.getReceiver().getId();
+        return (sender == user1Id && receiver == user2Id) || (sender == user2Id && receiver == user1Id);
+    }
+
+    private List<Message> readPartition(YearMonth month) {
+        // Identyfikatory mogą się powtórzyć, jeśli serwer przerwał pracę między zapisem archiwum a usunięciem z bazy
+        Map<Integer, Message> messages = new LinkedHashMap<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(dataFile(month)), 8192)))) {
+            while (true) {
+                Message message;
+                try {
+                    message = readMessage(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                messages.put(message.getId(), message);
+            }
+        } catch (IOException e) {
+            Logger.error("Błąd podczas odczytu partycji archiwum " + month + ": " + e.getMessage());
+        }
+
+        return new ArrayList<>(messages.values());
+    }
+
+    private void writeMessage(DataOutputStream out, Message message) throws IOException {
+        out.writeInt(message.getId());
+        out.writeLong(message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        out.writeInt(message.getSender().getId());
+        writeString(out, message.getSender().getUsername());
+
+        // Odbiorca: id użytkownika, -id pokoju lub 0 dla czatu ogólnego
+        if (message.isPrivate()) {
+            out.writeInt(message.getReceiver().getId());
+            writeString(out, message.getReceiver().getUsername());
+        } else if (message.isRoomMessage()) {
+            out.writeInt(-message.getRoomId());
+            writeString(out, message.getRoomName());
+        } else {
+            out.writeInt(0);
+        }
+
+        writeString(out, message.getContent());
+    }
+
+    private Message readMessage(DataInputStream in) throws IOException {
+        Message message = new Message();
+        message.setId(in.readInt());
+        message.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneOffset.UTC));
+
+        int senderId = in.readInt();
+        message.setSender(new User(senderId, readString(in)));
+
+        int receiverId = in.readInt();
+        if (receiverId > 0) {
+            message.setReceiver(new User(receiverId, readString(in)));
+        } else if (receiverId < 0) {
+            message.setRoomId(-receiverId);
+            message.setRoomName(readString(in));
+        }
+
+        message.setContent(readString(in));
+        return message;
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Przez plik tymczasowy - węzeł czytający wspólne archiwum nie trafi na niedokończony zapis
+    private void writeRange(YearMonth month, int[] range) throws IOException {
+        File temporary = new File(directory, rangeFile(month).getName() + ".tmp");
+        Files.write(temporary.toPath(), (range[0] + " " + range[1]).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary.toPath(), rangeFile(month).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File dataFile(YearMonth month) {
+        return new File(directory, PARTITION_PREFIX + month + DATA_SUFFIX);
+    }
+
+    private File rangeFile(YearMonth month) {
+        return new File(directory, PARTITION_PREFIX + month + RANGE_SUFFIX);
+    }
+}
@@ -0,0 +1,34 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.model.Message;
+
+import java.util.List;
+
+// Magazyn wiadomości. Listy wiadomości są zwracane rosnąco według identyfikatora.
+public interface MessageStore {
+
+    // Zapisuje wiadomość i ustawia jej identyfikator. Klucz idempotencji (clientId) jest zapisywany razem
+    // z wiadomością i unikalny dla nadawcy - powtórzony klucz daje false.
+    boolean saveMessage(Message message);
+
+    // Czy wiadomość nadawcy z tym kluczem idempotencji jest już zapisana
+    boolean isClientMessageSaved(int senderId, String clientId);
+
+    // Najnowsze wiadomości czatu ogólnego
+    List<Message> getRecentMessages(int limit);
+
+    // Najnowsze wiadomości prywatnej rozmowy dwóch użytkowników
+    List<Message> getPrivateMessages(int user1Id, int user2Id, int limit);
+
+    // Najnowsze wiadomości rozmowy o id < beforeId. Dla czatu ogólnego user1Id i user2Id = 0.
+    List<Message> getMessagesBefore(int user1Id, int user2Id, int beforeId, int limit);
+
+    // Najnowsze wiadomości pokoju o id < beforeId
+    List<Message> getRoomMessagesBefore(int roomId, int beforeId, int limit);
+
+    // Wiadomości (wszystkich rozmów) o id > afterId
+    List<Message> getMessagesAfter(int afterId, int limit);
+
+    // Wiadomości o podanych identyfikatorach, w kolejności listy
+    List<Message> getMessagesByIds(List<Integer> ids);
+}
@@ -0,0 +1,194 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.util.Logger;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Model tabeli wiadomości, który wczytuje dane stronami w tle zamiast całej tabeli naraz.
+// Stan modelu jest używany wyłącznie w wątku EDT (poza licznikiem generacji) - wątek ładujący dostaje kopię parametrów.
+public class PagedMessageTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"ID", "Nadawca", "Typ", "Treść", "Czas"};
+    private static final String LOADING_PLACEHOLDER = "Wczytywanie...";
+
+    private final DatabaseManager dbManager;
+    private final int pageSize;
+    private final ExecutorService loader;
+
+    // Ograniczona pamięć podręczna stron (najdawniej używane są usuwane)
+    private final Map<Integer, List<Object[]>> pageCache;
+    // Klucz ostatniego wiersza każdej strony - pozwala pobrać następną stronę zapytaniem keyset
+    private final Map<Integer, Object[]> pageLastKeys = new HashMap<>();
+    private final Set<Integer> pendingPages = new HashSet<>();
+
+    private int rowCount;
+    private int sortColumn = 0;
+    private boolean ascending = true;
+    private String filter = "";
+    // Zwiększane przy każdej zmianie sortowania/filtra, aby odrzucić spóźnione wyniki
+    private volatile int generation;
+
+    public PagedMessageTableModel(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.pageSize = Config.ADMIN_PAGE_SIZE;
+        this.pageCache = new LinkedHashMap<Integer, List<Object[]>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+                return size() > Config.ADMIN_PAGE_CACHE_PAGES;
+            }
+        };
+        this.loader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DatabaseUI-Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = COLUMNS[column];
+
+        if (column == sortColumn) {
+            return name + (ascending ? " ▲" : " ▼");
+        }
+        return name;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int page = rowIndex / pageSize;
+        List<Object[]> rows = pageCache.get(page);
+
+        if (rows == null) {
+            requestPage(page);
+            return columnIndex == 3 ? LOADING_PLACEHOLDER : null;
+        }
+
+        int offsetInPage = rowIndex % pageSize;
+        if (offsetInPage >= rows.size()) {
+            return null;
+        }
+
+        return rows.get(offsetInPage)[columnIndex];
+    }
+
+    public boolean isSortable(int column) {
+        return dbManager.supportsDisplayQueries() && DatabaseManager.isSortableDisplayColumn(column);
+    }
+
+    // Kliknięcie w nagłówek: ta sama kolumna odwraca kierunek, inna sortuje rosnąco
+    public void toggleSort(int column) {
+        if (!isSortable(column)) {
+            return;
+        }
+
+        if (column == sortColumn) {
+            ascending = !ascending;
+        } else {
+            sortColumn = column;
+            ascending = true;
+        }
+
+        reload();
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter == null ? "" : filter.trim();
+        reload();
+    }
+
+    // Czyści stan i pobiera liczbę wierszy w tle; strony są dociągane dopiero przy wyświetlaniu
+    public void reload() {
+        generation++;
+        pageCache.clear();
+        pageLastKeys.clear();
+        pendingPages.clear();
+
+        final int requestGeneration = generation;
+        final String requestFilter = filter;
+
+        loader.execute(() -> {
+            int count = dbManager.countMessagesForDisplay(requestFilter);
+
+            SwingUtilities.invokeLater(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+
+                rowCount = count;
+                fireTableStructureChanged();
+            });
+        });
+    }
+
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private void requestPage(int page) {
+        if (!pendingPages.add(page)) {
+            return;
+        }
+
+        final int requestGeneration = generation;
+        final int requestSortColumn = sortColumn;
+        final boolean requestAscending = ascending;
+        final String requestFilter = filter;
+        final Object[] afterKey = page > 0 ? pageLastKeys.get(page - 1) : null;
+        final int offset = page * pageSize;
+
+        loader.execute(() -> {
+            // Strona mogła zostać przewinięta lub odświeżona zanim dotarliśmy do niej w kolejce
+            if (requestGeneration != generation) {
+                return;
+            }
+
+            List<Object[]> rows = dbManager.getMessagesPageForDisplay(
+                    requestSortColumn, requestAscending, requestFilter, afterKey, offset, pageSize);
+
+            SwingUtilities.invokeLater(() -> onPageLoaded(requestGeneration, page, rows));
+        });
+    }
+
+    private void onPageLoaded(int requestGeneration, int page, List<Object[]> rows) {
+        if (requestGeneration != generation) {
+            return;
+        }
+
+        pendingPages.remove(page);
+        pageCache.put(page, rows);
+
+        if (!rows.isEmpty()) {
+            Object[] last = rows.get(rows.size() - 1);
+            pageLastKeys.put(page, new Object[]{last[sortColumn], last[0]});
+        }
+
+        int firstRow = page * pageSize;
+        int lastRow = Math.min(rowCount, firstRow + pageSize) - 1;
+
+        if (lastRow >= firstRow) {
+            fireTableRowsUpdated(firstRow, lastRow);
+        }
+
+        Logger.debug("Wczytano stronę " + page + " podglądu wiadomości (" + rows.size() + " wierszy)");
+    }
+}
@@ -0,0 +1,94 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.config.Config;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Skróty haseł PBKDF2-HMAC-SHA256 w formacie pbkdf2$<iteracje>$<sól base64>$<skrót base64>.
+// Wpis bez prefiksu to hasło zapisane jawnie przez starsze wersje serwera - nadal jest akceptowane,
+// a needsRehash() wskazuje, że przy logowaniu należy je zastąpić skrótem.
+public final class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    public static String hash(String password) {
+        byte[] salt = new byte[Config.PASSWORD_SALT_BYTES];
+        RANDOM.nextBytes(salt);
+
+        int iterations = Config.PASSWORD_HASH_ITERATIONS;
+        byte[] hash = pbkdf2(password, salt, iterations, Config.PASSWORD_HASH_BYTES);
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+
+            // Porównanie w stałym czasie
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations, expected.length));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Hasło jawne lub skrót o koszcie niższym niż bieżący
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) {
+            return true;
+        }
+
+        try {
+            return Integer.parseInt(stored.split("\\$")[1]) < Config.PASSWORD_HASH_ITERATIONS;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    // Opis wpisu bez ujawniania hasła (podgląd bazy)
+    public static String describe(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) {
+            return "jawne (do przeliczenia)";
+        }
+        String[] parts = stored.split("\\$");
+        return "PBKDF2, " + (parts.length > 1 ? parts[1] : "?") + " iteracji";
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int length) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Brak algorytmu " + ALGORITHM, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
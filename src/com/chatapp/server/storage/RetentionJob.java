@@ -0,0 +1,103 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+import com.chatapp.util.Logger;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Zadanie w tle przenoszące wiadomości starsze niż Config.RETENTION_DAYS do archiwum.
+// Wiadomości są przenoszone paczkami z przerwą między nimi, aby nie blokować bieżącego ruchu na bazie.
+public class RetentionJob implements AutoCloseable {
+    private final DatabaseManager dbManager;
+    private final MessageArchive archive;
+    private final ScheduledExecutorService scheduler;
+
+    public RetentionJob(DatabaseManager dbManager, MessageArchive archive) {
+        this.dbManager = dbManager;
+        this.archive = archive;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RetentionJob");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        if (Config.RETENTION_DAYS <= 0) {
+            Logger.info("Archiwizacja wiadomości wyłączona");
+            return;
+        }
+
+        scheduler.scheduleWithFixedDelay(this::runSafely, 1,
+                Config.RETENTION_CHECK_INTERVAL_MINUTES * 60L, TimeUnit.SECONDS);
+    }
+
+    private void runSafely() {
+        try {
+            archiveOldMessages();
+        } catch (Exception e) {
+            Logger.error("Błąd podczas archiwizacji wiadomości: " + e.getMessage());
+        }
+    }
+
+    private void archiveOldMessages() throws IOException, InterruptedException {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(Config.RETENTION_DAYS);
+        int archived = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Message> batch = dbManager.getMessagesOlderThan(cutoff, Config.RETENTION_BATCH_SIZE);
+
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            // Najpierw trwały zapis w archiwum, dopiero potem usunięcie z bazy. Wiadomości zarchiwizowane
+            // w przebiegu, którego usunięcie się nie powiodło, nie są dopisywane drugi raz - tylko usuwane.
+            int archivedUpTo = archive.getMaxArchivedId();
+            List<Message> toArchive = new ArrayList<>();
+            List<Integer> ids = new ArrayList<>();
+            for (Message message : batch) {
+                ids.add(message.getId());
+                if (message.getId() > archivedUpTo) {
+                    toArchive.add(message);
+                }
+            }
+
+            if (!toArchive.isEmpty()) {
+                archive.append(toArchive);
+            }
+
+            int deleted = dbManager.deleteMessages(ids);
+            archived += deleted;
+
+            if (deleted < ids.size()) {
+                // Ponowienie przy następnym przebiegu - te same wiadomości nie trafią już do archiwum
+                Logger.error("Usunięto z bazy " + deleted + " z " + ids.size() +
+                        " zarchiwizowanych wiadomości - przerwanie archiwizacji");
+                break;
+            }
+
+            if (batch.size() < Config.RETENTION_BATCH_SIZE) {
+                break;
+            }
+
+            Thread.sleep(Config.RETENTION_BATCH_PAUSE_MS);
+        }
+
+        if (archived > 0) {
+            Logger.info("Przeniesiono do archiwum " + archived + " wiadomości starszych niż " + cutoff.toLocalDate());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
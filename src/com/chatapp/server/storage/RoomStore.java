@@ -0,0 +1,22 @@
+package com.chatapp.server.storage;
+
+import java.util.List;
+import java.util.Map;
+
+// Magazyn pokojów i ich członków
+public interface RoomStore {
+
+    // Identyfikator pokoju o podanej nazwie; pokój jest tworzony, jeśli nie istnieje. -1 przy błędzie.
+    int getOrCreateRoom(String name);
+
+    // Wszystkie pokoje: identyfikator -> nazwa
+    Map<Integer, String> getRooms();
+
+    // Wszystkie członkostwa jako pary {id pokoju, id użytkownika} - jednym odczytem przy starcie serwera
+    List<int[]> getRoomMemberships();
+
+    // Zwraca false przy błędzie zapisu (ponowne dodanie lub usunięcie nie jest błędem)
+    boolean addRoomMember(int roomId, int userId);
+
+    boolean removeRoomMember(int roomId, int userId);
+}
@@ -0,0 +1,70 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.util.Logger;
+
+// Zestaw magazynów wybrany przy starcie serwera.
+// "h2" - baza H2 (opcjonalnie z dziennikiem wiadomości, zob. Config.MESSAGE_STORE),
+// "memory" - wszystko w pamięci, bez zapisu na dysk.
+public class Storage implements AutoCloseable {
+    private final UserStore userStore;
+    private final MessageStore messageStore;
+    private final RoomStore roomStore;
+    private final MentionStore mentionStore;
+    // Dostępny tylko dla magazynu H2 (podgląd bazy, archiwizacja)
+    private final DatabaseManager dbManager;
+
+    private Storage(UserStore userStore, MessageStore messageStore, RoomStore roomStore, MentionStore mentionStore,
+                    DatabaseManager dbManager) {
+        this.userStore = userStore;
+        this.messageStore = messageStore;
+        this.roomStore = roomStore;
+        this.mentionStore = mentionStore;
+        this.dbManager = dbManager;
+    }
+
+    public static Storage create(String type) {
+        if ("memory".equalsIgnoreCase(type)) {
+            InMemoryStorage memory = new InMemoryStorage();
+            return new Storage(memory, memory, memory, memory, null);
+        }
+
+        if (!"h2".equalsIgnoreCase(type)) {
+            Logger.warn("Nieznany typ magazynu: " + type + " - używana jest baza H2");
+        }
+
+        DatabaseManager dbManager = new DatabaseManager();
+        return new Storage(dbManager, dbManager, dbManager, dbManager, dbManager);
+    }
+
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    public MessageStore getMessageStore() {
+        return messageStore;
+    }
+
+    public RoomStore getRoomStore() {
+        return roomStore;
+    }
+
+    public MentionStore getMentionStore() {
+        return mentionStore;
+    }
+
+    public DatabaseManager getDbManager() {
+        return dbManager;
+    }
+
+    // Czy dane przetrwają restart serwera
+    public boolean isPersistent() {
+        return dbManager != null;
+    }
+
+    @Override
+    public void close() {
+        if (dbManager != null) {
+            dbManager.close();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.chatapp.server.storage;
+
+import com.chatapp.common.model.User;
+
+import java.util.List;
+
+// Magazyn kont użytkowników
+public interface UserStore {
+
+    // Zwraca nowego użytkownika lub null, jeśli nazwa jest zajęta
+    User registerUser(String username, String password);
+
+    // Zwraca użytkownika (bez hasła) lub null przy błędnych danych
+    User authenticateUser(String username, String password);
+
+    List<User> getAllUsers();
+}
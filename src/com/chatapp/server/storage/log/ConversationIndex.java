@@ -0,0 +1,65 @@
+package com.chatapp.server.storage.log;
+
+import java.util.Arrays;
+
+// Rzadki indeks jednej rozmowy: pozycja co N-tej wiadomości rozmowy oraz pozycja ostatniej.
+// Pozostałe wiadomości są osiągane przez wskaźnik na poprzedni rekord tej samej rozmowy.
+class ConversationIndex {
+    private final int interval;
+    private int[] sparseIds = new int[4];
+    private long[] sparsePositions = new long[4];
+    private int sparseSize;
+    private int count;
+
+    long lastPosition = -1;
+    int lastId;
+
+    ConversationIndex(int interval) {
+        this.interval = interval;
+    }
+
+    void add(int id, long position) {
+        if (count % interval == 0) {
+            if (sparseSize == sparseIds.length) {
+                sparseIds = Arrays.copyOf(sparseIds, sparseSize * 2);
+                sparsePositions = Arrays.copyOf(sparsePositions, sparseSize * 2);
+            }
+            sparseIds[sparseSize] = id;
+            sparsePositions[sparseSize] = position;
+            sparseSize++;
+        }
+
+        count++;
+        lastId = id;
+        lastPosition = position;
+    }
+
+    // Pozycja rekordu, od którego należy iść wstecz, aby znaleźć wiadomości o id < beforeId.
+    // Zwrócony rekord może mieć id >= beforeId - najwyżej interval kroków przed pierwszym trafieniem.
+    long findStartPosition(int beforeId) {
+        if (beforeId > lastId) {
+            return lastPosition;
+        }
+
+        int low = 0;
+        int high = sparseSize - 1;
+        int found = -1;
+
+        // Najmniejszy wpis rzadki o id >= beforeId
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sparseIds[mid] >= beforeId) {
+                found = mid;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return found >= 0 ? sparsePositions[found] : lastPosition;
+    }
+
+    int getCount() {
+        return count;
+    }
+}
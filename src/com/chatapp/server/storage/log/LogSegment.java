@@ -0,0 +1,49 @@
+package com.chatapp.server.storage.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Pojedynczy plik dziennika o stałym rozmiarze, mapowany w całości do pamięci.
+// Nieużywana część pliku jest wypełniona zerami - rekord o długości 0 oznacza koniec danych.
+class LogSegment {
+    final int index;
+    final File file;
+    final MappedByteBuffer buffer;
+    private final RandomAccessFile raf;
+    int writePosition;
+
+    private LogSegment(int index, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+        this.index = index;
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+    }
+
+    static LogSegment open(File file, int index, int minimumSize) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long size = Math.max(raf.length(), minimumSize);
+
+        if (raf.length() < size) {
+            raf.setLength(size);
+        }
+
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new LogSegment(index, file, raf, buffer);
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        force();
+        raf.close();
+    }
+}
@@ -0,0 +1,509 @@
+package com.chatapp.server.storage.log;
+
+import com.chatapp.common.config.Config;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
+import com.chatapp.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// Magazyn wiadomości w postaci dziennika tylko do dopisywania, podzielonego na segmenty mapowane do pamięci.
+//
+// Rekord: [długość danych int][CRC32 danych int][dane], gdzie dane to:
+//   id, czas (ms), nadawca, odbiorca (0 = publiczna, -id pokoju dla wiadomości pokoju),
+//   pozycja poprzedniego rekordu tej rozmowy, nazwa nadawcy, nazwa odbiorcy lub pokoju, treść,
+//   klucz idempotencji klienta (pusty, gdy brak; rekordy sprzed jego wprowadzenia kończą się na treści).
+// Pozycja rekordu to (numer segmentu << 32 | przesunięcie). Identyfikatory są kolejnymi liczbami,
+// więc do odnalezienia wiadomości po id wystarcza rzadki indeks co Config.LOG_INDEX_INTERVAL wiadomości.
+// Indeksy są trzymane w pamięci i odtwarzane przy starcie przez przejście segmentów; uszkodzony
+// (np. urwany przy awarii) ogon ostatniego segmentu jest wtedy wykrywany po CRC i obcinany.
+public class MessageLog implements AutoCloseable {
+    private static final int RECORD_HEADER = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long PUBLIC_CONVERSATION = 0L;
+
+    private final File directory;
+    private final int indexInterval;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+
+    private final List<LogSegment> segments = new ArrayList<>();
+    private final Map<Long, ConversationIndex> conversations = new HashMap<>();
+    // Klucze idempotencji ostatnich IDEMPOTENCY_KEYS_CAPACITY wiadomości ("nadawca:klucz" -> id),
+    // odtwarzane z rekordów przy starcie - odpowiednik unikalnego indeksu w bazie
+    private final Map<String, Integer> clientKeys = new LinkedHashMap<>(1024, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > Config.IDEMPOTENCY_KEYS_CAPACITY;
+        }
+    };
+    // Pozycja wiadomości o id = firstId + k * indexInterval
+    private long[] idIndex = new long[1024];
+    private int firstId;
+    private int nextId;
+
+    // initialId - identyfikator pierwszej wiadomości w pustym dzienniku
+    public MessageLog(String directoryPath, int initialId) throws IOException {
+        this.directory = new File(directoryPath);
+        this.indexInterval = Config.LOG_INDEX_INTERVAL;
+        this.firstId = initialId;
+        this.nextId = initialId;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Nie można utworzyć katalogu dziennika: " + directory.getPath());
+        }
+
+        recover();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MessageLog-Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::forceCurrentSegment,
+                Config.LOG_FLUSH_INTERVAL_MS, Config.LOG_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+
+            for (File file : files) {
+                segments.add(LogSegment.open(file, segments.size(), Config.LOG_SEGMENT_SIZE));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.open(segmentFile(0), 0, Config.LOG_SEGMENT_SIZE));
+        }
+
+        int recovered = 0;
+        boolean first = true;
+
+        for (LogSegment segment : segments) {
+            boolean last = segment == currentSegment();
+            int offset = 0;
+
+            while (offset + RECORD_HEADER <= segment.capacity()) {
+                int length = segment.buffer.getInt(offset);
+
+                if (length == 0) {
+                    break;
+                }
+
+                if (!isValidRecord(segment, offset, length)) {
+                    if (last) {
+                        truncate(segment, offset);
+                        Logger.warn("Dziennik wiadomości: obcięto uszkodzony ogon segmentu " +
+                                segment.file.getName() + " od pozycji " + offset);
+                    } else {
+                        Logger.error("Dziennik wiadomości: uszkodzony rekord w segmencie " +
+                                segment.file.getName() + " na pozycji " + offset);
+                    }
+                    break;
+                }
+
+                ByteBuffer record = recordBuffer(segment, offset);
+                int id = record.getInt(0);
+                int senderId = record.getInt(12);
+                int receiverId = record.getInt(16);
+
+                if (first) {
+                    firstId = id;
+                    first = false;
+                }
+
+                indexRecord(id, senderId, receiverId, position(segment.index, offset));
+                indexClientKey(senderId, readClientId(record), id);
+                nextId = id + 1;
+                offset += RECORD_HEADER + length;
+                recovered++;
+            }
+
+            segment.writePosition = offset;
+        }
+
+        Logger.info("Dziennik wiadomości otwarty: " + segments.size() + " segmentów, " + recovered + " wiadomości");
+    }
+
+    private boolean isValidRecord(LogSegment segment, int offset, int length) {
+        if (length < 0 || offset + RECORD_HEADER + (long) length > segment.capacity()) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(recordBuffer(segment, offset));
+        return (int) crc.getValue() == segment.buffer.getInt(offset + 4);
+    }
+
+    private void truncate(LogSegment segment, int offset) {
+        ByteBuffer tail = segment.buffer.duplicate();
+        tail.position(offset);
+
+        while (tail.hasRemaining()) {
+            tail.put((byte) 0);
+        }
+        segment.force();
+    }
+
+    public boolean append(Message message) {
+        byte[] senderName = message.getSender().getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] receiverName = message.isPrivate() ?
+                message.getReceiver().getUsername().getBytes(StandardCharsets.UTF_8) :
+                message.isRoomMessage() ? message.getRoomName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+        byte[] clientId = message.getClientId() != null ?
+                message.getClientId().getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        int payloadLength = 4 + 8 + 4 + 4 + 8 + 2 + senderName.length + 2 + receiverName.length + 4 + content.length +
+                2 + clientId.length;
+        int senderId = message.getSender().getId();
+        int receiverId = message.isPrivate() ? message.getReceiver().getId() :
+                message.isRoomMessage() ? -message.getRoomId() : 0;
+
+        lock.writeLock().lock();
+        try {
+            if (message.getClientId() != null && clientKeys.containsKey(clientKeyOf(senderId, message.getClientId()))) {
+                return false;
+            }
+
+            LogSegment segment = currentSegment();
+
+            if (segment.writePosition + RECORD_HEADER + payloadLength > segment.capacity()) {
+                segment.force();
+                segment = LogSegment.open(segmentFile(segments.size()), segments.size(),
+                        Math.max(Config.LOG_SEGMENT_SIZE, RECORD_HEADER + payloadLength + 4));
+                segments.add(segment);
+            }
+
+            int id = nextId;
+            int offset = segment.writePosition;
+            ConversationIndex conversation = conversations.get(conversationKey(senderId, receiverId));
+            long previous = conversation != null ? conversation.lastPosition : -1;
+
+            ByteBuffer out = segment.buffer.duplicate();
+            out.position(offset + RECORD_HEADER);
+            out.putInt(id);
+            out.putLong(message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+            out.putInt(senderId);
+            out.putInt(receiverId);
+            out.putLong(previous);
+            out.putShort((short) senderName.length);
+            out.put(senderName);
+            out.putShort((short) receiverName.length);
+            out.put(receiverName);
+            out.putInt(content.length);
+            out.put(content);
+            out.putShort((short) clientId.length);
+            out.put(clientId);
+
+            CRC32 crc = new CRC32();
+            crc.update(recordBuffer(segment, offset, payloadLength));
+            segment.buffer.putInt(offset + 4, (int) crc.getValue());
+            // Długość zapisywana na końcu - dopiero ona czyni rekord widocznym przy odtwarzaniu
+            segment.buffer.putInt(offset, payloadLength);
+
+            segment.writePosition = offset + RECORD_HEADER + payloadLength;
+            indexRecord(id, senderId, receiverId, position(segment.index, offset));
+            indexClientKey(senderId, message.getClientId(), id);
+            nextId = id + 1;
+
+            message.setId(id);
+            return true;
+        } catch (IOException e) {
+            Logger.error("Błąd podczas dopisywania do dziennika wiadomości: " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexRecord(int id, int senderId, int receiverId, long position) {
+        int slot = id - firstId;
+
+        if (slot % indexInterval == 0) {
+            int index = slot / indexInterval;
+            if (index >= idIndex.length) {
+                idIndex = Arrays.copyOf(idIndex, Math.max(index + 1, idIndex.length * 2));
+            }
+            idIndex[index] = position;
+        }
+
+        conversations.computeIfAbsent(conversationKey(senderId, receiverId),
+                key -> new ConversationIndex(indexInterval)).add(id, position);
+    }
+
+    private void indexClientKey(int senderId, String clientId, int id) {
+        if (clientId != null) {
+            clientKeys.put(clientKeyOf(senderId, clientId), id);
+        }
+    }
+
+    private static String clientKeyOf(int senderId, String clientId) {
+        return senderId + ":" + clientId;
+    }
+
+    public boolean isClientMessageSaved(int senderId, String clientId) {
+        lock.readLock().lock();
+        try {
+            return clientKeys.containsKey(clientKeyOf(senderId, clientId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Najnowsze wiadomości rozmowy o id < beforeId (rosnąco). Dla czatu ogólnego user1Id i user2Id = 0.
+    public List<Message> getMessagesBefore(int user1Id, int user2Id, int beforeId, int limit) {
+        return getConversationBefore(user1Id == 0 ? PUBLIC_CONVERSATION : conversationKey(user1Id, user2Id),
+                beforeId, limit);
+    }
+
+    public List<Message> getRoomMessagesBefore(int roomId, int beforeId, int limit) {
+        return getConversationBefore(conversationKey(0, -roomId), beforeId, limit);
+    }
+
+    private List<Message> getConversationBefore(long key, int beforeId, int limit) {
+        List<Message> messages = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            ConversationIndex conversation = conversations.get(key);
+
+            if (conversation == null) {
+                return messages;
+            }
+
+            long position = conversation.findStartPosition(beforeId);
+
+            // Idziemy wstecz po wskaźnikach na poprzedni rekord tej samej rozmowy
+            while (position >= 0 && messages.size() < limit) {
+                ByteBuffer record = recordAt(position);
+
+                if (record.getInt(0) < beforeId) {
+                    messages.add(0, decode(record));
+                }
+                position = record.getLong(20);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return messages;
+    }
+
+    public List<Message> getMessagesAfter(int afterId, int limit) {
+        List<Message> messages = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            int id = Math.max(afterId + 1, firstId);
+            long position = findPosition(id);
+
+            while (position >= 0 && messages.size() < limit) {
+                ByteBuffer record = recordAt(position);
+                messages.add(decode(record));
+                position = nextPosition(position, record.capacity());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return messages;
+    }
+
+    public List<Message> getMessagesByIds(List<Integer> ids) {
+        List<Message> messages = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (Integer id : ids) {
+                long position = findPosition(id);
+                if (position >= 0) {
+                    messages.add(decode(recordAt(position)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return messages;
+    }
+
+    public int getMessageCount() {
+        lock.readLock().lock();
+        try {
+            return nextId - firstId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getFirstId() {
+        return firstId;
+    }
+
+    // Pozycja wiadomości o podanym id lub -1: skok do wpisu rzadkiego i przejście do przodu
+    private long findPosition(int id) {
+        if (id < firstId || id >= nextId) {
+            return -1;
+        }
+
+        int slot = id - firstId;
+        long position = idIndex[slot / indexInterval];
+
+        for (int i = 0; i < slot % indexInterval && position >= 0; i++) {
+            position = nextPosition(position, recordAt(position).capacity());
+        }
+
+        return position;
+    }
+
+    private long nextPosition(long position, int payloadLength) {
+        int segmentIndex = (int) (position >>> 32);
+        int offset = (int) position + RECORD_HEADER + payloadLength;
+        LogSegment segment = segments.get(segmentIndex);
+
+        if (offset < segment.writePosition) {
+            return position(segmentIndex, offset);
+        }
+
+        // Następny rekord jest na początku kolejnego segmentu (o ile istnieje i nie jest pusty)
+        if (segmentIndex + 1 < segments.size() && segments.get(segmentIndex + 1).writePosition > 0) {
+            return position(segmentIndex + 1, 0);
+        }
+        return -1;
+    }
+
+    // Widok danych rekordu bezpośrednio w zmapowanym segmencie - bez kopiowania
+    private ByteBuffer recordAt(long position) {
+        LogSegment segment = segments.get((int) (position >>> 32));
+        return recordBuffer(segment, (int) position);
+    }
+
+    private ByteBuffer recordBuffer(LogSegment segment, int offset) {
+        return recordBuffer(segment, offset, segment.buffer.getInt(offset));
+    }
+
+    private ByteBuffer recordBuffer(LogSegment segment, int offset, int length) {
+        ByteBuffer view = segment.buffer.duplicate();
+        view.position(offset + RECORD_HEADER);
+        view.limit(offset + RECORD_HEADER + length);
+        return view.slice();
+    }
+
+    private Message decode(ByteBuffer record) {
+        Message message = new Message();
+        message.setId(record.getInt(0));
+        message.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getLong(4)), ZoneOffset.UTC));
+
+        int senderId = record.getInt(12);
+        int receiverId = record.getInt(16);
+
+        record.position(28);
+        message.setSender(new User(senderId, readString(record, record.getShort() & 0xFFFF)));
+
+        String receiverName = readString(record, record.getShort() & 0xFFFF);
+        if (receiverId > 0) {
+            message.setReceiver(new User(receiverId, receiverName));
+        } else if (receiverId < 0) {
+            message.setRoomId(-receiverId);
+            message.setRoomName(receiverName);
+        }
+
+        message.setContent(readString(record, record.getInt()));
+        return message;
+    }
+
+    // Klucz idempotencji z końca rekordu lub null (brak klucza albo rekord w starszym formacie)
+    private String readClientId(ByteBuffer record) {
+        record.position(28);
+        skip(record, record.getShort() & 0xFFFF);
+        skip(record, record.getShort() & 0xFFFF);
+        skip(record, record.getInt());
+
+        if (record.remaining() < 2) {
+            return null;
+        }
+        int length = record.getShort() & 0xFFFF;
+        return length > 0 ? readString(record, length) : null;
+    }
+
+    private void skip(ByteBuffer buffer, int length) {
+        buffer.position(buffer.position() + length);
+    }
+
+    private String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Rozmowa prywatna identyfikowana parą (mniejszy id, większy id), publiczna kluczem 0,
+    // pokój - ujemnym identyfikatorem (klucze prywatne są zawsze dodatnie)
+    private static long conversationKey(int senderId, int receiverId) {
+        if (receiverId <= 0) {
+            return receiverId;
+        }
+
+        int low = Math.min(senderId, receiverId);
+        int high = Math.max(senderId, receiverId);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    private static long position(int segmentIndex, int offset) {
+        return ((long) segmentIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private LogSegment currentSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void forceCurrentSegment() {
+        lock.readLock().lock();
+        try {
+            currentSegment().force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+
+        lock.writeLock().lock();
+        try {
+            for (LogSegment segment : segments) {
+                segment.close();
+            }
+            Logger.debug("Dziennik wiadomości zamknięty");
+        } catch (IOException e) {
+            Logger.error("Błąd podczas zamykania dziennika wiadomości: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}